@@ -55,6 +55,7 @@ public class DownCommand extends Command {
 		parser.allowsUnrecognizedOptions();
 
 		OptionSpec<String> optionConflictStrategy = parser.acceptsAll(asList("C", "conflict-strategy")).withRequiredArg();
+		OptionSpec<Integer> optionDownloadThreads = parser.acceptsAll(asList("T", "download-threads")).withRequiredArg().ofType(Integer.class);
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -64,6 +65,11 @@ public class DownCommand extends Command {
 			operationOptions.setConflictStrategy(DownConflictStrategy.valueOf(conflictStrategyStr));
 		}
 
+		// --download-threads=<count>
+		if (options.has(optionDownloadThreads)) {
+			operationOptions.setDownloadThreadCount(options.valueOf(optionDownloadThreads));
+		}
+
 		return operationOptions;
 	}
 
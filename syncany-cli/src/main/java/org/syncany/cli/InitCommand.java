@@ -34,6 +34,7 @@ import org.syncany.chunk.Chunker;
 import org.syncany.chunk.CipherTransformer;
 import org.syncany.chunk.FixedChunker;
 import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.IndexedMultiChunker;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.config.to.ConfigTO;
@@ -98,6 +99,7 @@ public class InitCommand extends AbstractInitCommand implements InitOperationLis
 		OptionSpec<String> optionPlugin = parser.acceptsAll(asList("P", "plugin")).withRequiredArg();
 		OptionSpec<String> optionPluginOpts = parser.acceptsAll(asList("o", "plugin-option")).withRequiredArg();
 		OptionSpec<Void> optionNonInteractive = parser.acceptsAll(asList("I", "no-interaction"));
+		OptionSpec<Void> optionIndexedMultiChunks = parser.acceptsAll(asList("m", "indexed-multichunks"));
 		
 		OptionSet options = parser.parse(operationArguments);	
 						
@@ -107,6 +109,7 @@ public class InitCommand extends AbstractInitCommand implements InitOperationLis
 		boolean advancedModeEnabled = options.has(optionAdvanced);
 		boolean encryptionEnabled = !options.has(optionNoEncryption);
 		boolean compressionEnabled = !options.has(optionNoCompression);
+		boolean indexedMultiChunksEnabled = options.has(optionIndexedMultiChunks);
 		
 		// --no-interaction
 		isInteractive = !options.has(optionNonInteractive);
@@ -114,9 +117,9 @@ public class InitCommand extends AbstractInitCommand implements InitOperationLis
 		// Cipher specs: --no-encryption, --advanced 
 		List<CipherSpec> cipherSpecs = getCipherSpecs(encryptionEnabled, advancedModeEnabled);
 		
-		// Chunkers (not configurable)
+		// Chunkers: --indexed-multichunks
 		ChunkerTO chunkerTO = getDefaultChunkerTO();
-		MultiChunkerTO multiChunkerTO = getDefaultMultiChunkerTO();
+		MultiChunkerTO multiChunkerTO = (indexedMultiChunksEnabled) ? getIndexedMultiChunkerTO() : getDefaultMultiChunkerTO();
 
 		// Compression: --no-compression
 		List<TransformerTO> transformersTO = getTransformersTO(compressionEnabled, cipherSpecs);
@@ -366,6 +369,17 @@ public class InitCommand extends AbstractInitCommand implements InitOperationLis
 		return multichunkerTO;		
 	}
 	
+	/**
+	 * Returns the indexed multichunker (opt-in). Repositories using it cannot
+	 * be read by clients that do not know the indexed multichunk format.
+	 */
+	protected MultiChunkerTO getIndexedMultiChunkerTO() {
+		MultiChunkerTO multichunkerTO = getDefaultMultiChunkerTO();
+		multichunkerTO.setType(IndexedMultiChunker.TYPE); 
+		
+		return multichunkerTO;		
+	}
+	
 	protected TransformerTO getGzipTransformerTO() {		
 		TransformerTO gzipTransformerTO = new TransformerTO();
 		gzipTransformerTO.setType(GzipTransformer.TYPE);
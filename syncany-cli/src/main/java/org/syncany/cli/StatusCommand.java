@@ -48,12 +48,18 @@ public class StatusCommand extends Command {
 		parser.allowsUnrecognizedOptions();
 		
 		OptionSpec<Void> optionForceChecksum = parser.acceptsAll(asList("f", "force-checksum"));
+		OptionSpec<Integer> optionWalkThreads = parser.acceptsAll(asList("w", "walk-threads")).withRequiredArg().ofType(Integer.class);
 		
 		OptionSet options = parser.parse(operationArgs);	
 		
 		// --force-checksum
 		operationOptions.setForceChecksum(options.has(optionForceChecksum));
 		
+		// --walk-threads=<count>
+		if (options.has(optionWalkThreads)) {
+			operationOptions.setWalkThreadCount(options.valueOf(optionWalkThreads));
+		}
+		
 		return operationOptions;
 	}	
 
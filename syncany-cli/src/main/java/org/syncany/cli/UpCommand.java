@@ -54,6 +54,10 @@ public class UpCommand extends Command {
 
 		OptionSpec<Void> optionNoCleanup = parser.acceptsAll(asList("c", "no-cleanup"));
 		OptionSpec<Void> optionForceUpload = parser.acceptsAll(asList("F", "force-upload"));
+		OptionSpec<Integer> optionThreads = parser.acceptsAll(asList("t", "threads")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<Void> optionPipelined = parser.acceptsAll(asList("p", "pipelined"));
+		OptionSpec<Integer> optionUploadThreads = parser.acceptsAll(asList("u", "upload-threads")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<Integer> optionUploadRetries = parser.acceptsAll(asList("r", "upload-retries")).withRequiredArg().ofType(Integer.class);
 
 		OptionSet options = parser.parse(operationArgs);
 
@@ -70,6 +74,24 @@ public class UpCommand extends Command {
 
 		// --force
 		operationOptions.setForceUploadEnabled(options.has(optionForceUpload));
+		
+		// --threads=<count>
+		if (options.has(optionThreads)) {
+			operationOptions.setChunkingThreadCount(options.valueOf(optionThreads));
+		}
+		
+		// --pipelined
+		operationOptions.setPipelinedUploadEnabled(options.has(optionPipelined));
+		
+		// --upload-threads=<count>
+		if (options.has(optionUploadThreads)) {
+			operationOptions.setUploadThreadCount(options.valueOf(optionUploadThreads));
+		}
+		
+		// --upload-retries=<count>
+		if (options.has(optionUploadRetries)) {
+			operationOptions.setUploadRetryCount(options.valueOf(optionUploadRetries));
+		}
 
 		return operationOptions;
 	}
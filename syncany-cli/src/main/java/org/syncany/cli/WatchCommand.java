@@ -48,6 +48,7 @@ public class WatchCommand extends Command {
 		OptionSpec<String> optionAnnouncements = parser.acceptsAll(asList("a", "announce")).withRequiredArg();
 		OptionSpec<Void> optionNoWatcher = parser.acceptsAll(asList("W", "no-watcher"));
 		OptionSpec<Integer> optionSettleDelay = parser.acceptsAll(asList("s", "delay")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<Integer> optionMaxSettleDelay = parser.acceptsAll(asList("S", "max-delay")).withRequiredArg().ofType(Integer.class);
 		
 		OptionSet options = parser.parse(operationArgs);	
 		
@@ -89,6 +90,11 @@ public class WatchCommand extends Command {
 			operationOptions.setSettleDelay(options.valueOf(optionSettleDelay)*1000);
 		}
 		
+		// --max-delay=<sec>
+		if (options.has(optionMaxSettleDelay)) {
+			operationOptions.setMaxSettleDelay(options.valueOf(optionMaxSettleDelay)*1000);
+		}
+		
 		// --no-watcher
 		if (options.has(optionNoWatcher)) {
 			operationOptions.setWatcher(false);
@@ -83,5 +83,31 @@ public class StatusCommandTest {
 		
 		// Cleanup
 		TestCliUtil.deleteTestLocalConfigAndData(clientA);		
-	}			
+	}
+	
+	@Test
+	public void testStatusCommandWithWalkThreads() throws Exception {
+		// Setup
+		Map<String, String> connectionSettings = TestConfigUtil.createTestLocalConnectionSettings();
+		Map<String, String> clientA = TestCliUtil.createLocalTestEnvAndInit("A", connectionSettings);
+
+		// Run!
+		new File(clientA.get("localdir")+"/somefolder1/subfolder").mkdirs();
+		new File(clientA.get("localdir")+"/somefolder2").mkdir();
+				
+		String[] cliOut = TestCliUtil.runAndCaptureOutput(new CommandLineClient(new String[] { 
+			"--localdir", clientA.get("localdir"),
+			"status",
+			"--walk-threads=4"
+		}));
+		
+		// Test
+		assertEquals("Different number of output lines expected.", 3, cliOut.length);
+		assertEquals("? somefolder1", cliOut[0]);
+		assertEquals("? somefolder1/subfolder", cliOut[1]);
+		assertEquals("? somefolder2", cliOut[2]);
+		
+		// Cleanup
+		TestCliUtil.deleteTestLocalConfigAndData(clientA);		
+	}
 }
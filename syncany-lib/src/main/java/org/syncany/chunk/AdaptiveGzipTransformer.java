@@ -0,0 +1,313 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.syncany.chunk.GzipTransformer.GZIPInputStreamEx;
+import org.syncany.chunk.GzipTransformer.GZIPOutputStreamEx;
+
+/**
+ * Implements a {@link Transformer} that only compresses data with the Gzip algorithm
+ * if it is likely to be compressible.
+ *
+ * <p>Before anything is written to the underlying stream, the output stream buffers the
+ * first bytes of the data (the sample) and estimates their Shannon entropy. If the entropy
+ * is above the threshold, e.g. for already compressed media or archives, the data is
+ * stored without compression. The first byte of the transformed stream is a marker that
+ * tells the input stream whether the remaining bytes must be uncompressed or can simply be
+ * passed through.
+ *
+ * <p>Streams written by the {@link GzipTransformer} (no marker byte) are detected by the
+ * Gzip magic number and can be read as well.
+ *
+ * <p>Settings (all optional):
+ * <ul>
+ *  <li><tt>level</tt>: Deflate level 1-9 (default: {@link Deflater#DEFAULT_COMPRESSION})</li>
+ *  <li><tt>sample</tt>: Size of the sample in KB (default: 16)</li>
+ *  <li><tt>threshold</tt>: Entropy threshold in bits per byte, 0-8 (default: 7.5)</li>
+ * </ul>
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class AdaptiveGzipTransformer extends Transformer {
+	private static final Logger logger = Logger.getLogger(AdaptiveGzipTransformer.class.getSimpleName());
+
+	public static final String TYPE = "adaptive-gzip";
+
+	public static final String PROPERTY_LEVEL = "level";
+	public static final String PROPERTY_SAMPLE_SIZE = "sample";
+	public static final String PROPERTY_ENTROPY_THRESHOLD = "threshold";
+
+	public static final int DEFAULT_SAMPLE_SIZE = 16*1024;
+	public static final double DEFAULT_ENTROPY_THRESHOLD = 7.5;
+
+	public static final byte MARKER_RAW = 0x00;
+	public static final byte MARKER_GZIP = 0x01;
+
+	private static final int GZIP_MAGIC_FIRST_BYTE = GZIPInputStream.GZIP_MAGIC & 0xff;
+
+	private int level;
+	private int sampleSize;
+	private double entropyThreshold;
+
+	private AtomicLong compressedBytes;
+	private AtomicLong skippedBytes;
+
+	public AdaptiveGzipTransformer() {
+		this(Deflater.DEFAULT_COMPRESSION, DEFAULT_SAMPLE_SIZE, DEFAULT_ENTROPY_THRESHOLD, null);
+	}
+
+	public AdaptiveGzipTransformer(Transformer nextTransformer) {
+		this(Deflater.DEFAULT_COMPRESSION, DEFAULT_SAMPLE_SIZE, DEFAULT_ENTROPY_THRESHOLD, nextTransformer);
+	}
+
+	public AdaptiveGzipTransformer(int level, int sampleSize, double entropyThreshold, Transformer nextTransformer) {
+		super(nextTransformer);
+
+		this.level = level;
+		this.sampleSize = sampleSize;
+		this.entropyThreshold = entropyThreshold;
+
+		this.compressedBytes = new AtomicLong(0);
+		this.skippedBytes = new AtomicLong(0);
+	}
+
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		level = parseIntProperty(settings, PROPERTY_LEVEL, level);
+		sampleSize = parseIntProperty(settings, PROPERTY_SAMPLE_SIZE, sampleSize/1024) * 1024;
+
+		if (settings != null && settings.get(PROPERTY_ENTROPY_THRESHOLD) != null) {
+			try {
+				entropyThreshold = Double.parseDouble(settings.get(PROPERTY_ENTROPY_THRESHOLD));
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Property '"+PROPERTY_ENTROPY_THRESHOLD+"' could not be parsed as number.");
+			}
+		}
+
+		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_LEVEL+"' must be between 1 and 9.");
+		}
+
+		if (sampleSize <= 0 || entropyThreshold < 0 || entropyThreshold > 8) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_SAMPLE_SIZE+"' must be positive, and '"+PROPERTY_ENTROPY_THRESHOLD+"' must be between 0 and 8.");
+		}
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException {
+		if (nextTransformer == null) {
+			return new AdaptiveOutputStream(out);
+		}
+		else {
+			return new AdaptiveOutputStream(nextTransformer.createOutputStream(out));
+		}
+	}
+
+	@Override
+	public InputStream createInputStream(InputStream in) throws IOException {
+		if (nextTransformer == null) {
+			return createAdaptiveInputStream(in);
+		}
+		else {
+			return createAdaptiveInputStream(nextTransformer.createInputStream(in));
+		}
+	}
+
+	private InputStream createAdaptiveInputStream(InputStream in) throws IOException {
+		PushbackInputStream pushbackInputStream = new PushbackInputStream(in, 1);
+		int marker = pushbackInputStream.read();
+
+		if (marker == MARKER_RAW) {
+			return pushbackInputStream;
+		}
+		else if (marker == MARKER_GZIP) {
+			return new GZIPInputStreamEx(pushbackInputStream);
+		}
+		else if (marker == GZIP_MAGIC_FIRST_BYTE) {
+			pushbackInputStream.unread(marker);
+			return new GZIPInputStreamEx(pushbackInputStream);
+		}
+		else {
+			throw new IOException("Invalid marker byte " + marker + ", not an adaptive Gzip stream.");
+		}
+	}
+
+	/**
+	 * Returns the number of uncompressed bytes written to streams of this transformer
+	 * that were compressed (because their sample was found to be compressible).
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	/**
+	 * Returns the number of bytes written to streams of this transformer that were
+	 * stored without compression (because their sample was found to be incompressible).
+	 */
+	public long getSkippedBytes() {
+		return skippedBytes.get();
+	}
+
+	/**
+	 * Estimates the Shannon entropy of the given bytes, in bits per byte (0-8).
+	 */
+	public static double estimateEntropy(byte[] buf, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+
+		int[] frequencies = new int[256];
+
+		for (int i = off; i < off+len; i++) {
+			frequencies[buf[i] & 0xff]++;
+		}
+
+		double entropy = 0;
+
+		for (int frequency : frequencies) {
+			if (frequency > 0) {
+				double probability = (double) frequency / len;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+
+		return entropy / Math.log(2);
+	}
+
+	@Override
+	public String toString() {
+		return (nextTransformer == null) ? "AdaptiveGzip" : "AdaptiveGzip-"+nextTransformer;
+	}
+
+	/**
+	 * Output stream that buffers the sample, decides whether to compress the data,
+	 * and then writes the marker byte and passes all data to the target stream.
+	 */
+	private class AdaptiveOutputStream extends FilterOutputStream {
+		private byte[] sample;
+		private int samplePosition;
+
+		private OutputStream targetOutputStream;
+		private boolean compress;
+		private long byteCount;
+		private boolean closed;
+
+		public AdaptiveOutputStream(OutputStream out) {
+			super(out);
+
+			this.sample = new byte[sampleSize];
+			this.samplePosition = 0;
+
+			this.targetOutputStream = null;
+			this.byteCount = 0;
+			this.closed = false;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buf, int off, int len) throws IOException {
+			byteCount += len;
+
+			if (targetOutputStream == null) {
+				int copyLength = Math.min(len, sample.length - samplePosition);
+				System.arraycopy(buf, off, sample, samplePosition, copyLength);
+
+				samplePosition += copyLength;
+				off += copyLength;
+				len -= copyLength;
+
+				if (samplePosition < sample.length) {
+					return;
+				}
+
+				initTargetOutputStream();
+			}
+
+			if (len > 0) {
+				targetOutputStream.write(buf, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (targetOutputStream != null) {
+				targetOutputStream.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			if (targetOutputStream == null) {
+				initTargetOutputStream();
+			}
+
+			targetOutputStream.close();
+
+			if (compress) {
+				compressedBytes.addAndGet(byteCount);
+			}
+			else {
+				skippedBytes.addAndGet(byteCount);
+			}
+
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "Adaptive Gzip: " + (compress ? "Compressed " : "Skipped compression for ") + byteCount + " bytes.");
+			}
+		}
+
+		private void initTargetOutputStream() throws IOException {
+			double entropy = estimateEntropy(sample, 0, samplePosition);
+			compress = entropy <= entropyThreshold;
+
+			if (compress) {
+				out.write(MARKER_GZIP);
+				targetOutputStream = new GZIPOutputStreamEx(out, level);
+			}
+			else {
+				out.write(MARKER_RAW);
+				targetOutputStream = out;
+			}
+
+			targetOutputStream.write(sample, 0, samplePosition);
+			sample = null;
+		}
+	}
+}
@@ -118,6 +118,46 @@ public class Adler32Fingerprinter extends Fingerprinter {
         }
     }
     
+    /**
+     * "Roll" the checksum over the given bytes until the first breakpoint. This
+     * method is equivalent to calling {@link #roll(byte) roll()} for each byte, but
+     * operates on local copies of the checksum state.
+     */
+    @Override
+    public int rollAll(byte[] buf, int off, int len, int divisor) {
+        int a = this.a;
+        int b = this.b;
+        int pos = this.pos;
+        
+        int breakpoint = -1;
+        int end = off + len;
+        
+        for (int i = off; i < end; i++) {
+            byte bt = buf[i];
+            
+            a -= block[pos] + charOffset;
+            b -= this.len * (block[pos] + charOffset);
+            a += bt + charOffset;
+            b += a;
+            block[pos] = bt;
+            
+            if (++pos == this.len) {
+                pos = 0;
+            }
+            
+            if ((((a & 0xffff) | (b << 16)) % divisor) == divisor-1) {
+                breakpoint = i;
+                break;
+            }
+        }
+        
+        this.a = a;
+        this.b = b;
+        this.pos = pos;
+        
+        return breakpoint;
+    }
+    
     /**
      * Update the checksum by trimming off a byte only, not adding
      * anything.
@@ -131,7 +171,10 @@ public class Adler32Fingerprinter extends Fingerprinter {
 
     @Override
     public void check(byte[] buf, int off, int len) {
-        block = new byte[len];
+        if (block == null || block.length != len) {
+            block = new byte[len];
+        }
+        
         System.arraycopy(buf, off, block, 0, len);
         reset();
         this.len = block.length;
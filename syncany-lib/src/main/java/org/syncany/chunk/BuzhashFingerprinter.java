@@ -0,0 +1,142 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+/**
+ * Rolling Buzhash (cyclic polynomial) fingerprint over a sliding window. Each byte is
+ * mapped to a pseudo-random 32-bit value using a lookup table, and the fingerprint of
+ * a window of size <i>w</i> is <tt>rotl(h(b<sub>1</sub>), w-1) ^ ... ^ h(b<sub>w</sub>)</tt>.
+ *
+ * <p>Rolling the window only requires two rotations, two table lookups and XOR operations:
+ * <tt>fp = rotl(fp, 1) ^ rotl(h(out), w) ^ h(in)</tt>.
+ *
+ * <p>The lookup table is generated deterministically with a fixed seed, because it
+ * defines the chunk boundaries and must never change.
+ *
+ * @see <a href="http://en.wikipedia.org/wiki/Rolling_hash#Cyclic_polynomial">Cyclic polynomial (Buzhash)</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BuzhashFingerprinter extends Fingerprinter {
+    private static final int[] H = createByteTable(0x42757a68617368L);
+
+    private byte[] window;
+    private int windowPos;
+    private int windowRotation;
+    private int fingerprint;
+
+    public BuzhashFingerprinter() {
+        this.window = null;
+        this.windowPos = 0;
+        this.windowRotation = 0;
+        this.fingerprint = 0;
+    }
+
+    @Override
+    public int getValue() {
+        return fingerprint;
+    }
+
+    @Override
+    public void reset() {
+        fingerprint = 0;
+        windowPos = 0;
+    }
+
+    @Override
+    public void roll(byte bt) {
+        byte oldest = window[windowPos];
+        window[windowPos] = bt;
+
+        if (++windowPos == window.length) {
+            windowPos = 0;
+        }
+
+        fingerprint = Integer.rotateLeft(fingerprint, 1) ^ Integer.rotateLeft(H[oldest & 0xff], windowRotation) ^ H[bt & 0xff];
+    }
+
+    @Override
+    public int rollAll(byte[] buf, int off, int len, int divisor) {
+        final byte[] window = this.window;
+        final int windowRotation = this.windowRotation;
+
+        int fingerprint = this.fingerprint;
+        int windowPos = this.windowPos;
+
+        int breakpoint = -1;
+        int end = off + len;
+
+        for (int i = off; i < end; i++) {
+            byte bt = buf[i];
+            byte oldest = window[windowPos];
+            window[windowPos] = bt;
+
+            if (++windowPos == window.length) {
+                windowPos = 0;
+            }
+
+            fingerprint = Integer.rotateLeft(fingerprint, 1) ^ Integer.rotateLeft(H[oldest & 0xff], windowRotation) ^ H[bt & 0xff];
+
+            if ((fingerprint % divisor) == divisor-1) {
+                breakpoint = i;
+                break;
+            }
+        }
+
+        this.fingerprint = fingerprint;
+        this.windowPos = windowPos;
+
+        return breakpoint;
+    }
+
+    @Override
+    public void check(byte[] buf, int off, int len) {
+        if (window == null || window.length != len) {
+            window = new byte[len];
+            windowRotation = len % 32;
+        }
+
+        System.arraycopy(buf, off, window, 0, len);
+        reset();
+
+        for (int i = 0; i < len; i++) {
+            fingerprint = Integer.rotateLeft(fingerprint, 1) ^ H[window[i] & 0xff];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Buzhash";
+    }
+
+    private static int[] createByteTable(long seed) {
+        int[] byteTable = new int[256];
+        long state = seed;
+
+        for (int i = 0; i < byteTable.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+
+            byteTable[i] = (int) (value ^ (value >>> 31));
+        }
+
+        return byteTable;
+    }
+}
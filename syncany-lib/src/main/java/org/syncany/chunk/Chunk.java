@@ -17,23 +17,106 @@
  */
 package org.syncany.chunk;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
 /**
  * A chunk represent a certain part of a file. It is created during the
  * deduplication process by a {@link Chunker}. 
  * 
+ * <p>Chunkers may hand out chunks whose content buffer belongs to a
+ * {@link ChunkBufferPool}. Once the chunk has been processed, calling {@link #release()}
+ * returns the buffer to the pool, so that it can be reused for one of the next
+ * chunks. Chunks that are never released are simply garbage collected.
+ * 
+ * <p>Chunks created in the mapped chunking mode are backed by a slice of a memory-mapped
+ * file instead. Their content is only copied to the heap when {@link #getContent()} is
+ * called, i.e. typically only for new chunks that are written to a multichunk. Like pooled
+ * chunks, mapped chunks are only valid until the chunker emits the next chunk, because the 
+ * chunker unmaps its previous window (see {@link MappedFileWindow}).
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Chunk {
     private byte[] checksum;
     private byte[] contents;
+    private ByteBuffer contentBuffer;
     private int size;
     private byte[] fileChecksum;
+    private ChunkBufferPool bufferPool;
 
     /*package*/ Chunk(byte[] checksum, byte[] contents, int size, byte[] fileChecksum) {
+        this(checksum, contents, size, fileChecksum, null);
+    }
+    
+    /*package*/ Chunk(byte[] checksum, byte[] contents, int size, byte[] fileChecksum, ChunkBufferPool bufferPool) {
         this.checksum = checksum;
         this.contents = contents;
         this.size = size;
         this.fileChecksum = fileChecksum;
+        this.bufferPool = bufferPool;
+    }
+    
+    /*package*/ Chunk(byte[] checksum, ByteBuffer contentBuffer, byte[] fileChecksum) {
+        this.checksum = checksum;
+        this.contentBuffer = contentBuffer;
+        this.size = contentBuffer.remaining();
+        this.fileChecksum = fileChecksum;
+    }
+    
+    /**
+     * Returns a chunk whose content does not depend on any internal buffers of the 
+     * chunker, i.e. a chunk that can be kept after the next chunk has been emitted. 
+     * The content of chunks backed by a memory-mapped file is copied as well, because
+     * the mapping may be released once the next chunk has been emitted.
+     */
+    /*package*/ Chunk detach() {
+        if (contentBuffer != null) {
+            return new Chunk(checksum, getContent(), size, fileChecksum);
+        }
+        else {
+            return new Chunk(checksum, Arrays.copyOf(contents, size), size, fileChecksum);
+        }
+    }
+    
+    /**
+     * Returns a chunk with the same content as this chunk, but with the given file 
+     * checksum. The content is not copied, i.e. the returned chunk replaces this chunk.
+     */
+    /*package*/ Chunk withFileChecksum(byte[] newFileChecksum) {
+        if (contentBuffer != null) {
+            return new Chunk(checksum, contentBuffer, newFileChecksum);
+        }
+        else {
+            return new Chunk(checksum, contents, size, newFileChecksum, bufferPool);
+        }
+    }
+    
+    /**
+     * Updates the given digest with the content of this chunk, without copying 
+     * the content of chunks backed by a memory-mapped file.
+     */
+    /*package*/ void updateDigest(MessageDigest digest) {
+        if (contentBuffer != null) {
+            digest.update(contentBuffer.duplicate());
+        }
+        else {
+            digest.update(contents, 0, size);
+        }
+    }
+    
+    /**
+     * Returns the content buffer to the chunker's buffer pool (if any). After
+     * calling this method, the content of this chunk must not be accessed anymore.
+     */
+    public void release() {
+        if (bufferPool != null) {
+            bufferPool.release(contents);
+            
+            bufferPool = null;
+            contents = null;
+        }
     }
 
     public byte[] getChecksum() {
@@ -41,6 +124,11 @@ public class Chunk {
     }
 
     public byte[] getContent() {
+        if (contents == null && contentBuffer != null) {
+            contents = new byte[size];
+            contentBuffer.duplicate().get(contents);
+        }
+        
         return contents;
     }
 
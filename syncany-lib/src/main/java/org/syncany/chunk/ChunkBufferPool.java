@@ -0,0 +1,54 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The chunk buffer pool is a small pool of equally sized byte arrays used by
+ * {@link Chunker}s for the content of the emitted {@link Chunk}s. Buffers are 
+ * returned to the pool via {@link Chunk#release()}. 
+ * 
+ * <p>If no released buffer is available, a new buffer is allocated. The pool 
+ * never holds more than a fixed number of unused buffers.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkBufferPool {
+	private static final int MAX_POOLED_BUFFERS = 4;
+	
+	private int bufferSize;
+	private Deque<byte[]> buffers;
+	
+	public ChunkBufferPool(int bufferSize) {
+		this.bufferSize = bufferSize;
+		this.buffers = new ArrayDeque<byte[]>(MAX_POOLED_BUFFERS);
+	}
+	
+	public synchronized byte[] acquire() {
+		byte[] buffer = buffers.pollFirst();
+		return (buffer != null) ? buffer : new byte[bufferSize];
+	}
+	
+	public synchronized void release(byte[] buffer) {
+		if (buffer != null && buffer.length == bufferSize && buffers.size() < MAX_POOLED_BUFFERS) {
+			buffers.offerFirst(buffer);
+		}
+	}
+}
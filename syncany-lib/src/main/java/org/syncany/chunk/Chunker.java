@@ -18,8 +18,15 @@
 package org.syncany.chunk;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.Enumeration;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.util.StringUtil;
 
 /**
  * The chunker implements a core part of the deduplication process by breaking
@@ -32,12 +39,46 @@ import java.util.Enumeration;
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class Chunker {	
+	private static final Logger logger = Logger.getLogger(Chunker.class.getSimpleName());
+	
 	/**
 	 * Property used by the config to indicate the exact or 
 	 * approximate size of a chunk. In bytes. 
 	 */
 	public static final String PROPERTY_SIZE = "size";
 	
+	/**
+	 * Minimum file size (in bytes) for which the mapped chunking mode
+	 * is used. Zero or less disables the mapped mode.
+	 */
+	protected long mappedChunkingThreshold = 0;
+	
+	/**
+	 * Digest used by the small file fast path. Digests are not thread-safe, and 
+	 * chunkers are shared by the deduper's worker threads, so there is one per thread.
+	 */
+	private ThreadLocal<MessageDigest> smallFileDigest = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance(getChecksumAlgorithm());
+			}
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+	
+	/**
+	 * If a chunker is instantiated via the default constructor (e.g. via the repo config), 
+	 * it must be initialized using this method. The settings passed to the method depend
+	 * on the implementation of the chunker.
+	 *   
+	 * @param settings Implementation-specific setting map
+	 * @throws Exception If the given settings are invalid or insufficient for instantiation
+	 */
+	public abstract void init(Map<String, String> settings) throws Exception;
+	
     /**
      * Opens the given file and creates enumeration of {@link Chunk}s. This method 
      * should not read the file into memory at once, but instead read and emit new 
@@ -51,6 +92,34 @@ public abstract class Chunker {
      * @throws IOException If any file exceptions occur
      */	
 	public abstract ChunkEnumeration createChunks(File file) throws IOException;
+	
+	/**
+	 * Opens the given file and creates an enumeration of {@link Chunk}s, starting at the 
+	 * given position. The emitted chunks must be identical to the chunks that 
+	 * {@link #createChunks(File)} emits after a chunk boundary at this position. 
+	 * 
+	 * <p>The file checksum of the emitted chunks is undefined, because the beginning of the
+	 * file is not read. This method is only supported by {@link #isContentDefined() content-defined}
+	 * chunkers, and is used to chunk segments of large files in parallel. 
+	 * 
+	 * @param file The file that is supposed to be chunked
+	 * @param position Offset (in bytes) of the first chunk in the file
+	 * @return An enumeration of individual chunks, must be closed at the end of processing
+	 * @throws IOException If any file exceptions occur
+	 * @throws UnsupportedOperationException If the chunker is not content-defined
+	 */
+	public ChunkEnumeration createChunks(File file, long position) throws IOException {
+		throw new UnsupportedOperationException("Chunker " + this + " does not support chunking from an offset.");
+	}
+	
+	/**
+	 * Returns whether the chunk boundaries of this chunker only depend on the 
+	 * content following the previous chunk boundary, i.e. whether the chunker supports
+	 * {@link #createChunks(File, long) chunking from an offset}.
+	 */
+	public boolean isContentDefined() {
+		return false;
+	}
 			
 	/**
 	 * Returns a string representation of the chunker implementation.
@@ -64,6 +133,140 @@ public abstract class Chunker {
      */
     public abstract String getChecksumAlgorithm();
     
+    /**
+     * Returns the minimum file size (in bytes) for which the mapped chunking mode
+     * is used, or zero if the mapped mode is disabled. 
+     */
+    public long getMappedChunkingThreshold() {
+		return mappedChunkingThreshold;
+	}
+    
+    /**
+     * Sets the minimum file size (in bytes) for which the mapped chunking mode is used. In the
+     * mapped mode, files are read via {@link java.nio.channels.FileChannel#map FileChannel.map()}, 
+     * checksums are calculated directly on the mapped memory, and chunk contents are only 
+     * copied if they are requested via {@link Chunk#getContent()}. 
+     * 
+     * <p>Note that mapped files might stay locked (on Windows) until the mapped memory is 
+     * garbage collected.
+     * 
+     * @param mappedChunkingThreshold Minimum file size for the mapped mode, zero or less to disable it
+     */
+    public void setMappedChunkingThreshold(long mappedChunkingThreshold) {
+		this.mappedChunkingThreshold = mappedChunkingThreshold;
+	}
+    
+    /**
+     * Returns whether or not the given file should be chunked in the mapped chunking mode.
+     */
+    protected boolean isMappedChunkingEnabled(File file) {
+    	return mappedChunkingThreshold > 0 && file.length() >= mappedChunkingThreshold;
+    }
+    
+    /**
+     * Returns the file size (in bytes) below which the chunker always emits exactly one chunk
+     * for a non-empty file. For these files, the chunk checksum equals the file checksum, 
+     * and the chunker uses a fast path (see {@link #createSmallFileChunks(File)}). Zero
+     * disables the fast path. 
+     */
+    public long getSmallFileThreshold() {
+    	return 0;
+    }
+    
+    /**
+     * Returns whether or not the given file should be chunked using the small file fast path.
+     */
+    protected boolean isSmallFileChunkingEnabled(File file) {
+    	long fileSize = file.length();
+    	return fileSize > 0 && fileSize < getSmallFileThreshold();
+    }
+    
+    /**
+     * Creates the single chunk of a small file (see {@link #getSmallFileThreshold()}). Instead 
+     * of setting up a full chunk enumeration with its buffers, digests and fingerprinter, the
+     * file is read with a single read call and hashed once. The resulting checksum is used as
+     * chunk and file checksum. 
+     */
+    protected ChunkEnumeration createSmallFileChunks(File file) throws IOException {
+    	byte[] contents = new byte[(int) file.length()];
+    	int size = 0;
+    	
+    	FileInputStream fileInputStream = new FileInputStream(file);
+    	
+    	try {
+    		int read;
+    		
+    		while (size < contents.length && (read = fileInputStream.read(contents, size, contents.length-size)) != -1) {
+    			size += read;
+    		}
+    	}
+    	finally {
+    		fileInputStream.close();
+    	}
+    	
+    	MessageDigest digest = smallFileDigest.get();
+    	
+    	digest.reset();
+    	digest.update(contents, 0, size);
+    	
+    	byte[] checksum = digest.digest();
+    	return new SmallFileChunkEnumeration(new Chunk(checksum, contents, size, checksum));
+    }
+    
+    /**
+     * Parses the {@link #PROPERTY_SIZE} property of the given settings map. This method
+     * is used by the implementations to validate the settings passed to {@link #init(Map) init()}.
+     * 
+     * @throws IllegalArgumentException If the property is missing or not a positive integer
+     */
+    protected static int parseSizeProperty(Map<String, String> settings) {
+    	String size = (settings != null) ? settings.get(PROPERTY_SIZE) : null;
+		
+		if (size == null) {
+			throw new IllegalArgumentException(String.format("Property %s must not be null.", PROPERTY_SIZE));
+		}
+		
+		try {
+			int sizeValue = Integer.parseInt(size);
+			
+			if (sizeValue <= 0) {
+				throw new IllegalArgumentException(String.format("Property %s must be a positive integer.", PROPERTY_SIZE));
+			}
+			
+			return sizeValue;
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Property %s could not be parsed as Integer.", PROPERTY_SIZE));
+		}
+    }
+    
+    /**
+     * Instantiates a chunker by its name using the default constructor. After creating
+     * a new chunker, it must be initialized using the {@link #init(Map) init()} method.  
+     * 
+     * <p>The given type attribute is mapped to fully qualified class name (FQCN) of the form
+     * <tt>org.syncany.chunk.XChunker</tt>, where <tt>X</tt> is the camel-cased type
+     * attribute.  
+     * 
+     * @param type Type/name of the chunker (corresponds to its camel case class name)
+     * @return a new chunker, or <tt>null</tt> if the chunker cannot be found or instantiated
+     */
+    public static Chunker getInstance(String type) {
+		String thisPackage = Chunker.class.getPackage().getName();
+		String camelCaseName = StringUtil.toCamelCase(type);
+		String fqClassName = thisPackage + "." + camelCaseName + Chunker.class.getSimpleName();
+
+		// Try to load!
+		try {
+			Class<?> clazz = Class.forName(fqClassName);
+			return (Chunker) clazz.newInstance();
+		}
+		catch (Exception ex) {
+			logger.log(Level.INFO, "Could not find chunker FQCN " + fqClassName, ex);
+			return null;
+		}
+    }
+    
     /**
      * The chunk enumeration is implemented by the actual chunkers and emits a new
      * chunk when {@link ChunkEnumeration#nextElement() nextElement()} is called. When no more 
@@ -17,13 +17,25 @@
  */
 package org.syncany.chunk;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.syncany.chunk.Chunker.ChunkEnumeration;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.util.FileUtil;
 
 /**
  * The Deduper implements the core deduplication algorithm used by Syncany. 
@@ -40,18 +52,69 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * <i>"Minimizing remote storage usage and synchronization time using deduplication and
  * multichunking: Syncany as an example"</i>
  * 
+ * <p>If the deduper is created with more than one thread, files are read and broken into
+ * chunks by a pool of worker threads, while all listener calls and multichunk writes still
+ * happen in the calling thread, in the original file order. The result is therefore identical
+ * to a single-threaded run. Workers only read ahead a limited number of files and chunks.
+ * 
+ * <p>Very large files are not chunked by a single worker. If the chunker is content-defined,
+ * files larger than the segmented chunking threshold are split into segments that are chunked
+ * in parallel (see {@link SegmentedChunkEnumeration}). The chunks are identical to the chunks
+ * of a sequential run.
+ * 
+ * <p>Files smaller than the chunker's {@link Chunker#getSmallFileThreshold() small file threshold}
+ * are read in a single call and hashed once. Their chunks are collected in a write buffer, so 
+ * that the chunks of many small files reach the multichunk's transformers in one write.
+ * 
+ * <p>Chunks are {@link Chunk#release() released} after they have been processed, so listeners
+ * must not keep references to a chunk's content beyond the listener call.
+ * 
  * @see <a href="http://blog.philippheckel.com/2013/05/20/minimizing-remote-storage-usage-and-synchronization-time-using-deduplication-and-multichunking-syncany-as-an-example/">Blog post: Minimizing remote storage usage and synchronization time using deduplication and multichunking: Syncany as an example</a>
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Deduper {	
+	private static final Logger logger = Logger.getLogger(Deduper.class.getSimpleName());
+	
+	public static final int DEFAULT_THREAD_COUNT = 1;
+	public static final long DEFAULT_SEGMENTED_CHUNKING_THRESHOLD = 256*1024*1024;
+	private static final int MAX_QUEUED_CHUNKS_PER_FILE = 16;
+	private static final long DEFAULT_SEGMENT_SIZE = 16*1024*1024;
+	private static final int MULTICHUNK_WRITE_BUFFER_SIZE = 128*1024;
+	
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private int threadCount;
+	private long segmentedChunkingThreshold;
+	private long segmentSize;
 
 	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer) {		
+		this(chunker, multiChunker, transformer, DEFAULT_THREAD_COUNT);
+	}
+	
+	/**
+	 * Creates a new deduper that uses the given number of threads to read and
+	 * chunk files. A thread count of one (or less) disables the worker pool and
+	 * chunks all files in the calling thread.
+	 */
+	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, int threadCount) {		
 		this.chunker = chunker;
 		this.multiChunker = multiChunker;
 		this.transformer = transformer;
+		this.threadCount = Math.max(1, threadCount);
+		this.segmentedChunkingThreshold = DEFAULT_SEGMENTED_CHUNKING_THRESHOLD;
+		this.segmentSize = DEFAULT_SEGMENT_SIZE;
+	}
+	
+	/**
+	 * Sets the minimum file size (in bytes) for which a single file is chunked by
+	 * multiple threads, and the size of the segments the file is split into. Segmented
+	 * chunking is only used if the deduper has more than one thread, and if the chunker
+	 * is {@link Chunker#isContentDefined() content-defined}.
+	 */
+	public void setSegmentedChunking(long segmentedChunkingThreshold, long segmentSize) {
+		this.segmentedChunkingThreshold = segmentedChunkingThreshold;
+		this.segmentSize = segmentSize;
 	}
 	
 	/**
@@ -65,6 +128,19 @@ public class Deduper {
 	 * @throws IOException If a file cannot be read or an unexpected exception occurs
 	 */
 	public void deduplicate(List<File> files, DeduperListener listener) throws IOException {
+		ChunkingPipeline chunkingPipeline = (threadCount > 1) ? new ChunkingPipeline(files) : null;
+		
+		try {
+			deduplicate(files, listener, chunkingPipeline);
+		}
+		finally {
+			if (chunkingPipeline != null) {
+				chunkingPipeline.shutdown();
+			}
+		}
+	}
+	
+	private void deduplicate(List<File> files, DeduperListener listener, ChunkingPipeline chunkingPipeline) throws IOException {
 		Chunk chunk = null;
 		MultiChunk multiChunk = null;
 		
@@ -73,6 +149,11 @@ public class Deduper {
 		for (int i=0; i<files.size(); i++) {
 			File file = files.get(i);
 			
+			// Let workers read ahead (if enabled)
+			if (chunkingPipeline != null) {
+				chunkingPipeline.advance(i);
+			}
+			
 			// Filter ignored files
 			boolean fileAccepted = listener.onFileFilter(file);
 			
@@ -85,48 +166,58 @@ public class Deduper {
 
 			if (dedupContents) {
 				// Create chunks from file
-				ChunkEnumeration chunksEnum = chunker.createChunks(file);
+				ChunkEnumeration chunksEnum = (chunkingPipeline != null) ? chunkingPipeline.createChunks(i) : chunker.createChunks(file);
 
-				while (chunksEnum.hasMoreElements()) {
-					chunk = chunksEnum.nextElement();
+				try {
+					while (chunksEnum.hasMoreElements()) {
+						chunk = chunksEnum.nextElement();
 
-					// old chunk
-					if (!listener.onChunk(chunk)) {
-						listener.onFileAddChunk(file, chunk);
-						continue;
-					}
+						// old chunk
+						if (!listener.onChunk(chunk)) {
+							listener.onFileAddChunk(file, chunk);
+							chunk.release();
+						
+							continue;
+						}
 
-					// new chunk
-					else {					
-						// - Check if multichunk full
-						if (multiChunk != null && multiChunk.isFull()) {
-							multiChunk.close();
-							listener.onMultiChunkClose(multiChunk);
+						// new chunk
+						else {					
+							// - Check if multichunk full
+							if (multiChunk != null && multiChunk.isFull()) {
+								multiChunk.close();
+								listener.onMultiChunkClose(multiChunk);
 
-							multiChunk = null;
-						}
+								multiChunk = null;
+							}
 
-						// - Open new multichunk if non-existent
-						if (multiChunk == null) {
-							MultiChunkId newMultiChunkId = listener.createNewMultiChunkId(chunk);
-							File multiChunkFile = listener.getMultiChunkFile(newMultiChunkId);
+							// - Open new multichunk if non-existent
+							if (multiChunk == null) {
+								MultiChunkId newMultiChunkId = listener.createNewMultiChunkId(chunk);
+								File multiChunkFile = listener.getMultiChunkFile(newMultiChunkId);
 							
-							multiChunk = multiChunker.createMultiChunk(newMultiChunkId, 
-								transformer.createOutputStream(new FileOutputStream(multiChunkFile)));
+								multiChunk = multiChunker.createMultiChunk(newMultiChunkId, new BufferedOutputStream(
+									transformer.createOutputStream(new FileOutputStream(multiChunkFile)), MULTICHUNK_WRITE_BUFFER_SIZE));
+
+								listener.onMultiChunkOpen(multiChunk);
+							}
 
-							listener.onMultiChunkOpen(multiChunk);
+							// - Add chunk data
+							multiChunk.write(chunk);						
+							listener.onMultiChunkWrite(multiChunk, chunk);						
 						}
 
-						// - Add chunk data
-						multiChunk.write(chunk);						
-						listener.onMultiChunkWrite(multiChunk, chunk);						
+						listener.onFileAddChunk(file, chunk);
+						chunk.release();
 					}
-
-					listener.onFileAddChunk(file, chunk);										
 				}
-
-				// Closing file is necessary!
-				chunksEnum.close(); 
+				catch (InternalError e) {
+					// Raised when accessing mapped chunks of a file that was truncated in the meantime
+					throw new IOException("File " + file + " changed while it was being indexed.", e);
+				}
+				finally {
+					// Closing file is necessary!
+					chunksEnum.close();
+				}
 			}
 
 			if (chunk != null) {			
@@ -151,4 +242,247 @@ public class Deduper {
 		
 		listener.onFinish();
 	}	
+
+	/**
+	 * The chunking pipeline manages the worker threads used if the deduper is
+	 * run with more than one thread. For each file, a {@link ChunkingTask} is
+	 * scheduled up to <tt>threadCount</tt> files ahead of the file that is currently
+	 * processed by the calling thread.
+	 * 
+	 * <p>Read-ahead is speculative: the listener has not yet decided whether a file
+	 * is deduplicated when its task is started. Unused tasks are cancelled, and if a
+	 * file has changed after the worker started reading it (or could not be opened
+	 * by the worker), it is chunked again in the calling thread.
+	 * 
+	 * <p>Files above the segmented chunking threshold are not scheduled as a whole.
+	 * Their segments are chunked by a separate pool, because the segments are requested
+	 * by the calling thread and must not wait for the file tasks.
+	 */
+	private class ChunkingPipeline {
+		private List<File> files;
+		private ExecutorService executor;
+		private ExecutorService segmentExecutor;
+		private Map<Integer, ChunkingTask> scheduledTasks;
+		private int nextFileIndex;
+		
+		public ChunkingPipeline(List<File> files) {
+			this.files = files;
+			this.executor = Executors.newFixedThreadPool(threadCount);
+			this.scheduledTasks = new HashMap<Integer, ChunkingTask>();
+			this.nextFileIndex = 0;
+		}
+		
+		public void advance(int fileIndex) {
+			// Cancel tasks for files that were skipped by the listener
+			Iterator<Map.Entry<Integer, ChunkingTask>> scheduledTaskIterator = scheduledTasks.entrySet().iterator();
+			
+			while (scheduledTaskIterator.hasNext()) {
+				Map.Entry<Integer, ChunkingTask> scheduledTaskEntry = scheduledTaskIterator.next();
+				
+				if (scheduledTaskEntry.getKey() < fileIndex) {
+					scheduledTaskEntry.getValue().close();
+					scheduledTaskIterator.remove();
+				}
+			}			
+			
+			// Schedule new tasks (only for regular files)
+			while (nextFileIndex < files.size() && nextFileIndex < fileIndex + threadCount) {
+				File file = files.get(nextFileIndex);
+				
+				if (!FileUtil.isSymlink(file) && file.isFile() && !isSegmentedChunkingEnabled(file)) {
+					ChunkingTask chunkingTask = new ChunkingTask(file);
+					
+					scheduledTasks.put(nextFileIndex, chunkingTask);
+					executor.execute(chunkingTask);
+				}
+				
+				nextFileIndex++;
+			}
+		}
+		
+		public ChunkEnumeration createChunks(int fileIndex) throws IOException {
+			File file = files.get(fileIndex);
+			ChunkingTask chunkingTask = scheduledTasks.remove(fileIndex);
+			
+			if (chunkingTask == null && isSegmentedChunkingEnabled(file)) {
+				if (segmentExecutor == null) {
+					segmentExecutor = Executors.newFixedThreadPool(threadCount);
+				}
+				
+				return new SegmentedChunkEnumeration(chunker, file, segmentSize, segmentExecutor, threadCount);
+			}
+			
+			if (chunkingTask != null) {
+				if (chunkingTask.awaitOpened() && chunkingTask.isUnchanged()) {
+					return chunkingTask;
+				}
+				
+				logger.log(Level.FINE, "File {0} changed or could not be read by worker; chunking it again.", file);
+				chunkingTask.close();
+			}
+			
+			return chunker.createChunks(file);
+		}
+		
+		public void shutdown() {
+			for (ChunkingTask chunkingTask : scheduledTasks.values()) {
+				chunkingTask.close();
+			}
+			
+			scheduledTasks.clear();
+			executor.shutdownNow();
+			
+			if (segmentExecutor != null) {
+				segmentExecutor.shutdownNow();
+			}
+		}
+		
+		private boolean isSegmentedChunkingEnabled(File file) {
+			return chunker.isContentDefined() && file.length() >= segmentedChunkingThreshold && file.length() > segmentSize;
+		}
+	}
+	
+	/**
+	 * A chunking task reads and chunks a single file in a worker thread, and
+	 * acts as the {@link ChunkEnumeration} for this file in the calling thread. 
+	 * Chunks are handed over using a bounded queue, so a worker never holds
+	 * more than {@link Deduper#MAX_QUEUED_CHUNKS_PER_FILE} chunks in memory.
+	 * 
+	 * <p>Chunks are {@link Chunk#detach() detached} before they are queued, because 
+	 * chunkers may reuse their buffers for the next chunk.
+	 */
+	private class ChunkingTask implements Runnable, ChunkEnumeration {
+		private final Chunk END_OF_FILE = new Chunk(null, null, 0, null);
+		
+		private File file;
+		private long fileSize;
+		private long fileLastModified;
+		
+		private BlockingQueue<Chunk> chunkQueue;
+		private CountDownLatch openedLatch;
+		private volatile boolean opened;
+		private volatile boolean closed;
+		private volatile RuntimeException failure;
+		private Chunk nextChunk;
+		
+		public ChunkingTask(File file) {
+			this.file = file;
+			this.chunkQueue = new ArrayBlockingQueue<Chunk>(MAX_QUEUED_CHUNKS_PER_FILE);
+			this.openedLatch = new CountDownLatch(1);
+			this.opened = false;
+			this.closed = false;
+			this.failure = null;
+			this.nextChunk = null;
+		}
+
+		@Override
+		public void run() {
+			ChunkEnumeration chunksEnum = null;
+			
+			try {
+				if (closed) {
+					return;
+				}
+				
+				fileSize = file.length();
+				fileLastModified = file.lastModified();
+				
+				chunksEnum = chunker.createChunks(file);
+				
+				opened = true;
+				openedLatch.countDown();
+				
+				while (!closed && chunksEnum.hasMoreElements()) {
+					Chunk chunk = chunksEnum.nextElement();
+					
+					if (chunk == null) {
+						break;
+					}
+					
+					Chunk detachedChunk = chunk.detach();
+					chunk.release();
+					
+					chunkQueue.put(detachedChunk);
+				}
+			}
+			catch (IOException e) {
+				logger.log(Level.FINE, "Worker cannot read file " + file + "; falling back to calling thread.", e);
+			}
+			catch (InterruptedException e) {
+				logger.log(Level.FINE, "Worker interrupted while chunking file " + file);
+			}
+			catch (RuntimeException e) {
+				failure = e;
+			}
+			catch (InternalError e) {
+				failure = new RuntimeException("File " + file + " changed while it was being indexed.", e);
+			}
+			finally {
+				openedLatch.countDown();
+				
+				if (chunksEnum != null) {
+					chunksEnum.close();
+				}
+				
+				if (opened && !closed) {
+					try {
+						chunkQueue.put(END_OF_FILE);
+					}
+					catch (InterruptedException e) {
+						logger.log(Level.FINE, "Worker interrupted while finishing file " + file);
+					}
+				}
+			}
+		}
+		
+		public boolean awaitOpened() throws IOException {
+			try {
+				openedLatch.await();
+				return opened;
+			}
+			catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for worker to open file " + file, e);
+			}
+		}
+
+		public boolean isUnchanged() {
+			return fileSize == file.length() && fileLastModified == file.lastModified();
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			if (nextChunk == null) {
+				try {
+					nextChunk = chunkQueue.take();
+				}
+				catch (InterruptedException e) {
+					throw new RuntimeException("Interrupted while waiting for worker to chunk file " + file, e);
+				}
+			}
+			
+			if (nextChunk == END_OF_FILE && failure != null) {
+				throw failure;
+			}
+			
+			return nextChunk != END_OF_FILE;
+		}
+
+		@Override
+		public Chunk nextElement() {
+			if (!hasMoreElements()) {
+				return null;
+			}
+			
+			Chunk chunk = nextChunk;
+			nextChunk = null;
+			
+			return chunk;
+		}
+
+		@Override
+		public void close() {
+			closed = true;			
+			chunkQueue.clear(); // Unblocks worker
+		}
+	}
 }
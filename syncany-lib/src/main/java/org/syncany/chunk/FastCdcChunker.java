@@ -0,0 +1,374 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The FastCDC chunker is a content-based {@link Chunker} using a Gear rolling hash
+ * and normalized chunking, based on the paper of Wen Xia et al., 2016.
+ *
+ * <p>The Gear hash is updated with a single shift, an addition and a table lookup per
+ * byte: <tt>fp = (fp &lt;&lt; 1) + GEAR[b]</tt>. Because of the shift, the highest bits
+ * of the fingerprint depend on the last 64 bytes, so that a breakpoint is declared if the
+ * masked upper bits of the fingerprint are zero. Compared to the {@link TttdChunker}, no
+ * sliding window must be maintained and no modulo operation is necessary.
+ *
+ * <p>Like TTTD, the chunker never emits chunks smaller than a minimum size (one quarter of
+ * the average size) or larger than a maximum size (eight times the average size). Bytes before
+ * the minimum size are skipped entirely. To normalize the chunk size distribution, a stricter
+ * mask (more bits) is used before the average chunk size is reached, and a looser mask
+ * (fewer bits) is used afterwards.
+ *
+ * <p>Note: The chunker always reads files through an input stream; the mapped chunking mode
+ * (see {@link Chunker#setMappedChunkingThreshold(long) setMappedChunkingThreshold()}) is not
+ * supported.
+ *
+ * @see <a href="https://www.usenix.org/conference/atc16/technical-sessions/presentation/xia">FastCDC: a Fast and Efficient Content-Defined Chunking Approach for Data Deduplication</a>,
+ *      2016, Wen Xia, Yukun Zhou, Hong Jiang, Dan Feng, Yu Hua, Yuchong Hu, Yucheng Zhang, Qing Liu
+ */
+public class FastCdcChunker extends Chunker {
+    private static final Logger logger = Logger.getLogger(FastCdcChunker.class.getSimpleName());
+
+    public static final String TYPE = "fast-cdc";
+    public static final String DEFAULT_DIGEST_ALG = "SHA1";
+    public static final int NORMALIZATION_LEVEL = 2;
+
+    /**
+     * Gear table with 256 pseudo-random 64-bit values. The table is generated
+     * deterministically (SplitMix64 with a fixed seed), because it defines the chunk
+     * boundaries and must never change.
+     */
+    private static final long[] GEAR = createGearTable(0x5379_6e63_616e_7921L);
+
+    private int minChunkSize;
+    private int avgChunkSize;
+    private int maxChunkSize;
+    private long maskSmall;
+    private long maskLarge;
+    private String checksumAlgorithm;
+
+    /**
+     * Creates a new FastCDC chunker with the default file/chunk checksum algorithm SHA1.
+     * The chunker must be initialized using the {@link #init(Map) init()} method.
+     */
+    public FastCdcChunker() {
+        this.checksumAlgorithm = DEFAULT_DIGEST_ALG;
+    }
+
+    /**
+     * Creates a new FastCDC chunker with the default file/chunk checksum algorithm SHA1.
+     *
+     * @param avgChunkSize Average size of a chunk in bytes
+     */
+    public FastCdcChunker(int avgChunkSize) {
+        this(avgChunkSize, DEFAULT_DIGEST_ALG);
+    }
+
+    /**
+     * Creates a new FastCDC chunker.
+     *
+     * @param avgChunkSize Average size of a chunk in bytes
+     * @param checksumAlgorithm Algorithm to calculare the chunk and file checksums (e.g. SHA1, MD5)
+     */
+    public FastCdcChunker(int avgChunkSize, String checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+        initAvgChunkSize(avgChunkSize);
+    }
+
+    /**
+     * Initializes the FastCDC chunker using a settings map.
+     * <br>
+     * Required settings are:
+     * <ul>
+     *  <li> key: {@link Chunker#PROPERTY_SIZE}, value: average chunk size in bytes, integer encoded as String
+     * </ul>
+     */
+    @Override
+    public void init(Map<String, String> settings) throws Exception {
+        initAvgChunkSize(parseSizeProperty(settings));
+    }
+
+    private void initAvgChunkSize(int avgChunkSize) {
+        if (avgChunkSize < 64) {
+            throw new IllegalArgumentException("Average chunk size must be at least 64 bytes.");
+        }
+
+        int avgChunkSizeBits = 31 - Integer.numberOfLeadingZeros(avgChunkSize); // floor(log2(avg))
+
+        this.avgChunkSize = avgChunkSize;
+        this.minChunkSize = avgChunkSize / 4;
+        this.maxChunkSize = avgChunkSize * 8;
+        this.maskSmall = createMask(avgChunkSizeBits + NORMALIZATION_LEVEL);
+        this.maskLarge = createMask(avgChunkSizeBits - NORMALIZATION_LEVEL);
+    }
+
+    @Override
+    public ChunkEnumeration createChunks(File file) throws IOException {
+        if (isSmallFileChunkingEnabled(file)) {
+            return createSmallFileChunks(file);
+        }
+
+        return createChunks(file, 0);
+    }
+
+    @Override
+    public ChunkEnumeration createChunks(File file, long position) throws IOException {
+        FileInputStream fileInputStream = new FileInputStream(file);
+
+        if (position > 0) {
+            fileInputStream.getChannel().position(position);
+        }
+
+        return new FastCdcEnumeration(fileInputStream);
+    }
+
+    @Override
+    public boolean isContentDefined() {
+        return true;
+    }
+
+    /**
+     * Returns the minimum chunk size, because no cut points are possible below it.
+     */
+    @Override
+    public long getSmallFileThreshold() {
+        return minChunkSize;
+    }
+
+    @Override
+    public String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    @Override
+    public String toString() {
+        return "FastCDC-"+avgChunkSize+"-"+checksumAlgorithm;
+    }
+
+    /**
+     * Returns the length of the next chunk in the given buffer, i.e. the position
+     * after the first breakpoint. If no breakpoint is found, the returned length is
+     * <tt>length</tt>, and the caller is responsible to cut the chunk at that position.
+     *
+     * @param buffer Buffer containing the bytes of the next chunk
+     * @param offset Offset of the first byte of the chunk in the buffer
+     * @param length Number of available bytes in the buffer, at most the maximum chunk size
+     * @return Length of the next chunk, at most <tt>length</tt>
+     */
+    private int nextChunkLength(byte[] buffer, int offset, int length) {
+        if (length <= minChunkSize) {
+            return length;
+        }
+
+        int normalChunkSize = Math.min(avgChunkSize, length);
+        int pos = minChunkSize;
+        long fingerprint = 0;
+
+        for (; pos < normalChunkSize; pos++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[offset+pos] & 0xff];
+
+            if ((fingerprint & maskSmall) == 0) {
+                return pos+1;
+            }
+        }
+
+        for (; pos < length; pos++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[offset+pos] & 0xff];
+
+            if ((fingerprint & maskLarge) == 0) {
+                return pos+1;
+            }
+        }
+
+        return length;
+    }
+
+    private static long createMask(int bits) {
+        return (bits <= 0) ? 0 : -1L << (64 - bits);
+    }
+
+    private static long[] createGearTable(long seed) {
+        long[] gearTable = new long[256];
+        long state = seed;
+
+        for (int i=0; i<gearTable.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+
+            gearTable[i] = value ^ (value >>> 31);
+        }
+
+        return gearTable;
+    }
+
+    /**
+     * The FastCDC enumeration reads the underlying input stream into a buffer of twice the
+     * maximum chunk size, and only moves the remaining bytes to the beginning of the buffer
+     * if less than one maximum chunk size is left. Chunk contents are copied into chunk buffers
+     * taken from a {@link ChunkBufferPool}.
+     *
+     * <p>The last chunk of a file carries the file checksum. Empty files do not produce
+     * any chunks.
+     */
+    public class FastCdcEnumeration implements ChunkEnumeration {
+        private InputStream in;
+        private boolean endOfStream;
+        private boolean closed;
+
+        private byte[] buffer;
+        private int bufferStart;
+        private int bufferEnd;
+
+        private ChunkBufferPool chunkBufferPool;
+        private MessageDigest chunkDigest;
+        private MessageDigest fileDigest;
+
+        public FastCdcEnumeration(InputStream in) {
+            this.in = in;
+            this.endOfStream = false;
+            this.closed = false;
+
+            this.buffer = new byte[2*maxChunkSize];
+            this.bufferStart = 0;
+            this.bufferEnd = 0;
+
+            try {
+                this.chunkBufferPool = new ChunkBufferPool(maxChunkSize);
+                this.chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
+                this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
+
+                this.fileDigest.reset();
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            if (closed) {
+                return false;
+            }
+
+            try {
+                fillBuffer();
+
+                if (bufferEnd == bufferStart) {
+                    close();
+                    return false;
+                }
+
+                return true;
+            }
+            catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error while reading from input stream.", ex);
+                close();
+
+                return false;
+            }
+        }
+
+        @Override
+        public Chunk nextElement() {
+            if (!hasMoreElements()) {
+                return null;
+            }
+
+            int chunkLength = nextChunkLength(buffer, bufferStart, Math.min(maxChunkSize, bufferEnd-bufferStart));
+
+            byte[] chunkContents = chunkBufferPool.acquire();
+            System.arraycopy(buffer, bufferStart, chunkContents, 0, chunkLength);
+
+            chunkDigest.reset();
+            chunkDigest.update(buffer, bufferStart, chunkLength);
+            fileDigest.update(buffer, bufferStart, chunkLength);
+
+            bufferStart += chunkLength;
+
+            try {
+                fillBuffer();
+            }
+            catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error while reading from input stream.", ex);
+                close();
+
+                return null;
+            }
+
+            byte[] chunkChecksum = chunkDigest.digest();
+            byte[] fileChecksum = null;
+
+            if (bufferEnd == bufferStart) {
+                fileChecksum = fileDigest.digest();
+                close();
+            }
+
+            return new Chunk(chunkChecksum, chunkContents, chunkLength, fileChecksum, chunkBufferPool);
+        }
+
+        /**
+         * Reads from the input stream until at least the maximum chunk size is
+         * available in the buffer, or until the end of the stream is reached.
+         */
+        private void fillBuffer() throws IOException {
+            if (endOfStream || bufferEnd-bufferStart >= maxChunkSize) {
+                return;
+            }
+
+            if (buffer.length-bufferStart < maxChunkSize) {
+                System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd-bufferStart);
+
+                bufferEnd -= bufferStart;
+                bufferStart = 0;
+            }
+
+            while (bufferEnd-bufferStart < maxChunkSize) {
+                int read = in.read(buffer, bufferEnd, buffer.length-bufferEnd);
+
+                if (read == -1) {
+                    endOfStream = true;
+                    break;
+                }
+
+                bufferEnd += read;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                closed = true;
+                in.close();
+            }
+            catch (IOException e) {
+                logger.log(Level.INFO, "Error while closing", e);
+            }
+        }
+    }
+}
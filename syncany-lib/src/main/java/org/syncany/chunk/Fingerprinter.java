@@ -19,6 +19,8 @@ package org.syncany.chunk;
 
 import java.security.NoSuchAlgorithmException;
 
+import org.syncany.util.StringUtil;
+
 /**
  * A fingerprinter is used in content based {@link Chunker}s to determine at which  
  * byte to break a file into {@link Chunk}s. 
@@ -26,15 +28,31 @@ import java.security.NoSuchAlgorithmException;
  * <p>Implementations should make sure that the underlying algorithm is fast, because
  * the {@link #roll(byte) roll()}-method is called for each byte of a file. It
  * should rely on a rolling checksum algorithm (also: rolling hash) to reach optimal
- * performance.
+ * performance. Chunkers scanning entire buffers should use {@link #rollAll(byte[], int, int, int) rollAll()},
+ * which implementations override with a tight loop that does not call 
+ * {@link #roll(byte) roll()} and {@link #getValue() getValue()} for every byte.
+ * 
+ * <p>Available implementations are {@link Adler32Fingerprinter}, {@link RabinFingerprinter} 
+ * and {@link BuzhashFingerprinter}. 
  * 
  * @see <a href="http://en.wikipedia.org/wiki/Rolling_hash">http://en.wikipedia.org/wiki/Rolling_hash</a>
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class Fingerprinter {    
+    /**
+     * Instantiates a fingerprinter by its name using the default constructor. 
+     * 
+     * <p>The given name is mapped to fully qualified class name (FQCN) of the form
+     * <tt>org.syncany.chunk.XFingerprinter</tt>, where <tt>X</tt> is the camel-cased 
+     * name, e.g. <tt>Adler32</tt>, <tt>rabin</tt> or <tt>buzhash</tt>.
+     * 
+     * @param name Name of the fingerprinting algorithm (corresponds to its camel case class name)
+     * @return A new fingerprinter
+     * @throws NoSuchAlgorithmException If the FQCN cannot be found or the class cannot be instantiated
+     */
     public static Fingerprinter getInstance(String name) throws NoSuchAlgorithmException {
         try {
-            Class<?> clazz = Class.forName(Fingerprinter.class.getPackage().getName()+"."+name+Fingerprinter.class.getSimpleName());
+            Class<?> clazz = Class.forName(Fingerprinter.class.getPackage().getName()+"."+StringUtil.toCamelCase(name)+Fingerprinter.class.getSimpleName());
             return (Fingerprinter) clazz.newInstance();
         }
         catch (Exception e) {
@@ -71,6 +89,33 @@ public abstract class Fingerprinter {
      */    
     public abstract void check(byte[] buf, int off, int len);
     
+    /**
+     * "Roll" the checksum over the given bytes, and stop at the first breakpoint, 
+     * i.e. at the first byte after which the checksum satisfies 
+     * <tt>(getValue() % divisor) == divisor-1</tt>.
+     * 
+     * <p>The result is identical to calling {@link #roll(byte) roll()} and testing 
+     * {@link #getValue() getValue()} for every byte. Implementations should override
+     * this method to avoid the per-byte method calls.
+     * 
+     * @param buf The byte array that holds the next bytes.
+     * @param off From whence to begin reading.
+     * @param len The maximum number of bytes to roll.
+     * @param divisor Divisor used to determine a breakpoint
+     * @return The index of the breakpoint byte in <tt>buf</tt>, or -1 if no breakpoint was found
+     */
+    public int rollAll(byte[] buf, int off, int len, int divisor) {
+        for (int i = off; i < off+len; i++) {
+            roll(buf[i]);
+            
+            if ((getValue() % divisor) == divisor-1) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
     /**
 	 * Returns a string representation of the fingerprinter
 	 * implementation.
@@ -21,7 +21,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +49,15 @@ public class FixedChunker extends Chunker {
     private int chunkSize;   
     private String checksumAlgorithm;
     
+    /**
+     * Creates a new fixed offset chunker with the default file/chunk checksum 
+     * algorithm SHA1. The chunker must be initialized using the 
+     * {@link #init(Map) init()} method.
+     */
+    public FixedChunker() {
+    	this.checksumAlgorithm = DEFAULT_DIGEST_ALG;
+    }
+    
     /**
      * Creates a new fixed offset chunker with the default file/chunk 
      * checksum algorithm SHA1.
@@ -68,15 +79,41 @@ public class FixedChunker extends Chunker {
         this.checksumAlgorithm = checksumAlgorithm;        
     }
   
+    /**
+     * Initializes the fixed chunker using a settings map. 
+     * <br>
+     * Required settings are: 
+     * <ul>
+     *  <li> key: {@link Chunker#PROPERTY_SIZE}, value: chunk size in bytes, integer encoded as String 
+     * </ul>
+     */
+    @Override
+    public void init(Map<String, String> settings) throws Exception {
+    	chunkSize = parseSizeProperty(settings);
+    }
+    
     @Override
     public ChunkEnumeration createChunks(File file) throws IOException {
-    	return new FixedChunkEnumeration(new FileInputStream(file));
+    	if (isSmallFileChunkingEnabled(file)) {
+    		return createSmallFileChunks(file);
+    	}
+    	else if (isMappedChunkingEnabled(file)) {
+    		return new MappedFixedChunkEnumeration(new MappedFileWindow(file, chunkSize));
+    	}
+    	else {
+    		return new FixedChunkEnumeration(new FileInputStream(file));
+    	}
     }
     
 	@Override
 	public String getChecksumAlgorithm() {
 		return checksumAlgorithm;
 	}    
+	
+	@Override
+	public long getSmallFileThreshold() {
+		return chunkSize;
+	}
 
     @Override
     public String toString() {
@@ -92,15 +129,26 @@ public class FixedChunker extends Chunker {
         private boolean closed;
         
         public FixedChunkEnumeration(InputStream in) {
+            this(in, null);
+        }
+        
+        /**
+         * Creates an enumeration that continues the given file digest, e.g. to continue
+         * chunking a file in the middle if the {@link MappedFixedChunkEnumeration} fails. 
+         */
+        /*package*/ FixedChunkEnumeration(InputStream in, MessageDigest fileDigest) {
             this.in = in;
             this.buffer = new byte[chunkSize];
             this.closed = false;
             
             try {
                 this.digest = MessageDigest.getInstance(checksumAlgorithm);
-                this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);     
+                this.fileDigest = fileDigest;
                 
-                this.fileDigest.reset();                                          
+                if (this.fileDigest == null) {
+                    this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);     
+                    this.fileDigest.reset();                                          
+                }
             }
             catch (Exception e) {
                 throw new RuntimeException(e);
@@ -163,4 +211,127 @@ public class FixedChunker extends Chunker {
         	catch (Exception e) { /* Not necessary */ }
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Implements the mapped chunking mode of the fixed chunker (see 
+     * {@link Chunker#setMappedChunkingThreshold(long) setMappedChunkingThreshold()}).
+     * The emitted chunks are backed by slices of the {@link MappedFileWindow}, and are
+     * only valid until the next chunk is requested.
+     * 
+     * <p>If the file is truncated while it is being chunked, the enumeration falls back
+     * to a stream-based {@link FixedChunkEnumeration} at the current position instead of letting
+     * the error escape.
+     */
+    public class MappedFixedChunkEnumeration implements ChunkEnumeration {
+    	private MessageDigest digest;
+        private MessageDigest fileDigest;    
+        
+        private MappedFileWindow fileWindow;
+        private long position;
+        private boolean closed;
+        private FixedChunkEnumeration streamEnumeration;
+        
+        public MappedFixedChunkEnumeration(MappedFileWindow fileWindow) {
+            this.fileWindow = fileWindow;
+            this.position = 0;
+            this.closed = false;
+            this.streamEnumeration = null;
+            
+            try {
+                this.digest = MessageDigest.getInstance(checksumAlgorithm);
+                this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);     
+                
+                this.fileDigest.reset();                                          
+            }
+            catch (Exception e) {
+            	fileWindow.close();
+                throw new RuntimeException(e);
+            }                    
+        }
+        
+        @Override
+        public boolean hasMoreElements() {
+            if (streamEnumeration != null) {
+                return streamEnumeration.hasMoreElements();
+            }
+            
+            return !closed && position < fileWindow.getFileSize();
+        }
+
+        @Override
+        public Chunk nextElement() {    
+            if (streamEnumeration != null) {
+                return streamEnumeration.nextElement();
+            }
+            
+            try {
+            	if (!hasMoreElements()) {
+            		return null;
+            	}
+            	
+            	int read = (int) Math.min(chunkSize, fileWindow.getFileSize() - position);
+            	ByteBuffer chunkContents = fileWindow.slice(position, read);
+            	
+                // Chunk checksum (read mapped bytes before advancing, so that a fallback continues at this chunk)
+                digest.reset();
+                digest.update(chunkContents.duplicate());
+                
+                // File checksum
+                fileDigest.update(chunkContents.duplicate());                                
+                position += read;
+                
+                // Last bytes; the window is unmapped in close(), because the last chunk is backed by it
+                if (position == fileWindow.getFileSize()) {
+                    closed = true;
+                }
+                
+                byte[] fileChecksum = (closed) ? fileDigest.digest() : null;
+
+                // Create chunk
+                return new Chunk(digest.digest(), chunkContents, fileChecksum);
+            } 
+            catch (InternalError e) {
+                logger.log(Level.WARNING, "File " + fileWindow.getFile() + " changed while it was mapped; continuing with stream at position " + position + ".", e);
+                return fallBackToStreamEnumeration();
+            }
+            catch (IOException ex) {                
+                logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+                return null;
+            }
+        }
+        
+        private Chunk fallBackToStreamEnumeration() {
+            fileWindow.close();
+            
+            try {
+                FileInputStream fileInputStream = new FileInputStream(fileWindow.getFile());
+                fileInputStream.getChannel().position(position);
+                
+                streamEnumeration = new FixedChunkEnumeration(fileInputStream, fileDigest);
+                
+                if (streamEnumeration.hasMoreElements()) {
+                    return streamEnumeration.nextElement();
+                }
+                
+                // File now ends at or before the current position; finish with an empty chunk
+                digest.reset();
+                return new Chunk(digest.digest(), ByteBuffer.allocate(0), fileDigest.digest());
+            }
+            catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+                closed = true;
+                
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+        	fileWindow.close();
+        	
+            if (streamEnumeration != null) {
+                streamEnumeration.close();
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.syncany.chunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.util.Map;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
@@ -66,10 +67,10 @@ public class GzipTransformer extends Transformer {
     @Override
     public InputStream createInputStream(InputStream in) throws IOException {
         if (nextTransformer == null) {
-            return new GZIPInputStream(in);
+            return new GZIPInputStreamEx(in);
         }
         else {
-            return new GZIPInputStream(nextTransformer.createInputStream(in));
+            return new GZIPInputStreamEx(nextTransformer.createInputStream(in));
         }
     }
     
@@ -83,6 +84,46 @@ public class GzipTransformer extends Transformer {
         }
     }    
     
+    /**
+     * Gzip input stream that reliably reads multi-member streams, as written by
+     * the {@link ParallelGzipTransformer}.
+     * 
+     * <p>The {@link GZIPInputStream} only continues with the next member if the underlying
+     * stream reports {@link InputStream#available() available} bytes. Streams such as the
+     * cipher streams return 0 even if more data follows, so this class peeks one byte ahead
+     * instead of relying on the underlying stream's <tt>available()</tt>.
+     */
+    public static class GZIPInputStreamEx extends GZIPInputStream {
+        public GZIPInputStreamEx(InputStream in) throws IOException {
+            super(new PeekingInputStream(in));
+        }
+    }
+    
+    private static class PeekingInputStream extends PushbackInputStream {
+        public PeekingInputStream(InputStream in) {
+            super(in, 1);
+        }
+        
+        @Override
+        public int available() throws IOException {
+            int available = super.available();
+            
+            if (available > 0) {
+                return available;
+            }
+            
+            int nextByte = read();
+            
+            if (nextByte == -1) {
+                return 0;
+            }
+            else {
+                unread(nextByte);
+                return 1;
+            }
+        }
+    }
+    
     @Override
     public String toString() {
         return (nextTransformer == null) ? "Gzip" : "Gzip-"+nextTransformer;
@@ -0,0 +1,393 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * The indexed multichunk is a simple container format for chunks. It consists of
+ * a plain sequence of chunk records, followed by a binary index of all chunks:
+ *
+ * <pre>
+ *   header  := MAGIC (4 bytes) VERSION (1 byte)
+ *   records := record* 0x00
+ *   record  := checksum-length (1 byte) checksum chunk-length (4 bytes) chunk-data
+ *   index   := entry*, sorted by checksum (unsigned)
+ *   entry   := checksum data-offset (8 bytes) chunk-length (4 bytes)
+ *   trailer := index-offset (8 bytes) entry-count (4 bytes) checksum-length (1 byte) INDEX_MAGIC (4 bytes)
+ * </pre>
+ *
+ * <p>In write mode, records are written sequentially to a buffered output stream, and
+ * the index is appended when the multichunk is closed. In read mode, the multichunk is
+ * either opened from a file (or a {@link RandomAccessInput}), in which case chunks are found
+ * by a binary search in the index and read with a single positional {@link FileChannel} read;
+ * or it is opened from an input stream, in which case the records can only be read sequentially.
+ *
+ * <p>Unlike the {@link ZipMultiChunk}, no per-chunk entries are parsed and no CRC
+ * checksums are calculated; the chunk checksum already identifies the content.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class IndexedMultiChunk extends MultiChunk {
+	public static final byte[] MAGIC = new byte[] { 'S', 'y', 'M', 'C' };
+	public static final byte[] INDEX_MAGIC = new byte[] { 'S', 'y', 'M', 'I' };
+	public static final byte VERSION = 1;
+
+	private static final int HEADER_SIZE = MAGIC.length + 1;
+	private static final int TRAILER_SIZE = 8 + 4 + 1 + INDEX_MAGIC.length;
+	private static final int INDEX_ENTRY_DATA_SIZE = 8 + 4;
+
+	// Write mode
+	private DataOutputStream writeOut;
+	private long writeOffset;
+	private ByteArrayOutputStream indexEntries;
+	private int checksumLength;
+
+	// Read mode (sequential)
+	private DataInputStream readIn;
+
+	// Read mode (random access)
+	private RandomAccessInput input;
+	private ByteBuffer index;
+	private int indexEntryCount;
+
+	public IndexedMultiChunk(MultiChunkId id, int minSize, OutputStream os) throws IOException {
+		super(id, minSize);
+
+		this.writeOut = new DataOutputStream(new BufferedOutputStream(os));
+		this.writeOut.write(MAGIC);
+		this.writeOut.writeByte(VERSION);
+
+		this.writeOffset = HEADER_SIZE;
+		this.indexEntries = new ByteArrayOutputStream();
+		this.checksumLength = -1;
+	}
+
+	public IndexedMultiChunk(InputStream is) throws IOException {
+		super(0);
+
+		this.readIn = new DataInputStream(is);
+		readHeader(readIn);
+	}
+
+	public IndexedMultiChunk(File file) throws IOException {
+		this(new FileRandomAccessInput(file));
+	}
+
+	public IndexedMultiChunk(RandomAccessInput input) throws IOException {
+		super(0);
+
+		this.input = input;
+
+		try {
+			readIndex();
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isFull() {
+		return size >= minSize*1024; // minSize is in KB!
+	}
+
+	@Override
+	public void write(Chunk chunk) throws IOException {
+		byte[] checksum = chunk.getChecksum();
+
+		if (checksumLength == -1) {
+			checksumLength = checksum.length;
+		}
+		else if (checksumLength != checksum.length) {
+			throw new IOException("All chunk checksums of a multichunk must have the same length; expected " + checksumLength + ", got " + checksum.length);
+		}
+
+		// Record
+		writeOut.writeByte(checksum.length);
+		writeOut.write(checksum);
+		writeOut.writeInt(chunk.getSize());
+		writeOut.write(chunk.getContent(), 0, chunk.getSize());
+
+		long dataOffset = writeOffset + 1 + checksum.length + 4;
+
+		// Index entry (sorted on close)
+		DataOutputStream indexOut = new DataOutputStream(indexEntries);
+
+		indexOut.write(checksum);
+		indexOut.writeLong(dataOffset);
+		indexOut.writeInt(chunk.getSize());
+
+		writeOffset = dataOffset + chunk.getSize();
+		size += chunk.getSize();
+	}
+
+	@Override
+	public InputStream getChunkInputStream(byte[] checksum) throws IOException {
+		int entryIndex = findIndexEntry(checksum);
+
+		if (entryIndex < 0) {
+			return null;
+		}
+
+		int entrySize = checksumLength + INDEX_ENTRY_DATA_SIZE;
+		long dataOffset = index.getLong(entryIndex*entrySize + checksumLength);
+		int chunkLength = index.getInt(entryIndex*entrySize + checksumLength + 8);
+
+		ByteBuffer chunkBuffer = ByteBuffer.allocate(chunkLength);
+		readFully(chunkBuffer, dataOffset);
+
+		return new ByteArrayInputStream(chunkBuffer.array());
+	}
+
+	@Override
+	public Chunk read() throws IOException {
+		if (readIn == null) {
+			throw new IOException("Sequential read is only supported for multichunks opened from an input stream.");
+		}
+
+		int recordChecksumLength = readIn.read();
+
+		if (recordChecksumLength <= 0) { // End of records (or stream)
+			return null;
+		}
+
+		byte[] checksum = new byte[recordChecksumLength];
+		readIn.readFully(checksum);
+
+		int chunkLength = readIn.readInt();
+
+		byte[] contents = new byte[chunkLength];
+		readIn.readFully(contents);
+
+		return new Chunk(checksum, contents, chunkLength, null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writeOut != null) {
+			writeIndex();
+			writeOut.close();
+
+			writeOut = null;
+		}
+		else if (readIn != null) {
+			readIn.close();
+		}
+		else if (input != null) {
+			input.close();
+		}
+	}
+
+	/**
+	 * Returns whether the given bytes start with the {@link #MAGIC} of this format.
+	 */
+	public static boolean isIndexedMultiChunk(byte[] header, int length) {
+		return length >= MAGIC.length && Arrays.equals(MAGIC, Arrays.copyOf(header, MAGIC.length));
+	}
+
+	private void writeIndex() throws IOException {
+		int entrySize = ((checksumLength > 0) ? checksumLength : 0) + INDEX_ENTRY_DATA_SIZE;
+		byte[] entries = indexEntries.toByteArray();
+		int entryCount = entries.length / entrySize;
+
+		// End of records
+		writeOut.writeByte(0);
+		writeOffset++;
+
+		// Sort entries by checksum (unsigned)
+		Integer[] order = new Integer[entryCount];
+
+		for (int i = 0; i < entryCount; i++) {
+			order[i] = i;
+		}
+
+		final byte[] sortEntries = entries;
+		final int sortEntrySize = entrySize;
+		final int sortChecksumLength = Math.max(0, checksumLength);
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer entry1, Integer entry2) {
+				return compareUnsigned(sortEntries, entry1*sortEntrySize, sortEntries, entry2*sortEntrySize, sortChecksumLength);
+			}
+		});
+
+		for (int i = 0; i < entryCount; i++) {
+			writeOut.write(entries, order[i]*entrySize, entrySize);
+		}
+
+		// Trailer
+		writeOut.writeLong(writeOffset);
+		writeOut.writeInt(entryCount);
+		writeOut.writeByte(Math.max(0, checksumLength));
+		writeOut.write(INDEX_MAGIC);
+	}
+
+	private void readIndex() throws IOException {
+		long fileSize = input.length();
+
+		if (fileSize < HEADER_SIZE + TRAILER_SIZE) {
+			throw new IOException("Invalid multichunk: file too small.");
+		}
+
+		// Header
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(header, 0);
+		readHeader(new DataInputStream(new ByteArrayInputStream(header.array())));
+
+		// Trailer
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		readFully(trailer, fileSize - TRAILER_SIZE);
+
+		long indexOffset = trailer.getLong(0);
+		indexEntryCount = trailer.getInt(8);
+		checksumLength = trailer.get(12) & 0xff;
+
+		byte[] indexMagic = Arrays.copyOfRange(trailer.array(), 13, 13 + INDEX_MAGIC.length);
+
+		if (!Arrays.equals(INDEX_MAGIC, indexMagic)) {
+			throw new IOException("Invalid multichunk: index not found. Multichunk incomplete?");
+		}
+
+		long indexSize = (long) indexEntryCount * (checksumLength + INDEX_ENTRY_DATA_SIZE);
+
+		if (indexEntryCount < 0 || indexOffset <= HEADER_SIZE || indexOffset + indexSize != fileSize - TRAILER_SIZE) {
+			throw new IOException("Invalid multichunk: index offset or size does not match file size.");
+		}
+
+		// Index
+		index = ByteBuffer.allocate((int) indexSize);
+		readFully(index, indexOffset);
+	}
+
+	private static void readHeader(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("Invalid multichunk: magic bytes do not match.");
+		}
+
+		int version = in.readByte();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported multichunk version " + version + ", expected " + VERSION);
+		}
+	}
+
+	private int findIndexEntry(byte[] checksum) {
+		if (checksum.length != checksumLength) {
+			return -1;
+		}
+
+		byte[] indexArray = index.array();
+		int entrySize = checksumLength + INDEX_ENTRY_DATA_SIZE;
+
+		int low = 0;
+		int high = indexEntryCount - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compareUnsigned(indexArray, middle*entrySize, checksum, 0, checksumLength);
+
+			if (comparison < 0) {
+				low = middle + 1;
+			}
+			else if (comparison > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		input.readFully(buffer, position);
+		buffer.flip();
+	}
+
+	private static int compareUnsigned(byte[] array1, int offset1, byte[] array2, int offset2, int length) {
+		for (int i = 0; i < length; i++) {
+			int byte1 = array1[offset1 + i] & 0xff;
+			int byte2 = array2[offset2 + i] & 0xff;
+
+			if (byte1 != byte2) {
+				return byte1 - byte2;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Positional read access to a plain multichunk file via a {@link FileChannel}.
+	 */
+	private static class FileRandomAccessInput implements RandomAccessInput {
+		private RandomAccessFile randomAccessFile;
+		private FileChannel fileChannel;
+
+		public FileRandomAccessInput(File file) throws IOException {
+			this.randomAccessFile = new RandomAccessFile(file, "r");
+			this.fileChannel = randomAccessFile.getChannel();
+		}
+
+		@Override
+		public long length() throws IOException {
+			return fileChannel.size();
+		}
+
+		@Override
+		public void readFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				int read = fileChannel.read(buffer, position);
+
+				if (read == -1) {
+					throw new EOFException("Unexpected end of multichunk at position " + position);
+				}
+
+				position += read;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			randomAccessFile.close();
+		}
+	}
+}
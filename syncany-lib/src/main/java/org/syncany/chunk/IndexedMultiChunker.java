@@ -0,0 +1,123 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * The indexed multichunker writes {@link IndexedMultiChunk}s, i.e. multichunks with 
+ * a binary index that allows reading a chunk with a single positional read. 
+ * 
+ * <p>To keep existing repositories readable, multichunks are read as {@link ZipMultiChunk}s
+ * if they do not start with the {@link IndexedMultiChunk#MAGIC magic bytes} of the indexed
+ * format. A repository can therefore switch from the <tt>zip</tt> to the <tt>indexed</tt>
+ * multichunker at any time.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class IndexedMultiChunker extends MultiChunker {
+	public static final String TYPE = "indexed";
+
+	public IndexedMultiChunker() {
+		// Nothing
+	}
+
+	public IndexedMultiChunker(int minMultiChunkSize) {
+		super(minMultiChunkSize);
+	}
+
+	@Override
+	public MultiChunk createMultiChunk(InputStream is) {
+		BufferedInputStream bufferedInputStream = new BufferedInputStream(is);
+		
+		try {
+			byte[] header = new byte[IndexedMultiChunk.MAGIC.length];
+			
+			bufferedInputStream.mark(header.length);
+			int headerLength = bufferedInputStream.read(header);
+			bufferedInputStream.reset();
+			
+			if (IndexedMultiChunk.isIndexedMultiChunk(header, headerLength)) {
+				return new IndexedMultiChunk(bufferedInputStream);
+			}
+			else {
+				return new ZipMultiChunk(bufferedInputStream);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot read multichunk header.", e);
+		}
+	}
+
+	@Override
+	public MultiChunk createMultiChunk(File file) throws IOException {
+		byte[] header = new byte[IndexedMultiChunk.MAGIC.length];
+		int headerLength = 0;
+		
+		try (FileInputStream fileInputStream = new FileInputStream(file)) {
+			headerLength = fileInputStream.read(header);
+		}
+		
+		if (IndexedMultiChunk.isIndexedMultiChunk(header, headerLength)) {
+			return new IndexedMultiChunk(file);
+		}
+		else {
+			return new ZipMultiChunk(file);
+		}
+	}
+
+	/**
+	 * Opens an indexed multichunk from the given random access input. Because
+	 * {@link ZipMultiChunk}s cannot be read from such an input, this method returns
+	 * <tt>null</tt> if the input is not an indexed multichunk.
+	 */
+	@Override
+	public MultiChunk createMultiChunk(RandomAccessInput input) throws IOException {
+		if (input.length() < IndexedMultiChunk.MAGIC.length) {
+			return null;
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(IndexedMultiChunk.MAGIC.length);
+		input.readFully(header, 0);
+		
+		if (IndexedMultiChunk.isIndexedMultiChunk(header.array(), header.capacity())) {
+			return new IndexedMultiChunk(input);
+		}
+		else {
+			return null;
+		}
+	}
+
+	@Override
+	public MultiChunk createMultiChunk(MultiChunkId id, OutputStream os) throws IOException {
+		return new IndexedMultiChunk(id, minMultiChunkSize, os);
+	}
+
+	@Override
+	public String toString() {
+		return "Indexed-" + minMultiChunkSize;
+	}
+}
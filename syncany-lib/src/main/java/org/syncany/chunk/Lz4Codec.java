@@ -0,0 +1,446 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format and the XXH32 hash function,
+ * as used by the {@link Lz4Transformer} to write and read LZ4 frames.
+ *
+ * <p>The compressor is a port of the reference "fast" compressor: It uses a single
+ * hash table of 4-byte sequences and no match chains. The <i>acceleration</i> factor
+ * controls how quickly the compressor skips ahead in incompressible regions; higher
+ * values are faster, but find fewer matches.
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 block format</a>
+ */
+/*package*/ class Lz4Codec {
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MIN_LENGTH = MF_LIMIT + 1;
+	private static final int MAX_DISTANCE = 65535;
+
+	private static final int HASH_LOG = 12;
+	private static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+	private static final int SKIP_TRIGGER = 6;
+
+	private static final int ML_BITS = 4;
+	private static final int ML_MASK = (1 << ML_BITS) - 1;
+	private static final int RUN_MASK = ML_MASK;
+
+	/**
+	 * Returns the maximum length of a compressed block for the given input length.
+	 */
+	public static int maxCompressedLength(int length) {
+		return length + length/255 + 16;
+	}
+
+	/**
+	 * Creates a hash table to be passed to {@link #compress(byte[], int, int, byte[], int, int, int[]) compress()}.
+	 * The table can be reused for consecutive calls in the same thread.
+	 */
+	public static int[] createHashTable() {
+		return new int[HASH_TABLE_SIZE];
+	}
+
+	/**
+	 * Compresses the given input to an LZ4 block. The destination array must have room
+	 * for at least {@link #maxCompressedLength(int) maxCompressedLength(srcLen)} bytes.
+	 *
+	 * @return Returns the length of the compressed block
+	 */
+	public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int acceleration, int[] hashTable) {
+		int srcEnd = srcOff + srcLen;
+		int matchLimit = srcEnd - LAST_LITERALS;
+		int mfLimit = srcEnd - MF_LIMIT;
+
+		int anchor = srcOff;
+		int dp = destOff;
+
+		if (srcLen >= MIN_LENGTH) {
+			Arrays.fill(hashTable, -1);
+
+			int ip = srcOff;
+			hashTable[hash(readInt(src, ip))] = ip;
+
+			ip++;
+			int forwardHash = hash(readInt(src, ip));
+
+			mainLoop: while (true) {
+				// Find a match
+				int forwardIp = ip;
+				int step = 1;
+				int searchMatchCount = acceleration << SKIP_TRIGGER;
+				int ref;
+
+				do {
+					int h = forwardHash;
+
+					ip = forwardIp;
+					forwardIp += step;
+					step = searchMatchCount++ >>> SKIP_TRIGGER;
+
+					if (forwardIp > mfLimit) {
+						break mainLoop;
+					}
+
+					forwardHash = hash(readInt(src, forwardIp));
+					ref = hashTable[h];
+					hashTable[h] = ip;
+				}
+				while (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, ip));
+
+				// Extend match backwards
+				while (ip > anchor && ref > srcOff && src[ip-1] == src[ref-1]) {
+					ip--;
+					ref--;
+				}
+
+				// Write literals
+				int tokenPos = dp++;
+				int literalLength = ip - anchor;
+
+				dp = writeLength(dest, tokenPos, dp, literalLength, ML_BITS);
+				System.arraycopy(src, anchor, dest, dp, literalLength);
+				dp += literalLength;
+
+				while (true) {
+					// Write offset and match length
+					int offset = ip - ref;
+
+					dest[dp++] = (byte) offset;
+					dest[dp++] = (byte) (offset >>> 8);
+
+					ip += MIN_MATCH;
+					ref += MIN_MATCH;
+
+					int matchLength = 0;
+
+					while (ip + matchLength < matchLimit && src[ip+matchLength] == src[ref+matchLength]) {
+						matchLength++;
+					}
+
+					ip += matchLength;
+					dp = writeLength(dest, tokenPos, dp, matchLength, 0);
+
+					anchor = ip;
+
+					if (ip > mfLimit) {
+						break mainLoop;
+					}
+
+					hashTable[hash(readInt(src, ip-2))] = ip-2;
+
+					// Immediate next match?
+					int h = hash(readInt(src, ip));
+					ref = hashTable[h];
+					hashTable[h] = ip;
+
+					if (ref >= 0 && ip - ref <= MAX_DISTANCE && readInt(src, ref) == readInt(src, ip)) {
+						tokenPos = dp++;
+						dest[tokenPos] = 0;
+
+						continue;
+					}
+
+					ip++;
+					forwardHash = hash(readInt(src, ip));
+
+					continue mainLoop;
+				}
+			}
+		}
+
+		// Write last literals
+		int tokenPos = dp++;
+		int literalLength = srcEnd - anchor;
+
+		dp = writeLength(dest, tokenPos, dp, literalLength, ML_BITS);
+		System.arraycopy(src, anchor, dest, dp, literalLength);
+		dp += literalLength;
+
+		return dp - destOff;
+	}
+
+	/**
+	 * Decompresses the given LZ4 block.
+	 *
+	 * @return Returns the length of the decompressed data
+	 * @throws IOException If the block is malformed or does not fit into the destination array
+	 */
+	public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+		int srcEnd = srcOff + srcLen;
+		int destEnd = destOff + destLen;
+
+		int sp = srcOff;
+		int dp = destOff;
+
+		try {
+			while (true) {
+				int token = src[sp++] & 0xff;
+
+				// Literals
+				int literalLength = token >>> ML_BITS;
+
+				if (literalLength == RUN_MASK) {
+					int lengthByte;
+
+					do {
+						lengthByte = src[sp++] & 0xff;
+						literalLength += lengthByte;
+					}
+					while (lengthByte == 255);
+				}
+
+				if (sp + literalLength > srcEnd || dp + literalLength > destEnd) {
+					throw new IOException("Malformed LZ4 block: Literals exceed block boundaries.");
+				}
+
+				System.arraycopy(src, sp, dest, dp, literalLength);
+
+				sp += literalLength;
+				dp += literalLength;
+
+				if (sp == srcEnd) {
+					break; // Last sequence has no match
+				}
+
+				// Match
+				int offset = (src[sp] & 0xff) | ((src[sp+1] & 0xff) << 8);
+				sp += 2;
+
+				int ref = dp - offset;
+
+				if (offset == 0 || ref < destOff) {
+					throw new IOException("Malformed LZ4 block: Invalid match offset " + offset + ".");
+				}
+
+				int matchLength = token & ML_MASK;
+
+				if (matchLength == ML_MASK) {
+					int lengthByte;
+
+					do {
+						lengthByte = src[sp++] & 0xff;
+						matchLength += lengthByte;
+					}
+					while (lengthByte == 255);
+				}
+
+				matchLength += MIN_MATCH;
+
+				if (dp + matchLength > destEnd) {
+					throw new IOException("Malformed LZ4 block: Match exceeds block boundaries.");
+				}
+
+				if (offset >= matchLength) {
+					System.arraycopy(dest, ref, dest, dp, matchLength);
+					dp += matchLength;
+				}
+				else {
+					for (int i = 0; i < matchLength; i++) {
+						dest[dp++] = dest[ref++];
+					}
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Malformed LZ4 block: Unexpected end of block.", e);
+		}
+
+		return dp - destOff;
+	}
+
+	/**
+	 * Writes a literal length (<tt>shift == ML_BITS</tt>, sets the token) or a match
+	 * length (<tt>shift == 0</tt>, adds to the token) and returns the new position.
+	 */
+	private static int writeLength(byte[] dest, int tokenPos, int dp, int length, int shift) {
+		int tokenBits = Math.min(length, RUN_MASK) << shift;
+		
+		if (shift > 0) {
+			dest[tokenPos] = (byte) tokenBits;
+		}
+		else {
+			dest[tokenPos] |= (byte) tokenBits;
+		}
+
+		if (length >= RUN_MASK) {
+			length -= RUN_MASK;
+
+			while (length >= 255) {
+				dest[dp++] = (byte) 255;
+				length -= 255;
+			}
+
+			dest[dp++] = (byte) length;
+		}
+
+		return dp;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	/*package*/ static int readInt(byte[] buf, int off) {
+		return (buf[off] & 0xff) | ((buf[off+1] & 0xff) << 8) | ((buf[off+2] & 0xff) << 16) | ((buf[off+3] & 0xff) << 24);
+	}
+
+	/*package*/ static void writeInt(byte[] buf, int off, int value) {
+		buf[off] = (byte) value;
+		buf[off+1] = (byte) (value >>> 8);
+		buf[off+2] = (byte) (value >>> 16);
+		buf[off+3] = (byte) (value >>> 24);
+	}
+
+	/**
+	 * Streaming implementation of the 32-bit xxHash function, used for the
+	 * header and content checksums of LZ4 frames.
+	 */
+	public static class XxHash32 {
+		private static final int PRIME1 = 0x9E3779B1;
+		private static final int PRIME2 = 0x85EBCA77;
+		private static final int PRIME3 = 0xC2B2AE3D;
+		private static final int PRIME4 = 0x27D4EB2F;
+		private static final int PRIME5 = 0x165667B1;
+
+		private int seed;
+		private int v1, v2, v3, v4;
+		private long totalLength;
+
+		private byte[] memory;
+		private int memorySize;
+
+		public XxHash32() {
+			this(0);
+		}
+
+		public XxHash32(int seed) {
+			this.seed = seed;
+			this.memory = new byte[16];
+
+			reset();
+		}
+
+		public void reset() {
+			v1 = seed + PRIME1 + PRIME2;
+			v2 = seed + PRIME2;
+			v3 = seed;
+			v4 = seed - PRIME1;
+
+			totalLength = 0;
+			memorySize = 0;
+		}
+
+		public void update(byte[] buf, int off, int len) {
+			totalLength += len;
+
+			if (memorySize + len < 16) {
+				System.arraycopy(buf, off, memory, memorySize, len);
+				memorySize += len;
+
+				return;
+			}
+
+			int end = off + len;
+
+			if (memorySize > 0) {
+				int fillLength = 16 - memorySize;
+				System.arraycopy(buf, off, memory, memorySize, fillLength);
+
+				v1 = round(v1, readInt(memory, 0));
+				v2 = round(v2, readInt(memory, 4));
+				v3 = round(v3, readInt(memory, 8));
+				v4 = round(v4, readInt(memory, 12));
+
+				off += fillLength;
+				memorySize = 0;
+			}
+
+			int v1 = this.v1, v2 = this.v2, v3 = this.v3, v4 = this.v4;
+
+			while (off + 16 <= end) {
+				v1 = round(v1, readInt(buf, off));
+				v2 = round(v2, readInt(buf, off+4));
+				v3 = round(v3, readInt(buf, off+8));
+				v4 = round(v4, readInt(buf, off+12));
+
+				off += 16;
+			}
+
+			this.v1 = v1;
+			this.v2 = v2;
+			this.v3 = v3;
+			this.v4 = v4;
+
+			if (off < end) {
+				memorySize = end - off;
+				System.arraycopy(buf, off, memory, 0, memorySize);
+			}
+		}
+
+		public int getValue() {
+			int h;
+
+			if (totalLength >= 16) {
+				h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+			}
+			else {
+				h = seed + PRIME5;
+			}
+
+			h += (int) totalLength;
+
+			int off = 0;
+
+			while (off + 4 <= memorySize) {
+				h += readInt(memory, off) * PRIME3;
+				h = Integer.rotateLeft(h, 17) * PRIME4;
+
+				off += 4;
+			}
+
+			while (off < memorySize) {
+				h += (memory[off] & 0xff) * PRIME5;
+				h = Integer.rotateLeft(h, 11) * PRIME1;
+
+				off++;
+			}
+
+			h ^= h >>> 15;
+			h *= PRIME2;
+			h ^= h >>> 13;
+			h *= PRIME3;
+			h ^= h >>> 16;
+
+			return h;
+		}
+
+		private static int round(int acc, int input) {
+			acc += input * PRIME2;
+			acc = Integer.rotateLeft(acc, 13);
+			acc *= PRIME1;
+
+			return acc;
+		}
+	}
+}
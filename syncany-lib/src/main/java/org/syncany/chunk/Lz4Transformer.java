@@ -0,0 +1,517 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.syncany.chunk.Lz4Codec.XxHash32;
+
+/**
+ * Implements a {@link Transformer} that transforms the input/output stream
+ * using the LZ4 compression algorithm. LZ4 compresses considerably faster than
+ * Gzip, at the cost of a lower compression ratio.
+ *
+ * <p>The output is a standard LZ4 frame with independent blocks and a content checksum,
+ * which can also be read by the <tt>lz4</tt> command line tool. Blocks that do not compress
+ * are stored uncompressed.
+ *
+ * <p>Settings (all optional):
+ * <ul>
+ *  <li><tt>acceleration</tt>: Acceleration factor &gt;= 1; higher is faster, but compresses
+ *      less (default: 1)</li>
+ *  <li><tt>size</tt>: Maximum block size in KB, one of 64, 256, 1024 or 4096 (default: 256)</li>
+ * </ul>
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 frame format</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class Lz4Transformer extends Transformer {
+	public static final String TYPE = "lz4";
+
+	public static final String PROPERTY_ACCELERATION = "acceleration";
+	public static final String PROPERTY_BLOCK_SIZE = "size";
+
+	public static final int DEFAULT_ACCELERATION = 1;
+	public static final int DEFAULT_BLOCK_SIZE = 256*1024;
+
+	private static final int MAGIC = 0x184D2204;
+	private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+	private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+	private static final int FLAG_VERSION = 0x40;
+	private static final int FLAG_VERSION_MASK = 0xC0;
+	private static final int FLAG_BLOCK_INDEPENDENCE = 0x20;
+	private static final int FLAG_BLOCK_CHECKSUM = 0x10;
+	private static final int FLAG_CONTENT_SIZE = 0x08;
+	private static final int FLAG_CONTENT_CHECKSUM = 0x04;
+	private static final int FLAG_DICTIONARY_ID = 0x01;
+
+	private static final int BLOCK_UNCOMPRESSED_FLAG = 0x80000000;
+
+	private int acceleration;
+	private int blockSize;
+
+	public Lz4Transformer() {
+		this(DEFAULT_ACCELERATION, DEFAULT_BLOCK_SIZE, null);
+	}
+
+	public Lz4Transformer(Transformer nextTransformer) {
+		this(DEFAULT_ACCELERATION, DEFAULT_BLOCK_SIZE, nextTransformer);
+	}
+
+	public Lz4Transformer(int acceleration, int blockSize, Transformer nextTransformer) {
+		super(nextTransformer);
+
+		this.acceleration = acceleration;
+		this.blockSize = blockSize;
+
+		validate();
+	}
+
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		acceleration = parseIntProperty(settings, PROPERTY_ACCELERATION, acceleration);
+		blockSize = parseIntProperty(settings, PROPERTY_BLOCK_SIZE, blockSize/1024) * 1024;
+
+		validate();
+	}
+
+	private void validate() {
+		if (acceleration < 1) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_ACCELERATION+"' must be a positive integer.");
+		}
+
+		if (blockSizeId(blockSize) < 0) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_BLOCK_SIZE+"' must be 64, 256, 1024 or 4096.");
+		}
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException {
+		if (nextTransformer == null) {
+			return new Lz4FrameOutputStream(out, acceleration, blockSize);
+		}
+		else {
+			return new Lz4FrameOutputStream(nextTransformer.createOutputStream(out), acceleration, blockSize);
+		}
+	}
+
+	@Override
+	public InputStream createInputStream(InputStream in) throws IOException {
+		if (nextTransformer == null) {
+			return new Lz4FrameInputStream(in);
+		}
+		else {
+			return new Lz4FrameInputStream(nextTransformer.createInputStream(in));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (nextTransformer == null) ? "Lz4" : "Lz4-"+nextTransformer;
+	}
+
+	private static int blockSizeId(int blockSize) {
+		switch (blockSize) {
+			case 64*1024: return 4;
+			case 256*1024: return 5;
+			case 1024*1024: return 6;
+			case 4*1024*1024: return 7;
+			default: return -1;
+		}
+	}
+
+	private static int headerChecksum(byte[] descriptor, int off, int len) {
+		XxHash32 headerHash = new XxHash32();
+		headerHash.update(descriptor, off, len);
+
+		return (headerHash.getValue() >>> 8) & 0xff;
+	}
+
+	/**
+	 * Writes an LZ4 frame: The frame header is written on creation, the data
+	 * is compressed block by block, and end mark and content checksum are written
+	 * when the stream is closed.
+	 */
+	private static class Lz4FrameOutputStream extends OutputStream {
+		private OutputStream out;
+		private int acceleration;
+
+		private byte[] block;
+		private int blockPosition;
+		private byte[] compressedBlock;
+		private int[] hashTable;
+
+		private XxHash32 contentHash;
+		private boolean closed;
+
+		public Lz4FrameOutputStream(OutputStream out, int acceleration, int blockSize) throws IOException {
+			this.out = out;
+			this.acceleration = acceleration;
+
+			this.block = new byte[blockSize];
+			this.blockPosition = 0;
+			this.compressedBlock = new byte[4 + Lz4Codec.maxCompressedLength(blockSize)];
+			this.hashTable = Lz4Codec.createHashTable();
+
+			this.contentHash = new XxHash32();
+			this.closed = false;
+
+			writeFrameHeader(blockSize);
+		}
+
+		private void writeFrameHeader(int blockSize) throws IOException {
+			byte[] header = new byte[7];
+
+			Lz4Codec.writeInt(header, 0, MAGIC);
+			header[4] = (byte) (FLAG_VERSION | FLAG_BLOCK_INDEPENDENCE | FLAG_CONTENT_CHECKSUM);
+			header[5] = (byte) (blockSizeId(blockSize) << 4);
+			header[6] = (byte) headerChecksum(header, 4, 2);
+
+			out.write(header);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buf, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+
+			while (len > 0) {
+				int copyLength = Math.min(len, block.length - blockPosition);
+				System.arraycopy(buf, off, block, blockPosition, copyLength);
+
+				blockPosition += copyLength;
+				off += copyLength;
+				len -= copyLength;
+
+				if (blockPosition == block.length) {
+					writeBlock();
+				}
+			}
+		}
+
+		/**
+		 * Flushes the underlying stream. The current (incomplete) block is not
+		 * compressed, so that flushing does not create tiny blocks.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			writeBlock();
+
+			byte[] trailer = new byte[8];
+
+			Lz4Codec.writeInt(trailer, 0, 0); // End mark
+			Lz4Codec.writeInt(trailer, 4, contentHash.getValue());
+
+			out.write(trailer);
+			out.close();
+
+			closed = true;
+		}
+
+		private void writeBlock() throws IOException {
+			if (blockPosition == 0) {
+				return;
+			}
+
+			contentHash.update(block, 0, blockPosition);
+			int compressedLength = Lz4Codec.compress(block, 0, blockPosition, compressedBlock, 4, acceleration, hashTable);
+
+			if (compressedLength < blockPosition) {
+				Lz4Codec.writeInt(compressedBlock, 0, compressedLength);
+				out.write(compressedBlock, 0, 4 + compressedLength);
+			}
+			else {
+				Lz4Codec.writeInt(compressedBlock, 0, blockPosition | BLOCK_UNCOMPRESSED_FLAG);
+				out.write(compressedBlock, 0, 4);
+				out.write(block, 0, blockPosition);
+			}
+
+			blockPosition = 0;
+		}
+	}
+
+	/**
+	 * Reads one or many concatenated LZ4 frames. Skippable frames are ignored,
+	 * and block and content checksums are verified if present.
+	 */
+	private static class Lz4FrameInputStream extends InputStream {
+		private InputStream in;
+
+		private int flags;
+		private XxHash32 contentHash;
+
+		private byte[] compressedBlock;
+		private byte[] block;
+		private int blockPosition;
+		private int blockLength;
+
+		private boolean frameStarted;
+		private boolean eof;
+
+		public Lz4FrameInputStream(InputStream in) throws IOException {
+			this.in = in;
+			this.contentHash = new XxHash32();
+
+			this.blockPosition = 0;
+			this.blockLength = 0;
+
+			this.frameStarted = false;
+			this.eof = false;
+
+			readFrameHeader(true);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] singleByte = new byte[1];
+			int read = read(singleByte, 0, 1);
+
+			return (read == -1) ? -1 : singleByte[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			while (blockPosition == blockLength) {
+				if (eof || !readBlock()) {
+					return -1;
+				}
+			}
+
+			int readLength = Math.min(len, blockLength - blockPosition);
+			System.arraycopy(block, blockPosition, buf, off, readLength);
+
+			blockPosition += readLength;
+			return readLength;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return blockLength - blockPosition;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private boolean readFrameHeader(boolean firstFrame) throws IOException {
+			byte[] magicBytes = new byte[4];
+
+			while (true) {
+				int magicLength = readAtMost(magicBytes, 4);
+
+				if (magicLength == 0 && !firstFrame) {
+					return false;
+				}
+				else if (magicLength < 4) {
+					throw new EOFException("Unexpected end of LZ4 stream in frame header.");
+				}
+
+				int magic = Lz4Codec.readInt(magicBytes, 0);
+
+				if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+					readFully(magicBytes, 4);
+					skipFully(Lz4Codec.readInt(magicBytes, 0) & 0xffffffffL);
+				}
+				else if (magic != MAGIC) {
+					throw new IOException("Invalid magic number, not an LZ4 frame.");
+				}
+				else {
+					break;
+				}
+			}
+
+			byte[] descriptor = new byte[2 + 8 + 4 + 1];
+			readFully(descriptor, 2);
+
+			flags = descriptor[0] & 0xff;
+			int blockSizeId = (descriptor[1] >>> 4) & 0x07;
+
+			if ((flags & FLAG_VERSION_MASK) != FLAG_VERSION) {
+				throw new IOException("Unsupported LZ4 frame version.");
+			}
+			else if ((flags & FLAG_DICTIONARY_ID) != 0) {
+				throw new IOException("LZ4 frames with dictionary are not supported.");
+			}
+			else if (blockSizeId < 4) {
+				throw new IOException("Invalid LZ4 block size ID " + blockSizeId + ".");
+			}
+
+			int descriptorLength = 2 + (((flags & FLAG_CONTENT_SIZE) != 0) ? 8 : 0);
+			readFully(descriptor, 2, descriptorLength - 2 + 1);
+
+			if ((descriptor[descriptorLength] & 0xff) != headerChecksum(descriptor, 0, descriptorLength)) {
+				throw new IOException("LZ4 frame header checksum mismatch.");
+			}
+
+			int maxBlockSize = 1 << (8 + 2*blockSizeId);
+
+			if (block == null || block.length < maxBlockSize) {
+				block = new byte[maxBlockSize];
+				compressedBlock = new byte[maxBlockSize];
+			}
+
+			contentHash.reset();
+			frameStarted = true;
+
+			return true;
+		}
+
+		private boolean readBlock() throws IOException {
+			if (!frameStarted && !readFrameHeader(false)) {
+				eof = true;
+				return false;
+			}
+
+			byte[] intBytes = new byte[4];
+			readFully(intBytes, 4);
+
+			int blockHeader = Lz4Codec.readInt(intBytes, 0);
+
+			if (blockHeader == 0) {
+				// End mark; verify content checksum and continue with next frame (if any)
+				if ((flags & FLAG_CONTENT_CHECKSUM) != 0) {
+					readFully(intBytes, 4);
+
+					if (Lz4Codec.readInt(intBytes, 0) != contentHash.getValue()) {
+						throw new IOException("LZ4 content checksum mismatch.");
+					}
+				}
+
+				frameStarted = false;
+				blockPosition = blockLength = 0;
+
+				return true;
+			}
+
+			boolean uncompressed = (blockHeader & BLOCK_UNCOMPRESSED_FLAG) != 0;
+			int dataLength = blockHeader & ~BLOCK_UNCOMPRESSED_FLAG;
+
+			if (dataLength > block.length) {
+				throw new IOException("LZ4 block size " + dataLength + " exceeds maximum block size.");
+			}
+
+			if (uncompressed) {
+				readFully(block, dataLength);
+				blockLength = dataLength;
+			}
+			else {
+				readFully(compressedBlock, dataLength);
+			}
+
+			if ((flags & FLAG_BLOCK_CHECKSUM) != 0) {
+				readFully(intBytes, 4);
+
+				XxHash32 blockHash = new XxHash32();
+				blockHash.update((uncompressed) ? block : compressedBlock, 0, dataLength);
+
+				if (Lz4Codec.readInt(intBytes, 0) != blockHash.getValue()) {
+					throw new IOException("LZ4 block checksum mismatch.");
+				}
+			}
+
+			if (!uncompressed) {
+				blockLength = Lz4Codec.decompress(compressedBlock, 0, dataLength, block, 0, block.length);
+			}
+
+			if ((flags & FLAG_CONTENT_CHECKSUM) != 0) {
+				contentHash.update(block, 0, blockLength);
+			}
+
+			blockPosition = 0;
+			return true;
+		}
+
+		private int readAtMost(byte[] buf, int len) throws IOException {
+			int off = 0;
+
+			while (off < len) {
+				int read = in.read(buf, off, len - off);
+
+				if (read == -1) {
+					break;
+				}
+
+				off += read;
+			}
+
+			return off;
+		}
+
+		private void readFully(byte[] buf, int len) throws IOException {
+			readFully(buf, 0, len);
+		}
+
+		private void readFully(byte[] buf, int off, int len) throws IOException {
+			while (len > 0) {
+				int read = in.read(buf, off, len);
+
+				if (read == -1) {
+					throw new EOFException("Unexpected end of LZ4 stream.");
+				}
+
+				off += read;
+				len -= read;
+			}
+		}
+
+		private void skipFully(long len) throws IOException {
+			while (len > 0) {
+				long skipped = in.skip(len);
+
+				if (skipped <= 0) {
+					if (in.read() == -1) {
+						throw new EOFException("Unexpected end of LZ4 stream in skippable frame.");
+					}
+
+					skipped = 1;
+				}
+
+				len -= skipped;
+			}
+		}
+	}
+}
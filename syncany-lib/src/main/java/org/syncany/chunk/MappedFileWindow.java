@@ -0,0 +1,174 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The mapped file window provides read access to a (potentially very large) file
+ * via a sliding, memory-mapped window. It is used by the {@link Chunker}s' mapped
+ * chunking mode to avoid copying the file contents through the Java heap. 
+ * 
+ * <p>Whenever a requested region is not fully covered by the current window,
+ * a new window starting at the requested position is mapped. The previous window
+ * is unmapped explicitly (if the JVM allows it), so that at most one window per file
+ * is mapped at a time, instead of leaving old windows alive until they are garbage
+ * collected. Buffers returned by {@link #slice(long, int) slice()} are therefore
+ * only valid until the next call to {@link #map(long, int) map()} or {@link #close()}, 
+ * and must be copied (see {@link Chunk#detach()}) if they are kept longer. 
+ * 
+ * <p>If the file is truncated while it is mapped, accessing the truncated region of a window
+ * raises an {@link InternalError} (SIGBUS) instead of an {@link IOException}. Callers
+ * must therefore catch this error around mapped reads.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+/*package*/ class MappedFileWindow {
+	private static final Logger logger = Logger.getLogger(MappedFileWindow.class.getSimpleName());
+	
+	public static final int DEFAULT_WINDOW_SIZE = 32*1024*1024;
+	
+	private File file;
+	private FileInputStream fileInputStream;
+	private FileChannel fileChannel;
+	private long fileSize;
+	private int windowSize;
+	
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long windowEnd;
+	
+	public MappedFileWindow(File file, int minWindowSize) throws IOException {
+		this.file = file;
+		this.fileInputStream = new FileInputStream(file);
+		this.fileChannel = fileInputStream.getChannel();
+		this.fileSize = fileChannel.size();
+		this.windowSize = Math.max(DEFAULT_WINDOW_SIZE, minWindowSize);
+		
+		this.window = null;
+		this.windowStart = 0;
+		this.windowEnd = 0;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	/**
+	 * Makes sure that the given region is mapped, and returns the current window. 
+	 * Bytes of the region can be accessed using absolute <tt>get(int)</tt> calls 
+	 * at index <tt>position - {@link #getWindowStart()}</tt>.
+	 */
+	public MappedByteBuffer map(long position, int length) throws IOException {
+		if (window == null || position < windowStart || position + length > windowEnd) {
+			long newWindowSize = Math.min(windowSize, fileSize - position);
+			
+			unmap(window);
+			window = null;
+			
+			window = fileChannel.map(MapMode.READ_ONLY, position, newWindowSize);
+			windowStart = position;
+			windowEnd = position + newWindowSize;
+		}
+		
+		return window;
+	}
+	
+	public long getWindowStart() {
+		return windowStart;
+	}
+	
+	/**
+	 * Returns a read-only buffer for the given region of the file. The buffer's
+	 * position is zero, and its limit is the given length. 
+	 */
+	public ByteBuffer slice(long position, int length) throws IOException {
+		ByteBuffer slice = map(position, length).duplicate();
+		
+		slice.position((int) (position - windowStart));
+		slice.limit((int) (position - windowStart) + length);
+		
+		return slice.slice();
+	}
+	
+	/**
+	 * Unmaps the current window and closes the file. After calling this method,
+	 * none of the buffers returned by this window must be accessed anymore.
+	 */
+	public void close() {
+		unmap(window);
+		window = null;
+		
+		try { fileInputStream.close(); }
+		catch (Exception e) { /* Not necessary */ }
+	}
+	
+	/**
+	 * Releases the given mapping immediately instead of waiting for the garbage collector.
+	 * Java offers no public API for this, so the cleaner is invoked via reflection; on newer JVMs
+	 * through <tt>sun.misc.Unsafe.invokeCleaner()</tt>, on older JVMs through the buffer's
+	 * <tt>cleaner()</tt>. If neither is available, the mapping is left to the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			
+			invokeCleanerMethod.invoke(unsafeField.get(null), buffer);
+		}
+		catch (NoSuchMethodException e) {
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				
+				Object cleaner = cleanerMethod.invoke(buffer);
+				
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+			catch (Exception e2) {
+				logger.log(Level.FINE, "Cannot unmap window explicitly; leaving it to the garbage collector.", e2);
+			}
+		}
+		catch (Exception e) {
+			logger.log(Level.FINE, "Cannot unmap window explicitly; leaving it to the garbage collector.", e);
+		}
+	}
+}
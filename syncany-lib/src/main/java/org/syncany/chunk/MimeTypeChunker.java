@@ -23,6 +23,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -71,6 +72,15 @@ public class MimeTypeChunker extends Chunker {
 		this.delegatedChunker = null;
 	}
 
+	/**
+	 * The mime type chunker wraps two other chunkers and can only be instantiated
+	 * via its constructor. This method always throws an exception. 
+	 */
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		throw new Exception("Mime type chunker cannot be initialized from settings.");
+	}
+	
 	@Override
 	public ChunkEnumeration createChunks(File file) throws IOException {
 		String mimeType = Files.probeContentType(Paths.get(file.getAbsolutePath()));
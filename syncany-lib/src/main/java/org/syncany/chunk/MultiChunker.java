@@ -143,6 +143,21 @@ public abstract class MultiChunker {
 	 */
 	public abstract MultiChunk createMultiChunk(File file) throws IOException;
 
+	/**
+	 * Open existing multichunk in <b>read mode</b> using a {@link RandomAccessInput}, typically
+	 * a transformed multichunk file that can be decoded in parts.
+	 * 
+	 * <p>Implementations that do not support random access inputs, or that do not recognize
+	 * the format of the given input, return <tt>null</tt>. Callers must then fall back to 
+	 * untransforming the whole multichunk and use {@link #createMultiChunk(File)}.
+	 * 
+	 * @param input Random access input to initialize an existing multichunk for read-operations only
+	 * @return Returns an existing multichunk object that allows read operations only, or <tt>null</tt>
+	 */
+	public MultiChunk createMultiChunk(RandomAccessInput input) throws IOException {
+		return null;
+	}
+
 	/**
 	 * Returns a comprehensive string representation of a multichunker
 	 */
@@ -0,0 +1,307 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.syncany.chunk.GzipTransformer.GZIPInputStreamEx;
+import org.syncany.chunk.GzipTransformer.GZIPOutputStreamEx;
+
+/**
+ * Implements a {@link Transformer} that compresses the output stream using multiple
+ * threads, similar to <tt>pigz</tt>.
+ *
+ * <p>The output stream is split into blocks of a fixed size. Each block is compressed
+ * independently as a complete Gzip member by a pool of worker threads, and the members
+ * are written in order. The result is a standard multi-member Gzip stream, which can be
+ * read by the {@link GzipTransformer} (and by <tt>gunzip</tt>). Because blocks do not share
+ * a dictionary, the compression ratio is slightly worse than with a single stream.
+ *
+ * <p>All output streams created by one transformer share one thread pool. It is created when
+ * the first stream is created, and its threads terminate after being idle for
+ * {@link #IDLE_THREAD_TIMEOUT_SECONDS} seconds, so an unused transformer holds no threads.
+ *
+ * <p>Settings (all optional):
+ * <ul>
+ *  <li><tt>level</tt>: Deflate level 1-9 (default: {@link Deflater#DEFAULT_COMPRESSION})</li>
+ *  <li><tt>threads</tt>: Number of compression threads (default: number of processors)</li>
+ *  <li><tt>size</tt>: Block size in KB (default: 256)</li>
+ * </ul>
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ParallelGzipTransformer extends Transformer {
+	public static final String TYPE = "parallel-gzip";
+
+	public static final String PROPERTY_LEVEL = "level";
+	public static final String PROPERTY_THREADS = "threads";
+	public static final String PROPERTY_BLOCK_SIZE = "size";
+
+	public static final int DEFAULT_BLOCK_SIZE = 256*1024;
+	public static final int IDLE_THREAD_TIMEOUT_SECONDS = 30;
+	public static final String THREAD_NAME_PREFIX = "ParallelGzip-";
+
+	private int level;
+	private int threadCount;
+	private int blockSize;
+	private ExecutorService executor;
+
+	public ParallelGzipTransformer() {
+		this(Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, null);
+	}
+
+	public ParallelGzipTransformer(Transformer nextTransformer) {
+		this(Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, nextTransformer);
+	}
+
+	public ParallelGzipTransformer(int level, int threadCount, int blockSize, Transformer nextTransformer) {
+		super(nextTransformer);
+
+		this.level = level;
+		this.threadCount = Math.max(1, threadCount);
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		level = parseIntProperty(settings, PROPERTY_LEVEL, level);
+		threadCount = parseIntProperty(settings, PROPERTY_THREADS, threadCount);
+		blockSize = parseIntProperty(settings, PROPERTY_BLOCK_SIZE, blockSize/1024) * 1024;
+
+		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_LEVEL+"' must be between 1 and 9.");
+		}
+
+		if (threadCount <= 0 || blockSize <= 0) {
+			throw new IllegalArgumentException("Properties '"+PROPERTY_THREADS+"' and '"+PROPERTY_BLOCK_SIZE+"' must be positive integers.");
+		}
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException {
+		if (nextTransformer == null) {
+			return new ParallelGzipOutputStream(out, level, threadCount, blockSize, getExecutor());
+		}
+		else {
+			return new ParallelGzipOutputStream(nextTransformer.createOutputStream(out), level, threadCount, blockSize, getExecutor());
+		}
+	}
+
+	@Override
+	public InputStream createInputStream(InputStream in) throws IOException {
+		if (nextTransformer == null) {
+			return new GZIPInputStreamEx(in);
+		}
+		else {
+			return new GZIPInputStreamEx(nextTransformer.createInputStream(in));
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+			
+			threadPoolExecutor.allowCoreThreadTimeOut(true);
+			executor = threadPoolExecutor;
+		}
+
+		return executor;
+	}
+
+	@Override
+	public String toString() {
+		return (nextTransformer == null) ? "ParallelGzip" : "ParallelGzip-"+nextTransformer;
+	}
+
+	/**
+	 * Output stream that buffers written data into blocks, compresses each block
+	 * as a separate Gzip member in a thread pool and writes the compressed members
+	 * in the original order.
+	 *
+	 * <p>At most two blocks per thread are compressed or waiting to be written, which
+	 * limits the memory used by the stream. The thread pool belongs to the transformer
+	 * and may be shared with other streams, so it is not shut down when the stream is closed.
+	 */
+	private static class ParallelGzipOutputStream extends OutputStream {
+		private OutputStream out;
+		private int level;
+		private int maxPendingBlocks;
+
+		private ExecutorService executor;
+		private LinkedList<Future<byte[]>> pendingBlocks;
+
+		private byte[] block;
+		private int blockPosition;
+		private boolean blockWritten;
+		private boolean closed;
+
+		public ParallelGzipOutputStream(OutputStream out, int level, int threadCount, int blockSize, ExecutorService executor) {
+			this.out = out;
+			this.level = level;
+			this.maxPendingBlocks = 2*threadCount;
+
+			this.executor = executor;
+			this.pendingBlocks = new LinkedList<Future<byte[]>>();
+
+			this.block = new byte[blockSize];
+			this.blockPosition = 0;
+			this.blockWritten = false;
+			this.closed = false;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buf, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+
+			while (len > 0) {
+				int copyLength = Math.min(len, block.length - blockPosition);
+				System.arraycopy(buf, off, block, blockPosition, copyLength);
+
+				blockPosition += copyLength;
+				off += copyLength;
+				len -= copyLength;
+
+				if (blockPosition == block.length) {
+					submitBlock();
+				}
+			}
+		}
+
+		/**
+		 * Writes all blocks that have been submitted so far. The current (incomplete)
+		 * block is not compressed, so that flushing does not create tiny Gzip members.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+
+			while (!pendingBlocks.isEmpty()) {
+				writeNextPendingBlock();
+			}
+
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			try {
+				// Always write at least one member, so that empty input results in a valid Gzip stream
+				if (blockPosition > 0 || !blockWritten) {
+					submitBlock();
+				}
+
+				while (!pendingBlocks.isEmpty()) {
+					writeNextPendingBlock();
+				}
+
+				out.close();
+			}
+			finally {
+				closed = true;
+				
+				// Only cancel this stream's blocks (if it failed); the pool is shared
+				for (Future<byte[]> pendingBlock : pendingBlocks) {
+					pendingBlock.cancel(true);
+				}
+				
+				pendingBlocks.clear();
+			}
+		}
+
+		private void submitBlock() throws IOException {
+			final byte[] uncompressedBlock = block;
+			final int uncompressedLength = blockPosition;
+
+			pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					ByteArrayOutputStream compressedBlock = new ByteArrayOutputStream(uncompressedLength/2 + 64);
+
+					GZIPOutputStreamEx gzipOutputStream = new GZIPOutputStreamEx(compressedBlock, level);
+					gzipOutputStream.write(uncompressedBlock, 0, uncompressedLength);
+					gzipOutputStream.close();
+
+					return compressedBlock.toByteArray();
+				}
+			}));
+
+			block = new byte[block.length];
+			blockPosition = 0;
+			blockWritten = true;
+
+			while (pendingBlocks.size() >= maxPendingBlocks) {
+				writeNextPendingBlock();
+			}
+		}
+
+		private void writeNextPendingBlock() throws IOException {
+			try {
+				out.write(pendingBlocks.removeFirst().get());
+			}
+			catch (ExecutionException e) {
+				throw new IOException("Cannot compress block.", e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while compressing block.", e);
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = defaultThreadFactory.newThread(runnable);
+			thread.setName(THREAD_NAME_PREFIX + thread.getName());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+/**
+ * Rolling Rabin fingerprint over a sliding window, as used by LBFS. The fingerprint of
+ * a window is the window's bytes interpreted as a polynomial over GF(2), modulo an
+ * irreducible polynomial <i>P</i> of degree 53.
+ *
+ * <p>Appending a byte and removing the oldest byte of the window are implemented with
+ * two precomputed lookup tables: <tt>T</tt> reduces the bits shifted beyond the degree
+ * of <i>P</i>, and <tt>U</tt> holds the contribution of a byte at the oldest position
+ * of the window. The <tt>U</tt> table depends on the window size, and is recomputed
+ * if {@link #check(byte[], int, int) check()} is called with a different length.
+ *
+ * @see <a href="http://www.xmailserver.org/rabin.pdf">Rabin fingerprinting</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class RabinFingerprinter extends Fingerprinter {
+    /**
+     * Irreducible polynomial of degree 53 (used by LBFS).
+     */
+    public static final long POLYNOMIAL = 0x3DA3358B4DC173L;
+
+    private static final int DEGREE = 53;
+    private static final int SHIFT = DEGREE - 8;
+    private static final long[] T = createShiftTable();
+
+    private long[] U;
+    private byte[] window;
+    private int windowPos;
+    private long fingerprint;
+
+    public RabinFingerprinter() {
+        this.U = null;
+        this.window = null;
+        this.windowPos = 0;
+        this.fingerprint = 0;
+    }
+
+    @Override
+    public int getValue() {
+        return (int) fingerprint;
+    }
+
+    @Override
+    public void reset() {
+        fingerprint = 0;
+        windowPos = 0;
+
+        if (window != null) {
+            for (int i = 0; i < window.length; i++) {
+                window[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void roll(byte bt) {
+        byte oldest = window[windowPos];
+        window[windowPos] = bt;
+
+        if (++windowPos == window.length) {
+            windowPos = 0;
+        }
+
+        fingerprint = append(fingerprint ^ U[oldest & 0xff], bt);
+    }
+
+    @Override
+    public int rollAll(byte[] buf, int off, int len, int divisor) {
+        final byte[] window = this.window;
+        final long[] U = this.U;
+
+        long fingerprint = this.fingerprint;
+        int windowPos = this.windowPos;
+
+        int breakpoint = -1;
+        int end = off + len;
+
+        for (int i = off; i < end; i++) {
+            byte bt = buf[i];
+            byte oldest = window[windowPos];
+            window[windowPos] = bt;
+
+            if (++windowPos == window.length) {
+                windowPos = 0;
+            }
+
+            fingerprint ^= U[oldest & 0xff];
+            fingerprint = ((fingerprint << 8) | (bt & 0xff)) ^ T[(int) (fingerprint >>> SHIFT)];
+
+            if ((((int) fingerprint) % divisor) == divisor-1) {
+                breakpoint = i;
+                break;
+            }
+        }
+
+        this.fingerprint = fingerprint;
+        this.windowPos = windowPos;
+
+        return breakpoint;
+    }
+
+    @Override
+    public void check(byte[] buf, int off, int len) {
+        if (window == null || window.length != len) {
+            window = new byte[len];
+            U = createWindowTable(len);
+        }
+
+        reset();
+
+        for (int i = off; i < off+len; i++) {
+            roll(buf[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Rabin";
+    }
+
+    /**
+     * Appends a byte to the given fingerprint without removing any byte.
+     */
+    private static long append(long fingerprint, int bt) {
+        return ((fingerprint << 8) | (bt & 0xff)) ^ T[(int) (fingerprint >>> SHIFT)];
+    }
+
+    /**
+     * Creates the table <tt>T[j] = (j * x^53 mod P) + j * x^53</tt>, which is XOR-ed to
+     * a fingerprint shifted by 8 bits in order to remove the top byte <tt>j</tt> and add
+     * its remainder modulo <i>P</i>.
+     */
+    private static long[] createShiftTable() {
+        long[] shiftTable = new long[256];
+
+        for (int j = 0; j < 256; j++) {
+            long value = (long) j << DEGREE;
+            long remainder = value;
+
+            for (int bit = DEGREE+7; bit >= DEGREE; bit--) {
+                if (((remainder >>> bit) & 1) == 1) {
+                    remainder ^= POLYNOMIAL << (bit-DEGREE);
+                }
+            }
+
+            shiftTable[j] = remainder ^ value;
+        }
+
+        return shiftTable;
+    }
+
+    /**
+     * Creates the table <tt>U[j] = j * x^(8*(windowSize-1)) mod P</tt>, i.e. the
+     * fingerprint of the byte <tt>j</tt> followed by <tt>windowSize-1</tt> zero bytes.
+     */
+    private static long[] createWindowTable(int windowSize) {
+        long[] windowTable = new long[256];
+
+        for (int j = 0; j < 256; j++) {
+            long value = append(0, j);
+
+            for (int i = 1; i < windowSize; i++) {
+                value = append(value, 0);
+            }
+
+            windowTable[j] = value;
+        }
+
+        return windowTable;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Provides positional read access to the (untransformed) contents of a multichunk.
+ *
+ * <p>Implementations are either backed by a plain file, or by a transformed file that
+ * can be decoded in parts, see {@link Transformer#createRandomAccessInput(java.io.File)
+ * Transformer.createRandomAccessInput()}. Multichunks opened with
+ * {@link MultiChunker#createMultiChunk(RandomAccessInput)} read from this input.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface RandomAccessInput extends Closeable {
+	/**
+	 * Returns the length of the untransformed contents in bytes.
+	 */
+	public long length() throws IOException;
+
+	/**
+	 * Reads bytes starting at the given position until the buffer has no remaining
+	 * space left. The buffer is not flipped.
+	 *
+	 * @throws java.io.EOFException If the end of the contents is reached before the buffer is full
+	 */
+	public void readFully(ByteBuffer buffer, long position) throws IOException;
+}
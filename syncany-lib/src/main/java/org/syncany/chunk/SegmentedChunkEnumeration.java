@@ -0,0 +1,317 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+
+/**
+ * The segmented chunk enumeration chunks a single large file using multiple threads.
+ * It requires a {@link Chunker#isContentDefined() content-defined} chunker.
+ *
+ * <p>The file is split into segments of a fixed size. Each segment is chunked by a worker,
+ * starting at the segment's first byte as if a chunk boundary was found there, until the
+ * first chunk that ends at or beyond the next segment. These speculative chunks are then
+ * merged in the calling thread: Because boundaries of a content-defined chunker only depend
+ * on the content after the previous boundary, the chunks of a segment can be adopted as
+ * soon as one of them starts exactly at the end of the previously emitted chunk. Until
+ * then, the file is chunked sequentially from that position (re-synchronization), which
+ * typically only takes a few chunks.
+ *
+ * <p>The emitted chunks are therefore identical to the chunks of a sequential run of
+ * {@link Chunker#createChunks(File)}. The file checksum is calculated from the emitted
+ * chunks and attached to the last chunk.
+ *
+ * <p>Only a limited number of segments is chunked ahead of the calling thread.
+ */
+/*package*/ class SegmentedChunkEnumeration implements ChunkEnumeration {
+	private static final Logger logger = Logger.getLogger(SegmentedChunkEnumeration.class.getSimpleName());
+
+	private Chunker chunker;
+	private File file;
+	private long fileSize;
+	private long segmentSize;
+	private int segmentCount;
+	private int maxScheduledSegments;
+
+	private ExecutorService executor;
+	private Map<Integer, Future<Segment>> scheduledSegments;
+	private int nextScheduledSegmentIndex;
+
+	private Segment currentSegment;
+	private int currentSegmentIndex;
+	private int currentChunkIndex;
+	private boolean synced;
+	private ChunkEnumeration resyncEnumeration;
+
+	private long position;
+	private MessageDigest fileDigest;
+	private Chunk nextChunk;
+	private boolean closed;
+
+	public SegmentedChunkEnumeration(Chunker chunker, File file, long segmentSize, ExecutorService executor, int maxScheduledSegments) throws IOException {
+		this.chunker = chunker;
+		this.file = file;
+		this.fileSize = file.length();
+		this.segmentSize = segmentSize;
+		this.segmentCount = (int) Math.max(1, (fileSize + segmentSize - 1) / segmentSize);
+		this.maxScheduledSegments = Math.max(1, maxScheduledSegments);
+
+		this.executor = executor;
+		this.scheduledSegments = new HashMap<Integer, Future<Segment>>();
+		this.nextScheduledSegmentIndex = 0;
+
+		this.currentSegment = null;
+		this.currentSegmentIndex = -1;
+		this.currentChunkIndex = 0;
+		this.synced = false;
+		this.resyncEnumeration = null;
+
+		this.position = 0;
+		this.nextChunk = null;
+		this.closed = false;
+
+		try {
+			this.fileDigest = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
+		}
+		catch (Exception e) {
+			throw new IOException("Cannot create file digest for chunker " + chunker, e);
+		}
+
+		scheduleSegments();
+	}
+
+	@Override
+	public boolean hasMoreElements() {
+		if (closed) {
+			return false;
+		}
+
+		if (nextChunk == null) {
+			nextChunk = nextMergedChunk();
+
+			if (nextChunk == null) {
+				close();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public Chunk nextElement() {
+		if (!hasMoreElements()) {
+			return null;
+		}
+
+		Chunk chunk = nextChunk;
+		chunk.updateDigest(fileDigest);
+
+		// Look ahead to determine whether this is the last chunk
+		nextChunk = nextMergedChunk();
+
+		if (nextChunk == null) {
+			close();
+			return chunk.withFileChecksum(fileDigest.digest());
+		}
+		else {
+			return chunk.withFileChecksum(null);
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		for (Future<Segment> scheduledSegment : scheduledSegments.values()) {
+			scheduledSegment.cancel(true);
+		}
+
+		scheduledSegments.clear();
+		closeResyncEnumeration();
+	}
+
+	private Chunk nextMergedChunk() {
+		try {
+			while (true) {
+				// Emit chunks of synchronized segment
+				if (synced) {
+					if (currentChunkIndex < currentSegment.chunks.size()) {
+						return emit(currentSegment.chunks.get(currentChunkIndex++));
+					}
+					else if (currentSegment.endOfFile) {
+						return null;
+					}
+					else {
+						synced = false;
+					}
+				}
+
+				// Find the segment that contains the current position
+				while (currentSegment == null || (position >= currentSegment.end && !currentSegment.endOfFile)) {
+					currentSegment = takeSegment(++currentSegmentIndex);
+				}
+
+				// Try to synchronize with this segment
+				int chunkIndex = currentSegment.indexOfChunkStart(position);
+
+				if (chunkIndex >= 0) {
+					synced = true;
+					currentChunkIndex = chunkIndex;
+
+					closeResyncEnumeration();
+					continue;
+				}
+
+				// Not synchronized: chunk sequentially from the current position
+				if (resyncEnumeration == null) {
+					logger.log(Level.FINE, "Re-synchronizing chunk boundaries of file {0} at position {1}", new Object[] { file, position });
+					resyncEnumeration = chunker.createChunks(file, position);
+				}
+
+				if (!resyncEnumeration.hasMoreElements()) {
+					return null;
+				}
+
+				Chunk chunk = resyncEnumeration.nextElement();
+				return (chunk != null) ? emit(chunk.detach()) : null;
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot chunk file " + file, e);
+		}
+	}
+
+	private Chunk emit(Chunk chunk) {
+		position += chunk.getSize();
+		return chunk;
+	}
+
+	private Segment takeSegment(int segmentIndex) throws IOException {
+		if (segmentIndex >= segmentCount) {
+			throw new IOException("File " + file + " changed while chunking; no segment left at position " + position);
+		}
+
+		Future<Segment> segmentFuture = scheduledSegments.remove(segmentIndex);
+		scheduleSegments();
+
+		try {
+			return segmentFuture.get();
+		}
+		catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for segment " + segmentIndex + " of file " + file, e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Cannot chunk segment " + segmentIndex + " of file " + file, e.getCause());
+		}
+	}
+
+	private void scheduleSegments() {
+		while (nextScheduledSegmentIndex < segmentCount && nextScheduledSegmentIndex <= currentSegmentIndex + maxScheduledSegments) {
+			final int segmentIndex = nextScheduledSegmentIndex++;
+
+			scheduledSegments.put(segmentIndex, executor.submit(new Callable<Segment>() {
+				@Override
+				public Segment call() throws Exception {
+					return chunkSegment(segmentIndex);
+				}
+			}));
+		}
+	}
+
+	private Segment chunkSegment(int segmentIndex) throws IOException {
+		long segmentStart = segmentIndex * segmentSize;
+		long nextSegmentStart = (segmentIndex < segmentCount-1) ? segmentStart + segmentSize : Long.MAX_VALUE;
+
+		Segment segment = new Segment(segmentStart);
+		ChunkEnumeration chunksEnum = chunker.createChunks(file, segmentStart);
+
+		try {
+			while (segment.end < nextSegmentStart && chunksEnum.hasMoreElements()) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new IOException("Interrupted while chunking segment " + segmentIndex + " of file " + file);
+				}
+
+				Chunk chunk = chunksEnum.nextElement();
+
+				if (chunk == null) {
+					break;
+				}
+
+				segment.add(chunk.detach());
+				chunk.release();
+			}
+
+			segment.endOfFile = !chunksEnum.hasMoreElements();
+			return segment;
+		}
+		finally {
+			chunksEnum.close();
+		}
+	}
+
+	private void closeResyncEnumeration() {
+		if (resyncEnumeration != null) {
+			resyncEnumeration.close();
+			resyncEnumeration = null;
+		}
+	}
+
+	/**
+	 * A segment holds the speculative chunks of one segment, i.e. the chunks
+	 * found when chunking starts at the segment's first byte.
+	 */
+	private static class Segment {
+		private List<Chunk> chunks;
+		private List<Long> chunkStarts;
+		private long end;
+		private boolean endOfFile;
+
+		public Segment(long start) {
+			this.chunks = new ArrayList<Chunk>();
+			this.chunkStarts = new ArrayList<Long>();
+			this.end = start;
+			this.endOfFile = false;
+		}
+
+		public void add(Chunk chunk) {
+			chunks.add(chunk);
+			chunkStarts.add(end);
+
+			end += chunk.getSize();
+		}
+
+		public int indexOfChunkStart(long position) {
+			return chunkStarts.indexOf(position);
+		}
+	}
+}
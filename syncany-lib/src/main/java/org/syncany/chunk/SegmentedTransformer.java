@@ -0,0 +1,634 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implements a {@link Transformer} that applies the rest of the transformer chain
+ * (e.g. compression and encryption) to fixed-size segments of the stream instead
+ * of the stream as a whole. Each segment can therefore be untransformed independently,
+ * which allows reading single chunks of a transformed multichunk file without
+ * untransforming the entire multichunk (see {@link #createRandomAccessInput(File)}).
+ *
+ * <p>The segmented transformer must be the first transformer of the chain. Its format is:
+ *
+ * <pre>
+ *   header   := MAGIC (4 bytes) VERSION (1 byte) segment-size (4 bytes)
+ *   segments := (transformed-length (4 bytes) transformed-segment)* 0x00000000
+ *   index    := plain-length (8 bytes) segment-count (4 bytes) segment-offset (8 bytes)*
+ *   trailer  := index-offset (8 bytes) INDEX_MAGIC (4 bytes)
+ *
+ *   transformed-segment := next-transformer(segment-number (4 bytes) flags (1 byte) segment-data)
+ * </pre>
+ *
+ * <p>The segment number and the flags are transformed (and thereby authenticated by a cipher
+ * transformer) together with the data, so segments cannot be reordered unnoticed. The last
+ * segment always carries the {@link #FLAG_LAST_SEGMENT last segment flag} (an empty stream
+ * consists of one empty last segment), and all other segments are exactly <tt>segment-size</tt>
+ * bytes long. A stream that is cut off after a segment and re-terminated with an end marker or
+ * a forged index is therefore detected once its end is read. The index is not transformed; it
+ * reveals the transformed length of each segment.
+ *
+ * <p>Streams that do not start with the {@link #MAGIC magic bytes} are passed to the next
+ * transformer as a whole, so that a repository can switch to the segmented transformer
+ * and still read existing multichunks.
+ *
+ * <p>Settings (optional): <tt>size</tt>, the segment size in KB (default: 64, maximum: 16384).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SegmentedTransformer extends Transformer {
+	public static final String TYPE = "segmented";
+	public static final String PROPERTY_SEGMENT_SIZE = "size";
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64*1024;
+	public static final int MAX_SEGMENT_SIZE = 16*1024*1024;
+
+	public static final byte[] MAGIC = new byte[] { 'S', 'y', 'S', 'G' };
+	public static final byte[] INDEX_MAGIC = new byte[] { 'S', 'y', 'S', 'I' };
+	public static final byte VERSION = 2;
+	public static final int FLAG_LAST_SEGMENT = 0x01;
+
+	private static final int HEADER_SIZE = MAGIC.length + 1 + 4;
+	private static final int TRAILER_SIZE = 8 + INDEX_MAGIC.length;
+	private static final int MAX_SEGMENT_OVERHEAD = 16*1024;
+	private static final int SEGMENT_CACHE_SIZE = 4;
+
+	private int segmentSize;
+
+	public SegmentedTransformer() {
+		this(DEFAULT_SEGMENT_SIZE, null);
+	}
+
+	public SegmentedTransformer(Transformer nextTransformer) {
+		this(DEFAULT_SEGMENT_SIZE, nextTransformer);
+	}
+
+	public SegmentedTransformer(int segmentSize, Transformer nextTransformer) {
+		super(nextTransformer);
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		int segmentSizeKb = parseIntProperty(settings, PROPERTY_SEGMENT_SIZE, segmentSize/1024);
+
+		if (segmentSizeKb <= 0 || segmentSizeKb > MAX_SEGMENT_SIZE/1024) {
+			throw new IllegalArgumentException("Property '"+PROPERTY_SEGMENT_SIZE+"' must be a positive integer, at most " + MAX_SEGMENT_SIZE/1024 + ".");
+		}
+
+		segmentSize = segmentSizeKb * 1024;
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException {
+		return new SegmentedOutputStream(out);
+	}
+
+	@Override
+	public InputStream createInputStream(InputStream in) throws IOException {
+		PushbackInputStream pushbackInputStream = new PushbackInputStream(in, MAGIC.length);
+
+		byte[] magic = new byte[MAGIC.length];
+		int magicLength = 0;
+
+		while (magicLength < magic.length) {
+			int read = pushbackInputStream.read(magic, magicLength, magic.length - magicLength);
+
+			if (read == -1) {
+				break;
+			}
+
+			magicLength += read;
+		}
+
+		if (magicLength == MAGIC.length && Arrays.equals(MAGIC, magic)) {
+			return new SegmentedInputStream(pushbackInputStream);
+		}
+		else {
+			pushbackInputStream.unread(magic, 0, magicLength);
+			return createNextInputStream(pushbackInputStream);
+		}
+	}
+
+	@Override
+	public boolean supportsRandomAccessInput() {
+		return true;
+	}
+
+	@Override
+	public RandomAccessInput createRandomAccessInput(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+		try {
+			byte[] magic = new byte[MAGIC.length];
+
+			if (randomAccessFile.length() < HEADER_SIZE + TRAILER_SIZE || randomAccessFile.read(magic) != magic.length || !Arrays.equals(MAGIC, magic)) {
+				randomAccessFile.close();
+				return null;
+			}
+
+			return new SegmentedFile(randomAccessFile);
+		}
+		catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (nextTransformer == null) ? "Segmented" : "Segmented-"+nextTransformer;
+	}
+
+	private InputStream createNextInputStream(InputStream in) throws IOException {
+		return (nextTransformer == null) ? in : nextTransformer.createInputStream(in);
+	}
+
+	/**
+	 * Returns the maximum length of a transformed segment for the given segment size. The
+	 * bound allows for the headers and the worst-case expansion of the next transformers
+	 * (e.g. compressing incompressible data), and protects readers from allocating huge
+	 * buffers for corrupt or forged segment lengths.
+	 */
+	private static int getMaxTransformedSegmentLength(int segmentSize) {
+		return segmentSize + segmentSize/16 + MAX_SEGMENT_OVERHEAD;
+	}
+
+	private static boolean isValidSegmentSize(int segmentSize) {
+		return segmentSize > 0 && segmentSize <= MAX_SEGMENT_SIZE;
+	}
+
+	private byte[] transformSegment(int segmentNumber, boolean lastSegment, byte[] segment, int segmentLength) throws IOException {
+		ByteArrayOutputStream transformedSegment = new ByteArrayOutputStream(segmentLength + 256);
+		OutputStream segmentOutputStream = (nextTransformer == null) ? transformedSegment : nextTransformer.createOutputStream(transformedSegment);
+
+		DataOutputStream dataOutputStream = new DataOutputStream(segmentOutputStream);
+		dataOutputStream.writeInt(segmentNumber);
+		dataOutputStream.writeByte((lastSegment) ? FLAG_LAST_SEGMENT : 0);
+		dataOutputStream.write(segment, 0, segmentLength);
+		dataOutputStream.close();
+
+		return transformedSegment.toByteArray();
+	}
+
+	/**
+	 * Untransforms a single segment and verifies its segment number and flags. Only
+	 * the last segment may be shorter than <tt>segmentSize</tt>.
+	 */
+	private Segment untransformSegment(int expectedSegmentNumber, int segmentSize, byte[] transformedSegment) throws IOException {
+		DataInputStream segmentInputStream = new DataInputStream(createNextInputStream(new ByteArrayInputStream(transformedSegment)));
+
+		try {
+			int segmentNumber = segmentInputStream.readInt();
+
+			if (segmentNumber != expectedSegmentNumber) {
+				throw new IOException("Invalid segment: expected segment number " + expectedSegmentNumber + ", got " + segmentNumber);
+			}
+
+			int flags = segmentInputStream.readUnsignedByte();
+
+			if ((flags & ~FLAG_LAST_SEGMENT) != 0) {
+				throw new IOException("Invalid segment " + segmentNumber + ": unknown flags " + flags);
+			}
+
+			byte[] segment = new byte[segmentSize];
+			int segmentLength = 0;
+
+			while (segmentLength < segment.length) {
+				int read = segmentInputStream.read(segment, segmentLength, segment.length - segmentLength);
+
+				if (read == -1) {
+					break;
+				}
+
+				segmentLength += read;
+			}
+
+			if (segmentInputStream.read() != -1) {
+				throw new IOException("Invalid segment " + segmentNumber + ": segment is longer than the segment size.");
+			}
+
+			boolean lastSegment = (flags & FLAG_LAST_SEGMENT) != 0;
+
+			if (!lastSegment && segmentLength != segment.length) {
+				throw new IOException("Invalid segment " + segmentNumber + ": only the last segment may be shorter than the segment size.");
+			}
+
+			return new Segment((segmentLength == segment.length) ? segment : Arrays.copyOf(segment, segmentLength), lastSegment);
+		}
+		finally {
+			segmentInputStream.close();
+		}
+	}
+
+	/**
+	 * An untransformed segment, and whether the writer marked it as the last segment.
+	 */
+	private static class Segment {
+		private byte[] data;
+		private boolean lastSegment;
+
+		public Segment(byte[] data, boolean lastSegment) {
+			this.data = data;
+			this.lastSegment = lastSegment;
+		}
+	}
+
+	/**
+	 * Buffers one segment at a time, transforms it with the rest of the transformer chain
+	 * and writes it to the underlying stream. A full segment is only written once more data
+	 * arrives, because the last segment must be flagged as such when the stream is closed.
+	 * The index is written when the stream is closed.
+	 */
+	private class SegmentedOutputStream extends OutputStream {
+		private DataOutputStream out;
+		private long offset;
+
+		private byte[] segment;
+		private int segmentPosition;
+		private ByteArrayOutputStream segmentOffsets;
+		private int segmentCount;
+		private long plainLength;
+
+		private boolean closed;
+
+		public SegmentedOutputStream(OutputStream out) throws IOException {
+			this.out = new DataOutputStream(out);
+
+			this.segment = new byte[segmentSize];
+			this.segmentPosition = 0;
+			this.segmentOffsets = new ByteArrayOutputStream();
+			this.segmentCount = 0;
+			this.plainLength = 0;
+
+			this.closed = false;
+
+			this.out.write(MAGIC);
+			this.out.writeByte(VERSION);
+			this.out.writeInt(segmentSize);
+
+			this.offset = HEADER_SIZE;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buf, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed.");
+			}
+
+			while (len > 0) {
+				if (segmentPosition == segment.length) {
+					writeSegment(false);
+				}
+
+				int copyLength = Math.min(len, segment.length - segmentPosition);
+				System.arraycopy(buf, off, segment, segmentPosition, copyLength);
+
+				segmentPosition += copyLength;
+				off += copyLength;
+				len -= copyLength;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			// Always written, even if empty, so that the end of the stream is authenticated
+			writeSegment(true);
+
+			// End of segments
+			out.writeInt(0);
+			long indexOffset = offset + 4;
+
+			// Index and trailer
+			out.writeLong(plainLength);
+			out.writeInt(segmentCount);
+			segmentOffsets.writeTo(out);
+
+			out.writeLong(indexOffset);
+			out.write(INDEX_MAGIC);
+			out.close();
+
+			closed = true;
+		}
+
+		private void writeSegment(boolean lastSegment) throws IOException {
+			byte[] transformedSegment = transformSegment(segmentCount, lastSegment, segment, segmentPosition);
+
+			new DataOutputStream(segmentOffsets).writeLong(offset);
+
+			out.writeInt(transformedSegment.length);
+			out.write(transformedSegment);
+
+			offset += 4 + transformedSegment.length;
+			plainLength += segmentPosition;
+			segmentCount++;
+			segmentPosition = 0;
+		}
+	}
+
+	/**
+	 * Reads a segmented stream sequentially, untransforming one segment at a time.
+	 */
+	private class SegmentedInputStream extends InputStream {
+		private DataInputStream in;
+		private int segmentSize;
+
+		private byte[] segment;
+		private int segmentPosition;
+		private int segmentNumber;
+		private boolean eof;
+
+		public SegmentedInputStream(InputStream in) throws IOException {
+			this.in = new DataInputStream(in);
+
+			int version = this.in.readByte();
+
+			if (version != VERSION) {
+				throw new IOException("Unsupported segmented stream version " + version + ", expected " + VERSION);
+			}
+
+			this.segmentSize = this.in.readInt();
+
+			if (!isValidSegmentSize(segmentSize)) {
+				throw new IOException("Invalid segmented stream: invalid segment size " + segmentSize);
+			}
+
+			this.segment = new byte[0];
+			this.segmentPosition = 0;
+			this.segmentNumber = 0;
+			this.eof = false;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] singleByte = new byte[1];
+			int read = read(singleByte, 0, 1);
+
+			return (read == -1) ? -1 : singleByte[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			while (segmentPosition == segment.length) {
+				if (eof) {
+					return -1;
+				}
+
+				readSegment();
+			}
+
+			int readLength = Math.min(len, segment.length - segmentPosition);
+			System.arraycopy(segment, segmentPosition, buf, off, readLength);
+
+			segmentPosition += readLength;
+			return readLength;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private void readSegment() throws IOException {
+			int transformedLength = in.readInt();
+
+			if (transformedLength == 0) {
+				throw new IOException("Invalid segmented stream: end of segments before the last segment. Stream truncated?");
+			}
+			else if (transformedLength < 0 || transformedLength > getMaxTransformedSegmentLength(segmentSize)) {
+				throw new IOException("Invalid segment length " + transformedLength);
+			}
+
+			byte[] transformedSegment = new byte[transformedLength];
+			in.readFully(transformedSegment);
+
+			// The last segment may be shorter; its length is only known after untransforming
+			Segment untransformedSegment = untransformSegment(segmentNumber, segmentSize, transformedSegment);
+
+			segment = untransformedSegment.data;
+			segmentPosition = 0;
+			segmentNumber++;
+
+			if (untransformedSegment.lastSegment) {
+				if (in.readInt() != 0) {
+					throw new IOException("Invalid segmented stream: expected end of segments after the last segment.");
+				}
+
+				eof = true;
+			}
+		}
+	}
+
+	/**
+	 * Random access to a segmented file: Reads the index on creation, and untransforms
+	 * only the segments covering a requested range. The most recently used segments are
+	 * kept in memory, because consecutive reads typically hit the same segment.
+	 */
+	private class SegmentedFile implements RandomAccessInput {
+		private RandomAccessFile randomAccessFile;
+		private FileChannel fileChannel;
+
+		private int segmentSize;
+		private long plainLength;
+		private long[] segmentOffsets;
+		private long indexOffset;
+
+		private Map<Integer, byte[]> segmentCache;
+
+		public SegmentedFile(RandomAccessFile randomAccessFile) throws IOException {
+			this.randomAccessFile = randomAccessFile;
+			this.fileChannel = randomAccessFile.getChannel();
+
+			this.segmentCache = new LinkedHashMap<Integer, byte[]>(SEGMENT_CACHE_SIZE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+					return size() > SEGMENT_CACHE_SIZE;
+				}
+			};
+
+			readHeaderAndIndex();
+		}
+
+		@Override
+		public long length() {
+			return plainLength;
+		}
+
+		@Override
+		public void readFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				if (position >= plainLength) {
+					throw new EOFException("Unexpected end of segmented file at position " + position);
+				}
+
+				int segmentNumber = (int) (position / segmentSize);
+				int segmentPosition = (int) (position % segmentSize);
+
+				byte[] segment = getSegment(segmentNumber);
+				int copyLength = Math.min(buffer.remaining(), segment.length - segmentPosition);
+
+				buffer.put(segment, segmentPosition, copyLength);
+				position += copyLength;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			randomAccessFile.close();
+		}
+
+		private void readHeaderAndIndex() throws IOException {
+			long fileSize = fileChannel.size();
+
+			ByteBuffer header = read(0, HEADER_SIZE);
+			header.position(MAGIC.length);
+
+			int version = header.get();
+
+			if (version != VERSION) {
+				throw new IOException("Unsupported segmented file version " + version + ", expected " + VERSION);
+			}
+
+			segmentSize = header.getInt();
+
+			ByteBuffer trailer = read(fileSize - TRAILER_SIZE, TRAILER_SIZE);
+			indexOffset = trailer.getLong();
+
+			byte[] indexMagic = new byte[INDEX_MAGIC.length];
+			trailer.get(indexMagic);
+
+			if (!Arrays.equals(INDEX_MAGIC, indexMagic)) {
+				throw new IOException("Invalid segmented file: index not found. File incomplete?");
+			}
+
+			if (!isValidSegmentSize(segmentSize) || indexOffset < HEADER_SIZE + 4 || indexOffset + 12 > fileSize - TRAILER_SIZE) {
+				throw new IOException("Invalid segmented file: invalid segment size or index offset.");
+			}
+
+			ByteBuffer indexHeader = read(indexOffset, 12);
+			plainLength = indexHeader.getLong();
+			int segmentCount = indexHeader.getInt();
+
+			// The last segment is always written, so even an empty file has one segment
+			long expectedSegmentCount = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+
+			if (plainLength < 0 || segmentCount != expectedSegmentCount || indexOffset + 12 + 8L*segmentCount != fileSize - TRAILER_SIZE) {
+
+				throw new IOException("Invalid segmented file: index does not match file size.");
+			}
+
+			ByteBuffer index = read(indexOffset + 12, 8*segmentCount);
+			segmentOffsets = new long[segmentCount];
+
+			for (int i = 0; i < segmentCount; i++) {
+				segmentOffsets[i] = index.getLong();
+			}
+		}
+
+		/**
+		 * Returns the given segment from the cache, or reads and untransforms it. The index
+		 * is not authenticated, so the segment's last segment flag must match the segment
+		 * count of the index; this detects files that were truncated and given a new index.
+		 */
+		private byte[] getSegment(int segmentNumber) throws IOException {
+			byte[] segment = segmentCache.get(segmentNumber);
+
+			if (segment == null) {
+				long segmentOffset = segmentOffsets[segmentNumber];
+				long nextSegmentOffset = (segmentNumber+1 < segmentOffsets.length) ? segmentOffsets[segmentNumber+1] : indexOffset - 4;
+
+				int transformedLength = read(segmentOffset, 4).getInt();
+
+				if (transformedLength <= 0 || transformedLength > getMaxTransformedSegmentLength(segmentSize)
+						|| segmentOffset + 4 + transformedLength != nextSegmentOffset) {
+
+					throw new IOException("Invalid segmented file: length of segment " + segmentNumber + " does not match index.");
+				}
+
+				int expectedSegmentLength = (int) Math.min(segmentSize, plainLength - (long) segmentNumber*segmentSize);
+				byte[] transformedSegment = read(segmentOffset + 4, transformedLength).array();
+
+				Segment untransformedSegment = untransformSegment(segmentNumber, segmentSize, transformedSegment);
+				segment = untransformedSegment.data;
+
+				if (untransformedSegment.lastSegment != (segmentNumber == segmentOffsets.length - 1)) {
+					throw new IOException("Invalid segmented file: segment count of index does not match the last segment. File truncated?");
+				}
+
+				if (segment.length != expectedSegmentLength) {
+					throw new IOException("Invalid segmented file: segment " + segmentNumber + " has " + segment.length + " bytes, expected " + expectedSegmentLength);
+				}
+				segmentCache.put(segmentNumber, segment);
+			}
+
+			return segment;
+		}
+
+		private ByteBuffer read(long position, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+
+			while (buffer.hasRemaining()) {
+				int read = fileChannel.read(buffer, position + buffer.position());
+
+				if (read == -1) {
+					throw new EOFException("Unexpected end of segmented file.");
+				}
+			}
+
+			buffer.flip();
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+
+/**
+ * Chunk enumeration of a small file, i.e. of a file that consists of exactly one
+ * chunk (see {@link Chunker#getSmallFileThreshold()}). The file has already been read 
+ * and closed when the enumeration is created. 
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+/*package*/ class SmallFileChunkEnumeration implements ChunkEnumeration {
+	private Chunk chunk;
+	
+	public SmallFileChunkEnumeration(Chunk chunk) {
+		this.chunk = chunk;
+	}
+	
+	@Override
+	public boolean hasMoreElements() {
+		return chunk != null;
+	}
+
+	@Override
+	public Chunk nextElement() {
+		Chunk nextChunk = chunk;
+		chunk = null;
+		
+		return nextChunk;
+	}
+
+	@Override
+	public void close() {
+		chunk = null;
+	}
+}
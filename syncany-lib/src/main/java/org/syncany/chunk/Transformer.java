@@ -17,6 +17,7 @@
  */
 package org.syncany.chunk;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -91,6 +92,32 @@ public abstract class Transformer {
      */
     public abstract InputStream createInputStream(InputStream in) throws IOException;
     
+    /**
+     * Opens a transformed file for random read access, i.e. for reading parts of the
+     * untransformed contents without untransforming the whole file. 
+     * 
+     * <p>Only transformers that write independently decodable parts support this; the default 
+     * implementation returns <tt>null</tt>. Implementations also return <tt>null</tt> if the 
+     * given file was not written in a random access format.
+     * 
+     * @param file Transformed file, as written by an output stream of this transformer
+     * @return Returns a random access input of the untransformed contents, or <tt>null</tt> if not supported
+     * @throws IOException If the file cannot be read, or if it is corrupt
+     */
+    public RandomAccessInput createRandomAccessInput(File file) throws IOException {
+    	return null;
+    }
+    
+    /**
+     * Returns whether this transformer writes files that can be opened with 
+     * {@link #createRandomAccessInput(File)}. Callers can use this to decide whether
+     * a transformed file should be kept on disk, or whether it can be untransformed
+     * as a stream. The default implementation returns <tt>false</tt>.
+     */
+    public boolean supportsRandomAccessInput() {
+    	return false;
+    }
+    
     /**
      * An implementation of a transformer must override this method to identify the 
      * type of transformer and/or its settings.
@@ -125,6 +152,32 @@ public abstract class Transformer {
 		}		
 	}    
 
+    /**
+     * Parses an optional integer property of the given settings map. This method is used by
+     * the implementations to validate the settings passed to {@link #init(Map) init()}.
+     * 
+     * @return Returns the parsed value, or the given default value if the property is not set
+     * @throws IllegalArgumentException If the property cannot be parsed as integer
+     */
+    protected static int parseIntProperty(Map<String, String> settings, String property, int defaultValue) {
+    	String value = (settings != null) ? settings.get(property) : null;
+    	
+    	if (value == null) {
+    		return defaultValue;
+    	}
+    	
+    	try {
+    		return Integer.parseInt(value);
+    	}
+    	catch (NumberFormatException e) {
+    		throw new IllegalArgumentException("Property '"+property+"' could not be parsed as Integer.");
+    	}
+    }
+
+	public Transformer getNextTransformer() {
+		return nextTransformer;
+	}
+
 	public void setNextTransformer(Transformer nextTransformer) {
 		this.nextTransformer = nextTransformer;
 	}
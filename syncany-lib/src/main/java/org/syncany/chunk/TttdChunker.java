@@ -21,7 +21,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.security.MessageDigest;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,9 +60,17 @@ import java.util.logging.Logger;
 public class TttdChunker extends Chunker {   
     private static final Logger logger = Logger.getLogger(TttdChunker.class.getSimpleName());   
 
+    public static final String TYPE = "tttd";
+    
+    /**
+     * Optional property used by the config to select the {@link Fingerprinter}
+     * algorithm, e.g. <tt>Adler32</tt>, <tt>Rabin</tt> or <tt>Buzhash</tt>.
+     */
+    public static final String PROPERTY_FINGERPRINT = "fingerprint";
     public static final int DEFAULT_WINDOW_SIZE = 48; // like LBFS
     public static final String DEFAULT_DIGEST_ALG = "SHA1";
     public static final String DEFAULT_FINGERPRINT_ALG = "Adler32";
+    public static final int READ_BUFFER_SIZE = 64*1024;
     
     private int Tmin;
     private int Tmax;
@@ -70,6 +81,14 @@ public class TttdChunker extends Chunker {
     private String fingerprintAlgorithm;
     private String name;   
     
+    /**
+     * Creates a new TTTD chunker with the default window size, checksum and fingerprint
+     * algorithm. The chunker must be initialized using the {@link #init(Map) init()} method.
+     */
+    public TttdChunker() {
+    	// Nothing.
+    }
+    
     public TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize) {
         this(Tmin, Tmax, D, Ddash, windowSize, DEFAULT_DIGEST_ALG, DEFAULT_FINGERPRINT_ALG);
     }
@@ -87,12 +106,7 @@ public class TttdChunker extends Chunker {
      * LBFS: avg. chunk size = 1015 bytes --> Tmin = 460, Tmax = 2800, D = 540, Ddash = 270
      */
     public TttdChunker(int avgChunkSize, int windowSize, String digestAlg, String fingerprintAlg) {        
-        this(
-           /* Tmin */ (int) Math.round(460.0*avgChunkSize/1015.0), 
-           /* Tmax */ (int) Math.round(2800.0*avgChunkSize/1015.0),
-           /*   D  */ (int) Math.round(540.0*avgChunkSize/1015.0),
-           /*   D  */ (int) Math.round(270.0*avgChunkSize/1015.0), 
-           /* rest */ windowSize, digestAlg, fingerprintAlg, "TTTD-"+avgChunkSize+"-"+digestAlg+"-"+fingerprintAlg);              
+        initAvgChunkSize(avgChunkSize, windowSize, digestAlg, fingerprintAlg);              
     }
     
     public TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize, String digestAlg, String fingerprintAlg) {
@@ -100,6 +114,46 @@ public class TttdChunker extends Chunker {
     }
     
     private TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize, String digestAlg, String fingerprintAlg, String name) {
+        init(Tmin, Tmax, D, Ddash, windowSize, digestAlg, fingerprintAlg, name);
+    }
+    
+    /**
+     * Initializes the TTTD chunker using a settings map. 
+     * <br>
+     * Required settings are: 
+     * <ul>
+     *  <li> key: {@link Chunker#PROPERTY_SIZE}, value: average chunk size in bytes, integer encoded as String 
+     * </ul>
+     * 
+     * Optional settings are:
+     * <ul>
+     *  <li> key: {@link #PROPERTY_FINGERPRINT}, value: fingerprinting algorithm (default: {@link #DEFAULT_FINGERPRINT_ALG}) 
+     * </ul>
+     */
+    @Override
+    public void init(Map<String, String> settings) throws Exception {
+    	String fingerprintAlg = settings.get(PROPERTY_FINGERPRINT);
+    	
+    	if (fingerprintAlg == null) {
+    		fingerprintAlg = DEFAULT_FINGERPRINT_ALG;
+    	}
+    	else {
+    		Fingerprinter.getInstance(fingerprintAlg); // Fail early if algorithm does not exist
+    	}
+    	
+    	initAvgChunkSize(parseSizeProperty(settings), DEFAULT_WINDOW_SIZE, DEFAULT_DIGEST_ALG, fingerprintAlg);
+    }
+    
+    private void initAvgChunkSize(int avgChunkSize, int windowSize, String digestAlg, String fingerprintAlg) {
+        init(
+           /* Tmin */ (int) Math.round(460.0*avgChunkSize/1015.0), 
+           /* Tmax */ (int) Math.round(2800.0*avgChunkSize/1015.0),
+           /*   D  */ (int) Math.round(540.0*avgChunkSize/1015.0),
+           /*   D  */ (int) Math.round(270.0*avgChunkSize/1015.0), 
+           /* rest */ windowSize, digestAlg, fingerprintAlg, "TTTD-"+avgChunkSize+"-"+digestAlg+"-"+fingerprintAlg);
+    }
+    
+    private void init(int Tmin, int Tmax, int D, int Ddash, int windowSize, String digestAlg, String fingerprintAlg, String name) {
         this.Tmin = Tmin;
         this.Tmax = Tmax;
         this.D = D;
@@ -116,8 +170,41 @@ public class TttdChunker extends Chunker {
    
     @Override
     public ChunkEnumeration createChunks(File file) throws IOException {
-        return new TTTDEnumeration(new FileInputStream(file));
+    	if (isSmallFileChunkingEnabled(file)) {
+    		return createSmallFileChunks(file);
+    	}
+    	
+    	return createChunks(file, 0);
     }    
+    
+    @Override
+    public ChunkEnumeration createChunks(File file, long position) throws IOException {
+    	if (isMappedChunkingEnabled(file)) {
+    		return new MappedTTTDEnumeration(new MappedFileWindow(file, Tmax), position);
+    	}
+    	else {
+    		FileInputStream fileInputStream = new FileInputStream(file);
+    		
+    		if (position > 0) {
+    			fileInputStream.getChannel().position(position);
+    		}
+    		
+    		return new TTTDEnumeration(fileInputStream);
+    	}
+    }
+    
+    @Override
+    public boolean isContentDefined() {
+    	return true;
+    }
+    
+    /**
+     * Returns <i>Tmin</i>, because no breakpoints are possible before <i>Tmin</i>.
+     */
+    @Override
+    public long getSmallFileThreshold() {
+    	return Tmin;
+    }
 
 	@Override
 	public String getChecksumAlgorithm() {
@@ -129,30 +216,55 @@ public class TttdChunker extends Chunker {
         return name;
     }
     
+    /**
+     * The TTTD enumeration reads the underlying input stream in blocks of {@link TttdChunker#READ_BUFFER_SIZE}
+     * bytes and copies the bytes of each chunk into a chunk buffer of size <i>Tmax</i>. Chunk buffers
+     * are taken from a {@link ChunkBufferPool} and can be reused for later chunks once a chunk has
+     * been {@link Chunk#release() released}.
+     * 
+     * <p>Note: The emitted chunk boundaries are identical to the ones of the original byte-by-byte
+     * implementation. In particular, the fingerprint window is initialized with the <i>windowSize</i>
+     * bytes before <i>Tmin</i>, and chunks are cut at <i>Tmax</i> bytes if <i>D</i> does not find a
+     * breakpoint (the backup divisor <i>D'</i> never applied in the original implementation).
+     */
     public class TTTDEnumeration implements ChunkEnumeration {        
         private InputStream in;           
         private boolean closed;
-        private byte[] c;
-        private int clen;
-        private int cpos;
         
+        private byte[] readBuffer;
+        private int readBufferLength;
+        private int readBufferPos;
+        
+        private ChunkBufferPool chunkBufferPool;
         private MessageDigest chunkDigest;
         private MessageDigest fileDigest;
         private Fingerprinter fingerprinter;
 
         public TTTDEnumeration(InputStream in) throws IOException {
+            this(in, null);
+        }
+        
+        /**
+         * Creates an enumeration that continues the given file digest, e.g. to continue
+         * chunking a file in the middle if the {@link MappedTTTDEnumeration} fails. 
+         */
+        /*package*/ TTTDEnumeration(InputStream in, MessageDigest fileDigest) throws IOException {
             this.in = in;
             this.closed = false;
-            this.c = new byte[8192];
-            this.clen = -1;
-            this.cpos = -1;         
+            this.readBuffer = new byte[READ_BUFFER_SIZE];
+            this.readBufferLength = 0;
+            this.readBufferPos = 0;
+            this.chunkBufferPool = new ChunkBufferPool(Tmax);
 
             try {
                 this.fingerprinter = Fingerprinter.getInstance(fingerprintAlgorithm);                
                 this.chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
-                this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
+                this.fileDigest = fileDigest;
                 
-                this.fileDigest.reset();
+                if (this.fileDigest == null) {
+                    this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
+                    this.fileDigest.reset();
+                }
             }
             catch (Exception e) {
                 throw new RuntimeException(e);
@@ -174,86 +286,79 @@ public class TttdChunker extends Chunker {
             fingerprinter.reset();
                 
             try {
-                int backupBreak = 0;                
-                int breakpoint = -1;
-                                
-                byte[] buf = new byte[Tmax];
-                int bufpos = -1;
-                                
-                while (bufpos < buf.length-1) {
-                    if (cpos == -1 || cpos == clen-1) {
-                        cpos = -1;
-                        clen = readFromInputStreamFixed(c, in);//in.read(c);
+                byte[] chunkBuffer = chunkBufferPool.acquire();
+                int chunkSize = 0;
+                boolean breakpointFound = false;
+                boolean endOfFile = false;
+                
+                while (!breakpointFound && chunkSize < Tmax) {
+                    // Refill read buffer (if necessary)
+                    if (readBufferPos == readBufferLength) {
+                        readBufferLength = readFromInputStreamFixed(readBuffer, in);
+                        readBufferPos = 0;
                         
-                        if (clen == -1) {
+                        if (readBufferLength == -1) {
+                            readBufferLength = 0;
+                            endOfFile = true;
+                            
                             break;
                         }
-                                            
-                        fileDigest.update(c, 0, clen);                        
-                    }
                         
-                    bufpos++; cpos++;
-                    buf[bufpos] = c[cpos];   
-
-                    if (bufpos < Tmin) {
-                        continue;
+                        fileDigest.update(readBuffer, 0, readBufferLength);
                     }
-                    else if (bufpos == Tmin) {
-                        fingerprinter.check(buf, bufpos-windowSize, windowSize);
+                    
+                    int available = Math.min(readBufferLength - readBufferPos, Tmax - chunkSize);
+                    int consumed;
+                    
+                    if (chunkSize < Tmin) {
+                        // Below Tmin, no breakpoints are possible: copy only
+                        consumed = Math.min(available, Tmin - chunkSize);
                     }
                     else {
-                        fingerprinter.roll(buf[bufpos]);
-                    }
-
-                    int hash = fingerprinter.getValue();
-
-                    // The value of r (right side) plays no role! #39  
-                    if ((hash % Ddash) == Ddash-1) {      
-                        backupBreak = bufpos;     
-                    }
-
-                    if ((hash % D) == D-1) {
-                        breakpoint = bufpos;
-                        break;
-                    }
-
-                    if (bufpos < Tmax){
-                        continue;
-                    }
-
-                    if (backupBreak != 0) {
-                        breakpoint = backupBreak;
-                        break;
-                    }
-                    else {
-                        breakpoint = bufpos;
-                        break;
+                        // Scan for breakpoint (chunkSize is the position of the next byte)
+                        consumed = 0;
+                        
+                        if (chunkSize == Tmin) {
+                            // The byte at Tmin is not part of the initial window
+                            fingerprinter.check(chunkBuffer, Tmin-windowSize, windowSize);
+                            consumed++;
+                            
+                            // The value of r (right side) plays no role! #39
+                            breakpointFound = (fingerprinter.getValue() % D) == D-1;
+                        }
+                        
+                        if (!breakpointFound && consumed < available) {
+                            int breakpoint = fingerprinter.rollAll(readBuffer, readBufferPos+consumed, available-consumed, D);
+                            
+                            if (breakpoint >= 0) {
+                                breakpointFound = true;
+                                consumed = breakpoint - readBufferPos + 1;
+                            }
+                            else {
+                                consumed = available;
+                            }
+                        }
                     }
+                    
+                    System.arraycopy(readBuffer, readBufferPos, chunkBuffer, chunkSize, consumed);
+                    
+                    readBufferPos += consumed;
+                    chunkSize += consumed;
                 }
                                     
                 // Close if this was the last bytes
-                if (clen == -1) {
+                if (endOfFile) {
                     in.close();
                     closed = true;
                 }         
-                
-                // EOF as breakpoint
-                if (breakpoint == -1) {
-                    breakpoint = bufpos;
-                }
-                
-                // Increase breakpoint
-                breakpoint++;
-                
+                                
                 // Create chunk
-                chunkDigest.update(buf, 0, breakpoint);
+                chunkDigest.update(chunkBuffer, 0, chunkSize);
                 
                 byte[] chunkChecksum = chunkDigest.digest();
-                byte[] chunkContents = buf;
-                int chunkSize = breakpoint;
-                byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
+                byte[] fileChecksum = (endOfFile) ? fileDigest.digest() : null;
                 
-                return new Chunk(chunkChecksum, chunkContents, chunkSize, fileChecksum);
+                return new Chunk(chunkChecksum, chunkBuffer, chunkSize, fileChecksum, chunkBufferPool);
             } 
             catch (IOException ex) {                
                 logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
@@ -269,23 +374,189 @@ public class TttdChunker extends Chunker {
         
         /**
          * Fixes the read errors occurring with Cipher streams in the standard
-         * Java read implementation.
+         * Java read implementation: Fills the entire buffer unless the end of the 
+         * stream is reached, and only returns -1 if no bytes could be read at all.
          */
         private int readFromInputStreamFixed(byte[] readToBuffer, InputStream inputStream) throws IOException {    		
     		int bytesRead = 0;
     		
     		while (bytesRead < readToBuffer.length) {
-    			int byteRead = inputStream.read();
+    			int read = inputStream.read(readToBuffer, bytesRead, readToBuffer.length-bytesRead);
     			
-    			if (byteRead == -1) {
-    				return (bytesRead != 0) ? bytesRead : -1;
+    			if (read == -1) {
+    				break;
     			}
     			
-    			readToBuffer[bytesRead] = (byte) byteRead;
-    			bytesRead++;
+    			bytesRead += read;
     		}
     		
     		return (bytesRead != 0) ? bytesRead : -1;
     	}
     }
-}
\ No newline at end of file
+    
+    /**
+     * The mapped TTTD enumeration implements the mapped chunking mode of the TTTD chunker
+     * (see {@link Chunker#setMappedChunkingThreshold(long) setMappedChunkingThreshold()}). 
+     * Fingerprints and checksums are calculated directly on a {@link MappedFileWindow}, and 
+     * the emitted chunks are backed by slices of the mapped file. 
+     * 
+     * <p>The emitted chunk boundaries are identical to the ones of the {@link TTTDEnumeration}.
+     * Emitted chunks are only valid until the next chunk is requested (see {@link MappedFileWindow}).
+     * 
+     * <p>If the file is truncated while it is being chunked, accessing the mapped window raises
+     * an {@link InternalError} (SIGBUS). In this case, the enumeration falls back to a stream-based
+     * {@link TTTDEnumeration} at the current position instead of letting the error escape. Like for 
+     * any file that changes while it is chunked, the resulting file checksum is not reliable.
+     */
+    public class MappedTTTDEnumeration implements ChunkEnumeration {
+        private MappedFileWindow fileWindow;
+        private long position;
+        private boolean closed;
+        private byte[] fingerprintWindow;
+        private TTTDEnumeration streamEnumeration;
+        
+        private MessageDigest chunkDigest;
+        private MessageDigest fileDigest;
+        private Fingerprinter fingerprinter;
+        
+        public MappedTTTDEnumeration(MappedFileWindow fileWindow) {
+            this(fileWindow, 0);
+        }
+        
+        public MappedTTTDEnumeration(MappedFileWindow fileWindow, long position) {
+            this.fileWindow = fileWindow;
+            this.position = position;
+            this.closed = false;
+            this.fingerprintWindow = new byte[windowSize];
+            this.streamEnumeration = null;
+
+            try {
+                this.fingerprinter = Fingerprinter.getInstance(fingerprintAlgorithm);                
+                this.chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
+                this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
+                
+                this.fileDigest.reset();
+            }
+            catch (Exception e) {
+                fileWindow.close();
+                throw new RuntimeException(e);
+            }                          
+        }
+        
+        @Override
+        public boolean hasMoreElements() {
+            if (streamEnumeration != null) {
+                return streamEnumeration.hasMoreElements();
+            }
+            
+            return !closed;
+        }
+        
+        @Override
+        public Chunk nextElement() {
+            if (streamEnumeration != null) {
+                return streamEnumeration.nextElement();
+            }
+            
+            if (closed) {
+                return null;
+            }
+            
+            chunkDigest.reset();
+            fingerprinter.reset();
+            
+            try {
+                long remainingBytes = fileWindow.getFileSize() - position;
+                int maxChunkSize = (int) Math.min(Tmax, remainingBytes);
+                int chunkSize = maxChunkSize;
+                boolean breakpointFound = false;
+                
+                // Find breakpoint (only possible at positions >= Tmin)
+                if (maxChunkSize > Tmin) {
+                    MappedByteBuffer window = fileWindow.map(position, maxChunkSize);
+                    int offset = (int) (position - fileWindow.getWindowStart());
+                    
+                    for (int i=0; i<windowSize; i++) {
+                        fingerprintWindow[i] = window.get(offset+Tmin-windowSize+i);
+                    }
+                    
+                    fingerprinter.check(fingerprintWindow, 0, windowSize);
+                    int bufpos = Tmin;
+                    
+                    while (true) {
+                        // The value of r (right side) plays no role! #39
+                        if ((fingerprinter.getValue() % D) == D-1) {
+                            breakpointFound = true;
+                            chunkSize = bufpos+1;
+                            
+                            break;
+                        }
+                        
+                        if (++bufpos == maxChunkSize) {
+                            break;
+                        }
+                        
+                        fingerprinter.roll(window.get(offset+bufpos));
+                    }
+                }
+                
+                // Like the stream-based enumeration, the end of the file is only
+                // detected if a chunk needs more bytes than are available
+                boolean endOfFile = !breakpointFound && remainingBytes < Tmax;
+                
+                ByteBuffer chunkContents = (chunkSize > 0) ? fileWindow.slice(position, chunkSize) : ByteBuffer.allocate(0);
+                
+                // Read mapped bytes before advancing, so that a fallback continues at this chunk
+                chunkDigest.update(chunkContents.duplicate());
+                fileDigest.update(chunkContents.duplicate());
+                
+                position += chunkSize;
+                
+                byte[] chunkChecksum = chunkDigest.digest();
+                byte[] fileChecksum = (endOfFile) ? fileDigest.digest() : null;
+                
+                // The window is unmapped in close(), because the last chunk is backed by it
+                if (endOfFile) {
+                    closed = true;
+                }
+                
+                return new Chunk(chunkChecksum, chunkContents, fileChecksum);
+            }
+            catch (InternalError e) {
+                logger.log(Level.WARNING, "File " + fileWindow.getFile() + " changed while it was mapped; continuing with stream at position " + position + ".", e);
+                return fallBackToStreamEnumeration();
+            }
+            catch (IOException ex) {                
+                logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+                return null;
+            }
+        }
+        
+        private Chunk fallBackToStreamEnumeration() {
+            fileWindow.close();
+            
+            try {
+                FileInputStream fileInputStream = new FileInputStream(fileWindow.getFile());
+                fileInputStream.getChannel().position(position);
+                
+                streamEnumeration = new TTTDEnumeration(fileInputStream, fileDigest);
+                return streamEnumeration.nextElement();
+            }
+            catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+                closed = true;
+                
+                return null;
+            }
+        }
+        
+        @Override
+        public void close() {
+            fileWindow.close();
+            
+            if (streamEnumeration != null) {
+                streamEnumeration.close();
+            }
+        }
+    }
+}
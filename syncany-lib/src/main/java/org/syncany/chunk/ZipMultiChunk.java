@@ -111,9 +111,12 @@ public class ZipMultiChunk extends MultiChunk {
         if (zipOut != null) {
             zipOut.close();
         }
-        else {
+        else if (zipIn != null) {
             zipIn.close();
         }
+        else {
+            zipFile.close();
+        }
     }    
 }
 
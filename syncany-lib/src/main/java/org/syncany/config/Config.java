@@ -27,15 +27,23 @@ import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
 import org.syncany.chunk.Transformer;
 import org.syncany.config.to.ConfigTO;
+import org.syncany.config.to.ConfigTO.RateLimitTO;
+import org.syncany.config.to.ConfigTO.RateLimitWindowTO;
 import org.syncany.config.to.RepoTO;
+import org.syncany.config.to.RepoTO.ChunkerTO;
 import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.connection.plugins.Connection;
 import org.syncany.connection.plugins.Plugin;
 import org.syncany.connection.plugins.Plugins;
+import org.syncany.connection.plugins.RateLimitedTransferManager;
 import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.TransferManager;
+import org.syncany.connection.plugins.TransferRateLimiter;
+import org.syncany.connection.plugins.TransferRateSchedule;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.util.EnvironmentUtil;
 import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
@@ -58,6 +66,13 @@ public class Config {
 	public static final String FILE_REPO = "syncany";
 	public static final String FILE_MASTER = "master";
 	public static final String FILE_IGNORE = ".syignore";
+	
+	/**
+	 * Minimum file size for which the chunker uses the mapped chunking mode. The
+	 * mode is disabled on Windows, because mapped files stay locked there until the 
+	 * mapped memory is garbage collected.
+	 */
+	public static final long CHUNKER_MAPPED_THRESHOLD = 64*1024*1024;
 		
 	private byte[] repoId;
 	private String machineName;
@@ -72,6 +87,7 @@ public class Config {
 
 	private Cache cache;	
 	private Connection connection;
+	private TransferRateLimiter rateLimiter;
     private Chunker chunker;
     private MultiChunker multiChunker;
     private Transformer transformer;
@@ -93,6 +109,7 @@ public class Config {
 		initIgnoredFile();
 		initRepo(repoTO);
     	initConnection(configTO);  	
+    	initRateLimiter(configTO);
 	}		
 	
 	private void initNames(ConfigTO configTO) throws ConfigException {
@@ -142,11 +159,28 @@ public class Config {
 	}
 
 	private void initChunker(RepoTO repoTO) throws Exception {
-		// TODO [feature request] make chunking options configurable, something like this:
-		//  chunker = Chunker.getInstance(repoTO.getChunker().getType());
-		//  chunker.init(repoTO.getChunker().getSettings());
+		ChunkerTO chunkerTO = repoTO.getChunkerTO();
+		
+		// Note: Earlier versions wrote a 'fixed' chunker with arbitrary settings to the 
+		//       repo file, but always used a 512 KB fixed chunker. To not change the chunk
+		//       boundaries of existing repositories, 'fixed' keeps using these settings. 
 		
-		chunker = new FixedChunker(512*1024, "SHA1");
+		if (chunkerTO == null || FixedChunker.TYPE.equals(chunkerTO.getType())) {
+			chunker = new FixedChunker(512*1024, "SHA1");
+		}
+		else {
+			chunker = Chunker.getInstance(chunkerTO.getType());
+			
+			if (chunker == null) {
+				throw new ConfigException("Invalid chunker type or settings: " + chunkerTO.getType());
+			}
+			
+			chunker.init(chunkerTO.getSettings());
+		}
+		
+		if (!EnvironmentUtil.isWindows()) {
+			chunker.setMappedChunkingThreshold(CHUNKER_MAPPED_THRESHOLD);
+		}
 		
 		/*new MimeTypeChunker(
 			new FixedChunker(64*1024, "SHA1"),
@@ -235,6 +269,46 @@ public class Config {
 		}
 	}
 	
+	private void initRateLimiter(ConfigTO configTO) throws ConfigException {
+		RateLimitTO rateLimitTO = configTO.getRateLimitTO();
+		
+		if (rateLimitTO != null) {
+			TransferRateSchedule schedule = new TransferRateSchedule(rateLimitTO.getUploadKbps()*1024, rateLimitTO.getDownloadKbps()*1024);
+			
+			try {
+				for (RateLimitWindowTO windowTO : rateLimitTO.getWindows()) {
+					schedule.addWindow(windowTO.getFrom(), windowTO.getTo(), windowTO.getUploadKbps()*1024, windowTO.getDownloadKbps()*1024);
+				}
+			}
+			catch (IllegalArgumentException e) {
+				throw new ConfigException("Invalid rate limit: " + e.getMessage(), e);
+			}
+			
+			if (schedule.isLimited()) {
+				rateLimiter = new TransferRateLimiter(schedule);
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new transfer manager for the configured connection. If transfer 
+	 * rate limits are configured, the transfer manager is wrapped in a 
+	 * {@link RateLimitedTransferManager}. All transfer managers created by the 
+	 * same config share the same upload/download budget.
+	 */
+	public TransferManager createTransferManager() {
+		TransferManager transferManager = connection.createTransferManager();
+		return (rateLimiter != null) ? new RateLimitedTransferManager(transferManager, rateLimiter) : transferManager;
+	}
+	
+	public TransferRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	public void setRateLimiter(TransferRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+	
 	public java.sql.Connection createDatabaseConnection() {
 		return DatabaseConnectionFactory.createConnection(getDatabaseFile());
 	}
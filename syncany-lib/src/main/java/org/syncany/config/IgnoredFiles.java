@@ -19,28 +19,55 @@ package org.syncany.config;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * This class serves as a container of patterns of filenames
  * that should be ignored.
  * 
+ * <p>Each line of the ignore file is one rule: Lines starting with <tt>regex:</tt> are 
+ * regular expressions, lines starting with <tt>glob:</tt> are glob patterns (<tt>*</tt> and 
+ * <tt>?</tt> do not match across folders, <tt>**</tt> does, <tt>{a,b}</tt> and <tt>[abc]</tt> 
+ * are supported), and all other lines are exact paths. All rules are matched against 
+ * the entire relative path of a file.
+ * 
+ * <p>Rules are compiled when they are loaded: Exact paths are kept in a hash set, and 
+ * regular expressions and globs are compiled to {@link Pattern}s only once. Each pattern
+ * is only evaluated for paths starting with its literal prefix and ending with its literal 
+ * suffix (e.g. <tt>build/</tt> and <tt>.class</tt> for <tt>regex:build/.*\.class</tt>). 
+ * Using {@link #mayMatchBelow(String)}, the tree walkers can skip the rules entirely for 
+ * folders which no rule can match.
+ * 
  * @author Pim Otte 
  */
 public class IgnoredFiles {
-	private static final Logger logger = Logger.getLogger(ConfigHelper.class.getSimpleName());	
-	private Set<String> ignorePatterns;
+	private static final Logger logger = Logger.getLogger(IgnoredFiles.class.getSimpleName());
+	
+	private static final String REGEX_PREFIX = "regex:";
+	private static final String GLOB_PREFIX = "glob:";
+	private static final String REGEX_SPECIAL_CHARS = ".[]{}()*+?^$|\\";
+	private static final String REGEX_QUANTIFIER_CHARS = "*+?{";
+	private static final String GLOB_SPECIAL_CHARS = "*?[]{}\\";
+	
 	private Set<String> ignorePaths;
+	private Set<String> ignorePathAncestors;
+	private List<IgnorePattern> ignorePatterns;
 	private File ignoreFile;
 	
 	public IgnoredFiles(File ignoreFile) {
-		ignorePatterns = new HashSet<String>();
-		ignorePaths = new HashSet<String>();
+		this.ignorePaths = new HashSet<String>();
+		this.ignorePathAncestors = new HashSet<String>();
+		this.ignorePatterns = new ArrayList<IgnorePattern>();
 		this.ignoreFile = ignoreFile;
+		
 		loadPatterns();
 	}
 	
@@ -50,15 +77,36 @@ public class IgnoredFiles {
 	 */
 	public boolean isFileIgnored(String filePath) {
 		// Check all exact paths
-		for (String path : ignorePaths) {
-			if (path.equals(filePath)) {
+		if (ignorePaths.contains(filePath)) {
+			return true;
+		}
+		
+		// Check all regular expressions and globs
+		for (IgnorePattern ignorePattern : ignorePatterns) {
+			if (ignorePattern.matches(filePath)) {
 				return true;
 			}
-		} 
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns whether any rule can match a path below the given folder. If this method
+	 * returns <tt>false</tt>, {@link #isFileIgnored(String)} returns <tt>false</tt> for 
+	 * all files and folders in this folder's subtree, so the check can be skipped.
+	 * 
+	 * @param folderPath Relative path of the folder, or an empty string for the root folder
+	 */
+	public boolean mayMatchBelow(String folderPath) {
+		if (ignorePathAncestors.contains(folderPath)) {
+			return true;
+		}
 		
-		// Check all regular expressions
-		for (String pattern : ignorePatterns) {
-			if (filePath.matches(pattern)) {
+		String folderPrefix = (folderPath.isEmpty()) ? "" : folderPath + "/";
+		
+		for (IgnorePattern ignorePattern : ignorePatterns) {
+			if (ignorePattern.mayMatchBelow(folderPrefix)) {
 				return true;
 			}
 		}
@@ -67,6 +115,11 @@ public class IgnoredFiles {
 	}
 	
 	public void loadPatterns() {
+		// Collections are replaced (not modified), so that concurrent readers are not affected
+		Set<String> newIgnorePaths = new HashSet<String>();
+		Set<String> newIgnorePathAncestors = new HashSet<String>();
+		List<IgnorePattern> newIgnorePatterns = new ArrayList<IgnorePattern>();
+		
 		if (ignoreFile != null && ignoreFile.exists()) {
 			try {
 				Scanner scanner = new Scanner(ignoreFile);
@@ -75,12 +128,19 @@ public class IgnoredFiles {
 					String ignorePattern = scanner.nextLine();
 					
 					if (!ignorePattern.isEmpty()) {
-						if (ignorePattern.startsWith("regex:")) {
+						if (ignorePattern.startsWith(REGEX_PREFIX)) {
 							// Chop off regex: indicator
-							ignorePatterns.add(ignorePattern.substring(6));
+							String regex = ignorePattern.substring(REGEX_PREFIX.length());
+							addIgnorePattern(newIgnorePatterns, regex, getRegexLiteralPrefix(regex), getRegexLiteralSuffix(regex));
+						}
+						else if (ignorePattern.startsWith(GLOB_PREFIX)) {
+							// Chop off glob: indicator
+							String glob = ignorePattern.substring(GLOB_PREFIX.length());
+							addIgnorePattern(newIgnorePatterns, globToRegex(glob), getGlobLiteralPrefix(glob), getGlobLiteralSuffix(glob));
 						}
 						else {
-							ignorePaths.add(ignorePattern);
+							newIgnorePaths.add(ignorePattern);
+							addAncestors(newIgnorePathAncestors, ignorePattern);
 						}
 					}
 				}
@@ -90,10 +150,231 @@ public class IgnoredFiles {
 				logger.log(Level.INFO, "Ignore file not found (existed before).");
 			}
 		}
-		else {
-			// In case the ignoreFile has been deleted, reset patterns
-			ignorePatterns = new HashSet<String>();
-			ignorePaths = new HashSet<String>();
+		
+		// In case the ignoreFile has been deleted, patterns are reset
+		ignorePaths = newIgnorePaths;
+		ignorePathAncestors = newIgnorePathAncestors;
+		ignorePatterns = newIgnorePatterns;
+	}
+	
+	private void addIgnorePattern(List<IgnorePattern> patterns, String regex, String literalPrefix, String literalSuffix) {
+		try {
+			patterns.add(new IgnorePattern(Pattern.compile(regex), literalPrefix, literalSuffix));
+		}
+		catch (PatternSyntaxException e) {
+			logger.log(Level.WARNING, "Invalid ignore pattern " + regex + ", ignoring rule.", e);
+		}
+	}
+	
+	private void addAncestors(Set<String> ancestors, String path) {
+		ancestors.add("");
+		
+		for (int slashIndex = path.indexOf('/'); slashIndex > 0; slashIndex = path.indexOf('/', slashIndex + 1)) {
+			ancestors.add(path.substring(0, slashIndex));
+		}
+	}
+	
+	/**
+	 * Returns the literal characters every match of the given regular expression starts with,
+	 * e.g. <tt>build/</tt> for <tt>build/.*\.class</tt>. The prefix is determined conservatively: 
+	 * It ends at the first special character, and is empty if the expression contains alternatives
+	 * or flags.
+	 */
+	private static String getRegexLiteralPrefix(String regex) {
+		if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+			return "";
+		}
+		
+		StringBuilder literalPrefix = new StringBuilder();
+		int pos = (regex.startsWith("^")) ? 1 : 0;
+		
+		while (pos < regex.length()) {
+			char c = regex.charAt(pos);
+			char literalChar;
+			int nextPos;
+			
+			if (c == '\\') {
+				// Escaped special characters are literals; \d, \w, \Q, back references, etc. are not
+				if (pos + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+					break;
+				}
+				
+				literalChar = regex.charAt(pos + 1);
+				nextPos = pos + 2;
+			}
+			else if (REGEX_SPECIAL_CHARS.indexOf(c) >= 0) {
+				break;
+			}
+			else {
+				literalChar = c;
+				nextPos = pos + 1;
+			}
+			
+			// A quantified character is not part of every match 
+			if (nextPos < regex.length() && REGEX_QUANTIFIER_CHARS.indexOf(regex.charAt(nextPos)) >= 0) {
+				break;
+			}
+			
+			literalPrefix.append(literalChar);
+			pos = nextPos;
+		}
+		
+		return literalPrefix.toString();
+	}
+	
+	/**
+	 * Returns the literal characters every match of the given regular expression ends with,
+	 * e.g. <tt>.class</tt> for <tt>build/.*\.class</tt>. Like the prefix, the suffix is 
+	 * determined conservatively.
+	 */
+	private static String getRegexLiteralSuffix(String regex) {
+		if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+			return "";
+		}
+		
+		StringBuilder reversedLiteralSuffix = new StringBuilder();
+		int pos = (regex.endsWith("$") && !isEscaped(regex, regex.length() - 1)) ? regex.length() - 2 : regex.length() - 1;
+		
+		while (pos >= 0) {
+			char c = regex.charAt(pos);
+			
+			if (isEscaped(regex, pos)) {
+				// Escaped special characters are literals; \d, \w, \E, etc. are not
+				if (Character.isLetterOrDigit(c)) {
+					break;
+				}
+				
+				reversedLiteralSuffix.append(c);
+				pos -= 2;
+			}
+			else if (REGEX_SPECIAL_CHARS.indexOf(c) >= 0) {
+				break;
+			}
+			else {
+				reversedLiteralSuffix.append(c);
+				pos -= 1;
+			}
+		}
+		
+		return reversedLiteralSuffix.reverse().toString();
+	}
+	
+	/**
+	 * Returns whether the character at the given position is escaped, i.e. preceded 
+	 * by an odd number of backslashes.
+	 */
+	private static boolean isEscaped(String regex, int pos) {
+		int backslashCount = 0;
+		
+		for (int i = pos - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+			backslashCount++;
+		}
+		
+		return backslashCount % 2 == 1;
+	}
+	
+	private static String getGlobLiteralPrefix(String glob) {
+		for (int pos = 0; pos < glob.length(); pos++) {
+			if (GLOB_SPECIAL_CHARS.indexOf(glob.charAt(pos)) >= 0) {
+				return glob.substring(0, pos);
+			}
+		}
+		
+		return glob;
+	}
+	
+	private static String getGlobLiteralSuffix(String glob) {
+		for (int pos = glob.length() - 1; pos >= 0; pos--) {
+			if (GLOB_SPECIAL_CHARS.indexOf(glob.charAt(pos)) >= 0) {
+				return glob.substring(pos + 1);
+			}
+		}
+		
+		return glob;
+	}
+	
+	private static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		boolean inGroup = false;
+		
+		for (int pos = 0; pos < glob.length(); pos++) {
+			char c = glob.charAt(pos);
+			
+			if (c == '*') {
+				if (glob.startsWith("**/", pos)) {
+					regex.append("(?:.*/)?"); // Zero or more folders
+					pos += 2;
+				}
+				else if (glob.startsWith("**", pos)) {
+					regex.append(".*");
+					pos += 1;
+				}
+				else {
+					regex.append("[^/]*");
+				}
+			}
+			else if (c == '?') {
+				regex.append("[^/]");
+			}
+			else if (c == '{') {
+				regex.append("(?:");
+				inGroup = true;
+			}
+			else if (c == '}' && inGroup) {
+				regex.append(")");
+				inGroup = false;
+			}
+			else if (c == ',' && inGroup) {
+				regex.append("|");
+			}
+			else if (c == '[') {
+				int closingPos = glob.indexOf(']', pos + 1);
+				
+				if (closingPos < 0) {
+					regex.append("\\[");
+				}
+				else {
+					String charClass = glob.substring(pos + 1, closingPos);
+					
+					if (charClass.startsWith("!")) {
+						charClass = "^" + charClass.substring(1);
+					}
+					
+					regex.append("[").append(charClass.replace("\\", "\\\\").replace("[", "\\[")).append("]");
+					pos = closingPos;
+				}
+			}
+			else if (c == '\\' && pos + 1 < glob.length()) {
+				regex.append(Pattern.quote(String.valueOf(glob.charAt(++pos))));
+			}
+			else if (REGEX_SPECIAL_CHARS.indexOf(c) >= 0) {
+				regex.append("\\").append(c);
+			}
+			else {
+				regex.append(c);
+			}
+		}
+		
+		return regex.toString();
+	}
+	
+	private static class IgnorePattern {
+		private Pattern pattern;
+		private String literalPrefix;
+		private String literalSuffix;
+		
+		public IgnorePattern(Pattern pattern, String literalPrefix, String literalSuffix) {
+			this.pattern = pattern;
+			this.literalPrefix = literalPrefix;
+			this.literalSuffix = literalSuffix;
+		}
+		
+		public boolean matches(String filePath) {
+			return filePath.startsWith(literalPrefix) && filePath.endsWith(literalSuffix) && pattern.matcher(filePath).matches();
+		}
+		
+		public boolean mayMatchBelow(String folderPrefix) {
+			return folderPrefix.startsWith(literalPrefix) || literalPrefix.startsWith(folderPrefix);
 		}
 	}
-} 
+}
@@ -18,10 +18,14 @@
 package org.syncany.config.to;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.crypto.spec.SecretKeySpec;
 
+import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Namespace;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.core.Commit;
@@ -37,7 +41,7 @@ import org.syncany.util.StringUtil;
  * The config transfer object is used to create and load the local config
  * file from/to XML. The config file contains local config settings of a client,
  * namely the machine and display name, the master key as well as connection
- * information (for the connection plugin).
+ * information (for the connection plugin) and optional transfer rate limits.
  * 
  * <p>It uses the Simple framework for XML serialization, and its corresponding
  * annotation-based configuration.  
@@ -60,6 +64,9 @@ public class ConfigTO {
 	
 	@Element(name="connection", required=true)
 	private ConnectionTO connectionTO;
+	
+	@Element(name="ratelimit", required=false)
+	private RateLimitTO rateLimitTO;
 
 	public static ConfigTO load(File file) throws ConfigException {
 		try {
@@ -94,6 +101,14 @@ public class ConfigTO {
 		this.connectionTO = connectionTO;
 	}
 	
+	public RateLimitTO getRateLimitTO() {
+		return rateLimitTO;
+	}
+
+	public void setRateLimitTO(RateLimitTO rateLimitTO) {
+		this.rateLimitTO = rateLimitTO;
+	}
+	
 	public SaltedSecretKey getMasterKey() {
 		return masterKey;
 	}
@@ -135,4 +150,95 @@ public class ConfigTO {
 	public static class ConnectionTO extends TypedPropertyListTO {
 		// Nothing special about this
 	}
+	
+	/**
+	 * Defines the transfer rate limits in KB/s (zero meaning unlimited), with
+	 * optional time windows overriding the default limits, e.g.
+	 * 
+	 * <pre>
+	 * &lt;ratelimit upload="100" download="500"&gt;
+	 *   &lt;window from="08:00" to="18:00" upload="20" download="100" /&gt;
+	 * &lt;/ratelimit&gt;
+	 * </pre>
+	 */
+	public static class RateLimitTO {
+		@Attribute(name="upload", required=false)
+		private long uploadKbps;
+		
+		@Attribute(name="download", required=false)
+		private long downloadKbps;
+		
+		@ElementList(entry="window", inline=true, required=false)
+		private List<RateLimitWindowTO> windows = new ArrayList<RateLimitWindowTO>();
+
+		public long getUploadKbps() {
+			return uploadKbps;
+		}
+
+		public void setUploadKbps(long uploadKbps) {
+			this.uploadKbps = uploadKbps;
+		}
+
+		public long getDownloadKbps() {
+			return downloadKbps;
+		}
+
+		public void setDownloadKbps(long downloadKbps) {
+			this.downloadKbps = downloadKbps;
+		}
+
+		public List<RateLimitWindowTO> getWindows() {
+			return windows;
+		}
+
+		public void setWindows(List<RateLimitWindowTO> windows) {
+			this.windows = windows;
+		}
+	}
+	
+	public static class RateLimitWindowTO {
+		@Attribute(name="from", required=true)
+		private String from;
+		
+		@Attribute(name="to", required=true)
+		private String to;
+		
+		@Attribute(name="upload", required=false)
+		private long uploadKbps;
+		
+		@Attribute(name="download", required=false)
+		private long downloadKbps;
+
+		public String getFrom() {
+			return from;
+		}
+
+		public void setFrom(String from) {
+			this.from = from;
+		}
+
+		public String getTo() {
+			return to;
+		}
+
+		public void setTo(String to) {
+			this.to = to;
+		}
+
+		public long getUploadKbps() {
+			return uploadKbps;
+		}
+
+		public void setUploadKbps(long uploadKbps) {
+			this.uploadKbps = uploadKbps;
+		}
+
+		public long getDownloadKbps() {
+			return downloadKbps;
+		}
+
+		public void setDownloadKbps(long downloadKbps) {
+			this.downloadKbps = downloadKbps;
+		}
+	}
 }
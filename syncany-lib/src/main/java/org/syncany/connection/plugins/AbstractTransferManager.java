@@ -18,7 +18,11 @@
 package org.syncany.connection.plugins;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Implements basic functionality of a {@link TransferManager} which
@@ -28,6 +32,7 @@ import java.io.IOException;
  */
 public abstract class AbstractTransferManager implements TransferManager {
 	private Connection connection;
+	private TransferRateLimiter rateLimiter;
 
 	public AbstractTransferManager(Connection connection) {
 		this.connection = connection;
@@ -36,6 +41,79 @@ public abstract class AbstractTransferManager implements TransferManager {
 	public Connection getConnection() {
 		return connection;
 	}
+	
+	/**
+	 * Returns whether the transfer manager reads/writes local files only via 
+	 * {@link #createUploadInputStream(File)} and {@link #createDownloadOutputStream(File)},
+	 * i.e. whether a {@link TransferRateLimiter} set via {@link #setRateLimiter(TransferRateLimiter)}
+	 * is effective. Sub-classes using these methods should override this method.
+	 */
+	public boolean supportsRateLimiting() {
+		return false;
+	}
+
+	public void setRateLimiter(TransferRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+	
+	/**
+	 * Opens the given local file for uploading it. If a rate limiter is set,
+	 * reading from the stream is throttled to the current upload rate.
+	 */
+	protected InputStream createUploadInputStream(File localFile) throws IOException {
+		InputStream inputStream = new FileInputStream(localFile);
+		return (rateLimiter != null) ? rateLimiter.limitUpload(inputStream) : inputStream;
+	}
+
+	/**
+	 * Opens the given local file to write a downloaded file to it. If a rate limiter is set,
+	 * writing to the stream is throttled to the current download rate.
+	 */
+	protected OutputStream createDownloadOutputStream(File localFile) throws IOException {
+		OutputStream outputStream = new FileOutputStream(localFile);
+		return (rateLimiter != null) ? rateLimiter.limitDownload(outputStream) : outputStream;
+	}
+
+	/**
+	 * Wraps the given stream (reading a remote file being downloaded), so that reading from it
+	 * is throttled to the current download rate, if a rate limiter is set. 
+	 */
+	protected InputStream createDownloadInputStream(InputStream remoteInputStream) {
+		return (rateLimiter != null) ? rateLimiter.limitDownload(remoteInputStream) : remoteInputStream;
+	}
+
+	/**
+	 * Downloads the given remote file to a temporary file using {@link #download(RemoteFile, File)},
+	 * and returns a stream reading from it. The temporary file is deleted when the stream is closed.
+	 * 
+	 * <p>Sub-classes that can read remote files as a stream should override this method, so that
+	 * the file does not have to be written to the local disk.
+	 */
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		try {
+			final File tempLocalFile = createTempFile("download-stream");
+			
+			try {
+				download(remoteFile, tempLocalFile);
+
+				return new FileInputStream(tempLocalFile) {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						tempLocalFile.delete();
+					}
+				};
+			}
+			catch (StorageException | IOException e) {
+				tempLocalFile.delete();
+				throw e;
+			}
+		}
+		catch (IOException e) {
+			throw new StorageException("Unable to download " + remoteFile.getName() + " to temporary file", e);
+		}
+	}
 
 	// TODO [low] This should be in AbstractTransferManager (or any other central place), this should use the Syncany cache folder
 	protected File createTempFile(String name) throws IOException {
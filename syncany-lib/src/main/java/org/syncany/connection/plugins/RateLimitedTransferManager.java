@@ -0,0 +1,159 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps any {@link TransferManager} and throttles its uploads and downloads using a 
+ * {@link TransferRateLimiter}. All other calls are passed to the underlying transfer manager.
+ * 
+ * <p>If the underlying transfer manager is an {@link AbstractTransferManager} that
+ * {@link AbstractTransferManager#supportsRateLimiting() supports rate limiting}, the limiter is 
+ * installed into its upload/download streams, so that the rate is enforced on the actual bytes 
+ * while they are transferred. Otherwise, the whole file size is accounted for before each upload 
+ * and after each download, which keeps the average rate but allows bursts of one file.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class RateLimitedTransferManager implements TransferManager {
+	private static final Logger logger = Logger.getLogger(RateLimitedTransferManager.class.getSimpleName());
+	
+	private TransferManager underlyingTransferManager;
+	private TransferRateLimiter rateLimiter;
+	private boolean streamLimited;
+
+	public RateLimitedTransferManager(TransferManager underlyingTransferManager, TransferRateLimiter rateLimiter) {
+		this.underlyingTransferManager = underlyingTransferManager;
+		this.rateLimiter = rateLimiter;
+		this.streamLimited = installStreamRateLimiter();
+	}
+	
+	private boolean installStreamRateLimiter() {
+		if (underlyingTransferManager instanceof AbstractTransferManager) {
+			AbstractTransferManager abstractTransferManager = (AbstractTransferManager) underlyingTransferManager;
+			
+			if (abstractTransferManager.supportsRateLimiting()) {
+				abstractTransferManager.setRateLimiter(rateLimiter);
+				return true;
+			}
+		}
+		
+		logger.log(Level.INFO, "Transfer manager " + underlyingTransferManager.getClass().getSimpleName() 
+				+ " does not support stream rate limiting; limiting per file.");
+		
+		return false;
+	}
+	
+	public TransferManager getUnderlyingTransferManager() {
+		return underlyingTransferManager;
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		underlyingTransferManager.connect();
+	}
+
+	@Override
+	public void disconnect() throws StorageException {
+		underlyingTransferManager.disconnect();
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		underlyingTransferManager.init(createIfRequired);
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		underlyingTransferManager.download(remoteFile, localFile);
+		
+		if (!streamLimited) {
+			acquireDownload(localFile.length());
+		}
+	}
+
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		InputStream remoteInputStream = underlyingTransferManager.downloadStream(remoteFile);
+		return (streamLimited) ? remoteInputStream : rateLimiter.limitDownload(remoteInputStream);
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		if (!streamLimited) {
+			acquireUpload(localFile.length());
+		}
+		
+		underlyingTransferManager.upload(localFile, remoteFile);
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		return underlyingTransferManager.delete(remoteFile);
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		return underlyingTransferManager.list(remoteFileClass);
+	}
+
+	@Override
+	public StorageTestResult test() {
+		return underlyingTransferManager.test();
+	}
+
+	@Override
+	public boolean repoHasWriteAccess() throws StorageException {
+		return underlyingTransferManager.repoHasWriteAccess();
+	}
+
+	@Override
+	public boolean repoExists() throws StorageException {
+		return underlyingTransferManager.repoExists();
+	}
+
+	@Override
+	public boolean repoIsValid() throws StorageException {
+		return underlyingTransferManager.repoIsValid();
+	}
+	
+	private void acquireUpload(long bytes) throws StorageException {
+		try {
+			rateLimiter.acquireUpload(bytes);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for upload bandwidth.", e);
+		}
+	}
+	
+	private void acquireDownload(long bytes) throws StorageException {
+		try {
+			rateLimiter.acquireDownload(bytes);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for download bandwidth.", e);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements a token bucket to throttle a byte stream to a given rate.
+ * 
+ * <p>The bucket is refilled with <tt>rate</tt> tokens (bytes) per second and holds
+ * at most a quarter of a second worth of tokens, so that short idle periods do not
+ * lead to large bursts. A caller acquiring more tokens than available takes the
+ * missing tokens on credit and sleeps until they would have been refilled.
+ * 
+ * <p>Callers sleep while holding a fair lock, i.e. concurrent transfers sharing
+ * a bucket are served in FIFO order and get an equal share of the bandwidth, as long
+ * as they acquire tokens in similarly sized chunks.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TokenBucket {
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final int BURST_DIVISOR = 4;
+	private static final long MIN_CAPACITY = 16*1024;
+
+	private ReentrantLock lock;
+	private volatile long rate;
+	private long capacity;
+	private double tokens;
+	private long lastRefillTime;
+
+	/**
+	 * Creates a new token bucket.
+	 * 
+	 * @param rate Rate in bytes per second; zero or less means unlimited
+	 */
+	public TokenBucket(long rate) {
+		this.lock = new ReentrantLock(true);
+		this.lastRefillTime = System.nanoTime();
+		
+		setRate(rate);
+	}
+
+	public long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Changes the rate of the bucket. Tokens exceeding the new capacity
+	 * are discarded, a debt from previous acquisitions is kept.
+	 * 
+	 * @param rate Rate in bytes per second; zero or less means unlimited
+	 */
+	public void setRate(long rate) {
+		lock.lock();
+		
+		try {
+			setRateUnlocked(rate);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the given number of tokens (bytes) from the bucket, and blocks
+	 * until they are available. Returns immediately if the rate is unlimited.
+	 * 
+	 * @param bytes Number of bytes to be transferred
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public void acquire(long bytes) throws InterruptedException {
+		acquire(bytes, rate);
+	}
+	
+	/**
+	 * Adjusts the rate of the bucket (if necessary) and takes the given number 
+	 * of tokens (bytes) from the bucket. 
+	 * 
+	 * @see #acquire(long)
+	 * @see #setRate(long)
+	 */
+	public void acquire(long bytes, long newRate) throws InterruptedException {
+		if (newRate <= 0 && rate <= 0) {
+			return;
+		}
+
+		lock.lockInterruptibly();
+
+		try {
+			setRateUnlocked(newRate);
+			
+			if (rate <= 0) {
+				return;
+			}
+
+			refill();
+			tokens -= bytes;
+
+			if (tokens < 0) {
+				long waitNanos = (long) (-tokens * NANOS_PER_SECOND / rate);
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void setRateUnlocked(long newRate) {
+		if (newRate != rate) {
+			refill();
+			
+			rate = newRate;
+			capacity = Math.max(MIN_CAPACITY, newRate / BURST_DIVISOR);
+			tokens = Math.min(tokens, capacity);
+		}
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		
+		if (rate > 0) {
+			tokens = Math.min(capacity, tokens + (double) (now - lastRefillTime) * rate / NANOS_PER_SECOND);
+		}
+		
+		lastRefillTime = now;
+	}
+}
@@ -18,6 +18,7 @@
 package org.syncany.connection.plugins;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -124,6 +125,26 @@ public interface TransferManager {
 	 */
 	public void download(RemoteFile remoteFile, File localFile) throws StorageException;
 
+	/**
+	 * Opens an existing remote file as a stream, so that the caller can process it
+	 * while it is being downloaded, instead of storing it on the local disk first.
+	 *
+	 * <p>Unlike {@link #download(RemoteFile, File)}, the file is not guaranteed to be read
+	 * completely: If the connection breaks while the stream is read, the stream throws an
+	 * {@code IOException}, and the caller must discard everything read so far. The caller
+	 * must close the stream.
+	 *
+	 * <p>Implementations that cannot stream (see {@link AbstractTransferManager#downloadStream(RemoteFile)})
+	 * may download the file to a temporary file and return a stream reading from it.
+	 *
+	 * @param remoteFile Existing source file on the remote storage.
+	 *        The only required property of the remote file is the name.
+	 * @return Returns a stream of the contents of the remote file
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc.
+	 */
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException;
+
 	/**
 	 * Update an existing local file to the online storage.
 	 *
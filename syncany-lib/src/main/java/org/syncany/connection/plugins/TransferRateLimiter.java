@@ -0,0 +1,192 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+
+/**
+ * Throttles uploads and downloads to the rates defined by a {@link TransferRateSchedule}.
+ * 
+ * <p>Uploads and downloads have separate budgets, each backed by a {@link TokenBucket}.
+ * All transfers in the same direction share the same bucket, i.e. concurrent transfers
+ * (e.g. parallel multichunk uploads) together do not exceed the configured rate and
+ * get a fair share of it.
+ * 
+ * <p>The limiter is meant to be applied to the byte streams of a transfer, using
+ * {@link #limitUpload(InputStream)} and {@link #limitDownload(OutputStream)} (or
+ * {@link #limitDownload(InputStream)} for streamed downloads). These
+ * streams take tokens in small chunks, so that the rate is enforced while a file is 
+ * transferred and not only between files. For transfer managers that do not expose 
+ * their streams, {@link #acquireUpload(long)} and {@link #acquireDownload(long)} can be
+ * used to account for a whole file.
+ * 
+ * @see RateLimitedTransferManager
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferRateLimiter {
+	public static final int MAX_ACQUIRE_SIZE = 16*1024;
+	
+	private TransferRateSchedule schedule;
+	private TokenBucket uploadBucket;
+	private TokenBucket downloadBucket;
+
+	public TransferRateLimiter(TransferRateSchedule schedule) {
+		Calendar now = Calendar.getInstance();
+		
+		this.schedule = schedule;
+		this.uploadBucket = new TokenBucket(schedule.getUploadRate(now));
+		this.downloadBucket = new TokenBucket(schedule.getDownloadRate(now));
+	}
+	
+	public TransferRateSchedule getSchedule() {
+		return schedule;
+	}
+
+	public void acquireUpload(long bytes) throws InterruptedException {
+		acquire(uploadBucket, schedule.getUploadRate(Calendar.getInstance()), bytes);
+	}
+
+	public void acquireDownload(long bytes) throws InterruptedException {
+		acquire(downloadBucket, schedule.getDownloadRate(Calendar.getInstance()), bytes);
+	}
+	
+	/**
+	 * Wraps the given stream (reading from the local file to be uploaded), so 
+	 * that reading from it is throttled to the current upload rate.
+	 */
+	public InputStream limitUpload(InputStream inputStream) {
+		return new RateLimitedInputStream(inputStream, false);
+	}
+
+	/**
+	 * Wraps the given stream (writing to the local file being downloaded), so 
+	 * that writing to it is throttled to the current download rate.
+	 */
+	public OutputStream limitDownload(OutputStream outputStream) {
+		return new RateLimitedOutputStream(outputStream);
+	}
+
+	/**
+	 * Wraps the given stream (reading a remote file being downloaded), so 
+	 * that reading from it is throttled to the current download rate.
+	 */
+	public InputStream limitDownload(InputStream inputStream) {
+		return new RateLimitedInputStream(inputStream, true);
+	}
+
+	private void acquire(TokenBucket bucket, long rate, long bytes) throws InterruptedException {
+		// Acquire in small chunks to allow other transfers to get their share
+		while (bytes > 0) {
+			long chunkSize = Math.min(bytes, MAX_ACQUIRE_SIZE);
+			
+			bucket.acquire(chunkSize, rate);
+			bytes -= chunkSize;
+		}
+	}
+	
+	private void acquireUploadStream(long bytes) throws IOException {
+		try {
+			acquireUpload(bytes);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for upload bandwidth.");
+		}
+	}
+
+	private void acquireDownloadStream(long bytes) throws IOException {
+		try {
+			acquireDownload(bytes);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for download bandwidth.");
+		}
+	}
+
+	private class RateLimitedInputStream extends FilterInputStream {
+		private boolean download;
+		
+		public RateLimitedInputStream(InputStream inputStream, boolean download) {
+			super(inputStream);
+			this.download = download;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			
+			if (b >= 0) {
+				acquireStream(1);
+			}
+			
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, Math.min(len, MAX_ACQUIRE_SIZE));
+			
+			if (read > 0) {
+				acquireStream(read);
+			}
+			
+			return read;
+		}
+		
+		private void acquireStream(long bytes) throws IOException {
+			if (download) {
+				acquireDownloadStream(bytes);
+			}
+			else {
+				acquireUploadStream(bytes);
+			}
+		}
+	}
+
+	private class RateLimitedOutputStream extends FilterOutputStream {
+		public RateLimitedOutputStream(OutputStream outputStream) {
+			super(outputStream);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			acquireDownloadStream(1);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int chunkSize = Math.min(len, MAX_ACQUIRE_SIZE);
+				
+				acquireDownloadStream(chunkSize);
+				out.write(b, off, chunkSize);
+				
+				off += chunkSize;
+				len -= chunkSize;
+			}
+		}
+	}
+}
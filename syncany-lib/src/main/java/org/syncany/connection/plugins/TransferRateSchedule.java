@@ -0,0 +1,157 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Defines the upload and download rate limits of a {@link TransferRateLimiter},
+ * depending on the time of day.
+ * 
+ * <p>The schedule consists of default rates and an ordered list of time windows
+ * with their own rates. The first window containing a given time determines the rates,
+ * and the default rates apply if no window matches. Windows may wrap around midnight,
+ * e.g. a window from 22:00 to 06:00 can be used to allow unlimited transfers at night.
+ * 
+ * <p>All rates are given in bytes per second; zero means unlimited.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferRateSchedule {
+	private long defaultUploadRate;
+	private long defaultDownloadRate;
+	private List<TimeWindow> windows;
+
+	public TransferRateSchedule(long defaultUploadRate, long defaultDownloadRate) {
+		this.defaultUploadRate = defaultUploadRate;
+		this.defaultDownloadRate = defaultDownloadRate;
+		this.windows = new ArrayList<TimeWindow>();
+	}
+	
+	/**
+	 * Adds a time window to the schedule. 
+	 * 
+	 * @param from Start of the window (inclusive), format <tt>HH:mm</tt>
+	 * @param to End of the window (exclusive), format <tt>HH:mm</tt>
+	 * @param uploadRate Upload rate in bytes per second within the window; zero means unlimited
+	 * @param downloadRate Download rate in bytes per second within the window; zero means unlimited
+	 * @throws IllegalArgumentException If the times cannot be parsed
+	 */
+	public void addWindow(String from, String to, long uploadRate, long downloadRate) {
+		windows.add(new TimeWindow(parseMinuteOfDay(from), parseMinuteOfDay(to), uploadRate, downloadRate));
+	}
+	
+	public List<TimeWindow> getWindows() {
+		return windows;
+	}
+
+	public long getUploadRate(Calendar time) {
+		TimeWindow window = getWindow(time);
+		return (window != null) ? window.getUploadRate() : defaultUploadRate;
+	}
+
+	public long getDownloadRate(Calendar time) {
+		TimeWindow window = getWindow(time);
+		return (window != null) ? window.getDownloadRate() : defaultDownloadRate;
+	}
+	
+	/**
+	 * Returns whether any rate (default or window) is limited, i.e. whether
+	 * transfers must be throttled at any time of the day.
+	 */
+	public boolean isLimited() {
+		if (defaultUploadRate > 0 || defaultDownloadRate > 0) {
+			return true;
+		}
+		
+		for (TimeWindow window : windows) {
+			if (window.getUploadRate() > 0 || window.getDownloadRate() > 0) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+
+	private TimeWindow getWindow(Calendar time) {
+		int minuteOfDay = time.get(Calendar.HOUR_OF_DAY)*60 + time.get(Calendar.MINUTE);
+		
+		for (TimeWindow window : windows) {
+			if (window.contains(minuteOfDay)) {
+				return window;
+			}
+		}
+		
+		return null;
+	}
+
+	private static int parseMinuteOfDay(String time) {
+		if (time == null || !time.matches("\\d{1,2}:\\d{2}")) {
+			throw new IllegalArgumentException("Invalid time '" + time + "', expected format is HH:mm.");
+		}
+		
+		String[] timeParts = time.split(":");
+		int hours = Integer.parseInt(timeParts[0]);
+		int minutes = Integer.parseInt(timeParts[1]);
+		
+		if (hours > 24 || minutes > 59 || (hours == 24 && minutes > 0)) {
+			throw new IllegalArgumentException("Invalid time '" + time + "', expected format is HH:mm.");
+		}
+		
+		return hours*60 + minutes;
+	}
+
+	public static class TimeWindow {
+		private int fromMinuteOfDay;
+		private int toMinuteOfDay;
+		private long uploadRate;
+		private long downloadRate;
+
+		public TimeWindow(int fromMinuteOfDay, int toMinuteOfDay, long uploadRate, long downloadRate) {
+			this.fromMinuteOfDay = fromMinuteOfDay;
+			this.toMinuteOfDay = toMinuteOfDay;
+			this.uploadRate = uploadRate;
+			this.downloadRate = downloadRate;
+		}
+
+		public boolean contains(int minuteOfDay) {
+			if (fromMinuteOfDay <= toMinuteOfDay) {
+				return minuteOfDay >= fromMinuteOfDay && minuteOfDay < toMinuteOfDay;
+			}
+			else { // Wraps around midnight
+				return minuteOfDay >= fromMinuteOfDay || minuteOfDay < toMinuteOfDay;
+			}
+		}
+
+		public long getUploadRate() {
+			return uploadRate;
+		}
+
+		public long getDownloadRate() {
+			return downloadRate;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%02d:%02d-%02d:%02d", fromMinuteOfDay / 60, fromMinuteOfDay % 60, 
+					(toMinuteOfDay / 60) % 24, toMinuteOfDay % 60);
+		}
+	}
+}
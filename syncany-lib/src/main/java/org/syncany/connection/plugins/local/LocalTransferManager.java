@@ -18,6 +18,7 @@
 package org.syncany.connection.plugins.local;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
@@ -73,6 +74,11 @@ public class LocalTransferManager extends AbstractTransferManager {
 		this.databasePath = new File(connection.getRepositoryPath().getAbsolutePath(), "databases");
 	}
 
+	@Override
+	public boolean supportsRateLimiting() {
+		return true;
+	}
+
 	@Override
 	public void connect() throws StorageException {
 		if (repoPath == null) {
@@ -118,7 +124,7 @@ public class LocalTransferManager extends AbstractTransferManager {
 			File tempLocalFile = createTempFile("local-tm-download");
 			tempLocalFile.deleteOnExit();
 
-			copyLocalFile(repoFile, tempLocalFile);
+			copyStream(new FileInputStream(repoFile), createDownloadOutputStream(tempLocalFile));
 
 			localFile.delete();
 			FileUtils.moveFile(tempLocalFile, localFile);
@@ -129,6 +135,20 @@ public class LocalTransferManager extends AbstractTransferManager {
 		}
 	}
 
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		connect();
+
+		File repoFile = getRemoteFile(remoteFile);
+
+		try {
+			return createDownloadInputStream(new FileInputStream(repoFile));
+		}
+		catch (FileNotFoundException ex) {
+			throw new StorageException("No such file in local repository: " + repoFile, ex);
+		}
+	}
+
 	@Override
 	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
 		connect();
@@ -147,7 +167,7 @@ public class LocalTransferManager extends AbstractTransferManager {
 		}
 
 		try {
-			copyLocalFile(localFile, tempRepoFile);
+			copyStream(createUploadInputStream(localFile), new FileOutputStream(tempRepoFile));
 			FileUtils.moveFile(tempRepoFile, repoFile);
 		}
 		catch (IOException ex) {
@@ -214,9 +234,10 @@ public class LocalTransferManager extends AbstractTransferManager {
 	}
 
 	public void copyLocalFile(File src, File dst) throws IOException {
-		InputStream in = new FileInputStream(src);
-		OutputStream out = new FileOutputStream(dst);
+		copyStream(new FileInputStream(src), new FileOutputStream(dst));
+	}
 
+	private void copyStream(InputStream in, OutputStream out) throws IOException {
 		byte[] buf = new byte[4096];
 
 		int len;
@@ -17,13 +17,17 @@
  */
 package org.syncany.database;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 
@@ -39,6 +43,10 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
  * {@link ChunkEntry}s and {@link MultiChunkEntry}s.
  * 
  * <p>The current implementation of the database version keeps all references in memory. 
+ * In addition to the primary maps, it maintains indices from the path and the checksum of 
+ * each history's last {@link FileVersion} to the corresponding {@link PartialFileHistory}. 
+ * These indices are updated incrementally whenever a file history is added. If a file 
+ * history is modified after it has been added, it must be added again to update the indices.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -58,6 +66,9 @@ public class DatabaseVersion {
 
     // Quick access cache
     private Map<ChunkChecksum, MultiChunkId> chunkMultiChunkCache;    
+    private Map<String, PartialFileHistory> filePathCache;
+    private Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache;
+    private Map<FileHistoryId, FileVersion> fileHistoryCachedVersions;
 
     public DatabaseVersion() {
     	header = new DatabaseVersionHeader();
@@ -70,6 +81,9 @@ public class DatabaseVersion {
 
         // Quick access cache
         chunkMultiChunkCache = new HashMap<ChunkChecksum, MultiChunkId>();
+        filePathCache = new HashMap<String, PartialFileHistory>();
+        fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+        fileHistoryCachedVersions = new HashMap<FileHistoryId, FileVersion>();
     }
     
 	public DatabaseVersionHeader getHeader() {
@@ -173,16 +187,93 @@ public class DatabaseVersion {
     
     public void addFileHistory(PartialFileHistory history) {
         fileHistories.put(history.getFileHistoryId(), history);
+        
+        // Update caches (remove entries of a previously added last version first)
+        FileVersion previousLastVersion = fileHistoryCachedVersions.remove(history.getFileHistoryId());
+        
+        if (previousLastVersion != null) {
+        	removeFromFileHistoryCaches(history.getFileHistoryId(), previousLastVersion);
+        }
+        
+        addToFileHistoryCaches(history);
     }
     
     public PartialFileHistory getFileHistory(FileHistoryId fileId) {
         return fileHistories.get(fileId);
     }
+    
+    /**
+     * Returns the file history whose last version has the given path and is not 
+     * marked as {@link FileStatus#DELETED DELETED}, or <tt>null</tt> if there is none.
+     */
+    public PartialFileHistory getFileHistory(String relativeFilePath) {
+    	return filePathCache.get(relativeFilePath);
+    }
+    
+    /**
+     * Returns the file histories whose last version has the given checksum (including
+     * deleted versions), or <tt>null</tt> if there are none.
+     */
+    public List<PartialFileHistory> getFileHistories(FileChecksum fileContentChecksum) {
+    	return fileChecksumCache.get(fileContentChecksum);
+    }
         
     public Collection<PartialFileHistory> getFileHistories() {
         return fileHistories.values();
     }    
     
+    private void addToFileHistoryCaches(PartialFileHistory history) {
+    	FileVersion lastVersion = history.getLastVersion();
+    	
+    	if (lastVersion == null) {
+    		return;
+    	}
+    	
+    	fileHistoryCachedVersions.put(history.getFileHistoryId(), lastVersion);
+    	
+    	if (lastVersion.getStatus() != FileStatus.DELETED) {
+    		filePathCache.put(lastVersion.getPath(), history);
+    	}
+    	
+    	if (lastVersion.getChecksum() != null) {
+    		List<PartialFileHistory> historiesWithSameChecksum = fileChecksumCache.get(lastVersion.getChecksum());
+    		
+    		if (historiesWithSameChecksum == null) {
+    			historiesWithSameChecksum = new ArrayList<PartialFileHistory>();
+    			fileChecksumCache.put(lastVersion.getChecksum(), historiesWithSameChecksum);
+    		}
+    		
+    		historiesWithSameChecksum.add(history);
+    	}
+    }
+    
+    private void removeFromFileHistoryCaches(FileHistoryId fileHistoryId, FileVersion previousLastVersion) {
+    	// Only remove the path entry if it has not been taken over by another history
+    	PartialFileHistory historyWithSamePath = filePathCache.get(previousLastVersion.getPath());
+    	
+    	if (historyWithSamePath != null && historyWithSamePath.getFileHistoryId().equals(fileHistoryId)) {
+    		filePathCache.remove(previousLastVersion.getPath());
+    	}
+    	
+    	if (previousLastVersion.getChecksum() != null) {
+    		List<PartialFileHistory> historiesWithSameChecksum = fileChecksumCache.get(previousLastVersion.getChecksum());
+    		
+    		if (historiesWithSameChecksum != null) {
+    			Iterator<PartialFileHistory> historyIterator = historiesWithSameChecksum.iterator();
+    			
+    			while (historyIterator.hasNext()) {
+    				if (historyIterator.next().getFileHistoryId().equals(fileHistoryId)) {
+    					historyIterator.remove();
+    				}
+    			}
+    			
+    			if (historiesWithSameChecksum.isEmpty()) {
+    				fileChecksumCache.remove(previousLastVersion.getChecksum());
+    			}
+    		}
+    	}
+    }
+    
     @Override
     public DatabaseVersion clone() {
     	DatabaseVersion clonedDatabaseVersion = new DatabaseVersion();
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -481,6 +482,51 @@ public class FileVersionComparator {
 		}
 	}
 
+	/**
+	 * Re-captures the properties of a regular file whose properties have already been captured
+	 * with {@link #captureFileProperties(File, FileChecksum, boolean) captureFileProperties()}, e.g.
+	 * after the file has been read. Only the size and the last modified date are read again (in a
+	 * single attribute call), all other properties are taken from the given properties.
+	 * 
+	 * <p>If the file is not a regular file anymore, all properties are captured again.
+	 */
+	public FileProperties recaptureFileProperties(FileProperties previousFileProperties, File file, FileChecksum knownChecksum) {
+		if (previousFileProperties.type != FileType.FILE || !previousFileProperties.exists || previousFileProperties.locked) {
+			return captureFileProperties(file, knownChecksum, false);
+		}
+
+		FileProperties fileProperties = new FileProperties();
+
+		fileProperties.relativePath = previousFileProperties.relativePath;
+		fileProperties.type = previousFileProperties.type;
+		fileProperties.linkTarget = previousFileProperties.linkTarget;
+		fileProperties.posixPermissions = previousFileProperties.posixPermissions;
+		fileProperties.dosAttributes = previousFileProperties.dosAttributes;
+		fileProperties.checksum = knownChecksum;
+
+		try {
+			BasicFileAttributes fileAttributes = Files.readAttributes(Paths.get(file.getAbsolutePath()), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+			if (!fileAttributes.isRegularFile()) {
+				return captureFileProperties(file, knownChecksum, false);
+			}
+
+			fileProperties.lastModified = fileAttributes.lastModifiedTime().toMillis();
+			fileProperties.size = fileAttributes.size();
+			fileProperties.exists = true;
+			fileProperties.locked = false;
+		}
+		catch (NoSuchFileException e) {
+			fileProperties.exists = false;
+			fileProperties.locked = false;
+		}
+		catch (IOException | InvalidPathException e) {
+			return captureFileProperties(file, knownChecksum, false);
+		}
+
+		return fileProperties;
+	}
+
 	public FileProperties captureFileProperties(FileVersion fileVersion) {
 		if (fileVersion == null) {
 			return null;
@@ -26,7 +26,6 @@ import java.util.Map;
 
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent.FileChecksum;
-import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 
@@ -53,18 +52,14 @@ public class MemoryDatabase {
 	
     // Caches
     private DatabaseVersion fullDatabaseVersionCache;
-    private Map<String, PartialFileHistory> filenameHistoryCache;
     private Map<VectorClock, DatabaseVersion> databaseVersionIdCache;
-    private Map<FileChecksum, List<PartialFileHistory>> contentChecksumFileHistoriesCache;
 
     public MemoryDatabase() {
     	databaseVersions = new ArrayList<DatabaseVersion>();    	
         
     	// Caches
     	fullDatabaseVersionCache = new DatabaseVersion();    	
-    	filenameHistoryCache = new HashMap<String, PartialFileHistory>();
     	databaseVersionIdCache = new HashMap<VectorClock, DatabaseVersion>();
-    	contentChecksumFileHistoriesCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
     }   	
 	
 	public DatabaseVersion getLastDatabaseVersion() {
@@ -103,11 +98,11 @@ public class MemoryDatabase {
 	}	
 	
 	public PartialFileHistory getFileHistory(String relativeFilePath) {
-		return filenameHistoryCache.get(relativeFilePath); 
+		return fullDatabaseVersionCache.getFileHistory(relativeFilePath); 
 	}
 	
 	public List<PartialFileHistory> getFileHistories(FileChecksum fileContentChecksum) {
-		return contentChecksumFileHistoriesCache.get(fileContentChecksum);
+		return fullDatabaseVersionCache.getFileHistories(fileContentChecksum);
 	}	
 	
 	public PartialFileHistory getFileHistory(FileHistoryId fileId) {
@@ -125,8 +120,6 @@ public class MemoryDatabase {
 		// WARNING: Do NOT reorder, order important!!
 		updateDatabaseVersionIdCache(databaseVersion);
 		updateFullDatabaseVersionCache(databaseVersion);
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
 	} 	
 	
 	public void addDatabaseVersions(List<DatabaseVersion> databaseVersions) {		
@@ -142,47 +135,8 @@ public class MemoryDatabase {
 		// WARNING: Do NOT reorder, order important!!
 		updateFullDatabaseVersionCache();
 		updateDatabaseVersionIdCache();
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
 	}
 
-	// TODO [medium] Very inefficient. Always updates whole cache
-	private void updateContentChecksumCache() {
-		contentChecksumFileHistoriesCache.clear();
-		
-		for (PartialFileHistory fullFileHistory : fullDatabaseVersionCache.getFileHistories()) {
-			FileChecksum lastVersionChecksum = fullFileHistory.getLastVersion().getChecksum();
-			
-			if (lastVersionChecksum != null) {
-				List<PartialFileHistory> historiesWithVersionsWithSameChecksum = contentChecksumFileHistoriesCache.get(lastVersionChecksum);
-				
-				// Create if it does not exist
-				if (historiesWithVersionsWithSameChecksum == null) {
-					historiesWithVersionsWithSameChecksum = new ArrayList<PartialFileHistory>();
-				}
-				
-				// Add to cache
-				historiesWithVersionsWithSameChecksum.add(fullFileHistory);
-				contentChecksumFileHistoriesCache.put(lastVersionChecksum, historiesWithVersionsWithSameChecksum);
-			}
-		}
-				
-	}
-	
-	private void updateFilenameHistoryCache() {
-		// TODO [medium] Performance: This throws away the unchanged entries. It should only update new database version
-		filenameHistoryCache.clear(); 
-		 
-		for (PartialFileHistory cacheFileHistory : fullDatabaseVersionCache.getFileHistories()) {
-			FileVersion lastVersion = cacheFileHistory.getLastVersion();
-			String fileName = lastVersion.getPath();
-			
-			if (lastVersion.getStatus() != FileStatus.DELETED) {
-				filenameHistoryCache.put(fileName, cacheFileHistory);				
-			}
-		}		
-	}
-	
 	private void updateDatabaseVersionIdCache(DatabaseVersion newDatabaseVersion) {
 		databaseVersionIdCache.put(newDatabaseVersion.getVectorClock(), newDatabaseVersion);
 	}
@@ -238,6 +192,9 @@ public class MemoryDatabase {
 						targetFileHistory.addFileVersion(sourceFileVersion);
 					}
 				}
+				
+				// Re-add to update the path and checksum caches
+				fullDatabaseVersionCache.addFileHistory(targetFileHistory);
 			}
 		}		
 	}
@@ -160,6 +160,14 @@ public class SqlDatabase {
 		return fileHistoryDao.getFileHistoriesWithLastVersion();
 	}
 
+	public Iterator<PartialFileHistory> getFileHistoriesWithLastVersionIterator() {
+		return fileHistoryDao.getFileHistoriesWithLastVersionIterator();
+	}
+
+	public PartialFileHistory getFileHistoryWithLastVersionByPath(String path) {
+		return fileHistoryDao.getFileHistoryWithLastVersionByPath(path);
+	}
+
 	public List<PartialFileHistory> getFileHistoriesWithLastVersionByChecksum(FileChecksum fileContentChecksum) {
 		return fileHistoryDao.getFileHistoriesWithLastVersionByChecksum(fileContentChecksum);
 	}
@@ -173,6 +181,10 @@ public class SqlDatabase {
 	public Map<String, FileVersion> getCurrentFileTree() {
 		return fileVersionDao.getCurrentFileTree();
 	}
+
+	public Map<String, FileVersion> getCurrentFileTreeInFolder(String folderPath) {
+		return fileVersionDao.getCurrentFileTreeInFolder(folderPath);
+	}
 	
 	public void removeSmallerOrEqualFileVersions(Map<FileHistoryId, FileVersion> purgeFileVersions) throws SQLException {
 		fileVersionDao.removeFileVersions(purgeFileVersions);
@@ -23,6 +23,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -177,6 +178,55 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	}
 
 
+	/**
+	 * Looks up the {@link PartialFileHistory} whose last (non-deleted) {@link FileVersion} has
+	 * the given path. Unlike {@link #getFileHistoriesWithLastVersion()}, this method only loads
+	 * the matching file history, using the index on the <i>path</i> column.
+	 * 
+	 * @param path Relative path of the file (as stored in the last file version)
+	 * @return Returns the file history with its last version, or <tt>null</tt> if none exists
+	 */
+	public PartialFileHistory getFileHistoryWithLastVersionByPath(String path) {
+		try (PreparedStatement preparedStatement = getStatement("/sql/filehistory.select.master.getFileHistoryWithLastVersionByPath.sql")) {
+			preparedStatement.setString(1, path);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (resultSet.next()) {
+					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+
+					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+					fileHistory.addFileVersion(lastFileVersion);
+
+					return fileHistory;
+				}
+			}
+
+			return null;
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns all {@link PartialFileHistory}s with their last (non-deleted) {@link FileVersion},
+	 * one row at a time. In contrast to {@link #getFileHistoriesWithLastVersion()}, the file
+	 * histories are not collected in a list, so callers that look at each history only once
+	 * do not need memory proportional to the size of the repository.
+	 * 
+	 * <p>The underlying statement is closed when the last element has been read.
+	 */
+	public Iterator<PartialFileHistory> getFileHistoriesWithLastVersionIterator() {
+		try {
+			PreparedStatement preparedStatement = getStatement("/sql/filehistory.select.master.getFileHistoriesWithLastVersion.sql");
+			return new FileHistoryIteration(preparedStatement, preparedStatement.executeQuery());
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public List<PartialFileHistory> getFileHistoriesWithLastVersion() {
 		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
 
@@ -223,5 +273,60 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
-	}	
+	}
+
+	private class FileHistoryIteration implements Iterator<PartialFileHistory> {
+		private PreparedStatement preparedStatement;
+		private ResultSet resultSet;
+		private boolean hasNext;
+
+		public FileHistoryIteration(PreparedStatement preparedStatement, ResultSet resultSet) throws SQLException {
+			this.preparedStatement = preparedStatement;
+			this.resultSet = resultSet;
+			this.hasNext = resultSet.next();
+
+			closeIfDone();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return hasNext;
+		}
+
+		@Override
+		public PartialFileHistory next() {
+			if (hasNext) {
+				try {
+					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+
+					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+					fileHistory.addFileVersion(lastFileVersion);
+
+					hasNext = resultSet.next();
+					closeIfDone();
+
+					return fileHistory;
+				}
+				catch (SQLException e) {
+					throw new RuntimeException("Cannot load next SQL row.", e);
+				}
+			}
+			else {
+				return null;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new RuntimeException("Not implemented.");
+		}
+
+		private void closeIfDone() throws SQLException {
+			if (!hasNext) {
+				resultSet.close();
+				preparedStatement.close();
+			}
+		}
+	}
 }
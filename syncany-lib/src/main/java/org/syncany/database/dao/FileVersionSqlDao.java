@@ -150,6 +150,28 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 	
+	/**
+	 * Queries the database for the currently active {@link FileVersion}s below the given 
+	 * folder (at any depth, excluding the folder itself). Unlike {@link #getCurrentFileTree()},
+	 * this method only loads the matching file versions: The paths are selected as the range
+	 * between <tt>folder/</tt> and <tt>folder0</tt> (the character following the slash), so
+	 * that the index on the <i>path</i> column can be used.
+	 * 
+	 * @param folderPath Relative path of the folder, without trailing slash
+	 * @return Returns the file tree below the folder as a map of relative paths to {@link FileVersion} objects
+	 */
+	public Map<String, FileVersion> getCurrentFileTreeInFolder(String folderPath) {		
+		try (PreparedStatement preparedStatement = getStatement("/sql/fileversion.select.master.getCurrentFileTreeInFolder.sql")) {
+			preparedStatement.setString(1, folderPath + "/");
+			preparedStatement.setString(2, folderPath + (char) ('/' + 1));
+			
+			return getFileTree(preparedStatement);				
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	/**
 	 * Queries the database for the {@link FileVersion}s active at the given date and
 	 * returns it as a map.
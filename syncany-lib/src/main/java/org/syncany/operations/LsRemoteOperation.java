@@ -65,7 +65,7 @@ public class LsRemoteOperation extends Operation {
 		
 		TransferManager transferManager = (loadedTransferManager != null)
 				? loadedTransferManager
-				: config.getConnection().createTransferManager();
+				: config.createTransferManager();
 		
 		List<DatabaseRemoteFile> knownDatabases = localDatabase.getKnownDatabases();
 		List<DatabaseRemoteFile> unknownRemoteDatabases = listUnknownRemoteDatabases(transferManager, knownDatabases);		
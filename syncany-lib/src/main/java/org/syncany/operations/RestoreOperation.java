@@ -17,12 +17,7 @@
  */
 package org.syncany.operations;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
@@ -33,7 +28,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
-import org.syncany.connection.plugins.MultiChunkRemoteFile;
 import org.syncany.connection.plugins.StorageException;
 import org.syncany.connection.plugins.TransferManager;
 import org.syncany.database.FileContent.FileChecksum;
@@ -41,9 +35,9 @@ import org.syncany.database.FileVersion;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.operations.down.MultiChunkDownloader;
 import org.syncany.operations.down.actions.FileSystemAction;
 import org.syncany.operations.down.actions.NewFileSystemAction;
-import org.syncany.util.FileUtil;
 
 /**
  * TODO [medium] Quick and dirty implementation of RestoreOperation, duplicate code with DownOperation
@@ -124,32 +118,11 @@ public class RestoreOperation extends Operation {
 	}
 
 	private void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
-		// TODO [medium] Duplicate code in DownOperation
-
 		logger.log(Level.INFO, "- Downloading and extracting multichunks ...");
-		TransferManager transferManager = config.getConnection().createTransferManager();
-
-		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
-			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
-			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
-			MultiChunkRemoteFile remoteMultiChunkFile = new MultiChunkRemoteFile(multiChunkId);
-
-			logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-			transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+		TransferManager transferManager = config.createTransferManager();
 
-			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
-
-			// TODO [medium] Calculate checksum while writing file, to verify correct content
-			FileUtil.appendToOutputStream(multiChunkInputStream, decryptedMultiChunkOutputStream);
-
-			decryptedMultiChunkOutputStream.close();
-			multiChunkInputStream.close();
-
-			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-			localEncryptedMultiChunkFile.delete();
-		}
+		MultiChunkDownloader multiChunkDownloader = new MultiChunkDownloader(config, transferManager, null, options.getDownloadThreadCount());
+		multiChunkDownloader.downloadAndDecrypt(unknownMultiChunkIds);
 
 		transferManager.disconnect();
 	}
@@ -163,6 +136,7 @@ public class RestoreOperation extends Operation {
 		private Date databaseBeforeDate;
 		private Integer fileVersionNumber;
 		private List<String> restoreFilePaths;
+		private int downloadThreadCount = 1;
 
 		public Date getDatabaseBeforeDate() {
 			return databaseBeforeDate;
@@ -195,6 +169,14 @@ public class RestoreOperation extends Operation {
 		public void setFileVersionNumber(Integer fileVersionNumber) {
 			this.fileVersionNumber = fileVersionNumber;
 		}
+
+		public int getDownloadThreadCount() {
+			return downloadThreadCount;
+		}
+
+		public void setDownloadThreadCount(int downloadThreadCount) {
+			this.downloadThreadCount = downloadThreadCount;
+		}
 	}
 
 	public class RestoreOperationResult implements OperationResult {
@@ -0,0 +1,311 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersionComparator;
+import org.syncany.util.EnvironmentUtil;
+import org.syncany.util.FileUtil;
+
+/**
+ * The stat cache remembers the file system metadata of local files that were found
+ * to be unchanged by the {@link StatusOperation}, so that subsequent runs can decide 
+ * whether a file is unchanged from the attributes delivered by the file tree walk,
+ * without calling the {@link FileVersionComparator} for it.
+ * 
+ * <p>An entry stores the file key (inode), size, modification time, change time (on
+ * Unix-like systems) or DOS attributes (on Windows) of a file, as well as a fingerprint 
+ * of the {@link FileVersion} it was compared to. A file is considered unchanged if all of
+ * these are identical, i.e. if neither the file on disk nor the expected file version in
+ * the database changed since the last comparison. On any mismatch, the full comparison 
+ * is performed.
+ * 
+ * <p>The cache is persisted in the application directory. Only entries visited
+ * in the current run are written back, so that entries for vanished, changed or new
+ * files are dropped. In partial mode, i.e. if only some paths were examined, the visited
+ * entries are merged into the loaded entries instead, and entries of changed or vanished
+ * files must be removed explicitly via {@link #invalidate(String)}.
+ * 
+ * <p>Lookups and updates are thread-safe, so that the cache can be used by a 
+ * parallel file tree walk.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StatCache {
+	private static final Logger logger = Logger.getLogger(StatCache.class.getSimpleName());
+
+	public static final String FILE_STAT_CACHE = "statcache";
+	private static final int FORMAT_VERSION = 1;
+
+	private File cacheFile;
+	private Map<String, StatCacheEntry> entries;
+	private Map<String, StatCacheEntry> visitedEntries;
+	private AtomicInteger hitCount;
+	private boolean partial;
+	private int invalidatedCount;
+
+	public StatCache(Config config) {
+		this.cacheFile = new File(config.getAppDir(), FILE_STAT_CACHE);
+		this.entries = new HashMap<String, StatCacheEntry>();
+		this.visitedEntries = new ConcurrentHashMap<String, StatCacheEntry>();
+		this.hitCount = new AtomicInteger(0);
+		this.partial = false;
+		this.invalidatedCount = 0;
+	}
+
+	/**
+	 * Sets whether only some paths are examined in this run. If so, entries
+	 * that are not visited are kept when the cache is saved.
+	 */
+	public void setPartial(boolean partial) {
+		this.partial = partial;
+	}
+
+	/**
+	 * Loads the persisted stat cache, if it exists. If the file cannot
+	 * be read, the cache is started empty. 
+	 */
+	public void load() {
+		entries.clear();
+
+		if (!cacheFile.exists()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			int formatVersion = in.readInt();
+
+			if (formatVersion != FORMAT_VERSION) {
+				logger.log(Level.INFO, "Stat cache has unknown format version " + formatVersion + ", ignoring it.");
+				return;
+			}
+
+			int entryCount = in.readInt();
+
+			for (int i = 0; i < entryCount; i++) {
+				StatCacheEntry entry = StatCacheEntry.read(in);
+				entries.put(entry.getPath(), entry);
+			}
+
+			logger.log(Level.INFO, "Loaded stat cache with " + entries.size() + " entries.");
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read stat cache " + cacheFile + ", ignoring it.", e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Writes the entries visited in this run (merged with the loaded entries 
+	 * in partial mode) to disk, unless they are identical to the loaded entries. 
+	 */
+	public void save() throws IOException {
+		boolean unchanged = (partial) 
+				? visitedEntries.size() == hitCount.get() && invalidatedCount == 0 
+				: hitCount.get() == entries.size() && visitedEntries.size() == hitCount.get();
+				
+		if (unchanged && cacheFile.exists()) {
+			logger.log(Level.INFO, "Stat cache unchanged, not writing it.");
+			return;
+		}
+
+		Map<String, StatCacheEntry> savedEntries = visitedEntries;
+		
+		if (partial) {
+			savedEntries = new HashMap<String, StatCacheEntry>(entries);
+			savedEntries.putAll(visitedEntries);
+		}
+		
+		File tempCacheFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempCacheFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(savedEntries.size());
+
+			for (StatCacheEntry entry : savedEntries.values()) {
+				entry.write(out);
+			}
+		}
+
+		cacheFile.delete();
+
+		if (!tempCacheFile.renameTo(cacheFile)) {
+			throw new IOException("Cannot move stat cache file " + tempCacheFile + " to " + cacheFile);
+		}
+
+		logger.log(Level.INFO, "Wrote stat cache with " + savedEntries.size() + " entries.");
+	}
+
+	/**
+	 * Creates a cache entry for the given file from the attributes of the file tree walk
+	 * and the expected file version. On Unix-like systems, the change time is read 
+	 * in addition to the given attributes, because permission changes do not alter the 
+	 * modification time.  
+	 * 
+	 * @return The entry, or <tt>null</tt> if the file's metadata cannot be captured
+	 */
+	public StatCacheEntry createEntry(String relativePath, FileVersion expectedFileVersion, Path file, BasicFileAttributes attrs) {
+		try {
+			String fileKey = (attrs.fileKey() != null) ? attrs.fileKey().toString() : "";
+			String attributes = null;
+			long changeTime = 0;
+
+			if (attrs instanceof DosFileAttributes) {
+				attributes = FileUtil.dosAttrsToString((DosFileAttributes) attrs);
+			}
+			else if (EnvironmentUtil.isUnixLikeOperatingSystem()) {
+				FileTime changeFileTime = (FileTime) Files.getAttribute(file, "unix:ctime", LinkOption.NOFOLLOW_LINKS);
+
+				attributes = "";
+				changeTime = changeFileTime.toMillis();
+			}
+			else {
+				return null;
+			}
+
+			return new StatCacheEntry(relativePath, fileKey, attrs.size(), attrs.lastModifiedTime().toMillis(), changeTime, attributes,
+					createFingerprint(expectedFileVersion));
+		}
+		catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			logger.log(Level.FINE, "Cannot capture stat for file " + file + ", not using stat cache.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether the given entry matches the cached entry of the same path,
+	 * i.e. whether the file has been found unchanged in a previous run and neither
+	 * the file nor its expected version changed since.
+	 */
+	public boolean isUnchanged(StatCacheEntry entry) {
+		boolean unchanged = entry.equals(entries.get(entry.getPath()));
+
+		if (unchanged) {
+			hitCount.incrementAndGet();
+		}
+
+		return unchanged;
+	}
+
+	/**
+	 * Remembers the given entry as unchanged for the next run.
+	 */
+	public void put(StatCacheEntry entry) {
+		visitedEntries.put(entry.getPath(), entry);
+	}
+
+	/**
+	 * Removes the entry of the given path, e.g. because the file changed or vanished.
+	 * Must not be called concurrently with lookups.
+	 */
+	public void invalidate(String relativePath) {
+		visitedEntries.remove(relativePath);
+		
+		if (entries.remove(relativePath) != null) {
+			invalidatedCount++;
+		}
+	}
+
+	private String createFingerprint(FileVersion fileVersion) {
+		return fileVersion.getType() + "/" + fileVersion.getStatus() + "/" + fileVersion.getSize() + "/"
+				+ ((fileVersion.getLastModified() != null) ? fileVersion.getLastModified().getTime() : "") + "/" + fileVersion.getChecksum() + "/"
+				+ fileVersion.getPosixPermissions() + "/" + fileVersion.getDosAttributes() + "/" + fileVersion.getLinkTarget();
+	}
+
+	public static class StatCacheEntry {
+		private String path;
+		private String fileKey;
+		private long size;
+		private long lastModified;
+		private long changeTime;
+		private String attributes;
+		private String versionFingerprint;
+
+		public StatCacheEntry(String path, String fileKey, long size, long lastModified, long changeTime, String attributes,
+				String versionFingerprint) {
+
+			this.path = path;
+			this.fileKey = fileKey;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.changeTime = changeTime;
+			this.attributes = attributes;
+			this.versionFingerprint = versionFingerprint;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeUTF(path);
+			out.writeUTF(fileKey);
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			out.writeLong(changeTime);
+			out.writeUTF(attributes);
+			out.writeUTF(versionFingerprint);
+		}
+
+		private static StatCacheEntry read(DataInputStream in) throws IOException {
+			return new StatCacheEntry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readUTF(), in.readUTF());
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof StatCacheEntry)) {
+				return false;
+			}
+
+			StatCacheEntry other = (StatCacheEntry) obj;
+
+			return size == other.size && lastModified == other.lastModified && changeTime == other.changeTime && path.equals(other.path)
+					&& fileKey.equals(other.fileKey) && attributes.equals(other.attributes) && versionFingerprint.equals(other.versionFingerprint);
+		}
+	}
+}
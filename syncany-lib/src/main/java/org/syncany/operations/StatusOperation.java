@@ -20,28 +20,56 @@ package org.syncany.operations;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
+import org.syncany.config.IgnoredFiles;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.FileVersionComparator;
 import org.syncany.database.FileVersionComparator.FileVersionComparison;
+import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
+import org.syncany.operations.StatCache.StatCacheEntry;
 import org.syncany.util.FileUtil;
 
 /**
  * The status operation analyzes the local file tree and compares it to the current local
  * database. It uses the {@link FileVersionComparator} to determine differences and returns
  * new/changed/deleted files in form of a {@link ChangeSet}.
+ * 
+ * <p>To avoid comparing every file in every run, the operation uses a {@link StatCache}:
+ * Files whose metadata and expected file version are identical to the last run in which 
+ * they were found unchanged are not compared again. The stat cache is not used if 
+ * checksums are forced.
+ * 
+ * <p>If the options contain a set of dirty paths (e.g. collected by a file watcher), only
+ * these paths, their parent folders and the subtrees of dirty or new folders are examined,
+ * instead of walking the entire local folder. 
  *   
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -50,6 +78,7 @@ public class StatusOperation extends Operation {
 	
 	private FileVersionComparator fileVersionComparator; 
 	private SqlDatabase localDatabase;
+	private StatCache statCache;
 	private StatusOperationOptions options;
 	
 	public StatusOperation(Config config) {
@@ -73,16 +102,34 @@ public class StatusOperation extends Operation {
 		if (options != null && options.isForceChecksum()) {
 			logger.log(Level.INFO, "Force checksum ENABLED.");
 		}
+		else {
+			statCache = new StatCache(config);
+			statCache.load();
+		}
+		
+		Set<String> dirtyPaths = (options != null) ? options.getDirtyPaths() : null;
+		
+		// Find local changes
+		ChangeSet localChanges;
 		
-		// Get local database
-		logger.log(Level.INFO, "Querying current file tree from database ...");				
+		if (dirtyPaths != null) {
+			logger.log(Level.INFO, "Analyzing " + dirtyPaths.size() + " dirty path(s) in local folder "+config.getLocalDir()+" ...");
+			localChanges = findLocalChangesInDirtyPaths(dirtyPaths);
+		}
+		else {
+			// Get local database
+			logger.log(Level.INFO, "Querying current file tree from database ...");				
 
-		// Path to actual file version
-		final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
+			// Path to actual file version
+			final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
 
-		// Find local changes
-		logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
-		ChangeSet localChanges = findLocalChanges(filesInDatabase);
+			logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
+			localChanges = findLocalChanges(filesInDatabase);
+		}
+		
+		if (statCache != null) {
+			saveStatCache();
+		}
 		
 		if (!localChanges.hasChanges()) {
 			logger.log(Level.INFO, "- No changes to local database");
@@ -95,6 +142,20 @@ public class StatusOperation extends Operation {
 		return statusResult;
 	}
 
+	private void saveStatCache() {
+		if (!config.getAppDir().exists()) {
+			logger.log(Level.FINE, "App dir does not exist, not writing stat cache.");
+			return;
+		}
+		
+		try {
+			statCache.save();
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write stat cache; ignoring error.", e);
+		}
+	}
+
 	private ChangeSet findLocalChanges(final Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
 		ChangeSet localChanges = findLocalChangedAndNewFiles(config.getLocalDir(), filesInDatabase);
 		findAndAppendDeletedFiles(localChanges, filesInDatabase);
@@ -104,11 +165,186 @@ public class StatusOperation extends Operation {
 	
 	private ChangeSet findLocalChangedAndNewFiles(final File root, Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
 		Path rootPath = Paths.get(root.getAbsolutePath());
+		int walkThreadCount = (options != null) ? options.getWalkThreadCount() : 1;
+		
+		if (walkThreadCount > 1) {
+			logger.log(Level.INFO, "Walking file tree with " + walkThreadCount + " threads ...");
+			return new ParallelStatusWalker(rootPath, filesInDatabase, walkThreadCount).walk();
+		}
+		else {
+			StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);		
+			Files.walkFileTree(rootPath, fileVisitor);
+			
+			return fileVisitor.getChangeSet();
+		}
+	}
+	
+	/**
+	 * Examines only the given dirty paths and their parent folders. Dirty folders and folders
+	 * that are not yet in the database are walked entirely, because their contents might not 
+	 * have been reported individually. Files in the database are only checked for deletion if 
+	 * they are dirty themselves, or if they are located in a vanished or walked folder.
+	 * 
+	 * <p>The current file tree is not loaded as a whole: The expected file version of each examined
+	 * path is looked up by its path, and the contents of vanished or walked folders are queried
+	 * by their path prefix.
+	 */
+	private ChangeSet findLocalChangesInDirtyPaths(Set<String> dirtyPaths) throws IOException {
+		Path rootPath = Paths.get(config.getLocalDir().getAbsolutePath());
+		ChangeSet localChanges = new ChangeSet();
+		
+		// Examined paths and the contents of walked or vanished folders only
+		Map<String, FileVersion> filesInDatabase = new HashMap<String, FileVersion>();
+
+		// Sorted, so that parent folders are examined before their children
+		SortedSet<String> examinedPaths = new TreeSet<String>(); 
+		
+		for (String dirtyPath : dirtyPaths) {
+			for (String path = dirtyPath; path != null; path = getParentPath(path)) {
+				examinedPaths.add(path);
+			}
+		}		
+		
+		Set<String> completedFolders = new HashSet<String>(); // Skipped, walked or vanished folders
+		Set<String> deletionScopeFolders = new HashSet<String>(); // Walked or vanished folders
+		Set<String> vanishedPaths = new HashSet<String>();
+		
+		for (String relativePath : examinedPaths) {
+			if (isInFolders(relativePath, completedFolders)) {
+				continue;
+			}
+			
+			FileVersion expectedLastFileVersion = getLastFileVersionByPath(relativePath);
+			
+			if (expectedLastFileVersion != null) {
+				filesInDatabase.put(relativePath, expectedLastFileVersion);
+			}
+			
+			Path actualLocalFile = rootPath.resolve(relativePath);
+			BasicFileAttributes attrs = readAttributes(actualLocalFile);
+			
+			if (attrs == null) {
+				vanishedPaths.add(relativePath);
+				completedFolders.add(relativePath);
+				
+				// Only folders in the database can have vanished contents
+				if (expectedLastFileVersion != null && expectedLastFileVersion.getType() == FileType.FOLDER) {
+					filesInDatabase.putAll(localDatabase.getCurrentFileTreeInFolder(relativePath));
+					deletionScopeFolders.add(relativePath);
+				}
+			}
+			else {
+				boolean walkFolder = attrs.isDirectory() && !attrs.isSymbolicLink() 
+						&& (dirtyPaths.contains(relativePath) || expectedLastFileVersion == null);
+				
+				if (walkFolder) {
+					filesInDatabase.putAll(localDatabase.getCurrentFileTreeInFolder(relativePath));
+					
+					StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);		
+					Files.walkFileTree(actualLocalFile, fileVisitor);
+					
+					appendChangeSet(localChanges, fileVisitor.getChangeSet());
+					
+					completedFolders.add(relativePath);
+					deletionScopeFolders.add(relativePath);
+				}
+				else {
+					FileVisitResult visitResult = visitPath(rootPath, actualLocalFile, attrs, filesInDatabase, localChanges, true);
+					
+					if (visitResult == FileVisitResult.SKIP_SUBTREE) {
+						completedFolders.add(relativePath);
+					}
+				}
+			}
+		}
+		
+		findAndAppendDeletedFiles(localChanges, filesInDatabase, vanishedPaths, deletionScopeFolders);
+		
+		if (statCache != null) {
+			statCache.setPartial(true);
+			
+			for (String changedPath : localChanges.getChangedFiles()) {
+				statCache.invalidate(changedPath);
+			}
+			
+			for (String deletedPath : localChanges.getDeletedFiles()) {
+				statCache.invalidate(deletedPath);
+			}
+		}
 		
-		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);		
-		Files.walkFileTree(rootPath, fileVisitor);
+		return localChanges;
+	}
+	
+	private FileVersion getLastFileVersionByPath(String relativePath) {
+		PartialFileHistory fileHistory = localDatabase.getFileHistoryWithLastVersionByPath(relativePath);
+		return (fileHistory != null) ? fileHistory.getLastVersion() : null;
+	}
+	
+	private void findAndAppendDeletedFiles(ChangeSet localChanges, Map<String, FileVersion> filesInDatabase, Set<String> vanishedPaths, Set<String> deletionScopeFolders) {
+		// Vanished paths themselves
+		for (String vanishedPath : vanishedPaths) {
+			FileVersion lastLocalVersion = filesInDatabase.get(vanishedPath);
+			
+			if (lastLocalVersion != null && lastLocalVersion.getStatus() != FileStatus.DELETED) {
+				localChanges.getDeletedFiles().add(vanishedPath);
+			}
+		}
+		
+		// Files in vanished or walked folders
+		if (deletionScopeFolders.isEmpty()) {
+			return;
+		}
+
+		for (FileVersion lastLocalVersion : filesInDatabase.values()) {
+			String parentPath = getParentPath(lastLocalVersion.getPath());
+			
+			if (lastLocalVersion.getStatus() != FileStatus.DELETED && parentPath != null && isInFolders(parentPath, deletionScopeFolders)) {
+				File lastLocalVersionOnDisk = new File(config.getLocalDir()+File.separator+lastLocalVersion.getPath());
+				
+				if (!FileUtil.exists(lastLocalVersionOnDisk)) {
+					localChanges.getDeletedFiles().add(lastLocalVersion.getPath());
+				}
+			}
+		}		
+	}
+	
+	private void appendChangeSet(ChangeSet changeSet, ChangeSet appendChangeSet) {
+		changeSet.getNewFiles().addAll(appendChangeSet.getNewFiles());
+		changeSet.getChangedFiles().addAll(appendChangeSet.getChangedFiles());
+		changeSet.getUnchangedFiles().addAll(appendChangeSet.getUnchangedFiles());
+		changeSet.getDeletedFiles().addAll(appendChangeSet.getDeletedFiles());
+	}
+
+	/**
+	 * Returns whether the given relative path is located in (or equal to) one of the given folders.
+	 */
+	private boolean isInFolders(String relativePath, Set<String> folders) {
+		for (String path = relativePath; path != null; path = getParentPath(path)) {
+			if (folders.contains(path)) {
+				return true;
+			}
+		}
 		
-		return fileVisitor.getChangeSet();		
+		return false;
+	}
+	
+	private String getParentPath(String relativePath) {
+		int lastSlashIndex = relativePath.lastIndexOf('/');
+		return (lastSlashIndex > 0) ? relativePath.substring(0, lastSlashIndex) : null;
+	}
+	
+	private BasicFileAttributes readAttributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+		catch (NoSuchFileException e) {
+			logger.log(Level.FINEST, "File " + path + " does not exist, skipping.");
+			return null;
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "Cannot read attributes of " + path + ", skipping.", e);
+			return null;
+		}
 	}
 	
 	private void findAndAppendDeletedFiles(ChangeSet localChanges, Map<String,FileVersion> filesInDatabase) {
@@ -128,90 +364,131 @@ public class StatusOperation extends Operation {
 		}		
 	}
 	
-	private class StatusFileVisitor implements FileVisitor<Path> {
-		private Path root;
-		private ChangeSet changeSet;		
-		private Map<String, FileVersion> currentFileTree;
+	/**
+	 * Compares a single file or folder to the current file tree and adds it to the 
+	 * given change set. This method is called concurrently by the {@link ParallelStatusWalker}
+	 * and must hence only access thread-safe state.
+	 * 
+	 * @param checkIgnored Whether new files must be checked against the ignore rules; <tt>false</tt> if
+	 *        no rule can match in the file's parent folder (see {@link IgnoredFiles#mayMatchBelow(String)})
+	 * @return {@link FileVisitResult#SKIP_SUBTREE} if the file or folder is ignored, 
+	 *         and its subtree should not be visited; {@link FileVisitResult#CONTINUE} otherwise
+	 */
+	private FileVisitResult visitPath(Path root, Path actualLocalFile, BasicFileAttributes attrs, Map<String, FileVersion> currentFileTree, ChangeSet changeSet, 
+			boolean checkIgnored) {
+
+		String relativeFilePath = FileUtil.getRelativeDatabasePath(root.toFile(), actualLocalFile.toFile()); //root.relativize(actualLocalFile).toString();
 		
-		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree) {
-			this.root = root;
-			this.changeSet = new ChangeSet();
-			this.currentFileTree = currentFileTree;
+		// Skip Syncany root folder
+		if (actualLocalFile.toFile().equals(config.getLocalDir())) {
+			return FileVisitResult.CONTINUE;
 		}
-
-		public ChangeSet getChangeSet() {
-			return changeSet;
+		
+		// Skip .syncany (or app related acc. to config) 		
+		boolean isAppRelatedDir =
+			   actualLocalFile.toFile().equals(config.getAppDir())
+			|| actualLocalFile.toFile().equals(config.getCache())
+			|| actualLocalFile.toFile().equals(config.getDatabaseDir())
+			|| actualLocalFile.toFile().equals(config.getLogDir());
+		
+		if (isAppRelatedDir) {
+			logger.log(Level.FINEST, "- Ignoring file (syncany app-related): {0}", relativeFilePath);
+			return FileVisitResult.SKIP_SUBTREE;
 		}
-		 
-		@Override
-		public FileVisitResult visitFile(Path actualLocalFile, BasicFileAttributes attrs) throws IOException {
-			String relativeFilePath = FileUtil.getRelativeDatabasePath(root.toFile(), actualLocalFile.toFile()); //root.relativize(actualLocalFile).toString();
 			
-			// Skip Syncany root folder
-			if (actualLocalFile.toFile().equals(config.getLocalDir())) {
-				return FileVisitResult.CONTINUE;
-			}
-			
-			// Skip .syncany (or app related acc. to config) 		
-			boolean isAppRelatedDir =
-				   actualLocalFile.toFile().equals(config.getAppDir())
-				|| actualLocalFile.toFile().equals(config.getCache())
-				|| actualLocalFile.toFile().equals(config.getDatabaseDir())
-				|| actualLocalFile.toFile().equals(config.getLogDir());
+		// Check if file is locked
+		boolean fileLocked = FileUtil.isFileLocked(actualLocalFile.toFile());
+		
+		if (fileLocked) {
+			logger.log(Level.FINEST, "- Ignoring file (locked): {0}", relativeFilePath);						
+			return FileVisitResult.CONTINUE;
+		}				
+		
+		// Check database by file path
+		FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
+		
+		if (expectedLastFileVersion != null) {
+			// Check stat cache (if file and expected version did not change since last run)
+			StatCacheEntry statCacheEntry = (statCache != null) ? statCache.createEntry(relativeFilePath, expectedLastFileVersion, actualLocalFile, attrs) : null;
 			
-			if (isAppRelatedDir) {
-				logger.log(Level.FINEST, "- Ignoring file (syncany app-related): {0}", relativeFilePath);
-				return FileVisitResult.SKIP_SUBTREE;
+			if (statCacheEntry != null && statCache.isUnchanged(statCacheEntry)) {
+				changeSet.getUnchangedFiles().add(relativeFilePath);
+				statCache.put(statCacheEntry);
 			}
-				
-			// Check if file is locked
-			boolean fileLocked = FileUtil.isFileLocked(actualLocalFile.toFile());
-			
-			if (fileLocked) {
-				logger.log(Level.FINEST, "- Ignoring file (locked): {0}", relativeFilePath);						
-				return FileVisitResult.CONTINUE;
-			}				
-			
-			// Check database by file path
-			FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
-			
-			if (expectedLastFileVersion != null) {				
+			else {
 				// Compare
 				boolean forceChecksum = options != null && options.isForceChecksum();
 				FileVersionComparison fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), forceChecksum); 
 				
 				if (fileVersionComparison.equals()) {
 					changeSet.getUnchangedFiles().add(relativeFilePath);
+					
+					if (statCacheEntry != null) {
+						statCache.put(statCacheEntry);
+					}
 				}
 				else {
 					changeSet.getChangedFiles().add(relativeFilePath);
-				}					
-			}
-			else {
-				if (!config.getIgnoredFiles().isFileIgnored(relativeFilePath)) {
-					changeSet.getNewFiles().add(relativeFilePath);
-					logger.log(Level.FINEST, "- New file: "+relativeFilePath);
-				}
-				else {
-					logger.log(Level.FINEST, "- Ignoring file; " + relativeFilePath);
-					return FileVisitResult.SKIP_SUBTREE;
 				}
-			}			
-			
-			// Check if file is symlink directory
-			boolean isSymlinkDir = attrs.isDirectory() && attrs.isSymbolicLink();
-			
-			if (isSymlinkDir) {
-				logger.log(Level.FINEST, "   + File is sym. directory. Skipping subtree.");
-				return FileVisitResult.SKIP_SUBTREE;
+			}
+		}
+		else {
+			if (!checkIgnored || !config.getIgnoredFiles().isFileIgnored(relativeFilePath)) {
+				changeSet.getNewFiles().add(relativeFilePath);
+				logger.log(Level.FINEST, "- New file: "+relativeFilePath);
 			}
 			else {
-				return FileVisitResult.CONTINUE;
+				logger.log(Level.FINEST, "- Ignoring file; " + relativeFilePath);
+				return FileVisitResult.SKIP_SUBTREE;
 			}
+		}			
+		
+		// Check if file is symlink directory
+		boolean isSymlinkDir = attrs.isDirectory() && attrs.isSymbolicLink();
+		
+		if (isSymlinkDir) {
+			logger.log(Level.FINEST, "   + File is sym. directory. Skipping subtree.");
+			return FileVisitResult.SKIP_SUBTREE;
+		}
+		else {
+			return FileVisitResult.CONTINUE;
+		}
+	}
+	
+	private boolean ignoreRulesMayMatchBelow(Path root, Path dir) {
+		return config.getIgnoredFiles().mayMatchBelow(FileUtil.getRelativeDatabasePath(root.toFile(), dir.toFile()));
+	}
+	
+	private class StatusFileVisitor implements FileVisitor<Path> {
+		private Path root;
+		private ChangeSet changeSet;		
+		private Map<String, FileVersion> currentFileTree;
+		private Path ruleFreeDir; // Folder currently visited, below which no ignore rule matches
+		
+		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree) {
+			this.root = root;
+			this.changeSet = new ChangeSet();
+			this.currentFileTree = currentFileTree;
+			this.ruleFreeDir = null;
+		}
+
+		public ChangeSet getChangeSet() {
+			return changeSet;
+		}
+		 
+		@Override
+		public FileVisitResult visitFile(Path actualLocalFile, BasicFileAttributes attrs) throws IOException {
+			return visitPath(root, actualLocalFile, attrs, currentFileTree, changeSet, ruleFreeDir == null);
 		}
 		
 		@Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException { 
-			return visitFile(dir, attrs);
+			FileVisitResult visitResult = visitFile(dir, attrs);
+			
+			if (visitResult == FileVisitResult.CONTINUE && ruleFreeDir == null && !ignoreRulesMayMatchBelow(root, dir)) {
+				ruleFreeDir = dir;
+			}
+			
+			return visitResult;
 		}
 
 		@Override
@@ -221,12 +498,120 @@ public class StatusOperation extends Operation {
 
 		@Override
 		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+			if (dir.equals(ruleFreeDir)) {
+				ruleFreeDir = null;
+			}
+			
 			return FileVisitResult.CONTINUE;
 		}
 	}
 	
+	/**
+	 * Walks the file tree using a fork/join pool: Each directory is listed by its own task,
+	 * and subdirectories are forked as new tasks, so that multiple directories are listed 
+	 * concurrently. This is beneficial if directory listing latency dominates, e.g. on network 
+	 * file systems or for very large trees.
+	 * 
+	 * <p>Each worker thread collects its results in its own {@link ChangeSet}; these are merged
+	 * once the walk is complete. Files and folders are visited with the same rules as in the 
+	 * sequential {@link StatusFileVisitor}, i.e. app-related folders and ignored folders are 
+	 * not descended into, and symbolic links are not followed.
+	 */
+	private class ParallelStatusWalker {
+		private Path root;
+		private Map<String, FileVersion> currentFileTree;
+		private int threadCount;
+		
+		private Queue<ChangeSet> workerChangeSets;
+		private ThreadLocal<ChangeSet> workerChangeSet;
+		
+		public ParallelStatusWalker(Path root, Map<String, FileVersion> currentFileTree, int threadCount) {
+			this.root = root;
+			this.currentFileTree = currentFileTree;
+			this.threadCount = threadCount;
+			
+			this.workerChangeSets = new ConcurrentLinkedQueue<ChangeSet>();
+			this.workerChangeSet = new ThreadLocal<ChangeSet>() {
+				@Override
+				protected ChangeSet initialValue() {
+					ChangeSet changeSet = new ChangeSet();
+					workerChangeSets.add(changeSet);
+					
+					return changeSet;
+				}
+			};
+		}
+		
+		public ChangeSet walk() {
+			ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+			
+			try {
+				forkJoinPool.invoke(new DirectoryTask(root, ignoreRulesMayMatchBelow(root, root)));
+			}
+			finally {
+				forkJoinPool.shutdown();
+			}
+			
+			return mergeChangeSets();
+		}
+		
+		private ChangeSet mergeChangeSets() {
+			ChangeSet changeSet = new ChangeSet();
+			
+			for (ChangeSet workerChangeSet : workerChangeSets) {
+				appendChangeSet(changeSet, workerChangeSet);
+			}
+			
+			return changeSet;
+		}
+		
+		@SuppressWarnings("serial")
+		private class DirectoryTask extends RecursiveAction {
+			private Path directory;
+			private boolean checkIgnored;
+			
+			public DirectoryTask(Path directory, boolean checkIgnored) {
+				this.directory = directory;
+				this.checkIgnored = checkIgnored;
+			}
+			
+			@Override
+			protected void compute() {
+				List<DirectoryTask> subdirectoryTasks = new ArrayList<DirectoryTask>();
+				
+				try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+					ChangeSet changeSet = workerChangeSet.get();
+					
+					for (Path path : directoryStream) {
+						BasicFileAttributes attrs = readAttributes(path);
+						
+						if (attrs != null) {
+							FileVisitResult visitResult = visitPath(root, path, attrs, currentFileTree, changeSet, checkIgnored);
+						
+							if (attrs.isDirectory() && visitResult == FileVisitResult.CONTINUE) {
+								DirectoryTask subdirectoryTask = new DirectoryTask(path, checkIgnored && ignoreRulesMayMatchBelow(root, path));
+								subdirectoryTask.fork();
+								
+								subdirectoryTasks.add(subdirectoryTask);
+							}
+						}
+					}
+				}
+				catch (IOException | DirectoryIteratorException e) {
+					logger.log(Level.FINE, "Cannot list directory " + directory + ", skipping.", e);
+				}
+				
+				for (DirectoryTask subdirectoryTask : subdirectoryTasks) {
+					subdirectoryTask.join();
+				}
+			}
+		}
+	}
+	
 	public static class StatusOperationOptions implements OperationOptions {
 		private boolean forceChecksum = false;
+		private int walkThreadCount = 1;
+		private Set<String> dirtyPaths = null;
 
 		public boolean isForceChecksum() {
 			return forceChecksum;
@@ -234,7 +619,32 @@ public class StatusOperation extends Operation {
 
 		public void setForceChecksum(boolean forceChecksum) {
 			this.forceChecksum = forceChecksum;
-		}				
+		}
+
+		public int getWalkThreadCount() {
+			return walkThreadCount;
+		}
+
+		public void setWalkThreadCount(int walkThreadCount) {
+			if (walkThreadCount < 1) {
+				throw new IllegalArgumentException("Walk thread count must be at least 1.");
+			}
+			
+			this.walkThreadCount = walkThreadCount;
+		}
+
+		public Set<String> getDirtyPaths() {
+			return dirtyPaths;
+		}
+
+		/**
+		 * Restricts the operation to the given paths (relative to the local folder,
+		 * separated by slashes), their parent folders and the subtrees of dirty folders. 
+		 * If <tt>null</tt> (default), the entire local folder is examined.
+		 */
+		public void setDirtyPaths(Set<String> dirtyPaths) {
+			this.dirtyPaths = dirtyPaths;
+		}
 	}
 	
 	public static class StatusOperationResult implements OperationResult {
@@ -18,11 +18,7 @@
 package org.syncany.operations.down;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,7 +32,6 @@ import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.connection.plugins.DatabaseRemoteFile;
-import org.syncany.connection.plugins.MultiChunkRemoteFile;
 import org.syncany.connection.plugins.StorageException;
 import org.syncany.connection.plugins.TransferManager;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
@@ -60,7 +55,6 @@ import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
 import org.syncany.operations.down.actions.FileSystemAction;
 import org.syncany.operations.down.actions.FileSystemAction.InconsistentFileSystemException;
 import org.syncany.operations.up.UpOperation;
-import org.syncany.util.FileUtil;
 
 /**
  * The down operation implements a central part of Syncany's business logic. It determines
@@ -83,7 +77,8 @@ import org.syncany.util.FileUtil;
  *      local {@link FileSystemAction}s</li>
  *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions
  *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase, MemoryDatabase) determineMultiChunksToDownload()},
- *      and {@link #downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()})</li>
+ *      and {@link #downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()}, using concurrent downloads if
+ *      configured, see {@link DownOperationOptions#getDownloadThreadCount()})</li>
  *  <li>Apply file system actions locally, creating conflict files where necessary if local file does
  *      not match the expected file (implemented in {@link #applyFileSystemActions(List) applyFileSystemActions()} </li>
  *  <li>Save local database and update known database list (database files that do not need to be 
@@ -121,7 +116,7 @@ public class DownOperation extends Operation {
 		this.listener = listener;
 
 		this.localDatabase = new SqlDatabase(config);
-		this.transferManager = config.getConnection().createTransferManager();
+		this.transferManager = config.createTransferManager();
 		this.databaseReconciliator = new DatabaseReconciliator();
 	}
 
@@ -398,29 +393,10 @@ public class DownOperation extends Operation {
 
 		// TODO [medium] Check existing files by checksum and do NOT download them if they exist locally, or copy them
 
-		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
-			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
-			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
-			MultiChunkRemoteFile remoteMultiChunkFile = new MultiChunkRemoteFile(multiChunkId);
-
-			logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-			transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
-			result.getDownloadedMultiChunks().add(multiChunkId);
-
-			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
-
-			// TODO [medium] Calculate checksum while writing file, to verify correct content
-			FileUtil.appendToOutputStream(multiChunkInputStream, decryptedMultiChunkOutputStream);
-
-			decryptedMultiChunkOutputStream.close();
-			multiChunkInputStream.close();
-
-			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-			localEncryptedMultiChunkFile.delete();
-		}
+		MultiChunkDownloader multiChunkDownloader = new MultiChunkDownloader(config, transferManager, listener, options.getDownloadThreadCount());
+		multiChunkDownloader.downloadAndDecrypt(unknownMultiChunkIds);
 
+		result.getDownloadedMultiChunks().addAll(unknownMultiChunkIds);
 		transferManager.disconnect();
 	}
 
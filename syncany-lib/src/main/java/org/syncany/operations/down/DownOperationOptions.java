@@ -25,6 +25,7 @@ public class DownOperationOptions implements OperationOptions {
 	}
 	
 	private DownConflictStrategy conflictStrategy = DownConflictStrategy.RENAME;
+	private int downloadThreadCount = 1;
 
 	public DownConflictStrategy getConflictStrategy() {
 		return conflictStrategy;
@@ -32,5 +33,13 @@ public class DownOperationOptions implements OperationOptions {
 
 	public void setConflictStrategy(DownConflictStrategy conflictStrategy) {
 		this.conflictStrategy = conflictStrategy;
+	}
+
+	public int getDownloadThreadCount() {
+		return downloadThreadCount;
+	}
+
+	public void setDownloadThreadCount(int downloadThreadCount) {
+		this.downloadThreadCount = downloadThreadCount;
 	}				
 }
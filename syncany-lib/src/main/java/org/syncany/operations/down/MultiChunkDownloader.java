@@ -0,0 +1,358 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.RandomAccessInput;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Config;
+import org.syncany.connection.plugins.MultiChunkRemoteFile;
+import org.syncany.connection.plugins.RemoteFile;
+import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.TransferManager;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.util.FileUtil;
+
+/**
+ * The multichunk downloader retrieves multichunks from the remote storage and prepares
+ * them for the file system actions. Depending on the {@link Transformer}, a multichunk is
+ * stored in the local cache in one of two ways:
+ *
+ * <ul>
+ *  <li>If the transformer does not {@link Transformer#supportsRandomAccessInput() support random access},
+ *      the multichunk is read via {@link TransferManager#downloadStream(RemoteFile)} and decrypted while
+ *      it is downloaded, directly into the decrypted multichunk file. No encrypted copy is written.</li>
+ *  <li>Otherwise, the multichunk is downloaded to the encrypted multichunk file. If it supports
+ *      random access, chunks are decrypted when needed and the encrypted file is kept. If it does
+ *      not (e.g. a multichunk written before random access was enabled), it is decrypted to the
+ *      decrypted multichunk file, and the encrypted file is deleted.</li>
+ * </ul>
+ *
+ * <p>Multichunks are downloaded and decrypted by a pool of worker threads:
+ *
+ * <ul>
+ *  <li>With one download thread, the downloader uses the given transfer manager in the calling
+ *      thread. With more than one thread, each thread creates its own transfer manager from the
+ *      connection, because transfer managers are not required to be thread-safe.</li>
+ *  <li>Progress is reported to {@link DownOperationListener#onDownloadFile(String, int)} in the
+ *      order of the given multichunks, regardless of the order in which downloads finish.</li>
+ *  <li>The first failed download stops the downloader (fail-fast): downloads that have not
+ *      started yet are skipped, and the failure is rethrown once all running downloads have
+ *      finished.</li>
+ * </ul>
+ *
+ * <p>The downloader is used by the {@link DownOperation} and the {@link org.syncany.operations.RestoreOperation
+ * RestoreOperation}. The files in the local cache are the same, regardless of the number of threads.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class MultiChunkDownloader {
+	private static final Logger logger = Logger.getLogger(MultiChunkDownloader.class.getSimpleName());
+
+	private Config config;
+	private TransferManager transferManager;
+	private DownOperationListener listener;
+	private int downloadThreadCount;
+
+	private ThreadLocal<TransferManager> threadTransferManager;
+	private List<TransferManager> threadTransferManagers;
+
+	private Map<Integer, String> downloadedMultiChunks;
+	private int nextReportedMultiChunkIndex;
+	private AtomicReference<Exception> downloadException;
+
+	public MultiChunkDownloader(Config config, TransferManager transferManager, DownOperationListener listener) {
+		this(config, transferManager, listener, 1);
+	}
+
+	public MultiChunkDownloader(Config config, TransferManager transferManager, DownOperationListener listener, int downloadThreadCount) {
+		if (downloadThreadCount < 1) {
+			throw new IllegalArgumentException("Download thread count must be at least 1, given: " + downloadThreadCount);
+		}
+
+		this.config = config;
+		this.transferManager = transferManager;
+		this.listener = listener;
+		this.downloadThreadCount = downloadThreadCount;
+
+		this.threadTransferManager = new ThreadLocal<TransferManager>();
+		this.threadTransferManagers = new ArrayList<TransferManager>();
+	}
+
+	/**
+	 * Downloads and decrypts the given multichunks to the local cache, and waits until
+	 * all of them are done. If any of the downloads fails, the first failure is rethrown.
+	 *
+	 * @param multiChunkIds Identifiers of the multichunks to be downloaded
+	 * @throws StorageException If any of the downloads failed, or if the current thread was interrupted
+	 * @throws IOException If any of the multichunks could not be decrypted
+	 */
+	public synchronized void downloadAndDecrypt(Collection<MultiChunkId> multiChunkIds) throws StorageException, IOException {
+		downloadedMultiChunks = new TreeMap<Integer, String>();
+		nextReportedMultiChunkIndex = 1;
+		downloadException = new AtomicReference<Exception>();
+
+		if (listener != null) {
+			listener.onDownloadStart(multiChunkIds.size());
+		}
+
+		if (downloadThreadCount == 1 || multiChunkIds.size() <= 1) {
+			downloadAndDecryptSequentially(multiChunkIds);
+		}
+		else {
+			downloadAndDecryptConcurrently(multiChunkIds);
+		}
+	}
+
+	private void downloadAndDecryptSequentially(Collection<MultiChunkId> multiChunkIds) throws StorageException, IOException {
+		int multiChunkIndex = 0;
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			downloadAndDecryptMultiChunk(transferManager, multiChunkId, ++multiChunkIndex);
+		}
+	}
+
+	private void downloadAndDecryptConcurrently(Collection<MultiChunkId> multiChunkIds) throws StorageException, IOException {
+		ExecutorService downloadExecutor = Executors.newFixedThreadPool(Math.min(downloadThreadCount, multiChunkIds.size()));
+		int multiChunkIndex = 0;
+
+		logger.log(Level.INFO, "- Downloading {0} multichunk(s) with {1} thread(s) ...", new Object[] { multiChunkIds.size(), downloadThreadCount });
+
+		for (final MultiChunkId multiChunkId : multiChunkIds) {
+			final int currentMultiChunkIndex = ++multiChunkIndex;
+
+			downloadExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (downloadException.get() != null) {
+							logger.log(Level.FINE, "  + Skipping download of multichunk {0}, a previous download failed.", multiChunkId);
+							return;
+						}
+
+						downloadAndDecryptMultiChunk(getThreadTransferManager(), multiChunkId, currentMultiChunkIndex);
+					}
+					catch (StorageException | IOException | RuntimeException e) {
+						logger.log(Level.WARNING, "  + Downloading multichunk " + multiChunkId + " failed; skipping all remaining downloads.", e);
+						downloadException.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+
+		downloadExecutor.shutdown();
+
+		try {
+			while (!downloadExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.log(Level.FINE, "- Still downloading, {0} of {1} multichunk(s) downloaded ...", new Object[] { getDownloadedMultiChunkCount(),
+						multiChunkIds.size() });
+			}
+		}
+		catch (InterruptedException e) {
+			downloadExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+
+			downloadException.compareAndSet(null, new StorageException("Interrupted while downloading multichunks.", e));
+		}
+		finally {
+			disconnectThreadTransferManagers();
+		}
+
+		rethrowDownloadException();
+	}
+
+	private void downloadAndDecryptMultiChunk(TransferManager transferManager, MultiChunkId multiChunkId, int multiChunkIndex) throws StorageException,
+			IOException {
+
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+		MultiChunkRemoteFile remoteMultiChunkFile = new MultiChunkRemoteFile(multiChunkId);
+
+		if (!config.getTransformer().supportsRandomAccessInput()) {
+			logger.log(Level.INFO, "  + Downloading and decrypting multichunk " + multiChunkId + " ...");
+			downloadAndDecryptMultiChunkStream(transferManager, remoteMultiChunkFile, localDecryptedMultiChunkFile);
+		}
+		else {
+			logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+			transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+
+			if (isRandomAccessMultiChunk(localEncryptedMultiChunkFile)) {
+				logger.log(Level.INFO, "  + Multichunk " + multiChunkId + " supports random access; chunks are decrypted when needed.");
+			}
+			else {
+				logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+				decryptMultiChunk(localEncryptedMultiChunkFile, localDecryptedMultiChunkFile);
+
+				logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
+				localEncryptedMultiChunkFile.delete();
+			}
+		}
+
+		reportDownloadedMultiChunk(remoteMultiChunkFile.getName(), multiChunkIndex);
+	}
+
+	private void downloadAndDecryptMultiChunkStream(TransferManager transferManager, MultiChunkRemoteFile remoteMultiChunkFile,
+			File localDecryptedMultiChunkFile) throws StorageException, IOException {
+
+		InputStream remoteMultiChunkInputStream = transferManager.downloadStream(remoteMultiChunkFile);
+
+		try {
+			decryptMultiChunk(remoteMultiChunkInputStream, localDecryptedMultiChunkFile);
+		}
+		catch (IOException e) {
+			// Never leave an incomplete multichunk in the cache
+			localDecryptedMultiChunkFile.delete();
+			throw e;
+		}
+	}
+
+	private void decryptMultiChunk(File localEncryptedMultiChunkFile, File localDecryptedMultiChunkFile) throws IOException {
+		decryptMultiChunk(new FileInputStream(localEncryptedMultiChunkFile), localDecryptedMultiChunkFile);
+	}
+
+	private void decryptMultiChunk(InputStream encryptedMultiChunkInputStream, File localDecryptedMultiChunkFile) throws IOException {
+		InputStream multiChunkInputStream;
+
+		try {
+			multiChunkInputStream = config.getTransformer().createInputStream(encryptedMultiChunkInputStream);
+		}
+		catch (IOException e) {
+			encryptedMultiChunkInputStream.close();
+			throw e;
+		}
+
+		try {
+			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+
+			try {
+				// TODO [medium] Calculate checksum while writing file, to verify correct content
+				FileUtil.appendToOutputStream(multiChunkInputStream, decryptedMultiChunkOutputStream);
+			}
+			finally {
+				decryptedMultiChunkOutputStream.close();
+			}
+		}
+		finally {
+			multiChunkInputStream.close();
+		}
+	}
+
+	private boolean isRandomAccessMultiChunk(File encryptedMultiChunkFile) throws IOException {
+		RandomAccessInput randomAccessInput = config.getTransformer().createRandomAccessInput(encryptedMultiChunkFile);
+
+		if (randomAccessInput == null) {
+			return false;
+		}
+
+		MultiChunk multiChunk = config.getMultiChunker().createMultiChunk(randomAccessInput);
+
+		if (multiChunk != null) {
+			multiChunk.close();
+			return true;
+		}
+		else {
+			randomAccessInput.close();
+			return false;
+		}
+	}
+
+	private void reportDownloadedMultiChunk(String remoteFileName, int multiChunkIndex) {
+		synchronized (downloadedMultiChunks) {
+			downloadedMultiChunks.put(multiChunkIndex, remoteFileName);
+
+			// Report in the given order: only report once all earlier multichunks are done
+			while (downloadedMultiChunks.containsKey(nextReportedMultiChunkIndex)) {
+				String nextRemoteFileName = downloadedMultiChunks.remove(nextReportedMultiChunkIndex);
+
+				if (listener != null) {
+					listener.onDownloadFile(nextRemoteFileName, nextReportedMultiChunkIndex);
+				}
+
+				nextReportedMultiChunkIndex++;
+			}
+		}
+	}
+
+	private int getDownloadedMultiChunkCount() {
+		synchronized (downloadedMultiChunks) {
+			return nextReportedMultiChunkIndex - 1 + downloadedMultiChunks.size();
+		}
+	}
+
+	private void rethrowDownloadException() throws StorageException, IOException {
+		Exception exception = downloadException.get();
+
+		if (exception instanceof StorageException) {
+			throw (StorageException) exception;
+		}
+		else if (exception instanceof IOException) {
+			throw (IOException) exception;
+		}
+		else if (exception != null) {
+			throw new StorageException(exception);
+		}
+	}
+
+	private TransferManager getThreadTransferManager() {
+		TransferManager currentThreadTransferManager = threadTransferManager.get();
+
+		if (currentThreadTransferManager == null) {
+			currentThreadTransferManager = config.createTransferManager();
+			threadTransferManager.set(currentThreadTransferManager);
+
+			synchronized (threadTransferManagers) {
+				threadTransferManagers.add(currentThreadTransferManager);
+			}
+		}
+
+		return currentThreadTransferManager;
+	}
+
+	private void disconnectThreadTransferManagers() {
+		synchronized (threadTransferManagers) {
+			for (TransferManager currentThreadTransferManager : threadTransferManagers) {
+				try {
+					currentThreadTransferManager.disconnect();
+				}
+				catch (StorageException e) {
+					// Don't care!
+				}
+			}
+
+			threadTransferManagers.clear();
+		}
+	}
+}
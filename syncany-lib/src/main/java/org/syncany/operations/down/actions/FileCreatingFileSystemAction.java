@@ -18,9 +18,11 @@
 package org.syncany.operations.down.actions;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.logging.Level;
 
@@ -28,6 +30,7 @@ import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.RandomAccessInput;
 import org.syncany.config.Config;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent;
@@ -110,20 +113,36 @@ public abstract class FileCreatingFileSystemAction extends FileSystemAction {
 
 		if (fileContent != null) { // File can be empty!
 			Collection<ChunkChecksum> fileChunks = fileContent.getChunks();
+			
+			MultiChunkId openMultiChunkId = null;
+			MultiChunk openMultiChunk = null;
 
-			for (ChunkChecksum chunkChecksum : fileChunks) {
-				MultiChunkId multiChunkIdForChunk = localDatabase.getMultiChunkId(chunkChecksum);
-
-				if (multiChunkIdForChunk == null) {
-					multiChunkIdForChunk = winningDatabase.getMultiChunkIdForChunk(chunkChecksum);
+			try {
+				for (ChunkChecksum chunkChecksum : fileChunks) {
+					MultiChunkId multiChunkIdForChunk = localDatabase.getMultiChunkId(chunkChecksum);
+	
+					if (multiChunkIdForChunk == null) {
+						multiChunkIdForChunk = winningDatabase.getMultiChunkIdForChunk(chunkChecksum);
+					}
+	
+					// Consecutive chunks are often in the same multichunk; keep it open
+					if (!multiChunkIdForChunk.equals(openMultiChunkId)) {
+						if (openMultiChunk != null) {
+							openMultiChunk.close();
+						}
+						
+						openMultiChunkId = multiChunkIdForChunk;
+						openMultiChunk = openMultiChunk(multiChunker, multiChunkIdForChunk);
+					}
+					
+					InputStream chunkInputStream = openMultiChunk.getChunkInputStream(chunkChecksum.getRaw());
+					FileUtil.appendToOutputStream(chunkInputStream, reconstructedFileOutputStream);
+				}
+			}
+			finally {
+				if (openMultiChunk != null) {
+					openMultiChunk.close();
 				}
-
-				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkIdForChunk);
-
-				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
-				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getRaw());
-
-				FileUtil.appendToOutputStream(chunkInputStream, reconstructedFileOutputStream);
 			}
 		}
 
@@ -136,6 +155,45 @@ public abstract class FileCreatingFileSystemAction extends FileSystemAction {
 		return reconstructedFileInCache;
 	}	
 	
+	/**
+	 * Opens a multichunk from the cache. If the multichunk was not decrypted after the download
+	 * because the transformer supports random access, the multichunk is read directly from the 
+	 * encrypted file, i.e. only the parts containing the requested chunks are decrypted. If that
+	 * is not possible, the multichunk is decrypted first.
+	 */
+	private MultiChunk openMultiChunk(MultiChunker multiChunker, MultiChunkId multiChunkId) throws IOException {
+		File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+		
+		if (!decryptedMultiChunkFile.exists()) {
+			File encryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+			RandomAccessInput randomAccessInput = config.getTransformer().createRandomAccessInput(encryptedMultiChunkFile);
+			
+			if (randomAccessInput != null) {
+				MultiChunk multiChunk = multiChunker.createMultiChunk(randomAccessInput);
+				
+				if (multiChunk != null) {
+					return multiChunk;
+				}
+				
+				randomAccessInput.close();
+			}
+			
+			logger.log(Level.INFO, "     - Decrypting multichunk " + multiChunkId + " (random access not possible) ...");
+			
+			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(encryptedMultiChunkFile));
+			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(decryptedMultiChunkFile);
+
+			FileUtil.appendToOutputStream(multiChunkInputStream, decryptedMultiChunkOutputStream);
+
+			decryptedMultiChunkOutputStream.close();
+			multiChunkInputStream.close();
+			
+			encryptedMultiChunkFile.delete();
+		}
+		
+		return multiChunker.createMultiChunk(decryptedMultiChunkFile);
+	}
+	
 	private void moveFileToFinalLocation(File reconstructedFileInCache, FileVersion targetFileVersion) throws IOException {
 		NormalizedPath originalPath = new NormalizedPath(config.getLocalDir(), targetFileVersion.getPath());
 		NormalizedPath targetPath = originalPath;
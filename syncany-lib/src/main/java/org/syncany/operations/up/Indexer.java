@@ -20,12 +20,12 @@ package org.syncany.operations.up;
 import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,6 +70,10 @@ import org.syncany.util.StringUtil;
  * dirty database into account. Lookups for chunks and file histories are performed 
  * on both databases.
  * 
+ * <p>Previous file histories are looked up by path and checksum on demand, using the
+ * indices of the local SQL database. The memory needed to index a few files therefore does
+ * not depend on the number of files in the repository.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Indexer {
@@ -79,12 +83,23 @@ public class Indexer {
 	private Deduper deduper;
 	private SqlDatabase localDatabase;
 	private IndexerListener listener;
+	private MultiChunkUploader multiChunkUploader;
 	
 	public Indexer(Config config, Deduper deduper, IndexerListener listener) {
+		this(config, deduper, listener, null);
+	}
+	
+	/**
+	 * Creates a new indexer that hands each multichunk to the given uploader as soon
+	 * as it is closed by the {@link Deduper}, i.e. while indexing continues. If the 
+	 * uploader is <tt>null</tt>, multichunks are only written to the local cache. 
+	 */
+	public Indexer(Config config, Deduper deduper, IndexerListener listener, MultiChunkUploader multiChunkUploader) {
 		this.config = config;
 		this.deduper = deduper;
 		this.localDatabase = new SqlDatabase(config);
 		this.listener = listener;
+		this.multiChunkUploader = multiChunkUploader;
 	}
 	
 	/**
@@ -101,104 +116,98 @@ public class Indexer {
 	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
 	 */
 	public DatabaseVersion index(List<File> files) throws IOException {
+		return index(files, null);
+	}
+	
+	/**
+	 * Indexes the given files like {@link #index(List)}, but only looks for deleted files among
+	 * the given paths (and the paths of the indexed files, to detect file type changes), instead 
+	 * of checking every file history in the database. This is used if the local changes have 
+	 * only been searched in a set of dirty paths.
+	 * 
+	 * @param files List of files to be deduplicated
+	 * @param deletedFilePaths Relative paths of files known to be deleted, or <tt>null</tt> to check all file histories 
+	 * @return New database version containing new/changed/deleted entities
+	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
+	 */
+	public DatabaseVersion index(List<File> files, Collection<String> deletedFilePaths) throws IOException {
 		DatabaseVersion newDatabaseVersion = new DatabaseVersion();		
 		
-		// Load file history cache
-		List<PartialFileHistory> fileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
-		
-		// TODO [medium] This should be in FileHistoryDao
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = fillFileChecksumCache(fileHistoriesWithLastVersion);
-		Map<String, PartialFileHistory> filePathCache = fillFilePathCache(fileHistoriesWithLastVersion);
-		
 		// Find and index new files
-		deduper.deduplicate(files, new IndexerDeduperListener(newDatabaseVersion, fileChecksumCache, filePathCache, listener));			
+		deduper.deduplicate(files, new IndexerDeduperListener(newDatabaseVersion, listener));			
 		
 		// Find and remove deleted files
-		removeDeletedFiles(newDatabaseVersion, fileHistoriesWithLastVersion);
+		if (deletedFilePaths != null) {
+			removeDeletedFiles(newDatabaseVersion, files, deletedFilePaths);
+		}
+		else {
+			removeDeletedFiles(newDatabaseVersion);
+		}
 		
 		return newDatabaseVersion;
 	}
 	
-	private Map<String, PartialFileHistory> fillFilePathCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<String, PartialFileHistory> filePathCache = new HashMap<String, PartialFileHistory>();
-		
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			filePathCache.put(fileHistory.getLastVersion().getPath(), fileHistory);
-		}
+	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion) {
+		logger.log(Level.FINER, "- Looking for deleted files ...");		
+
+		// Histories are read one by one, the full list is never held in memory
+		Iterator<PartialFileHistory> fileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersionIterator();
 		
-		return filePathCache;
+		while (fileHistoriesWithLastVersion.hasNext()) {
+			removeDeletedFile(newDatabaseVersion, fileHistoriesWithLastVersion.next());
+		}				
 	}
+	
+	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion, List<File> files, Collection<String> deletedFilePaths) {
+		logger.log(Level.FINER, "- Looking for deleted files among " + deletedFilePaths.size() + " deleted and " + files.size() + " indexed file(s) ...");		
 
-	private Map<FileChecksum, List<PartialFileHistory>> fillFileChecksumCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+		Set<String> candidatePaths = new HashSet<String>(deletedFilePaths);
 		
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			FileChecksum fileChecksum = fileHistory.getLastVersion().getChecksum();
-			
-			if (fileChecksum != null) {
-				List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileChecksum);
-				
-				if (fileHistoriesWithSameChecksum == null) {
-					fileHistoriesWithSameChecksum = new ArrayList<PartialFileHistory>();
-				}
-				
-				fileHistoriesWithSameChecksum.add(fileHistory);
-				fileChecksumCache.put(fileChecksum, fileHistoriesWithSameChecksum);
-			}			
+		for (File file : files) {
+			candidatePaths.add(FileUtil.getRelativeDatabasePath(config.getLocalDir(), file));
 		}
 		
-		return fileChecksumCache;
-	}
-
-	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion, List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		logger.log(Level.FINER, "- Looking for deleted files ...");		
-
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			// Ignore this file history if it has been updated in this database version before (file probably renamed!)
-			if (newDatabaseVersion.getFileHistory(fileHistory.getFileHistoryId()) != null) {
-				continue;
-			}
-						
-			// Check if file exists, remove if it doesn't
-			FileVersion lastLocalVersion = fileHistory.getLastVersion();
-			File lastLocalVersionOnDisk = new File(config.getLocalDir()+File.separator+lastLocalVersion.getPath());
-			
-			// Ignore this file history if the last version is marked "DELETED"
-			if (lastLocalVersion.getStatus() == FileStatus.DELETED) {
-				continue;
-			}
-			
-			// Add this file history if a new file with this name has been added (file type change)
-			PartialFileHistory newFileWithSameName = getFileHistoryByPathFromDatabaseVersion(newDatabaseVersion, fileHistory.getLastVersion().getPath());
+		for (String candidatePath : candidatePaths) {
+			PartialFileHistory fileHistory = localDatabase.getFileHistoryWithLastVersionByPath(candidatePath);
 			
-			// If file has VANISHED, mark as DELETED			
-			if (!FileUtil.exists(lastLocalVersionOnDisk) || newFileWithSameName != null) {
-				PartialFileHistory deletedFileHistory = new PartialFileHistory(fileHistory.getFileHistoryId());
-				FileVersion deletedVersion = lastLocalVersion.clone();
-				deletedVersion.setStatus(FileStatus.DELETED);
-				deletedVersion.setVersion(fileHistory.getLastVersion().getVersion()+1);
-				
-				logger.log(Level.FINER, "  + Deleted: Adding DELETED version: {0}", deletedVersion);
-				logger.log(Level.FINER, "                           based on: {0}", lastLocalVersion);
-				
-				deletedFileHistory.addFileVersion(deletedVersion);
-				newDatabaseVersion.addFileHistory(deletedFileHistory);			
+			if (fileHistory != null) {
+				removeDeletedFile(newDatabaseVersion, fileHistory);
 			}
-		}				
+		}
 	}
 	
-	private PartialFileHistory getFileHistoryByPathFromDatabaseVersion(DatabaseVersion databaseVersion, String path) {
-		// TODO [high] Extremely performance intensive, because this is called inside a loop above. Implement better caching for database version!!!
-		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
-			FileVersion lastVersion = fileHistory.getLastVersion();
-				
-			if (lastVersion.getStatus() != FileStatus.DELETED && lastVersion.getPath().equals(path)) {
-				return fileHistory;
-			}
+	private void removeDeletedFile(DatabaseVersion newDatabaseVersion, PartialFileHistory fileHistory) {
+		// Ignore this file history if it has been updated in this database version before (file probably renamed!)
+		if (newDatabaseVersion.getFileHistory(fileHistory.getFileHistoryId()) != null) {
+			return;
 		}
+					
+		// Check if file exists, remove if it doesn't
+		FileVersion lastLocalVersion = fileHistory.getLastVersion();
+		File lastLocalVersionOnDisk = new File(config.getLocalDir()+File.separator+lastLocalVersion.getPath());
 		
-		return null;
-	}	
+		// Ignore this file history if the last version is marked "DELETED"
+		if (lastLocalVersion.getStatus() == FileStatus.DELETED) {
+			return;
+		}
+		
+		// Add this file history if a new file with this name has been added (file type change)
+		PartialFileHistory newFileWithSameName = newDatabaseVersion.getFileHistory(fileHistory.getLastVersion().getPath());
+		
+		// If file has VANISHED, mark as DELETED			
+		if (!FileUtil.exists(lastLocalVersionOnDisk) || newFileWithSameName != null) {
+			PartialFileHistory deletedFileHistory = new PartialFileHistory(fileHistory.getFileHistoryId());
+			FileVersion deletedVersion = lastLocalVersion.clone();
+			deletedVersion.setStatus(FileStatus.DELETED);
+			deletedVersion.setVersion(fileHistory.getLastVersion().getVersion()+1);
+			
+			logger.log(Level.FINER, "  + Deleted: Adding DELETED version: {0}", deletedVersion);
+			logger.log(Level.FINER, "                           based on: {0}", lastLocalVersion);
+			
+			deletedFileHistory.addFileVersion(deletedVersion);
+			newDatabaseVersion.addFileHistory(deletedFileHistory);			
+		}
+	}
 	
 	public static class IndexerException extends RuntimeException {
 		private static final long serialVersionUID = 5247751938336036877L;
@@ -210,11 +219,10 @@ public class Indexer {
 	
 	private class IndexerDeduperListener implements DeduperListener {
 		private FileVersionComparator fileVersionComparator;
+		private long smallFileThreshold;
 		private SecureRandom secureRandom;
 		private DatabaseVersion newDatabaseVersion;
 		
-		private Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache;
-		private Map<String, PartialFileHistory> filePathCache;
 		
 		private ChunkEntry chunkEntry;		
 		private MultiChunkEntry multiChunkEntry;	
@@ -225,15 +233,13 @@ public class Indexer {
 		
 		private IndexerListener listener;
 
-		public IndexerDeduperListener(DatabaseVersion newDatabaseVersion, Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache,
-				Map<String, PartialFileHistory> filePathCache, IndexerListener listener) {
+		public IndexerDeduperListener(DatabaseVersion newDatabaseVersion, IndexerListener listener) {
 			
 			this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
+			this.smallFileThreshold = config.getChunker().getSmallFileThreshold();
 			this.secureRandom = new SecureRandom();
 			this.newDatabaseVersion = newDatabaseVersion;
 			
-			this.fileChecksumCache = fileChecksumCache;
-			this.filePathCache = filePathCache;
 			this.listener = listener;
 		}				
 
@@ -278,7 +284,13 @@ public class Indexer {
 			// Note: Do NOT move any File-methods (file.anything()) below the file.exists()-part, 
 			//       because the file could vanish!
 			FileChecksum fileChecksum = (rawFileChecksum != null) ? new FileChecksum(rawFileChecksum) : null; 
-			endFileProperties = fileVersionComparator.captureFileProperties(file, fileChecksum, false);
+			// Small files have been read in a single call; a full second capture is not necessary
+			if (startFileProperties.getSize() < smallFileThreshold) {
+				endFileProperties = fileVersionComparator.recaptureFileProperties(startFileProperties, file, fileChecksum);
+			}
+			else {
+				endFileProperties = fileVersionComparator.captureFileProperties(file, fileChecksum, false);
+			}
 			
 			// Check if file has vanished			
 			boolean fileIsLocked = endFileProperties.isLocked();
@@ -439,7 +451,7 @@ public class Indexer {
 		}
 
 		private PartialFileHistory guessLastFileHistoryForFolderOrSymlink(FileProperties fileProperties) {
-			PartialFileHistory lastFileHistory = filePathCache.get(fileProperties.getRelativePath());
+			PartialFileHistory lastFileHistory = localDatabase.getFileHistoryWithLastVersionByPath(fileProperties.getRelativePath());
 
 			if (lastFileHistory == null) {
 				logger.log(Level.FINER, "   * No old file history found, starting new history (path: "+fileProperties.getRelativePath()+", "+fileProperties.getType()+")");
@@ -463,12 +475,12 @@ public class Indexer {
 			PartialFileHistory lastFileHistory = null;
 			
 			// 1a. by path
-			lastFileHistory = filePathCache.get(fileProperties.getRelativePath());
+			lastFileHistory = localDatabase.getFileHistoryWithLastVersionByPath(fileProperties.getRelativePath());
 
 			if (lastFileHistory == null) {
 				// 1b. by checksum
 				if (fileProperties.getChecksum() != null) {
-					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileProperties.getChecksum()); 
+					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = localDatabase.getFileHistoriesWithLastVersionByChecksum(fileProperties.getChecksum()); 
 					
 					if (fileHistoriesWithSameChecksum != null) {
 						// check if they do not exist anymore --> assume it has moved!
@@ -531,6 +543,10 @@ public class Indexer {
 			
 			newDatabaseVersion.addMultiChunk(multiChunkEntry);
 			multiChunkEntry = null;
+			
+			if (multiChunkUploader != null) {
+				multiChunkUploader.queue(multiChunk.getId());
+			}
 		}
 
 		@Override
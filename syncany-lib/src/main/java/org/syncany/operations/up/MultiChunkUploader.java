@@ -0,0 +1,355 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.up;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.connection.plugins.MultiChunkRemoteFile;
+import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.TransferManager;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * The multichunk uploader transfers locally packed multichunks to the remote storage
+ * using a {@link TransferManager}, and deletes the local multichunk file afterwards.
+ *
+ * <p>Multichunks are handed over using {@link #queue(MultiChunkId)}, either all at once
+ * after indexing, or one by one while the {@link Indexer} is still running. They are uploaded
+ * by a pool of background threads:
+ *
+ * <ul>
+ *  <li>With one upload thread, the uploader uses the given transfer manager. With more than
+ *      one thread, each thread creates its own transfer manager from the connection, because
+ *      transfer managers are not required to be thread-safe.</li>
+ *  <li>The number of queued (not yet uploaded) multichunks is bounded; {@link #queue(MultiChunkId)}
+ *      blocks if the uploads cannot keep up.</li>
+ *  <li>Each upload is retried a configurable number of times before it is considered failed.</li>
+ *  <li>Progress is reported to {@link UpOperationListener#onUploadFile(String, int)} in the order
+ *      in which multichunks were queued, regardless of the order in which uploads finish. Progress
+ *      is held back until the start of the upload has been reported via {@link #reportUploadStart(int)},
+ *      because multichunks may be uploaded before their total number is known.</li>
+ * </ul>
+ *
+ * <p>The first failed upload stops the uploader (fail-fast): uploads that have not started yet
+ * are skipped, and further calls to {@link #queue(MultiChunkId)} are ignored. The failure is
+ * rethrown by {@link #awaitCompletion()}, which must be called (and must succeed) before any
+ * metadata referencing the multichunks is uploaded or persisted.
+ *
+ * <p>If an {@link UpTransactionJournal} is given, each successful upload is recorded in the
+ * journal, so that an interrupted up operation only needs to upload the missing multichunks.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class MultiChunkUploader {
+	private static final Logger logger = Logger.getLogger(MultiChunkUploader.class.getSimpleName());
+
+	private static final int QUEUED_UPLOADS_PER_THREAD = 2;
+	private static final int RETRY_SLEEP_MILLIS = 500;
+
+	private Config config;
+	private TransferManager transferManager;
+	private UpOperationListener listener;
+	private int uploadThreadCount;
+	private int uploadRetryCount;
+	private UpTransactionJournal journal;
+
+	private ExecutorService uploadExecutor;
+	private Semaphore uploadSlots;
+	private ThreadLocal<TransferManager> threadTransferManager;
+	private List<TransferManager> threadTransferManagers;
+
+	private int queuedMultiChunkCount;
+	private Map<Integer, String> uploadedMultiChunks;
+	private int nextReportedMultiChunkIndex;
+	private boolean uploadStartReported;
+	private AtomicReference<StorageException> uploadException;
+
+	public MultiChunkUploader(Config config, TransferManager transferManager, UpOperationListener listener) {
+		this(config, transferManager, listener, 1, 0);
+	}
+
+	public MultiChunkUploader(Config config, TransferManager transferManager, UpOperationListener listener, int uploadThreadCount, int uploadRetryCount) {
+		this(config, transferManager, listener, uploadThreadCount, uploadRetryCount, null);
+	}
+
+	public MultiChunkUploader(Config config, TransferManager transferManager, UpOperationListener listener, int uploadThreadCount,
+			int uploadRetryCount, UpTransactionJournal journal) {
+		
+		if (uploadThreadCount < 1) {
+			throw new IllegalArgumentException("Upload thread count must be at least 1, given: " + uploadThreadCount);
+		}
+
+		if (uploadRetryCount < 0) {
+			throw new IllegalArgumentException("Upload retry count must not be negative, given: " + uploadRetryCount);
+		}
+
+		this.config = config;
+		this.transferManager = transferManager;
+		this.listener = listener;
+		this.uploadThreadCount = uploadThreadCount;
+		this.uploadRetryCount = uploadRetryCount;
+		this.journal = journal;
+
+		this.uploadExecutor = null;
+		this.uploadSlots = new Semaphore(uploadThreadCount * QUEUED_UPLOADS_PER_THREAD);
+		this.threadTransferManager = new ThreadLocal<TransferManager>();
+		this.threadTransferManagers = new ArrayList<TransferManager>();
+
+		this.queuedMultiChunkCount = 0;
+		this.uploadedMultiChunks = new TreeMap<Integer, String>();
+		this.nextReportedMultiChunkIndex = 1;
+		this.uploadStartReported = false;
+		this.uploadException = new AtomicReference<StorageException>();
+	}
+
+	/**
+	 * Queues the given multichunk for upload in the background. The multichunk file
+	 * must be complete (i.e. closed) when this method is called.
+	 *
+	 * <p>This method blocks if too many multichunks are waiting for their upload. It does
+	 * not report upload failures; failures are rethrown by {@link #awaitCompletion()}. If an
+	 * upload has already failed, the multichunk is not queued.
+	 *
+	 * @param multiChunkId Identifier of the multichunk to be uploaded
+	 */
+	public synchronized void queue(final MultiChunkId multiChunkId) {
+		if (uploadException.get() != null) {
+			logger.log(Level.FINE, "- Not queuing multichunk {0}, a previous upload failed.", multiChunkId);
+			return;
+		}
+
+		if (uploadExecutor == null) {
+			uploadExecutor = Executors.newFixedThreadPool(uploadThreadCount);
+		}
+
+		try {
+			uploadSlots.acquire();
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.WARNING, "- Interrupted while queuing multichunk " + multiChunkId + ".", e);
+
+			uploadException.compareAndSet(null, new StorageException("Interrupted while queuing multichunk " + multiChunkId, e));
+			Thread.currentThread().interrupt();
+
+			return;
+		}
+
+		final int multiChunkIndex = ++queuedMultiChunkCount;
+		logger.log(Level.FINE, "- Queuing multichunk {0} for upload (#{1}) ...", new Object[] { multiChunkId, multiChunkIndex });
+
+		uploadExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (uploadException.get() != null) {
+						logger.log(Level.FINE, "- Skipping upload of multichunk {0}, a previous upload failed.", multiChunkId);
+						return;
+					}
+
+					uploadMultiChunk(multiChunkId, multiChunkIndex);
+				}
+				catch (StorageException e) {
+					logger.log(Level.WARNING, "- Uploading multichunk " + multiChunkId + " failed; skipping all remaining uploads.", e);
+					uploadException.compareAndSet(null, e);
+				}
+				catch (RuntimeException e) {
+					logger.log(Level.WARNING, "- Uploading multichunk " + multiChunkId + " failed; skipping all remaining uploads.", e);
+					uploadException.compareAndSet(null, new StorageException(e));
+				}
+				finally {
+					uploadSlots.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reports the start of the upload to the listener, followed by the multichunks that
+	 * have already been uploaded. Must be called once the number of multichunks is known,
+	 * i.e. before queuing in the non-pipelined mode, and after indexing in the pipelined mode.
+	 *
+	 * @param multiChunkCount Total number of multichunks to be uploaded
+	 */
+	public void reportUploadStart(int multiChunkCount) {
+		synchronized (uploadedMultiChunks) {
+			if (listener != null) {
+				listener.onUploadStart(multiChunkCount);
+			}
+
+			uploadStartReported = true;
+			reportUploadedMultiChunks();
+		}
+	}
+
+	/**
+	 * Waits until all queued multichunks have been uploaded, and shuts down the
+	 * background threads. If any of the uploads failed, the first failure is rethrown.
+	 *
+	 * @return Returns the number of multichunks queued via {@link #queue(MultiChunkId)}
+	 * @throws StorageException If any of the queued uploads failed
+	 * @throws InterruptedException If the current thread is interrupted while waiting
+	 */
+	public int awaitCompletion() throws StorageException, InterruptedException {
+		if (uploadExecutor != null) {
+			logger.log(Level.INFO, "Waiting for {0} queued multichunk upload(s) to finish ...", queuedMultiChunkCount);
+
+			uploadExecutor.shutdown();
+
+			while (!uploadExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.log(Level.FINE, "- Still uploading, {0} of {1} multichunk(s) uploaded ...", new Object[] { getUploadedMultiChunkCount(),
+						queuedMultiChunkCount });
+			}
+
+			disconnectThreadTransferManagers();
+		}
+
+		if (uploadException.get() != null) {
+			throw uploadException.get();
+		}
+
+		return queuedMultiChunkCount;
+	}
+
+	/**
+	 * Stops the background threads without waiting for queued uploads. Multichunks
+	 * that have already been uploaded remain on the remote storage.
+	 */
+	public void cancel() {
+		if (uploadExecutor != null) {
+			uploadExecutor.shutdownNow();
+			disconnectThreadTransferManagers();
+		}
+	}
+
+	private void uploadMultiChunk(MultiChunkId multiChunkId, int multiChunkIndex) throws StorageException {
+		File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		MultiChunkRemoteFile remoteMultiChunkFile = new MultiChunkRemoteFile(multiChunkId);
+
+		for (int attempt = 0; ; attempt++) {
+			try {
+				logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} ...", new Object[] { multiChunkId, localMultiChunkFile,
+						remoteMultiChunkFile });
+
+				getTransferManager().upload(localMultiChunkFile, remoteMultiChunkFile);
+				break;
+			}
+			catch (StorageException e) {
+				if (attempt >= uploadRetryCount || uploadException.get() != null) {
+					throw e;
+				}
+
+				logger.log(Level.INFO, "  + Upload of " + multiChunkId + " failed (attempt " + (attempt + 1) + " of " + (uploadRetryCount + 1) + "), retrying ...", e);
+				sleepBeforeRetry(attempt);
+			}
+		}
+
+		if (journal != null) {
+			journal.markUploaded(multiChunkId);
+		}
+
+		logger.log(Level.INFO, "  + Removing " + multiChunkId + " locally ...");
+		localMultiChunkFile.delete();
+
+		reportUploadedMultiChunk(remoteMultiChunkFile.getName(), multiChunkIndex);
+	}
+
+	private void sleepBeforeRetry(int attempt) throws StorageException {
+		try {
+			Thread.sleep(RETRY_SLEEP_MILLIS * (attempt + 1));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting to retry upload.", e);
+		}
+	}
+
+	private void reportUploadedMultiChunk(String remoteFileName, int multiChunkIndex) {
+		synchronized (uploadedMultiChunks) {
+			uploadedMultiChunks.put(multiChunkIndex, remoteFileName);
+
+			if (uploadStartReported) {
+				reportUploadedMultiChunks();
+			}
+		}
+	}
+
+	private void reportUploadedMultiChunks() {
+		// Report in queue order: only report once all earlier multichunks are done
+		while (uploadedMultiChunks.containsKey(nextReportedMultiChunkIndex)) {
+			String nextRemoteFileName = uploadedMultiChunks.remove(nextReportedMultiChunkIndex);
+
+			if (listener != null) {
+				listener.onUploadFile(nextRemoteFileName, nextReportedMultiChunkIndex);
+			}
+
+			nextReportedMultiChunkIndex++;
+		}
+	}
+
+	private int getUploadedMultiChunkCount() {
+		synchronized (uploadedMultiChunks) {
+			return nextReportedMultiChunkIndex - 1 + uploadedMultiChunks.size();
+		}
+	}
+
+	private TransferManager getTransferManager() {
+		if (uploadThreadCount == 1) {
+			return transferManager;
+		}
+
+		TransferManager currentThreadTransferManager = threadTransferManager.get();
+
+		if (currentThreadTransferManager == null) {
+			currentThreadTransferManager = config.createTransferManager();
+			threadTransferManager.set(currentThreadTransferManager);
+
+			synchronized (threadTransferManagers) {
+				threadTransferManagers.add(currentThreadTransferManager);
+			}
+		}
+
+		return currentThreadTransferManager;
+	}
+
+	private void disconnectThreadTransferManagers() {
+		synchronized (threadTransferManagers) {
+			for (TransferManager currentThreadTransferManager : threadTransferManagers) {
+				try {
+					currentThreadTransferManager.disconnect();
+				}
+				catch (StorageException e) {
+					// Don't care!
+				}
+			}
+
+			threadTransferManagers.clear();
+		}
+	}
+}
@@ -25,13 +25,15 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.chunk.AdaptiveGzipTransformer;
 import org.syncany.chunk.Deduper;
+import org.syncany.chunk.Transformer;
 import org.syncany.config.Config;
 import org.syncany.connection.plugins.DatabaseRemoteFile;
-import org.syncany.connection.plugins.MultiChunkRemoteFile;
 import org.syncany.connection.plugins.StorageException;
 import org.syncany.connection.plugins.TransferManager;
 import org.syncany.database.ChunkEntry;
@@ -69,11 +71,22 @@ import org.syncany.operations.up.UpOperationResult.UpResultCode;
  *   <li>Determine if there are unknown remote databases using the {@link LsRemoteOperation}, and skip the rest if there are</li>
  *   <li>If there are changes, use the {@link Deduper} and {@link Indexer} to create a new {@link DatabaseVersion} 
  *       (including new chunks, multichunks, file contents and file versions).</li>
- *   <li>Upload new multichunks (if any) using a {@link TransferManager}</li>
+ *   <li>Upload new multichunks (if any) using the {@link MultiChunkUploader}, with one or more 
+ *       concurrent uploads (see {@link UpOperationOptions#getUploadThreadCount()})</li>
  *   <li>Save new {@link DatabaseVersion} to a new (delta) {@link MemoryDatabase} and upload it</li>
  *   <li>Add delta database to local database and store it locally</li>
  * </ol>
  * 
+ * <p>If pipelined uploads are enabled (see {@link UpOperationOptions#pipelinedUploadEnabled()}), steps 4 and 5
+ * overlap: each multichunk is queued for upload by the {@link MultiChunkUploader} as soon as the {@link Indexer}
+ * closes it. The delta database is only uploaded (and the local database only updated) once all multichunk
+ * uploads have succeeded.
+ * 
+ * <p>Between indexing and committing, the pending database version and the list of uploaded multichunks
+ * are kept in an {@link UpTransactionJournal}. If the operation is interrupted (e.g. an upload fails or the
+ * process is killed), the next run resumes it: only the missing multichunks are uploaded, and the pending 
+ * database version is committed without re-indexing. Newer local changes are picked up by the next run.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class UpOperation extends Operation {
@@ -100,7 +113,7 @@ public class UpOperation extends Operation {
 
 		this.listener = listener;
 		this.options = options;
-		this.transferManager = config.getConnection().createTransferManager();
+		this.transferManager = config.createTransferManager();
 		this.localDatabase = new SqlDatabase(config);
 	}
 
@@ -111,6 +124,16 @@ public class UpOperation extends Operation {
 		logger.log(Level.INFO, "--------------------------------------------");
 
 		UpOperationResult result = new UpOperationResult();
+		UpTransactionJournal journal = new UpTransactionJournal(config);
+		
+		// Resume interrupted up operation (if any)
+		if (journal.exists()) {
+			DatabaseVersion pendingDatabaseVersion = loadResumableDatabaseVersion(journal);
+			
+			if (pendingDatabaseVersion != null) {
+				return resume(journal, pendingDatabaseVersion, result);
+			}
+		}
 		
 		// Find local changes
 		StatusOperation statusOperation = new StatusOperation(config, options.getStatusOptions());
@@ -130,47 +153,102 @@ public class UpOperation extends Operation {
 		}
 
 		// Find remote changes (unless --force is enabled)
-		if (!options.forceUploadEnabled()) {
-			LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config, transferManager).execute();
-			List<DatabaseRemoteFile> unknownRemoteDatabases = lsRemoteOperationResult.getUnknownRemoteDatabases();
-
-			if (unknownRemoteDatabases.size() > 0) {
-				logger.log(Level.INFO, "There are remote changes. Call 'down' first or use --force you must, Luke!");
-				result.setResultCode(UpResultCode.NOK_UNKNOWN_DATABASES);
+		if (hasUnknownRemoteDatabases()) {
+			result.setResultCode(UpResultCode.NOK_UNKNOWN_DATABASES);
 
-				disconnectTransferManager();
-				clearCache();
+			disconnectTransferManager();
+			clearCache();
 
-				return result;
-			}
-			else {
-				logger.log(Level.INFO, "No remote changes, ready to upload.");
-			}
-		}
-		else {
-			logger.log(Level.INFO, "Force (--force) is enabled, ignoring potential remote changes.");
+			return result;
 		}
 
 		List<File> locallyUpdatedFiles = extractLocallyUpdatedFiles(localChanges);
+		Set<String> locallyDeletedFiles = extractLocallyDeletedFilesIfScoped(localChanges);
 		localChanges = null; // allow GC to clean up
 
-		// Index
-		DatabaseVersion newDatabaseVersion = index(locallyUpdatedFiles);
+		// Index (and upload multichunks in the background, if enabled)
+		MultiChunkUploader multiChunkUploader = new MultiChunkUploader(config, transferManager, listener, options.getUploadThreadCount(),
+				options.getUploadRetryCount(), journal);
+		DatabaseVersion newDatabaseVersion = null;
+		
+		try {
+			newDatabaseVersion = index(locallyUpdatedFiles, locallyDeletedFiles, (options.pipelinedUploadEnabled()) ? multiChunkUploader : null);
+		}
+		catch (Exception e) {
+			multiChunkUploader.cancel();
+			throw e;
+		}
 
 		if (newDatabaseVersion.getFileHistories().size() == 0) {
 			logger.log(Level.INFO, "Local database is up-to-date. NOTHING TO DO!");
 			result.setResultCode(UpResultCode.OK_NO_CHANGES);
 
+			multiChunkUploader.cancel();
 			disconnectTransferManager();
 			clearCache();
 
 			return result;
 		}		
 
+		// Start journal (to resume uploads if this operation is interrupted)
+		try {
+			journal.begin(newDatabaseVersion);
+		}
+		catch (IOException e) {
+			multiChunkUploader.cancel();
+			throw e;
+		}
+
 		// Upload multichunks
-		logger.log(Level.INFO, "Uploading new multichunks ...");
-		uploadMultiChunks(newDatabaseVersion.getMultiChunks());
+		if (options.pipelinedUploadEnabled()) {
+			logger.log(Level.INFO, "Waiting for pipelined multichunk uploads ...");
+			
+			multiChunkUploader.reportUploadStart(newDatabaseVersion.getMultiChunks().size());
+			multiChunkUploader.awaitCompletion();
+		}
+		else {
+			logger.log(Level.INFO, "Uploading new multichunks ...");
+			uploadMultiChunks(newDatabaseVersion.getMultiChunks(), multiChunkUploader);
+		}
+
+		return commit(newDatabaseVersion, journal, result);
+	}
+	
+	private UpOperationResult resume(UpTransactionJournal journal, DatabaseVersion pendingDatabaseVersion, UpOperationResult result) throws Exception {
+		logger.log(Level.INFO, "Resuming interrupted up operation (database version {0}) ...", pendingDatabaseVersion.getHeader());
+		
+		// Find remote changes (unless --force is enabled); keep journal for later
+		if (hasUnknownRemoteDatabases()) {
+			result.setResultCode(UpResultCode.NOK_UNKNOWN_DATABASES);
+			disconnectTransferManager();
 
+			return result;
+		}
+		
+		// Upload missing multichunks
+		Set<MultiChunkId> uploadedMultiChunkIds = journal.loadUploadedMultiChunkIds();
+		List<MultiChunkEntry> missingMultiChunks = new ArrayList<MultiChunkEntry>();
+		
+		for (MultiChunkEntry multiChunkEntry : pendingDatabaseVersion.getMultiChunks()) {
+			if (!uploadedMultiChunkIds.contains(multiChunkEntry.getId())) {
+				missingMultiChunks.add(multiChunkEntry);
+			}
+		}
+		
+		logger.log(Level.INFO, "Uploading {0} missing multichunk(s), {1} already uploaded ...", new Object[] { missingMultiChunks.size(),
+				pendingDatabaseVersion.getMultiChunks().size() - missingMultiChunks.size() });
+		
+		journal.reopen();
+		
+		MultiChunkUploader multiChunkUploader = new MultiChunkUploader(config, transferManager, listener, options.getUploadThreadCount(),
+				options.getUploadRetryCount(), journal);
+		
+		uploadMultiChunks(missingMultiChunks, multiChunkUploader);
+		
+		return commit(pendingDatabaseVersion, journal, result);
+	}
+	
+	private UpOperationResult commit(DatabaseVersion newDatabaseVersion, UpTransactionJournal journal, UpOperationResult result) throws Exception {
 		// Create delta database
 		writeAndUploadDeltaDatabase(newDatabaseVersion);
 
@@ -181,6 +259,8 @@ public class UpOperation extends Operation {
 		logger.log(Level.INFO, "Removing DIRTY database versions from database ...");	
 		localDatabase.removeDirtyDatabaseVersions(newDatabaseVersionId);		
 		
+		journal.delete();
+		
 		if (options.cleanupEnabled()) {
 			CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions()).execute();
 			result.setCleanupResult(cleanupOperationResult); 
@@ -198,6 +278,67 @@ public class UpOperation extends Operation {
 		return result;
 	}
 
+	/**
+	 * Loads the pending database version of an interrupted up operation from the given journal, 
+	 * and checks whether it can still be committed: no other database version may have been added
+	 * to the local database in the mean time, and all multichunks that have not been uploaded yet 
+	 * must still be in the cache. If the journal cannot be used, it is deleted.
+	 */
+	private DatabaseVersion loadResumableDatabaseVersion(UpTransactionJournal journal) {
+		try {
+			DatabaseVersion pendingDatabaseVersion = journal.loadPendingDatabaseVersion();
+			
+			if (pendingDatabaseVersion == null) {
+				logger.log(Level.INFO, "Up transaction journal does not contain a database version. Ignoring journal.");
+			}
+			else if (!findNewVectorClock().equals(pendingDatabaseVersion.getVectorClock())) {
+				logger.log(Level.INFO, "Local database has changed since the up operation was interrupted. Ignoring journal.");
+			}
+			else {
+				Set<MultiChunkId> uploadedMultiChunkIds = journal.loadUploadedMultiChunkIds();
+				
+				for (MultiChunkEntry multiChunkEntry : pendingDatabaseVersion.getMultiChunks()) {
+					boolean missingInCache = !config.getCache().getEncryptedMultiChunkFile(multiChunkEntry.getId()).exists();
+					
+					if (!uploadedMultiChunkIds.contains(multiChunkEntry.getId()) && missingInCache) {
+						logger.log(Level.INFO, "Multichunk {0} is neither uploaded nor in the cache. Ignoring journal.", multiChunkEntry.getId());
+						
+						journal.delete();
+						return null;
+					}
+				}
+				
+				return pendingDatabaseVersion;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read up transaction journal. Ignoring journal.", e);
+		}
+		
+		journal.delete();
+		return null;
+	}
+	
+	private boolean hasUnknownRemoteDatabases() throws Exception {
+		if (!options.forceUploadEnabled()) {
+			LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config, transferManager).execute();
+			List<DatabaseRemoteFile> unknownRemoteDatabases = lsRemoteOperationResult.getUnknownRemoteDatabases();
+
+			if (unknownRemoteDatabases.size() > 0) {
+				logger.log(Level.INFO, "There are remote changes. Call 'down' first or use --force you must, Luke!");
+				return true;
+			}
+			else {
+				logger.log(Level.INFO, "No remote changes, ready to upload.");
+				return false;
+			}
+		}
+		else {
+			logger.log(Level.INFO, "Force (--force) is enabled, ignoring potential remote changes.");
+			return false;
+		}
+	}
+
 	private void writeAndUploadDeltaDatabase(DatabaseVersion newDatabaseVersion) throws InterruptedException, StorageException, IOException {
 		// Clone database version (necessary, because the original must not be touched)
 		DatabaseVersion deltaDatabaseVersion = newDatabaseVersion.clone();		
@@ -295,37 +436,21 @@ public class UpOperation extends Operation {
 		}
 	}
 
-	private void uploadMultiChunks(Collection<MultiChunkEntry> multiChunksEntries) throws InterruptedException, StorageException {
+	private void uploadMultiChunks(Collection<MultiChunkEntry> multiChunksEntries, MultiChunkUploader multiChunkUploader) throws InterruptedException, StorageException {
 		List<MultiChunkId> dirtyMultiChunkIds = localDatabase.getDirtyMultiChunkIds();
-		int multiChunkIndex = 0;
 		
-		if (listener != null) {
-			listener.onUploadStart(multiChunksEntries.size());
-		}
+		multiChunkUploader.reportUploadStart(multiChunksEntries.size());
 		
 		for (MultiChunkEntry multiChunkEntry : multiChunksEntries) {
-			multiChunkIndex++;
-
 			if (dirtyMultiChunkIds.contains(multiChunkEntry.getId())) {
 				logger.log(Level.INFO, "- Ignoring multichunk (from dirty database, already uploaded), " + multiChunkEntry.getId() + " ...");
 			}
 			else {
-				File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkEntry.getId());
-				MultiChunkRemoteFile remoteMultiChunkFile = new MultiChunkRemoteFile(multiChunkEntry.getId());
-
-				logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} ...", new Object[] { multiChunkEntry.getId(), localMultiChunkFile,
-						remoteMultiChunkFile });
-				
-				transferManager.upload(localMultiChunkFile, remoteMultiChunkFile);
-				
-				if (listener != null) {
-					listener.onUploadFile(remoteMultiChunkFile.getName(), multiChunkIndex);
-				}
-
-				logger.log(Level.INFO, "  + Removing " + multiChunkEntry.getId() + " locally ...");
-				localMultiChunkFile.delete();
+				multiChunkUploader.queue(multiChunkEntry.getId());
 			}
 		}
+		
+		multiChunkUploader.awaitCompletion();
 	}
 
 	private void uploadLocalDatabase(File localDatabaseFile, DatabaseRemoteFile remoteDatabaseFile) throws InterruptedException, StorageException {
@@ -333,19 +458,34 @@ public class UpOperation extends Operation {
 		transferManager.upload(localDatabaseFile, remoteDatabaseFile);
 	}
 
-	private DatabaseVersion index(List<File> localFiles) throws FileNotFoundException, IOException {
-		// Get last vector clock
-		DatabaseVersionHeader lastDatabaseVersionHeader = localDatabase.getLastDatabaseVersionHeader();
-		VectorClock lastVectorClock = (lastDatabaseVersionHeader != null) ? lastDatabaseVersionHeader.getVectorClock() : new VectorClock();
+	/**
+	 * Returns the deleted files found by the status operation, if it only examined a set of 
+	 * dirty paths. In this case, the indexer only needs to check these files for deletion. 
+	 * Returns <tt>null</tt> if the entire local folder was examined.
+	 */
+	private Set<String> extractLocallyDeletedFilesIfScoped(ChangeSet localChanges) {
+		boolean scopedStatus = options.getStatusOptions() != null && options.getStatusOptions().getDirtyPaths() != null;
+		return (scopedStatus) ? localChanges.getDeletedFiles() : null;
+	}
 
+	private DatabaseVersion index(List<File> localFiles, Set<String> deletedFilePaths, MultiChunkUploader multiChunkUploader) throws FileNotFoundException, IOException {
 		// New vector clock
-		VectorClock newVectorClock = findNewVectorClock(lastVectorClock);
+		VectorClock newVectorClock = findNewVectorClock();
 
 		// Index
-		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer());
-		Indexer indexer = new Indexer(config, deduper, listener);
+		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer(), options.getChunkingThreadCount());
+		Indexer indexer = new Indexer(config, deduper, listener, multiChunkUploader);
 
-		DatabaseVersion newDatabaseVersion = indexer.index(localFiles);
+		AdaptiveGzipTransformer adaptiveGzipTransformer = findAdaptiveGzipTransformer(config.getTransformer());
+		long compressedBytesBefore = (adaptiveGzipTransformer != null) ? adaptiveGzipTransformer.getCompressedBytes() : 0;
+		long skippedBytesBefore = (adaptiveGzipTransformer != null) ? adaptiveGzipTransformer.getSkippedBytes() : 0;
+
+		DatabaseVersion newDatabaseVersion = indexer.index(localFiles, deletedFilePaths);
+
+		if (adaptiveGzipTransformer != null) {
+			logger.log(Level.INFO, "Adaptive compression: {0} byte(s) compressed, {1} byte(s) stored without compression (incompressible).", new Object[] {
+					adaptiveGzipTransformer.getCompressedBytes() - compressedBytesBefore, adaptiveGzipTransformer.getSkippedBytes() - skippedBytesBefore });
+		}
 
 		newDatabaseVersion.setVectorClock(newVectorClock);
 		newDatabaseVersion.setTimestamp(new Date());
@@ -354,7 +494,23 @@ public class UpOperation extends Operation {
 		return newDatabaseVersion;
 	}
 	
-	private VectorClock findNewVectorClock(VectorClock lastVectorClock) {
+	private AdaptiveGzipTransformer findAdaptiveGzipTransformer(Transformer transformer) {
+		while (transformer != null) {
+			if (transformer instanceof AdaptiveGzipTransformer) {
+				return (AdaptiveGzipTransformer) transformer;
+			}
+
+			transformer = transformer.getNextTransformer();
+		}
+
+		return null;
+	}
+	
+	private VectorClock findNewVectorClock() {
+		// Get last vector clock
+		DatabaseVersionHeader lastDatabaseVersionHeader = localDatabase.getLastDatabaseVersionHeader();
+		VectorClock lastVectorClock = (lastDatabaseVersionHeader != null) ? lastDatabaseVersionHeader.getVectorClock() : new VectorClock();
+
 		VectorClock newVectorClock = lastVectorClock.clone();
 
 		Long lastLocalValue = lastVectorClock.getClock(config.getMachineName());
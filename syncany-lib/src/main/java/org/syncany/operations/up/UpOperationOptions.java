@@ -17,6 +17,7 @@
  */
 package org.syncany.operations.up;
 
+import org.syncany.chunk.Deduper;
 import org.syncany.operations.CleanupOperation.CleanupOperationOptions;
 import org.syncany.operations.OperationOptions;
 import org.syncany.operations.StatusOperation.StatusOperationOptions;
@@ -26,6 +27,10 @@ public class UpOperationOptions implements OperationOptions {
 	private boolean forceUploadEnabled = false;
 	private boolean cleanupEnabled = true;
 	private CleanupOperationOptions cleanupOptions = new CleanupOperationOptions();
+	private int chunkingThreadCount = Deduper.DEFAULT_THREAD_COUNT;
+	private boolean pipelinedUploadEnabled = false;
+	private int uploadThreadCount = 1;
+	private int uploadRetryCount = 0;
 
 	public CleanupOperationOptions getCleanupOptions() {
 		return cleanupOptions;
@@ -58,4 +63,36 @@ public class UpOperationOptions implements OperationOptions {
 	public void setCleanupEnabled(boolean cleanupEnabled) {
 		this.cleanupEnabled = cleanupEnabled;
 	}
-}
\ No newline at end of file
+
+	public int getChunkingThreadCount() {
+		return chunkingThreadCount;
+	}
+
+	public void setChunkingThreadCount(int chunkingThreadCount) {
+		this.chunkingThreadCount = chunkingThreadCount;
+	}
+
+	public boolean pipelinedUploadEnabled() {
+		return pipelinedUploadEnabled;
+	}
+
+	public void setPipelinedUploadEnabled(boolean pipelinedUploadEnabled) {
+		this.pipelinedUploadEnabled = pipelinedUploadEnabled;
+	}
+
+	public int getUploadThreadCount() {
+		return uploadThreadCount;
+	}
+
+	public void setUploadThreadCount(int uploadThreadCount) {
+		this.uploadThreadCount = uploadThreadCount;
+	}
+
+	public int getUploadRetryCount() {
+		return uploadRetryCount;
+	}
+
+	public void setUploadRetryCount(int uploadRetryCount) {
+		this.uploadRetryCount = uploadRetryCount;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.up;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader.DatabaseVersionType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+
+/**
+ * The up transaction journal persists the state of a running {@link UpOperation}
+ * in the application directory, so that an interrupted up operation can be resumed
+ * without re-indexing (re-chunking, re-encrypting) the local files.
+ *
+ * <p>The journal consists of two files:
+ * <ul>
+ *  <li>The pending {@link DatabaseVersion}, i.e. the result of the indexer, stored using the
+ *      {@link DatabaseXmlSerializer} (and hence transformed like any other database file).</li>
+ *  <li>The list of multichunks that have already been uploaded, one multichunk identifier per
+ *      line. Lines are appended (and flushed) after each successful upload.</li>
+ * </ul>
+ *
+ * <p>The journal is started after indexing using {@link #begin(DatabaseVersion)}, and deleted
+ * once the database version has been uploaded and persisted to the local database. Multichunks
+ * that are uploaded before the journal is started (e.g. by pipelined uploads) are kept in memory
+ * and written by {@link #begin(DatabaseVersion)}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class UpTransactionJournal {
+	private static final Logger logger = Logger.getLogger(UpTransactionJournal.class.getSimpleName());
+
+	public static final String FILE_PENDING_DATABASE = "up-journal-database";
+	public static final String FILE_UPLOADED_MULTICHUNKS = "up-journal-multichunks";
+
+	private Config config;
+	private File pendingDatabaseFile;
+	private File uploadedMultiChunksFile;
+
+	private List<MultiChunkId> uploadedMultiChunkIds;
+	private boolean started;
+
+	public UpTransactionJournal(Config config) {
+		this.config = config;
+		this.pendingDatabaseFile = new File(config.getAppDir(), FILE_PENDING_DATABASE);
+		this.uploadedMultiChunksFile = new File(config.getAppDir(), FILE_UPLOADED_MULTICHUNKS);
+
+		this.uploadedMultiChunkIds = new ArrayList<MultiChunkId>();
+		this.started = false;
+	}
+
+	/**
+	 * Returns whether a journal of a previous (interrupted) up operation exists.
+	 */
+	public boolean exists() {
+		return pendingDatabaseFile.exists();
+	}
+
+	/**
+	 * Starts the journal by writing the pending database version, as well as all
+	 * multichunks that were marked as uploaded so far. The database version is written to a
+	 * temporary file first, so that a crash while writing does not leave a broken journal.
+	 *
+	 * @param pendingDatabaseVersion Database version that is committed at the end of the up operation
+	 * @throws IOException If the journal cannot be written
+	 */
+	public synchronized void begin(DatabaseVersion pendingDatabaseVersion) throws IOException {
+		logger.log(Level.INFO, "Starting up transaction journal for database version {0} ...", pendingDatabaseVersion.getHeader());
+
+		writeUploadedMultiChunkIds(uploadedMultiChunkIds, false);
+
+		File tempPendingDatabaseFile = new File(pendingDatabaseFile.getParentFile(), pendingDatabaseFile.getName() + ".tmp");
+		new DatabaseXmlSerializer(config.getTransformer()).save(Arrays.asList(new DatabaseVersion[] { pendingDatabaseVersion }), tempPendingDatabaseFile);
+
+		pendingDatabaseFile.delete();
+
+		if (!tempPendingDatabaseFile.renameTo(pendingDatabaseFile)) {
+			throw new IOException("Cannot move journal file " + tempPendingDatabaseFile + " to " + pendingDatabaseFile);
+		}
+
+		started = true;
+	}
+
+	/**
+	 * Continues an existing journal (of an interrupted up operation), i.e. uploaded
+	 * multichunks are appended to the existing list of uploaded multichunks.
+	 */
+	public synchronized void reopen() {
+		started = true;
+	}
+
+	/**
+	 * Records that the given multichunk has been uploaded successfully. If the journal
+	 * has been started, the multichunk identifier is immediately written to disk.
+	 *
+	 * <p>Failures to write the journal are logged, but otherwise ignored: in the worst
+	 * case, the multichunk is uploaded again when the operation is resumed.
+	 *
+	 * @param multiChunkId Identifier of the uploaded multichunk
+	 */
+	public synchronized void markUploaded(MultiChunkId multiChunkId) {
+		uploadedMultiChunkIds.add(multiChunkId);
+
+		if (started) {
+			try {
+				writeUploadedMultiChunkIds(Arrays.asList(new MultiChunkId[] { multiChunkId }), true);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot write multichunk " + multiChunkId + " to up transaction journal; ignoring.", e);
+			}
+		}
+	}
+
+	/**
+	 * Loads the pending database version from the journal.
+	 *
+	 * @return Returns the pending database version, or <tt>null</tt> if the journal does not contain one
+	 * @throws IOException If the journal cannot be read
+	 */
+	public DatabaseVersion loadPendingDatabaseVersion() throws IOException {
+		MemoryDatabase pendingDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer(config.getTransformer()).load(pendingDatabase, pendingDatabaseFile, DatabaseVersionType.DEFAULT);
+
+		return pendingDatabase.getLastDatabaseVersion();
+	}
+
+	/**
+	 * Loads the identifiers of all multichunks that have been uploaded according to the journal.
+	 *
+	 * @return Returns the set of uploaded multichunks (empty if none)
+	 * @throws IOException If the journal cannot be read
+	 */
+	public Set<MultiChunkId> loadUploadedMultiChunkIds() throws IOException {
+		Set<MultiChunkId> multiChunkIds = new HashSet<MultiChunkId>();
+
+		if (uploadedMultiChunksFile.exists()) {
+			BufferedReader reader = new BufferedReader(new FileReader(uploadedMultiChunksFile));
+
+			try {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					// An incomplete last line (if the process died while writing) never matches 
+					// a multichunk, so that multichunk is simply uploaded again.
+					try {
+						multiChunkIds.add(MultiChunkId.parseMultiChunkId(line.trim()));
+					}
+					catch (RuntimeException e) {
+						logger.log(Level.INFO, "Ignoring invalid line in up transaction journal: " + line);
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+
+		return multiChunkIds;
+	}
+
+	/**
+	 * Deletes the journal, either because the up operation has been committed,
+	 * or because the journal cannot be used anymore.
+	 */
+	public synchronized void delete() {
+		logger.log(Level.INFO, "Deleting up transaction journal ...");
+
+		pendingDatabaseFile.delete();
+		uploadedMultiChunksFile.delete();
+
+		uploadedMultiChunkIds.clear();
+		started = false;
+	}
+
+	private void writeUploadedMultiChunkIds(List<MultiChunkId> multiChunkIds, boolean append) throws IOException {
+		Writer writer = new FileWriter(uploadedMultiChunksFile, append);
+
+		try {
+			for (MultiChunkId multiChunkId : multiChunkIds) {
+				writer.write(multiChunkId.toString() + "\n");
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
@@ -30,6 +30,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -38,8 +39,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,21 +51,48 @@ import java.util.logging.Logger;
 /**
  * The recursive file watcher monitors a folder (and its sub-folders). 
  * 
- * <p>The class walks through the file tree and registers to a watch to every sub-folder.
- * For new folders, a new watch is registered, and stale watches are removed.
+ * <p>The class walks through the file tree once and registers a watch to every sub-folder.
+ * Afterwards, watches are registered incrementally: If a folder is created (or moved into
+ * the tree), a watch is registered for it and its sub-folders; if a folder is deleted (or moved 
+ * away), the watches of it and its sub-folders are cancelled. The entire tree is only walked 
+ * again if the watch service overflows.
  * 
  * <p>When a file event occurs, a timer is started to wait for the file operations
  * to settle. It is reset whenever a new event occurs. When the timer times out,
- * an event is thrown through the {@link WatchListener}.
+ * an event is thrown through the {@link WatchListener}. All timers are scheduled on 
+ * a single shared thread, which also calls the listener.
+ * 
+ * <p>The settle delay adapts to the rate of events: For single events, the minimum
+ * delay is used; for bursts (e.g. copying a large folder), the delay is increased up to 
+ * the maximum delay, so that a short pause in the burst does not trigger a sync.  
+ * 
+ * <p>The paths affected by the events (created, modified or deleted files and folders) 
+ * are collected and passed to the listener, so that it only needs to examine these paths. 
+ * If the watch service overflows, i.e. events were lost, the listener is told to examine
+ * the whole file tree instead.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class RecursiveWatcher {
 	private static final Logger logger = Logger.getLogger(RecursiveWatcher.class.getSimpleName());
+	
+	/**
+	 * Event rate (events per second) at or above which the maximum settle delay is used.
+	 * Below, the delay is interpolated linearly between the minimum and maximum delay.
+	 */
+	private static final int HIGH_EVENT_RATE = 1000;
+	
+	/**
+	 * Minimum time span (in milliseconds) over which the event rate is measured, so that
+	 * a few events in quick succession (e.g. create and modify of a single file) do not
+	 * count as a burst.
+	 */
+	private static final int MIN_EVENT_RATE_WINDOW = 1000;
 
 	private Path root;
 	private List<Path> ignorePaths;
 	private int settleDelay;
+	private int maxSettleDelay;
 	private WatchListener listener;
 
 	private AtomicBoolean running;
@@ -69,13 +100,36 @@ public class RecursiveWatcher {
 	private WatchService watchService;
 	private Thread watchThread;
 	private Map<Path, WatchKey> watchPathKeyMap;
+	private Map<Path, Set<Path>> watchPathChildrenMap;
+	
+	private Set<Path> dirtyPaths;
+	private boolean overflow;
+	
+	private long burstStartTime;
+	private int burstEventCount;
 
-	private Timer timer;
+	private ScheduledExecutorService settleExecutor;
+	private ScheduledFuture<?> settleFuture;
 
 	public RecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
+		this(root, ignorePaths, settleDelay, settleDelay, listener);
+	}
+	
+	/**
+	 * Creates a new watcher with an adaptive settle delay. 
+	 * 
+	 * @param settleDelay Minimum settle delay (in milliseconds), used for single events
+	 * @param maxSettleDelay Maximum settle delay (in milliseconds), used for bursts of events
+	 */
+	public RecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, int maxSettleDelay, WatchListener listener) {
+		if (maxSettleDelay < settleDelay) {
+			throw new IllegalArgumentException("Maximum settle delay must not be smaller than the settle delay.");
+		}
+		
 		this.root = root;
 		this.ignorePaths = ignorePaths;
 		this.settleDelay = settleDelay;
+		this.maxSettleDelay = maxSettleDelay;
 		this.listener = listener;
 
 		this.running = new AtomicBoolean(false);
@@ -83,8 +137,16 @@ public class RecursiveWatcher {
 		this.watchService = null;
 		this.watchThread = null;
 		this.watchPathKeyMap = new HashMap<Path, WatchKey>();
+		this.watchPathChildrenMap = new HashMap<Path, Set<Path>>();
+		
+		this.dirtyPaths = new HashSet<Path>();
+		this.overflow = false;
+		
+		this.burstStartTime = 0;
+		this.burstEventCount = 0;
 
-		this.timer = null;
+		this.settleExecutor = null;
+		this.settleFuture = null;
 	}
 
 	/**
@@ -98,19 +160,30 @@ public class RecursiveWatcher {
 	 */
 	public void start() throws IOException {
 		watchService = FileSystems.getDefault().newWatchService();
+		settleExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "WatchTimer");
+			}
+		});
 
 		watchThread = new Thread(new Runnable() {
 			@Override
 			public void run() {
 				running.set(true);
-				walkTreeAndSetWatches();
+				walkTreeAndSetWatches(root);
 
 				while (running.get()) {
 					try {
 						WatchKey watchKey = watchService.take();
-						watchKey.pollEvents(); // Take events, but don't care what they are!
+						Path watchedDir = (Path) watchKey.watchable();
+						
+						processEvents(watchedDir, watchKey.pollEvents());
 
-						watchKey.reset();
+						if (!watchKey.reset()) {
+							unregisterWatches(watchedDir);
+						}
+						
 						resetWaitSettlementTimer();
 					}
 					catch (InterruptedException | ClosedWatchServiceException e) {
@@ -133,35 +206,86 @@ public class RecursiveWatcher {
 			catch (IOException e) {
 				// Don't care
 			}			
-		}		
+		}
+		
+		if (settleExecutor != null) {
+			settleExecutor.shutdownNow();
+		}
+	}
+
+	private synchronized void processEvents(Path watchedDir, List<WatchEvent<?>> watchEvents) {
+		for (WatchEvent<?> watchEvent : watchEvents) {
+			if (watchEvent.kind() == OVERFLOW) {
+				logger.log(Level.INFO, "Watch service overflow in " + watchedDir + "; events lost, full tree walk required.");
+				overflow = true;
+			}
+			else {
+				Path path = watchedDir.resolve((Path) watchEvent.context());				
+				dirtyPaths.add(path);
+
+				if (watchEvent.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					walkTreeAndSetWatches(path);
+				}
+				else if (watchEvent.kind() == ENTRY_DELETE) {
+					unregisterWatches(path);
+				}
+			}
+		}
+		
+		if (burstEventCount == 0) {
+			burstStartTime = System.currentTimeMillis();
+		}
+		
+		burstEventCount += watchEvents.size();
 	}
 
 	private synchronized void resetWaitSettlementTimer() {
-		logger.log(Level.FINE, "File system events registered. Waiting " + settleDelay + "ms for settlement ....");
+		int currentSettleDelay = getAdaptiveSettleDelay();
+		logger.log(Level.FINE, "File system events registered. Waiting " + currentSettleDelay + "ms for settlement ....");
 
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
+		if (settleFuture != null) {
+			settleFuture.cancel(false);
 		}
 
-		timer = new Timer("WatchTimer");
-		timer.schedule(new TimerTask() {
+		settleFuture = settleExecutor.schedule(new Runnable() {
 			@Override
 			public void run() {
-				logger.log(Level.INFO, "File system actions (on watched folders) settled. Updating watches ...");
-				walkTreeAndSetWatches();
-				unregisterStaleWatches();
+				if (isOverflow()) {
+					logger.log(Level.INFO, "File system actions (on watched folders) settled. Updating all watches ...");
+					
+					walkTreeAndSetWatches(root);
+					unregisterStaleWatches();
+				}
+				else {
+					logger.log(Level.INFO, "File system actions (on watched folders) settled.");
+				}
 
 				fireListenerEvents();
 			}
-		}, settleDelay);
+		}, currentSettleDelay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Calculates the settle delay from the event rate of the current burst, i.e. of all 
+	 * events since the listener has last been called. 
+	 */
+	private int getAdaptiveSettleDelay() {
+		if (maxSettleDelay == settleDelay) {
+			return settleDelay;
+		}
+		
+		long burstDuration = Math.max(MIN_EVENT_RATE_WINDOW, System.currentTimeMillis() - burstStartTime);
+		double eventRate = burstEventCount * 1000.0 / burstDuration;
+		double rateFactor = Math.min(1.0, eventRate / HIGH_EVENT_RATE);
+		
+		return settleDelay + (int) ((maxSettleDelay - settleDelay) * rateFactor);
 	}
 
-	private synchronized void walkTreeAndSetWatches() {
-		logger.log(Level.INFO, "Registering new folders at watch service ...");
+	private synchronized void walkTreeAndSetWatches(Path startDir) {
+		logger.log(Level.INFO, "Registering new folders at watch service (in " + startDir + ") ...");
 
 		try {
-			Files.walkFileTree(root, new FileVisitor<Path>() {
+			Files.walkFileTree(startDir, new FileVisitor<Path>() {
 				@Override
 				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
 					if (ignorePaths.contains(dir)) {
@@ -212,13 +336,46 @@ public class RecursiveWatcher {
 			}
 		}
 	}
+	
+	/**
+	 * Cancels the watches of the given folder and all of its sub-folders. 
+	 */
+	private synchronized void unregisterWatches(Path dir) {
+		Set<Path> childDirs = watchPathChildrenMap.get(dir);
+		
+		if (childDirs != null) {
+			for (Path childDir : new HashSet<Path>(childDirs)) {
+				unregisterWatches(childDir);
+			}
+		}
+		
+		unregisterWatch(dir);
+	}
 
-	private synchronized void fireListenerEvents() {
+	private void fireListenerEvents() {
+		Set<Path> firedDirtyPaths = takeDirtyPaths();
+		
 		if (listener != null) {
-			logger.log(Level.INFO, "- Firing watch event (watchEventsOccurred) ...");
-			listener.watchEventsOccurred();
+			logger.log(Level.INFO, "- Firing watch event (watchEventsOccurred) for " 
+					+ ((firedDirtyPaths != null) ? firedDirtyPaths.size() + " path(s)" : "full tree") + " ...");
+			
+			listener.watchEventsOccurred(firedDirtyPaths);
 		}
 	}
+	
+	private synchronized boolean isOverflow() {
+		return overflow;
+	}
+	
+	private synchronized Set<Path> takeDirtyPaths() {
+		Set<Path> takenDirtyPaths = (overflow) ? null : dirtyPaths;
+		
+		dirtyPaths = new HashSet<Path>();
+		overflow = false;
+		burstEventCount = 0;
+		
+		return takenDirtyPaths;
+	}
 
 	private synchronized void registerWatch(Path dir) {
 		if (!watchPathKeyMap.containsKey(dir)) {
@@ -227,6 +384,15 @@ public class RecursiveWatcher {
 			try {
 				WatchKey watchKey = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY, OVERFLOW);
 				watchPathKeyMap.put(dir, watchKey);
+				
+				Set<Path> siblingDirs = watchPathChildrenMap.get(dir.getParent());
+				
+				if (siblingDirs == null) {
+					siblingDirs = new HashSet<Path>();
+					watchPathChildrenMap.put(dir.getParent(), siblingDirs);
+				}
+				
+				siblingDirs.add(dir);
 			}
 			catch (IOException e) {
 				// Don't care!
@@ -242,10 +408,26 @@ public class RecursiveWatcher {
 			
 			watchKey.cancel();
 			watchPathKeyMap.remove(dir);
+			
+			Set<Path> siblingDirs = watchPathChildrenMap.get(dir.getParent());
+			
+			if (siblingDirs != null) {
+				siblingDirs.remove(dir);
+				
+				if (siblingDirs.isEmpty()) {
+					watchPathChildrenMap.remove(dir.getParent());
+				}
+			}
 		}
 	}
 
 	public interface WatchListener {
-		public void watchEventsOccurred();
+		/**
+		 * Called when file system events occurred and settled.
+		 * 
+		 * @param dirtyPaths Absolute paths of the created, modified and deleted files and folders,
+		 *        or <tt>null</tt> if events were lost and the whole file tree must be examined
+		 */
+		public void watchEventsOccurred(Set<Path> dirtyPaths);
 	}
 }
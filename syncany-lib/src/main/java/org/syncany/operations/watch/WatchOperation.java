@@ -21,8 +21,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,16 +33,19 @@ import org.syncany.config.Config;
 import org.syncany.operations.Operation;
 import org.syncany.operations.OperationOptions;
 import org.syncany.operations.OperationResult;
+import org.syncany.operations.StatusOperation.StatusOperationOptions;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.down.DownOperationListener;
 import org.syncany.operations.down.DownOperationResult;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
 import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationListener;
+import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.operations.up.UpOperationResult;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.operations.watch.NotificationListener.NotificationListenerListener;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
+import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -61,6 +66,12 @@ import org.syncany.util.StringUtil;
  *      changes are synced eventually.</li>
  * </ul>
  * 
+ * <p>The paths reported by the {@link RecursiveWatcher} are collected, so that
+ * event-triggered syncs only examine these paths instead of walking the entire 
+ * local folder (see {@link StatusOperationOptions#setDirtyPaths(Set)}). The periodic
+ * sync always walks the entire folder, as do all syncs if the watcher is disabled 
+ * or if it lost events.
+ * 
  * As of now, this operation never returns, because it runs in a loop. The user
  * has to manually abort the operation on the command line.
  * 
@@ -77,7 +88,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private AtomicBoolean pauseRequired;
 
 	private RecursiveWatcher recursiveWatcher;
+	private AtomicBoolean recursiveWatcherStarted;
 	private NotificationListener notificationListener;
+	
+	private Set<String> dirtyPaths;
+	private boolean dirtyPathsTracked;
 
 	private String notificationChannel;
 	private String notificationInstanceId;
@@ -93,7 +108,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		this.pauseRequired = new AtomicBoolean(false);
 
 		this.recursiveWatcher = null;
+		this.recursiveWatcherStarted = new AtomicBoolean(false);
 		this.notificationListener = null;
+		
+		this.dirtyPaths = new HashSet<String>();
+		this.dirtyPathsTracked = false;
 
 		this.notificationChannel = StringUtil.toHex(config.getRepoId());
 		this.notificationInstanceId = "" + Math.abs(new Random().nextLong());
@@ -120,7 +139,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			}
 
 			try {
-				runSync();
+				runSync(false);
 
 				logger.log(Level.INFO, "Sync done, waiting {0} seconds ...", options.getInterval() / 1000);
 				Thread.sleep(options.getInterval());
@@ -143,10 +162,12 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		ignorePaths.add(Paths.get(config.getDatabaseDir().getAbsolutePath()));
 		ignorePaths.add(Paths.get(config.getLogDir().getAbsolutePath()));
 
-		recursiveWatcher = new RecursiveWatcher(localDir, ignorePaths, options.getSettleDelay(), this);
+		int maxSettleDelay = Math.max(options.getSettleDelay(), options.getMaxSettleDelay());
+		recursiveWatcher = new RecursiveWatcher(localDir, ignorePaths, options.getSettleDelay(), maxSettleDelay, this);
 
 		try {
 			recursiveWatcher.start();
+			recursiveWatcherStarted.set(true);
 		}
 		catch (IOException e) {
 			logger.log(Level.WARNING, "Cannot initiate file watcher. Relying on regular tree walks.");
@@ -160,38 +181,85 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		notificationListener.subscribe(notificationChannel);
 	}
 
-	private void runSync() throws Exception {
+	/**
+	 * Runs the down and up operation, unless a sync is already running. If <tt>scoped</tt> 
+	 * is set and the collected dirty paths are complete, the up operation only examines 
+	 * these paths. Paths reported while the sync is running are synced in another round.
+	 */
+	private void runSync(boolean scoped) throws Exception {
 		if (!syncRunning.get()) {
 			syncRunning.set(true);
 
-			logger.log(Level.INFO, "Running sync ...");
-
 			try {
-				// Run down
-				DownOperationResult downResult = new DownOperation(config, listener).execute();
-				
-				if (downResult.getResultCode() == DownResultCode.OK_WITH_REMOTE_CHANGES) {
-					// TODO [low] Do something?
-				}
-				
-				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, listener).execute();
-
-				if (upOperationResult.getResultCode() == UpResultCode.OK_APPLIED_CHANGES && upOperationResult.getChangeSet().hasChanges()) {
-					notifyChanges();
+				do {
+					Set<String> syncDirtyPaths = takeDirtyPaths(scoped);
+					
+					if (syncDirtyPaths != null) {
+						logger.log(Level.INFO, "Running sync for " + syncDirtyPaths.size() + " dirty path(s) ...");
+					}
+					else {
+						logger.log(Level.INFO, "Running sync ...");
+					}
+					
+					// Run down
+					DownOperationResult downResult = new DownOperation(config, listener).execute();
+					
+					if (downResult.getResultCode() == DownResultCode.OK_WITH_REMOTE_CHANGES) {
+						// TODO [low] Do something?
+					}
+					
+					// Run up
+					UpOperationOptions upOptions = new UpOperationOptions();
+					upOptions.getStatusOptions().setDirtyPaths(syncDirtyPaths);
+					
+					UpOperationResult upOperationResult = new UpOperation(config, upOptions, listener).execute();
+	
+					if (upOperationResult.getResultCode() == UpResultCode.OK_APPLIED_CHANGES && upOperationResult.getChangeSet().hasChanges()) {
+						notifyChanges();
+					}
 				}
+				while (scoped && hasDirtyPaths());
 			}
 			finally {
 				syncRunning.set(false);
 			}
 		}
 	}
+	
+	private synchronized void addDirtyPaths(Set<Path> watchedDirtyPaths) {
+		if (watchedDirtyPaths == null) {
+			logger.log(Level.INFO, "Watcher lost events, next sync walks the entire folder.");
+			dirtyPathsTracked = false;
+		}
+		else {
+			for (Path dirtyPath : watchedDirtyPaths) {
+				dirtyPaths.add(FileUtil.getRelativeDatabasePath(config.getLocalDir(), dirtyPath.toFile()));
+			}
+		}
+	}
+	
+	private synchronized boolean hasDirtyPaths() {
+		return !dirtyPaths.isEmpty() || (recursiveWatcherStarted.get() && !dirtyPathsTracked);
+	}
+
+	/**
+	 * Returns and resets the collected dirty paths. Returns <tt>null</tt> if a full sync 
+	 * is requested, or if the collected paths are incomplete (watcher not running or lost events).
+	 */
+	private synchronized Set<String> takeDirtyPaths(boolean scoped) {
+		Set<String> takenDirtyPaths = (scoped && dirtyPathsTracked) ? dirtyPaths : null;
+		
+		dirtyPaths = new HashSet<String>();
+		dirtyPathsTracked = recursiveWatcherStarted.get();
+		
+		return takenDirtyPaths;
+	}
 
 	@Override
 	public void pushNotificationReceived(String channel, String message) {
 		if (channel.equals(notificationChannel) && !message.equals(notificationInstanceId)) {
 			try {
-				runSync();
+				runSync(true);
 			}
 			catch (Exception e) {
 				logger.log(Level.INFO, "Sync FAILED (event-triggered).");
@@ -200,9 +268,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	}
 
 	@Override
-	public void watchEventsOccurred() {
+	public void watchEventsOccurred(Set<Path> watchedDirtyPaths) {
+		addDirtyPaths(watchedDirtyPaths);
+		
 		try {
-			runSync();
+			runSync(true);
 		}
 		catch (Exception e) {
 			logger.log(Level.INFO, "Sync FAILED (event-triggered).");
@@ -240,6 +310,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		private String announcementsHost = "notify.syncany.org";
 		private int announcementsPort = 8080;
 		private int settleDelay = 3000;
+		private int maxSettleDelay = 15000;
 		private boolean watcher = true;
 
 		public int getInterval() {
@@ -282,6 +353,14 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			this.settleDelay = settleDelay;
 		}
 
+		public int getMaxSettleDelay() {
+			return maxSettleDelay;
+		}
+
+		public void setMaxSettleDelay(int maxSettleDelay) {
+			this.maxSettleDelay = maxSettleDelay;
+		}
+
 		public boolean watcherEnabled() {
 			return watcher;
 		}
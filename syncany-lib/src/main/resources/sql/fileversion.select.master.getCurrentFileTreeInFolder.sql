@@ -0,0 +1,13 @@
+select fv.*
+from fileversion fv
+join databaseversion dbv on fv.databaseversion_id=dbv.id and dbv.status='MASTER'
+where fv.path>?
+  and fv.path<?
+  and fv.status<>'DELETED'
+  and not exists (
+    select 1
+    from fileversion fvnewer
+    where fvnewer.filehistory_id=fv.filehistory_id
+      and fvnewer.version>fv.version
+      and exists (select 1 from databaseversion dbvnewer where dbvnewer.id=fvnewer.databaseversion_id and dbvnewer.status='MASTER')
+  )
@@ -0,0 +1,53 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins.latency_local;
+
+import org.syncany.connection.plugins.TransferManager;
+import org.syncany.connection.plugins.local.LocalConnection;
+
+/**
+ * The latency local connection can be used for test purposes to simulate
+ * a high-latency backend storage (e.g. a remote server far away) offline. 
+ * Each operation of the {@link LatencyLocalTransferManager} waits for the
+ * configured latency before it is executed on the local repository.
+ * 
+ * <p>Unlike the unreliable local plugin, this connection is not registered
+ * as a plugin. It is meant to be passed to a test config directly.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class LatencyLocalConnection extends LocalConnection {
+	private int latencyMillis;
+	
+	public LatencyLocalConnection(int latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	@Override
+	public TransferManager createTransferManager() {
+		return new LatencyLocalTransferManager(this);
+	}
+
+	public int getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	public void setLatencyMillis(int latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.connection.plugins.latency_local;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.syncany.connection.plugins.RemoteFile;
+import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.local.LocalTransferManager;
+
+/**
+ * Transfer manager of the {@link LatencyLocalConnection}. It adds the configured
+ * latency to each request (upload, download, delete, list) before delegating
+ * it to the {@link LocalTransferManager}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class LatencyLocalTransferManager extends LocalTransferManager {
+	public LatencyLocalTransferManager(LatencyLocalConnection connection) {
+		super(connection);
+	}
+
+	@Override
+	public LatencyLocalConnection getConnection() {
+		return (LatencyLocalConnection) super.getConnection();
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		waitForLatency();
+		super.download(remoteFile, localFile);
+	}
+
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		waitForLatency();
+		return super.downloadStream(remoteFile);
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		waitForLatency();
+		super.upload(localFile, remoteFile);
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		waitForLatency();
+		return super.delete(remoteFile);
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		waitForLatency();
+		return super.list(remoteFileClass);
+	}
+
+	private void waitForLatency() throws StorageException {
+		try {
+			Thread.sleep(getConnection().getLatencyMillis());
+		}
+		catch (InterruptedException e) {
+			throw new StorageException("Interrupted while simulating latency.", e);
+		}
+	}
+}
@@ -18,6 +18,7 @@
 package org.syncany.connection.plugins.unreliable_local;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +41,13 @@ public class UnreliableLocalTransferManager extends LocalTransferManager {
     }
     
     private boolean isNextOperationSuccessful(String operationType, String operationDescription) {
+    	// Counters are shared by all transfer managers of the connection (e.g. concurrent uploads)
+    	synchronized (connection) {
+    		return isNextOperationSuccessfulUnsynchronized(operationType, operationDescription);
+    	}
+    }
+    
+    private boolean isNextOperationSuccessfulUnsynchronized(String operationType, String operationDescription) {
     	// Increase absolute/overall operation counter
     	connection.increaseTotalOperationCounter();
     	
@@ -121,6 +129,19 @@ public class UnreliableLocalTransferManager extends LocalTransferManager {
     	}
     }
 
+    @Override
+    public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+    	String operationType = "download";
+    	String operationDescription = "downloadStream("+remoteFile.getName()+")";
+
+    	if (isNextOperationSuccessful(operationType, operationDescription)) {
+    		return super.downloadStream(remoteFile);
+    	}
+    	else {
+    		throw new StorageException("Operation failed: "+operationDescription);
+    	}
+    }
+
     @Override
     public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
     	String operationType = "upload";
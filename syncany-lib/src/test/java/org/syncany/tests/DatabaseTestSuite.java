@@ -21,6 +21,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.syncany.tests.database.DatabaseReconciliatorTest;
+import org.syncany.tests.database.DatabaseVersionTest;
 import org.syncany.tests.database.FileVersionComparatorTest;
 import org.syncany.tests.database.MemoryDatabaseCacheTest;
 import org.syncany.tests.database.ObjectIdTest;
@@ -41,6 +42,7 @@ import org.syncany.tests.database.dao.XmlDatabaseDaoTest;
 	ChunkDaoTest.class,
 	DatabaseReconciliatorTest.class,
 	DatabaseVersionDaoTest.class,
+	DatabaseVersionTest.class,
 	FileVersionComparatorTest.class,
 	FileVersionDaoTest.class,
 	FileHistoryDaoTest.class,
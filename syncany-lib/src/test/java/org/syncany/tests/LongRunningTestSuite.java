@@ -20,15 +20,25 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.chunk.Lz4TransformerPerformanceTest;
+import org.syncany.tests.chunk.TTTDChunkerPerformanceTest;
+import org.syncany.tests.config.IgnoredFilesPerformanceTest;
+import org.syncany.tests.database.DatabaseVersionPerformanceTest;
+import org.syncany.tests.operations.StatusOperationPerformanceTest;
 import org.syncany.tests.scenarios.longrunning.LongRunningLargeFileScenarioTest;
 import org.syncany.tests.scenarios.longrunning.LongRunningLotsOfSmallFilesScenarioTest;
 import org.syncany.tests.scenarios.longrunning.LongRunningNewAndDeleteScenarioTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
+	DatabaseVersionPerformanceTest.class,
+	IgnoredFilesPerformanceTest.class,
 	LongRunningLargeFileScenarioTest.class,
 	LongRunningLotsOfSmallFilesScenarioTest.class,
-	LongRunningNewAndDeleteScenarioTest.class
+	LongRunningNewAndDeleteScenarioTest.class,
+	Lz4TransformerPerformanceTest.class,
+	StatusOperationPerformanceTest.class,
+	TTTDChunkerPerformanceTest.class
 })
 public class LongRunningTestSuite {
 	// This class executes all tests
@@ -26,6 +26,8 @@ import org.syncany.tests.operations.FileSystemActionComparatorTest;
 import org.syncany.tests.operations.FileSystemActionReconciliatorTest;
 import org.syncany.tests.operations.IndexerTest;
 import org.syncany.tests.operations.InitOperationTest;
+import org.syncany.tests.operations.MultiChunkDownloaderTest;
+import org.syncany.tests.operations.MultiChunkUploaderTest;
 import org.syncany.tests.operations.NotificationListenerTest;
 import org.syncany.tests.operations.OperationPerformanceTest;
 import org.syncany.tests.operations.PluginOperationTest;
@@ -41,6 +43,8 @@ import org.syncany.tests.operations.SyncUpOperationTest;
 	FileSystemActionReconciliatorTest.class,
 	IndexerTest.class,
 	InitOperationTest.class,
+	MultiChunkDownloaderTest.class,
+	MultiChunkUploaderTest.class,
 	NotificationListenerTest.class,
 	OperationPerformanceTest.class,
 	PluginOperationTest.class,
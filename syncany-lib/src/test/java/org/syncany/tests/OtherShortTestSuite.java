@@ -20,14 +20,25 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.chunk.AdaptiveGzipTransformerTest;
+import org.syncany.tests.chunk.ChunkerComparisonTest;
+import org.syncany.tests.chunk.DeduperTest;
+import org.syncany.tests.chunk.FastCdcChunkerTest;
+import org.syncany.tests.chunk.FingerprinterTest;
 import org.syncany.tests.chunk.FixedOffsetChunkerTest;
 import org.syncany.tests.chunk.FrameworkCombinationTest;
+import org.syncany.tests.chunk.Lz4TransformerTest;
+import org.syncany.tests.chunk.MappedChunkingTest;
 import org.syncany.tests.chunk.MultiChunkerTest;
+import org.syncany.tests.chunk.ParallelGzipTransformerTest;
+import org.syncany.tests.chunk.SegmentedTransformerTest;
 import org.syncany.tests.chunk.TTTDChunkerTest;
 import org.syncany.tests.config.ConfigHelperTest;
 import org.syncany.tests.config.ConfigTest;
+import org.syncany.tests.config.IgnoredFilesTest;
 import org.syncany.tests.connection.plugins.PluginOptionSpecTest;
 import org.syncany.tests.connection.plugins.PluginsTest;
+import org.syncany.tests.connection.plugins.RateLimitedTransferManagerTest;
 import org.syncany.tests.connection.plugins.local.LocalTransferManagerPluginTest;
 import org.syncany.tests.connection.plugins.unreliable_local.UploadInterruptedTest;
 import org.syncany.tests.crypto.CipherSpecsTest;
@@ -61,12 +72,22 @@ import org.syncany.tests.util.FileUtilTest;
 	MultiChunkerTest.class,
 	FixedOffsetChunkerTest.class,
 	TTTDChunkerTest.class,
+	MappedChunkingTest.class,
+	FastCdcChunkerTest.class,
+	ChunkerComparisonTest.class,
+	FingerprinterTest.class,
 	FrameworkCombinationTest.class,
+	DeduperTest.class,
+	ParallelGzipTransformerTest.class,
+	AdaptiveGzipTransformerTest.class,
+	Lz4TransformerTest.class,
+	SegmentedTransformerTest.class,
 	
 	// Connection
 	PluginsTest.class,
 	PluginOptionSpecTest.class,
 	LocalTransferManagerPluginTest.class,
+	RateLimitedTransferManagerTest.class,
 	UploadInterruptedTest.class,
 	
 	// Operations
@@ -85,7 +106,8 @@ import org.syncany.tests.util.FileUtilTest;
 	
 	// Config
 	ConfigHelperTest.class,
-	ConfigTest.class
+	ConfigTest.class,
+	IgnoredFilesTest.class
 })
 public class OtherShortTestSuite {
 	// This class executes all tests
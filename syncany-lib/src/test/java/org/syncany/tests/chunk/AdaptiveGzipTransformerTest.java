@@ -0,0 +1,194 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.AdaptiveGzipTransformer;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.tests.util.TestFileUtil;
+
+public class AdaptiveGzipTransformerTest {
+	@Test
+	public void testGetInstanceAndInit() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(AdaptiveGzipTransformer.PROPERTY_LEVEL, "1");
+		settings.put(AdaptiveGzipTransformer.PROPERTY_SAMPLE_SIZE, "4");
+		settings.put(AdaptiveGzipTransformer.PROPERTY_ENTROPY_THRESHOLD, "7.9");
+
+		Transformer transformer = Transformer.getInstance(AdaptiveGzipTransformer.TYPE);
+		assertNotNull("Transformer should be found by its type.", transformer);
+
+		transformer.init(settings);
+		assertEquals("AdaptiveGzip", transformer.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitWithInvalidThreshold() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(AdaptiveGzipTransformer.PROPERTY_ENTROPY_THRESHOLD, "9");
+
+		new AdaptiveGzipTransformer().init(settings);
+	}
+
+	@Test
+	public void testEstimateEntropy() {
+		byte[] constantData = new byte[4096];
+		assertEquals(0.0, AdaptiveGzipTransformer.estimateEntropy(constantData, 0, constantData.length), 0.001);
+
+		byte[] allBytesData = new byte[256*16];
+
+		for (int i = 0; i < allBytesData.length; i++) {
+			allBytesData[i] = (byte) i;
+		}
+
+		assertEquals(8.0, AdaptiveGzipTransformer.estimateEntropy(allBytesData, 0, allBytesData.length), 0.001);
+
+		byte[] randomData = TestFileUtil.createRandomArray(16*1024);
+		assertTrue(AdaptiveGzipTransformer.estimateEntropy(randomData, 0, randomData.length) > 7.9);
+	}
+
+	@Test
+	public void testRandomDataIsStoredRaw() throws Exception {
+		AdaptiveGzipTransformer transformer = new AdaptiveGzipTransformer();
+
+		byte[] randomData = TestFileUtil.createRandomArray(1024*1024);
+		byte[] transformedData = transform(transformer, randomData);
+
+		assertEquals("Only the marker byte should be added.", randomData.length+1, transformedData.length);
+		assertEquals(AdaptiveGzipTransformer.MARKER_RAW, transformedData[0]);
+		assertEquals(randomData.length, transformer.getSkippedBytes());
+		assertEquals(0, transformer.getCompressedBytes());
+
+		assertArrayEquals(randomData, untransform(transformer, transformedData));
+	}
+
+	@Test
+	public void testCompressibleDataIsCompressed() throws Exception {
+		AdaptiveGzipTransformer transformer = new AdaptiveGzipTransformer();
+
+		byte[] textData = createTextData(1024*1024);
+		byte[] transformedData = transform(transformer, textData);
+
+		assertTrue("Data should be compressed.", transformedData.length < textData.length/2);
+		assertEquals(AdaptiveGzipTransformer.MARKER_GZIP, transformedData[0]);
+		assertEquals(0, transformer.getSkippedBytes());
+		assertEquals(textData.length, transformer.getCompressedBytes());
+
+		assertArrayEquals(textData, untransform(transformer, transformedData));
+	}
+
+	@Test
+	public void testCloseTwiceCountsBytesOnce() throws Exception {
+		AdaptiveGzipTransformer transformer = new AdaptiveGzipTransformer();
+		byte[] randomData = TestFileUtil.createRandomArray(100*1024);
+
+		ByteArrayOutputStream transformedData = new ByteArrayOutputStream();
+		OutputStream outputStream = transformer.createOutputStream(transformedData);
+
+		outputStream.write(randomData);
+		outputStream.close();
+		outputStream.close();
+
+		assertEquals(randomData.length, transformer.getSkippedBytes());
+		assertEquals(randomData.length+1, transformedData.size());
+	}
+
+	@Test
+	public void testSmallAndEmptyData() throws Exception {
+		AdaptiveGzipTransformer transformer = new AdaptiveGzipTransformer();
+
+		byte[][] inputs = new byte[][] { new byte[0], createTextData(100), TestFileUtil.createRandomArray(100) };
+
+		for (byte[] input : inputs) {
+			assertArrayEquals(input, untransform(transformer, transform(transformer, input)));
+		}
+	}
+
+	@Test
+	public void testReadGzipTransformerStream() throws Exception {
+		byte[] textData = createTextData(100*1024);
+		byte[] gzipData = transform(new GzipTransformer(), textData);
+
+		assertArrayEquals(textData, untransform(new AdaptiveGzipTransformer(), gzipData));
+	}
+
+	@Test
+	public void testWithCipherTransformer() throws Exception {
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey("some password");
+
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+		cipherSpecs.add(CipherSpecs.getCipherSpec(1));
+
+		Transformer transformer = new AdaptiveGzipTransformer(new CipherTransformer(cipherSpecs, masterKey));
+
+		byte[] randomData = TestFileUtil.createRandomArray(100*1024);
+		byte[] textData = createTextData(100*1024);
+
+		assertArrayEquals(randomData, untransform(transformer, transform(transformer, randomData)));
+		assertArrayEquals(textData, untransform(transformer, transform(transformer, textData)));
+	}
+
+	private byte[] createTextData(int size) {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = 0; text.length() < size; i++) {
+			text.append("Line ").append(i).append(": The quick brown fox jumps over the lazy dog.\n");
+		}
+
+		return text.substring(0, size).getBytes();
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream transformedData = new ByteArrayOutputStream();
+
+		OutputStream outputStream = transformer.createOutputStream(transformedData);
+		outputStream.write(data);
+		outputStream.close();
+
+		return transformedData.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] untransformedData = IOUtils.toByteArray(inputStream);
+		inputStream.close();
+
+		return untransformedData;
+	}
+}
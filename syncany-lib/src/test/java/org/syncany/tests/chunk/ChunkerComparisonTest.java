@@ -0,0 +1,140 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+/**
+ * Compares the dedup ratio and the throughput of the {@link FixedChunker}, the
+ * {@link TttdChunker} and the {@link FastCdcChunker} with the same average chunk size.
+ *
+ * <p>The dedup ratio is the fraction of bytes of a modified file that are covered by
+ * chunks of the original file. Two modified files are compared: one with bytes changed
+ * in place, and one with bytes inserted (shifting all following bytes).
+ */
+public class ChunkerComparisonTest {
+	private static final Logger logger = Logger.getLogger(ChunkerComparisonTest.class.getSimpleName());
+
+	private static final int AVG_CHUNK_SIZE = 8*1024;
+	private static final int FILE_SIZE = 4*1024*1024;
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testCompareDedupRatioAndThroughput() throws Exception {
+		// Create original file, and two modified copies
+		File originalFile = TestFileUtil.createRandomFileInDirectory(tempDir, FILE_SIZE);
+		File changedFile = TestFileUtil.copyFile(originalFile, new File(tempDir, "changed"));
+		File shiftedFile = new File(tempDir, "shifted");
+
+		for (int i = 0; i < 10; i++) {
+			TestFileUtil.changeRandomPartOfBinaryFile(changedFile);
+		}
+
+		byte[] originalBytes = FileUtils.readFileToByteArray(originalFile);
+		byte[] shiftedBytes = new byte[originalBytes.length + 2*123];
+
+		System.arraycopy(TestFileUtil.createRandomArray(123), 0, shiftedBytes, 0, 123);
+		System.arraycopy(originalBytes, 0, shiftedBytes, 123, FILE_SIZE/2);
+		System.arraycopy(TestFileUtil.createRandomArray(123), 0, shiftedBytes, 123+FILE_SIZE/2, 123);
+		System.arraycopy(originalBytes, FILE_SIZE/2, shiftedBytes, 2*123+FILE_SIZE/2, FILE_SIZE-FILE_SIZE/2);
+
+		FileUtils.writeByteArrayToFile(shiftedFile, shiftedBytes);
+
+		// Compare chunkers
+		Chunker[] chunkers = new Chunker[] { new FixedChunker(AVG_CHUNK_SIZE), new TttdChunker(AVG_CHUNK_SIZE), new FastCdcChunker(AVG_CHUNK_SIZE) };
+		double[] shiftedDedupRatios = new double[chunkers.length];
+
+		for (int i = 0; i < chunkers.length; i++) {
+			Chunker chunker = chunkers[i];
+
+			Set<String> originalChunks = new HashSet<String>();
+
+			long startTime = System.currentTimeMillis();
+			int chunkCount = chunkFile(chunker, originalFile, originalChunks, null);
+			long duration = Math.max(1, System.currentTimeMillis() - startTime);
+
+			double changedDedupRatio = (double) chunkFile(chunker, changedFile, null, originalChunks) / changedFile.length();
+			shiftedDedupRatios[i] = (double) chunkFile(chunker, shiftedFile, null, originalChunks) / shiftedFile.length();
+
+			logger.log(Level.INFO, String.format("%-25s: %6.1f MB/s, avg. chunk size %6d bytes, dedup ratio changed file %5.1f%%, shifted file %5.1f%%",
+				chunker, FILE_SIZE / 1024.0 / 1024.0 / (duration / 1000.0), FILE_SIZE / chunkCount, 100*changedDedupRatio, 100*shiftedDedupRatios[i]));
+		}
+
+		// Content-defined chunkers must survive shifted bytes
+		assertTrue("TTTD should find more duplicates in a shifted file than the fixed chunker.", shiftedDedupRatios[1] > shiftedDedupRatios[0]);
+		assertTrue("FastCDC should find more duplicates in a shifted file than the fixed chunker.", shiftedDedupRatios[2] > shiftedDedupRatios[0]);
+		assertTrue("FastCDC should find most chunks in a shifted file, but found " + shiftedDedupRatios[2], shiftedDedupRatios[2] > 0.9);
+	}
+
+	/**
+	 * Chunks the given file and either adds all chunk checksums to the given set, or counts
+	 * the bytes of all chunks that are already contained in the given set of known chunks.
+	 */
+	private int chunkFile(Chunker chunker, File file, Set<String> addChunks, Set<String> knownChunks) throws Exception {
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+		int result = 0;
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			String chunkChecksum = StringUtil.toHex(chunk.getChecksum());
+
+			if (addChunks != null) {
+				addChunks.add(chunkChecksum);
+				result++;
+			}
+			else if (knownChunks.contains(chunkChecksum)) {
+				result += chunk.getSize();
+			}
+
+			chunk.release();
+		}
+
+		chunkEnumeration.close();
+		return result;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Deduper;
+import org.syncany.chunk.DeduperListener;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
+
+public class DeduperTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testParallelDeduplicationEqualsSequentialWithTttdChunker() throws Exception {
+		List<File> inputFiles = createInputFiles();
+
+		List<String> sequentialEvents = deduplicate(new TttdChunker(16*1024), inputFiles, 1);
+		List<String> parallelEvents = deduplicate(new TttdChunker(16*1024), inputFiles, 4);
+
+		assertEquals("Parallel deduplication should emit the same events as sequential deduplication.", sequentialEvents, parallelEvents);
+	}
+
+	@Test
+	public void testParallelDeduplicationEqualsSequentialWithFixedChunker() throws Exception {
+		List<File> inputFiles = createInputFiles();
+
+		List<String> sequentialEvents = deduplicate(new FixedChunker(16*1024), inputFiles, 1);
+		List<String> parallelEvents = deduplicate(new FixedChunker(16*1024), inputFiles, 3);
+
+		assertEquals("Parallel deduplication should emit the same events as sequential deduplication.", sequentialEvents, parallelEvents);
+	}
+
+	@Test
+	public void testSegmentedDeduplicationEqualsSequentialWithTttdChunker() throws Exception {
+		List<File> inputFiles = createLargeInputFiles();
+
+		List<String> sequentialEvents = deduplicate(new TttdChunker(16*1024), inputFiles, 1);
+		List<String> segmentedEvents = deduplicate(new TttdChunker(16*1024), inputFiles, 4, 200*1024, 64*1024);
+
+		assertEquals("Segmented deduplication should emit the same events as sequential deduplication.", sequentialEvents, segmentedEvents);
+	}
+
+	@Test
+	public void testSegmentedDeduplicationEqualsSequentialWithMappedTttdChunker() throws Exception {
+		List<File> inputFiles = createLargeInputFiles();
+
+		TttdChunker mappedChunker = new TttdChunker(16*1024);
+		mappedChunker.setMappedChunkingThreshold(1);
+
+		List<String> sequentialEvents = deduplicate(new TttdChunker(16*1024), inputFiles, 1);
+		List<String> segmentedEvents = deduplicate(mappedChunker, inputFiles, 3, 200*1024, 100*1024);
+
+		assertEquals("Segmented deduplication should emit the same events as sequential deduplication.", sequentialEvents, segmentedEvents);
+	}
+
+	@Test
+	public void testSegmentedDeduplicationEqualsSequentialWithFastCdcChunker() throws Exception {
+		List<File> inputFiles = createLargeInputFiles();
+
+		List<String> sequentialEvents = deduplicate(new FastCdcChunker(8*1024), inputFiles, 1);
+		List<String> segmentedEvents = deduplicate(new FastCdcChunker(8*1024), inputFiles, 4, 200*1024, 32*1024);
+
+		assertEquals("Segmented deduplication should emit the same events as sequential deduplication.", sequentialEvents, segmentedEvents);
+	}
+
+	private List<File> createInputFiles() throws IOException {
+		List<File> inputFiles = new ArrayList<File>();
+
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 150*1024, 6));
+		inputFiles.add(TestFileUtil.copyFile(inputFiles.get(0), new File(tempDir, "duplicate")));
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 3*1024, 10));
+
+		File emptyFile = new File(tempDir, "empty");
+		emptyFile.createNewFile();
+		inputFiles.add(emptyFile);
+
+		File folder = new File(tempDir, "folder");
+		folder.mkdir();
+		inputFiles.add(folder);
+
+		inputFiles.add(new File(tempDir, "does-not-exist"));
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 700*1024, 2));
+
+		return inputFiles;
+	}
+
+	private List<File> createLargeInputFiles() throws IOException {
+		List<File> inputFiles = new ArrayList<File>();
+
+		inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, 2*1024*1024));
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 20*1024, 3));
+		inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, 640*1024)); // Multiple of all segment sizes
+		inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, 1234567));
+
+		return inputFiles;
+	}
+
+	private List<String> deduplicate(Chunker chunker, List<File> inputFiles, int threadCount) throws IOException {
+		return deduplicate(chunker, inputFiles, threadCount, Deduper.DEFAULT_SEGMENTED_CHUNKING_THRESHOLD, 0);
+	}
+
+	private List<String> deduplicate(Chunker chunker, List<File> inputFiles, int threadCount, long segmentedChunkingThreshold, long segmentSize) throws IOException {
+		final List<String> events = new ArrayList<String>();
+		final Set<String> knownChunks = new HashSet<String>();
+
+		Deduper deduper = new Deduper(chunker, new ZipMultiChunker(100), new GzipTransformer(), threadCount);
+
+		if (segmentSize > 0) {
+			deduper.setSegmentedChunking(segmentedChunkingThreshold, segmentSize);
+		}
+
+		deduper.deduplicate(inputFiles, new DeduperListener() {
+			@Override
+			public boolean onFileFilter(File file) {
+				events.add("filter " + file.getName());
+				return FileUtil.exists(file);
+			}
+
+			@Override
+			public boolean onFileStart(File file, int index) {
+				events.add("start " + file.getName() + " " + index);
+				return file.isFile() && !FileUtil.isSymlink(file);
+			}
+
+			@Override
+			public boolean onChunk(Chunk chunk) {
+				String chunkChecksum = StringUtil.toHex(chunk.getChecksum());
+				events.add("chunk " + chunkChecksum + " " + chunk.getSize());
+
+				return knownChunks.add(chunkChecksum);
+			}
+
+			@Override
+			public void onFileAddChunk(File file, Chunk chunk) {
+				events.add("add " + file.getName() + " " + StringUtil.toHex(chunk.getChecksum()));
+			}
+
+			@Override
+			public void onFileEnd(File file, byte[] checksum) {
+				events.add("end " + file.getName() + " " + ((checksum != null) ? StringUtil.toHex(checksum) : "null"));
+			}
+
+			@Override
+			public MultiChunkId createNewMultiChunkId(Chunk firstChunk) {
+				return new MultiChunkId(firstChunk.getChecksum());
+			}
+
+			@Override
+			public File getMultiChunkFile(MultiChunkId multiChunkId) {
+				return new File(tempDir, "multichunk-" + multiChunkId);
+			}
+
+			@Override
+			public void onMultiChunkOpen(MultiChunk multiChunk) {
+				events.add("open " + multiChunk.getId());
+			}
+
+			@Override
+			public void onMultiChunkWrite(MultiChunk multiChunk, Chunk chunk) {
+				events.add("write " + multiChunk.getId() + " " + StringUtil.toHex(chunk.getChecksum()));
+			}
+
+			@Override
+			public void onMultiChunkClose(MultiChunk multiChunk) {
+				events.add("close " + multiChunk.getId() + " " + multiChunk.getSize());
+			}
+
+			@Override public void onStart(int fileCount) { events.add("onstart " + fileCount); }
+			@Override public void onFinish() { events.add("onfinish"); }
+		});
+
+		return events;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FastCdcChunker;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
+
+public class FastCdcChunkerTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testStringSerialization() {
+		Chunker chunker = new FastCdcChunker(8*1024);
+		assertEquals("Other toString() result expected.", "FastCDC-8192-SHA1", chunker.toString());
+	}
+
+	@Test
+	public void testGetInstanceAndInit() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(Chunker.PROPERTY_SIZE, "4096");
+
+		Chunker chunker = Chunker.getInstance(FastCdcChunker.TYPE);
+		assertNotNull("Chunker should be found by its type.", chunker);
+
+		chunker.init(settings);
+		assertEquals("Other toString() result expected.", "FastCDC-4096-SHA1", chunker.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitWithoutSize() throws Exception {
+		new FastCdcChunker().init(new HashMap<String, String>());
+	}
+
+	@Test
+	public void testCreateChunksAndReassemble() throws Exception {
+		final int AVG_CHUNK_SIZE = 8*1024;
+
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 3*1024*1024+17);
+		List<Chunk> chunks = createChunks(new FastCdcChunker(AVG_CHUNK_SIZE), inputFile);
+
+		ByteArrayOutputStream reassembledFile = new ByteArrayOutputStream();
+
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk chunk = chunks.get(i);
+			boolean lastChunk = i == chunks.size()-1;
+
+			assertTrue("Chunk must not be larger than the maximum chunk size.", chunk.getSize() <= 8*AVG_CHUNK_SIZE);
+
+			if (!lastChunk) {
+				assertTrue("Chunk must not be smaller than the minimum chunk size.", chunk.getSize() > AVG_CHUNK_SIZE/4);
+				assertNull("Only the last chunk should have a file checksum.", chunk.getFileChecksum());
+			}
+
+			reassembledFile.write(chunk.getContent(), 0, chunk.getSize());
+		}
+
+		assertArrayEquals("Reassembled file differs from input file.", FileUtils.readFileToByteArray(inputFile), reassembledFile.toByteArray());
+		assertArrayEquals("File checksum differs.", FileUtil.createChecksum(inputFile, "SHA1"), chunks.get(chunks.size()-1).getFileChecksum());
+
+		double avgChunkSize = (double) inputFile.length() / chunks.size();
+		assertTrue("Average chunk size should be roughly the configured size, but was " + avgChunkSize, avgChunkSize > AVG_CHUNK_SIZE/2 && avgChunkSize < AVG_CHUNK_SIZE*2);
+	}
+
+	@Test
+	public void testChunkBoundariesAreDeterministic() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 1024*1024);
+
+		List<Chunk> chunks1 = createChunks(new FastCdcChunker(4*1024), inputFile);
+		List<Chunk> chunks2 = createChunks(new FastCdcChunker(4*1024), inputFile);
+
+		assertEquals(chunks1.size(), chunks2.size());
+
+		for (int i = 0; i < chunks1.size(); i++) {
+			assertEquals(StringUtil.toHex(chunks1.get(i).getChecksum()), StringUtil.toHex(chunks2.get(i).getChecksum()));
+		}
+	}
+
+	@Test
+	public void testEmptyAndSmallFiles() throws Exception {
+		File emptyFile = new File(tempDir, "empty");
+		emptyFile.createNewFile();
+
+		ChunkEnumeration chunkEnumeration = new FastCdcChunker(4*1024).createChunks(emptyFile);
+		assertFalse("Empty file should not produce any chunks.", chunkEnumeration.hasMoreElements());
+		chunkEnumeration.close();
+
+		File smallFile = TestFileUtil.createRandomFileInDirectory(tempDir, 100);
+		List<Chunk> chunks = createChunks(new FastCdcChunker(4*1024), smallFile);
+
+		assertEquals("Small file should produce exactly one chunk.", 1, chunks.size());
+		assertEquals(100, chunks.get(0).getSize());
+		assertNotNull("Last chunk should have a file checksum.", chunks.get(0).getFileChecksum());
+	}
+
+	private List<Chunk> createChunks(Chunker chunker, File file) throws Exception {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			chunks.add(chunkEnumeration.nextElement());
+		}
+
+		chunkEnumeration.close();
+		return chunks;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.Fingerprinter;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.util.TestFileUtil;
+
+public class FingerprinterTest {
+	private static final String[] ALGORITHMS = new String[] { "Adler32", "Rabin", "Buzhash" };
+	private static final int WINDOW_SIZE = 48;
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testGetInstance() throws Exception {
+		assertEquals("Adler32", Fingerprinter.getInstance("Adler32").toString());
+		assertEquals("Adler32", Fingerprinter.getInstance("adler32").toString());
+		assertEquals("Rabin", Fingerprinter.getInstance("rabin").toString());
+		assertEquals("Buzhash", Fingerprinter.getInstance("buzhash").toString());
+	}
+
+	@Test(expected = NoSuchAlgorithmException.class)
+	public void testGetInstanceInvalidAlgorithm() throws Exception {
+		Fingerprinter.getInstance("invalid-algorithmXXX");
+	}
+
+	@Test
+	public void testRollingEqualsCheck() throws Exception {
+		byte[] data = createRandomArray(4096);
+
+		for (String algorithm : ALGORITHMS) {
+			Fingerprinter rollingFingerprinter = Fingerprinter.getInstance(algorithm);
+			Fingerprinter checkFingerprinter = Fingerprinter.getInstance(algorithm);
+
+			rollingFingerprinter.check(data, 0, WINDOW_SIZE);
+
+			for (int i = WINDOW_SIZE; i < data.length; i++) {
+				rollingFingerprinter.roll(data[i]);
+				checkFingerprinter.check(data, i-WINDOW_SIZE+1, WINDOW_SIZE);
+
+				assertEquals("Rolled fingerprint differs from window fingerprint for " + algorithm + " at " + i,
+						checkFingerprinter.getValue(), rollingFingerprinter.getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testRollAllEqualsRoll() throws Exception {
+		byte[] data = createRandomArray(256*1024);
+		int divisor = 1000;
+
+		for (String algorithm : ALGORITHMS) {
+			Fingerprinter rollFingerprinter = Fingerprinter.getInstance(algorithm);
+			Fingerprinter rollAllFingerprinter = Fingerprinter.getInstance(algorithm);
+
+			rollFingerprinter.check(data, 0, WINDOW_SIZE);
+			rollAllFingerprinter.check(data, 0, WINDOW_SIZE);
+
+			int pos = WINDOW_SIZE;
+			int breakpoints = 0;
+
+			while (pos < data.length) {
+				int expectedBreakpoint = -1;
+
+				for (int i = pos; i < data.length; i++) {
+					rollFingerprinter.roll(data[i]);
+
+					if ((rollFingerprinter.getValue() % divisor) == divisor-1) {
+						expectedBreakpoint = i;
+						break;
+					}
+				}
+
+				int actualBreakpoint = rollAllFingerprinter.rollAll(data, pos, data.length-pos, divisor);
+
+				assertEquals("Breakpoint differs for " + algorithm, expectedBreakpoint, actualBreakpoint);
+				assertEquals("Fingerprint differs for " + algorithm, rollFingerprinter.getValue(), rollAllFingerprinter.getValue());
+
+				if (actualBreakpoint == -1) {
+					break;
+				}
+
+				pos = actualBreakpoint + 1;
+				breakpoints++;
+			}
+
+			assertTrue("Expected breakpoints for " + algorithm + ", but found " + breakpoints, breakpoints > 20);
+		}
+	}
+
+	@Test
+	public void testTttdChunkerWithAllAlgorithms() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 1024*1024);
+
+		for (String algorithm : ALGORITHMS) {
+			Map<String, String> settings = new HashMap<String, String>();
+			settings.put(TttdChunker.PROPERTY_SIZE, "8192");
+			settings.put(TttdChunker.PROPERTY_FINGERPRINT, algorithm);
+
+			TttdChunker chunker = new TttdChunker();
+			chunker.init(settings);
+
+			ChunkEnumeration chunkEnumeration = chunker.createChunks(inputFile);
+			long totalSize = 0;
+			int chunkCount = 0;
+
+			while (chunkEnumeration.hasMoreElements()) {
+				totalSize += chunkEnumeration.nextElement().getSize();
+				chunkCount++;
+			}
+
+			chunkEnumeration.close();
+
+			assertEquals("Chunks do not add up to file size with " + algorithm, inputFile.length(), totalSize);
+			assertTrue("Expected content-defined chunks with " + algorithm + ", but got " + chunkCount, chunkCount > 40);
+		}
+	}
+
+	private byte[] createRandomArray(int size) {
+		byte[] data = new byte[size];
+		new Random(4711).nextBytes(data);
+
+		return data;
+	}
+}
@@ -37,15 +37,19 @@ import javax.crypto.NoSuchPaddingException;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.syncany.chunk.AdaptiveGzipTransformer;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.CipherTransformer;
 import org.syncany.chunk.Deduper;
 import org.syncany.chunk.DeduperListener;
 import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Lz4Transformer;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
+import org.syncany.chunk.ParallelGzipTransformer;
+import org.syncany.chunk.SegmentedTransformer;
 import org.syncany.chunk.Transformer;
 import org.syncany.chunk.TttdChunker;
 import org.syncany.chunk.ZipMultiChunker;
@@ -144,6 +148,10 @@ public class FrameworkCombinationTest {
 		transformerChains.add(new GzipTransformer());
 		transformerChains.add(new CipherTransformer(cipherSpecs, masterKey));
 		transformerChains.add(new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey)));
+		transformerChains.add(new ParallelGzipTransformer(new CipherTransformer(cipherSpecs, masterKey)));
+		transformerChains.add(new Lz4Transformer(new CipherTransformer(cipherSpecs, masterKey)));
+		transformerChains.add(new AdaptiveGzipTransformer(new CipherTransformer(cipherSpecs, masterKey)));
+		transformerChains.add(new SegmentedTransformer(new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey))));
 
 		for (MultiChunker multiChunker : multiChunkers) {
 			for (Transformer transformer : transformerChains) {
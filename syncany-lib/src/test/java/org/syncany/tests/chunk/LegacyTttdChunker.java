@@ -0,0 +1,177 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.Fingerprinter;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.util.StringUtil;
+
+/**
+ * Original byte-by-byte implementation of the TTTD enumeration, used to verify that
+ * the {@link TttdChunker} produces identical chunk boundaries. Chunks are described as 
+ * <tt>size/checksum/file-checksum</tt> strings, so that both implementations can be compared.
+ */
+public class LegacyTttdChunker {
+	public static final int TMIN = 460*8;
+	public static final int TMAX = 2800*8;
+	public static final int D = 540*8;
+	public static final int DDASH = 270*8;
+
+	public static TttdChunker createTttdChunker() {
+		return new TttdChunker(TMIN, TMAX, D, DDASH, TttdChunker.DEFAULT_WINDOW_SIZE);
+	}
+
+	public static List<String> chunkWithTttdChunker(TttdChunker chunker, File inputFile) throws IOException {
+		List<String> chunks = new ArrayList<String>();
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(inputFile);
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();			
+			chunks.add(chunk.getSize()+"/"+StringUtil.toHex(chunk.getChecksum())+"/"+((chunk.getFileChecksum() != null) ? StringUtil.toHex(chunk.getFileChecksum()) : "-"));
+			
+			chunk.release();
+		}
+		
+		chunkEnumeration.close();		
+		return chunks;
+	}
+
+	/**
+	 * Original TTTD enumeration: Reads byte by byte into an 8 KB buffer and allocates
+	 * a new <i>Tmax</i> buffer for each chunk. 
+	 */
+	public static List<String> chunkWithLegacyImplementation(File inputFile) throws Exception {
+		List<String> chunks = new ArrayList<String>();
+		InputStream in = new FileInputStream(inputFile);
+		
+		Fingerprinter fingerprinter = Fingerprinter.getInstance(TttdChunker.DEFAULT_FINGERPRINT_ALG);
+		MessageDigest chunkDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+		MessageDigest fileDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+		
+		byte[] c = new byte[8192];
+		int clen = -1;
+		int cpos = -1;
+		boolean closed = false;
+		
+		while (!closed) {
+			chunkDigest.reset();
+			fingerprinter.reset();
+			
+			int backupBreak = 0;
+			int breakpoint = -1;
+
+			byte[] buf = new byte[TMAX];
+			int bufpos = -1;
+
+			while (bufpos < buf.length - 1) {
+				if (cpos == -1 || cpos == clen - 1) {
+					cpos = -1;
+					clen = readLegacy(c, in);
+
+					if (clen == -1) {
+						break;
+					}
+
+					fileDigest.update(c, 0, clen);
+				}
+
+				bufpos++;
+				cpos++;
+				buf[bufpos] = c[cpos];
+
+				if (bufpos < TMIN) {
+					continue;
+				}
+				else if (bufpos == TMIN) {
+					fingerprinter.check(buf, bufpos - TttdChunker.DEFAULT_WINDOW_SIZE, TttdChunker.DEFAULT_WINDOW_SIZE);
+				}
+				else {
+					fingerprinter.roll(buf[bufpos]);
+				}
+
+				int hash = fingerprinter.getValue();
+
+				if ((hash % DDASH) == DDASH - 1) {
+					backupBreak = bufpos;
+				}
+
+				if ((hash % D) == D - 1) {
+					breakpoint = bufpos;
+					break;
+				}
+
+				if (bufpos < TMAX) {
+					continue;
+				}
+
+				if (backupBreak != 0) {
+					breakpoint = backupBreak;
+					break;
+				}
+				else {
+					breakpoint = bufpos;
+					break;
+				}
+			}
+
+			if (clen == -1) {
+				in.close();
+				closed = true;
+			}
+
+			if (breakpoint == -1) {
+				breakpoint = bufpos;
+			}
+
+			breakpoint++;
+			chunkDigest.update(buf, 0, breakpoint);
+
+			byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
+			chunks.add(breakpoint+"/"+StringUtil.toHex(chunkDigest.digest())+"/"+((fileChecksum != null) ? StringUtil.toHex(fileChecksum) : "-"));
+		}
+		
+		return chunks;
+	}
+	
+	private static int readLegacy(byte[] readToBuffer, InputStream inputStream) throws IOException {
+		int bytesRead = 0;
+
+		while (bytesRead < readToBuffer.length) {
+			int byteRead = inputStream.read();
+
+			if (byteRead == -1) {
+				return (bytesRead != 0) ? bytesRead : -1;
+			}
+
+			readToBuffer[bytesRead] = (byte) byteRead;
+			bytesRead++;
+		}
+
+		return (bytesRead != 0) ? bytesRead : -1;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.syncany.tests.chunk.Lz4TransformerTest.createBinaryData;
+import static org.syncany.tests.chunk.Lz4TransformerTest.createRandomData;
+import static org.syncany.tests.chunk.Lz4TransformerTest.createTextData;
+import static org.syncany.tests.chunk.Lz4TransformerTest.transform;
+import static org.syncany.tests.chunk.Lz4TransformerTest.untransform;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Lz4Transformer;
+import org.syncany.chunk.Transformer;
+
+/**
+ * Compares the throughput and compression ratio of the {@link Lz4Transformer} to 
+ * the {@link GzipTransformer} with levels 1, 6 and 9.
+ */
+public class Lz4TransformerPerformanceTest {
+	private static final Logger logger = Logger.getLogger(Lz4TransformerPerformanceTest.class.getSimpleName());
+
+	@Test
+	public void testThroughputAndRatioComparedToGzip() throws Exception {
+		final int RUNS = 3;
+
+		// Mixed corpus: 40% already compressed media, 40% text, 20% structured binary
+		Random random = new Random(7);
+		ByteArrayOutputStream corpusOutputStream = new ByteArrayOutputStream();
+
+		for (int i = 0; i < 4; i++) {
+			corpusOutputStream.write(createRandomData(random, 512*1024));
+			corpusOutputStream.write(createTextData(random, 512*1024));
+		}
+
+		corpusOutputStream.write(createBinaryData(random, 1024*1024));
+		byte[] corpus = corpusOutputStream.toByteArray();
+
+		Transformer[] transformers = new Transformer[] {
+			new Lz4Transformer(1, Lz4Transformer.DEFAULT_BLOCK_SIZE, null),
+			new Lz4Transformer(8, Lz4Transformer.DEFAULT_BLOCK_SIZE, null),
+			new GzipTransformer(1, null),
+			new GzipTransformer(6, null),
+			new GzipTransformer(9, null)
+		};
+
+		String[] names = new String[] { "lz4 (acceleration 1)", "lz4 (acceleration 8)", "gzip -1", "gzip -6", "gzip -9" };
+
+		for (int i = 0; i < transformers.length; i++) {
+			// Warm up
+			byte[] compressedData = transform(transformers[i], corpus);
+			untransform(transformers[i], compressedData);
+
+			long compressDuration = 0;
+			long uncompressDuration = 0;
+
+			for (int run = 0; run < RUNS; run++) {
+				long compressStart = System.nanoTime();
+				compressedData = transform(transformers[i], corpus);
+				compressDuration += System.nanoTime() - compressStart;
+
+				long uncompressStart = System.nanoTime();
+				byte[] uncompressedData = untransform(transformers[i], compressedData);
+				uncompressDuration += System.nanoTime() - uncompressStart;
+
+				assertArrayEquals(corpus, uncompressedData);
+			}
+
+			double ratio = (double) corpus.length / compressedData.length;
+			double compressThroughput = (double) RUNS*corpus.length / 1024 / 1024 / (compressDuration / 1000000000.0);
+			double uncompressThroughput = (double) RUNS*corpus.length / 1024 / 1024 / (uncompressDuration / 1000000000.0);
+
+			logger.log(Level.INFO, String.format("%-22s ratio %.2f, compress %.1f MB/s, uncompress %.1f MB/s", names[i], ratio, compressThroughput, uncompressThroughput));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Lz4Transformer;
+import org.syncany.chunk.Transformer;
+
+/**
+ * Tests the round trip and the frame format of the {@link Lz4Transformer}. The
+ * comparison with the {@link GzipTransformer} is in {@link Lz4TransformerPerformanceTest}.
+ */
+public class Lz4TransformerTest {
+	@Test
+	public void testGetInstanceAndInit() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(Lz4Transformer.PROPERTY_ACCELERATION, "8");
+		settings.put(Lz4Transformer.PROPERTY_BLOCK_SIZE, "1024");
+
+		Transformer transformer = Transformer.getInstance(Lz4Transformer.TYPE);
+		assertNotNull("Transformer should be found by its type.", transformer);
+
+		transformer.init(settings);
+		assertEquals("Lz4", transformer.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitWithInvalidBlockSize() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(Lz4Transformer.PROPERTY_BLOCK_SIZE, "100");
+
+		new Lz4Transformer().init(settings);
+	}
+
+	@Test
+	public void testCompressAndUncompress() throws Exception {
+		Random random = new Random(42);
+		byte[][] inputs = new byte[][] {
+			new byte[0], new byte[] { 1 }, new byte[12], new byte[13], "hello hello hello hello".getBytes(),
+			new byte[1024*1024], createRandomData(random, 300*1024), createTextData(random, 700*1024),
+			createBinaryData(random, 500*1024)
+		};
+
+		for (int acceleration : new int[] { 1, 8, 64 }) {
+			for (int blockSize : new int[] { 64*1024, 256*1024 }) {
+				Lz4Transformer transformer = new Lz4Transformer(acceleration, blockSize, null);
+
+				for (byte[] input : inputs) {
+					byte[] compressedData = transform(transformer, input);
+					assertArrayEquals("Failed for acceleration " + acceleration + ", input length " + input.length, input, untransform(transformer, compressedData));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIncompressibleDataIsStored() throws Exception {
+		byte[] randomData = createRandomData(new Random(1), 1024*1024);
+		byte[] compressedData = transform(new Lz4Transformer(), randomData);
+
+		assertTrue("Incompressible data should only grow by frame and block headers.", compressedData.length <= randomData.length + 15 + 4*4);
+	}
+
+	@Test
+	public void testCorruptedFrameFails() throws Exception {
+		byte[] textData = createTextData(new Random(1), 100*1024);
+		byte[] compressedData = transform(new Lz4Transformer(), textData);
+
+		compressedData[compressedData.length / 2] ^= 0x55;
+
+		try {
+			untransform(new Lz4Transformer(), compressedData);
+			fail("Corrupted frame should not be readable.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	static byte[] createRandomData(Random random, int size) {
+		byte[] data = new byte[size];
+		random.nextBytes(data);
+
+		return data;
+	}
+
+	static byte[] createTextData(Random random, int size) {
+		String[] words = new String[] { "sync", "file", "chunk", "the", "database", "version", "of", "and", "upload", "remote", "local", "a", "to", "is" };
+		StringBuilder text = new StringBuilder();
+
+		while (text.length() < size) {
+			text.append(words[random.nextInt(words.length)]);
+			text.append((random.nextInt(12) == 0) ? ".\n" : " ");
+		}
+
+		return text.substring(0, size).getBytes();
+	}
+
+	static byte[] createBinaryData(Random random, int size) {
+		byte[] data = new byte[size];
+
+		for (int i = 0; i + 16 <= size; i += 16) {
+			int recordId = i / 16;
+
+			data[i] = (byte) recordId;
+			data[i+1] = (byte) (recordId >>> 8);
+			data[i+4] = (byte) random.nextInt(4);
+			data[i+8] = (byte) random.nextInt(256);
+		}
+
+		return data;
+	}
+
+	static byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream compressedData = new ByteArrayOutputStream();
+
+		OutputStream outputStream = transformer.createOutputStream(compressedData);
+		outputStream.write(data);
+		outputStream.close();
+
+		return compressedData.toByteArray();
+	}
+
+	static byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] uncompressedData = IOUtils.toByteArray(inputStream);
+		inputStream.close();
+
+		return uncompressedData;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.util.TestFileUtil;
+
+public class MappedChunkingTest {
+	private static final int[] FILE_SIZES = new int[] { 0, 1, 47, 999, 1000, 1001, 1024, 3999, 4000, 4001, 8000, 123457, 1024*1024+13 };
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testMappedTttdChunksEqualStreamChunks() throws Exception {
+		for (int fileSize : FILE_SIZES) {
+			File randomFile = new File(tempDir, "random-" + fileSize);
+			TestFileUtil.createRandomFile(randomFile, fileSize);
+
+			assertMappedChunksEqualStreamChunks(new TttdChunker(1000, 4000, 1500, 750, 48), randomFile);
+		}
+
+		File nonRandomFile = new File(tempDir, "nonrandom");
+		TestFileUtil.createNonRandomFile(nonRandomFile, 50*1024);
+
+		assertMappedChunksEqualStreamChunks(new TttdChunker(1000, 4000, 1500, 750, 48), nonRandomFile);
+	}
+
+	@Test
+	public void testMappedFixedChunksEqualStreamChunks() throws Exception {
+		for (int fileSize : FILE_SIZES) {
+			File randomFile = new File(tempDir, "random-" + fileSize);
+			TestFileUtil.createRandomFile(randomFile, fileSize);
+
+			assertMappedChunksEqualStreamChunks(new FixedChunker(1000), randomFile);
+		}
+	}
+
+	@Test
+	public void testMappedTttdChunkingOfFileTruncatedWhileChunking() throws Exception {
+		assertTruncatedFileChunkedWithoutError(new TttdChunker(1000, 4000, 1500, 750, 48));
+	}
+
+	@Test
+	public void testMappedFixedChunkingOfFileTruncatedWhileChunking() throws Exception {
+		assertTruncatedFileChunkedWithoutError(new FixedChunker(1000));
+	}
+
+	private void assertTruncatedFileChunkedWithoutError(Chunker chunker) throws IOException {
+		File randomFile = new File(tempDir, "random-truncated");
+		TestFileUtil.createRandomFile(randomFile, 1024*1024);
+
+		// Map whole file, then truncate it (accessing the truncated pages raises SIGBUS)
+		chunker.setMappedChunkingThreshold(1);
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(randomFile);
+
+		Chunk chunk = chunkEnumeration.nextElement();
+		long chunkedBytes = chunk.getSize();
+
+		try (RandomAccessFile truncatedFile = new RandomAccessFile(randomFile, "rw")) {
+			truncatedFile.setLength(256*1024);
+		}
+
+		while (chunkEnumeration.hasMoreElements()) {
+			chunk = chunkEnumeration.nextElement();
+			chunkedBytes += chunk.getSize();
+		}
+
+		chunkEnumeration.close();
+
+		// Bytes of the last faulting access may be read as zeros before the fallback
+		assertTrue("Chunked past the end of the truncated file: " + chunkedBytes, chunkedBytes < 512*1024);
+		assertNotNull("Last chunk must carry a file checksum", chunk.getFileChecksum());
+	}
+
+	private void assertMappedChunksEqualStreamChunks(Chunker chunker, File file) throws IOException {
+		chunker.setMappedChunkingThreshold(0);
+		List<ChunkData> streamChunks = createChunks(chunker, file);
+
+		chunker.setMappedChunkingThreshold(1);
+		List<ChunkData> mappedChunks = createChunks(chunker, file);
+
+		assertEquals("Chunk count differs for file size " + file.length(), streamChunks.size(), mappedChunks.size());
+
+		for (int i = 0; i < streamChunks.size(); i++) {
+			ChunkData streamChunk = streamChunks.get(i);
+			ChunkData mappedChunk = mappedChunks.get(i);
+
+			assertArrayEquals("Chunk checksum differs for file size " + file.length(), streamChunk.checksum, mappedChunk.checksum);
+			assertArrayEquals("File checksum differs for file size " + file.length(), streamChunk.fileChecksum, mappedChunk.fileChecksum);
+			assertArrayEquals("Chunk content differs for file size " + file.length(), streamChunk.content, mappedChunk.content);
+		}
+	}
+
+	private List<ChunkData> createChunks(Chunker chunker, File file) throws IOException {
+		List<ChunkData> chunks = new ArrayList<ChunkData>();
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			chunks.add(new ChunkData(chunk.getChecksum(), Arrays.copyOf(chunk.getContent(), chunk.getSize()), chunk.getFileChecksum()));
+		}
+
+		chunkEnumeration.close();
+		return chunks;
+	}
+
+	private static class ChunkData {
+		private byte[] checksum;
+		private byte[] content;
+		private byte[] fileChecksum;
+
+		public ChunkData(byte[] checksum, byte[] content, byte[] fileChecksum) {
+			this.checksum = checksum;
+			this.content = content;
+			this.fileChecksum = fileChecksum;
+		}
+	}
+}
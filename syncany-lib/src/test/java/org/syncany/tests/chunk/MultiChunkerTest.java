@@ -17,16 +17,25 @@
  */
 package org.syncany.tests.chunk;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
@@ -35,10 +44,13 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.IndexedMultiChunker;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
@@ -46,6 +58,7 @@ import org.syncany.chunk.Transformer;
 import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
 
 public class MultiChunkerTest {
 	private static Logger logger = Logger.getLogger(MultiChunkerTest.class.getSimpleName());
@@ -61,7 +74,8 @@ public class MultiChunkerTest {
 		
 		MultiChunker[] multiChunkers = new MultiChunker[] { 
 			//new CustomMultiChunker(minMultiChunkSize),
-			new ZipMultiChunker(minMultiChunkSize) 
+			new ZipMultiChunker(minMultiChunkSize),
+			new IndexedMultiChunker(minMultiChunkSize)
 		};
 		
 		for (Chunker chunker : chunkers) {
@@ -122,6 +136,98 @@ public class MultiChunkerTest {
 		TestFileUtil.deleteDirectory(tempDir);
 	}	
 	
+	@Test
+	public void testIndexedMultiChunkRandomAccessAndSequentialRead() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File multiChunkFile = new File(tempDir, "multichunk");
+		
+		Map<String, byte[]> chunks = new LinkedHashMap<String, byte[]>();
+		
+		// Write multichunk
+		MultiChunker multiChunker = new IndexedMultiChunker(512);
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));
+		
+		for (int i=0; i<100; i++) {
+			byte[] chunkContents = TestFileUtil.createRandomArray(1+i*123);
+			Chunk chunk = createChunk(chunkContents);
+			
+			multiChunk.write(chunk);
+			chunks.put(StringUtil.toHex(chunk.getChecksum()), chunkContents);
+		}
+		
+		multiChunk.close();
+		
+		// Read randomly
+		MultiChunk readMultiChunk = multiChunker.createMultiChunk(multiChunkFile);
+		List<String> chunkChecksums = new ArrayList<String>(chunks.keySet());
+		
+		Collections.shuffle(chunkChecksums);
+		
+		for (String chunkChecksum : chunkChecksums) {
+			InputStream chunkInputStream = readMultiChunk.getChunkInputStream(StringUtil.fromHex(chunkChecksum));
+			assertArrayEquals("Chunk contents differ for chunk " + chunkChecksum, chunks.get(chunkChecksum), IOUtils.toByteArray(chunkInputStream));
+		}
+		
+		assertNull("Unknown chunk should not be found.", readMultiChunk.getChunkInputStream(new byte[20]));
+		readMultiChunk.close();
+		
+		// Read sequentially
+		MultiChunk sequentialMultiChunk = multiChunker.createMultiChunk(new FileInputStream(multiChunkFile));
+		Iterator<String> chunkChecksumIterator = chunks.keySet().iterator();
+		Chunk chunk = null;
+		
+		while (null != (chunk = sequentialMultiChunk.read())) {
+			String expectedChunkChecksum = chunkChecksumIterator.next();
+			
+			assertEquals("Sequentially read chunk differs.", expectedChunkChecksum, StringUtil.toHex(chunk.getChecksum()));
+			assertArrayEquals("Sequentially read chunk contents differ.", chunks.get(expectedChunkChecksum), chunk.getContent());
+		}
+		
+		assertFalse("All chunks should have been read.", chunkChecksumIterator.hasNext());
+		sequentialMultiChunk.close();
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testIndexedMultiChunkerReadsZipMultiChunks() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File multiChunkFile = new File(tempDir, "multichunk");
+		
+		// Write old multichunk
+		MultiChunk zipMultiChunk = new ZipMultiChunker(512).createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));
+		byte[] chunkContents = TestFileUtil.createRandomArray(4567);
+		Chunk chunk = createChunk(chunkContents);
+		
+		zipMultiChunk.write(chunk);
+		zipMultiChunk.close();
+		
+		// Read with new multichunker
+		MultiChunk readMultiChunk = new IndexedMultiChunker(512).createMultiChunk(multiChunkFile);
+		
+		assertEquals("ZipMultiChunk", readMultiChunk.getClass().getSimpleName());
+		assertArrayEquals(chunkContents, IOUtils.toByteArray(readMultiChunk.getChunkInputStream(chunk.getChecksum())));
+		
+		readMultiChunk.close();
+		
+		MultiChunk sequentialMultiChunk = new IndexedMultiChunker(512).createMultiChunk(new FileInputStream(multiChunkFile));
+		assertArrayEquals(chunkContents, sequentialMultiChunk.read().getContent());
+		sequentialMultiChunk.close();
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	private Chunk createChunk(byte[] chunkContents) throws Exception {
+		File tempFile = File.createTempFile("chunk", null);
+		FileUtils.writeByteArrayToFile(tempFile, chunkContents);
+		
+		Enumeration<Chunk> chunkEnumeration = new FixedChunker(Math.max(1, chunkContents.length)).createChunks(tempFile);
+		Chunk chunk = chunkEnumeration.hasMoreElements() ? chunkEnumeration.nextElement() : null;
+		
+		tempFile.delete();
+		return chunk;
+	}
+	
 	public void chunkFileIntoMultiChunks(Chunker chunker, MultiChunker multiChunker, int minMultiChunkSize) throws Exception {
 		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
 		
@@ -0,0 +1,159 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.ParallelGzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.tests.util.TestFileUtil;
+
+public class ParallelGzipTransformerTest {
+	@Test
+	public void testGetInstanceAndInit() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(ParallelGzipTransformer.PROPERTY_LEVEL, "1");
+		settings.put(ParallelGzipTransformer.PROPERTY_THREADS, "2");
+		settings.put(ParallelGzipTransformer.PROPERTY_BLOCK_SIZE, "64");
+
+		Transformer transformer = Transformer.getInstance(ParallelGzipTransformer.TYPE);
+		assertNotNull("Transformer should be found by its type.", transformer);
+
+		transformer.init(settings);
+		assertEquals("ParallelGzip", transformer.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitWithInvalidLevel() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(ParallelGzipTransformer.PROPERTY_LEVEL, "10");
+
+		new ParallelGzipTransformer().init(settings);
+	}
+
+	@Test
+	public void testWriteParallelReadWithGzipTransformer() throws Exception {
+		byte[] data = createCompressibleData(3*1024*1024+17);
+		byte[] compressedData = transform(new ParallelGzipTransformer(6, 4, 64*1024, null), data);
+
+		assertTrue("Data should be compressed.", compressedData.length < data.length);
+		assertArrayEquals(data, untransform(new GzipTransformer(), compressedData));
+		assertArrayEquals(data, untransform(new ParallelGzipTransformer(), compressedData));
+		assertArrayEquals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressedData))));
+	}
+
+	@Test
+	public void testWriteParallelReadWithGzipTransformerAndCipher() throws Exception {
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey("some password");
+
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+		cipherSpecs.add(CipherSpecs.getCipherSpec(1));
+
+		byte[] data = createCompressibleData(1024*1024);
+
+		for (int blockSize : new int[] { 1024, 64*1024, 2*1024*1024 }) {
+			byte[] compressedData = transform(new ParallelGzipTransformer(6, 3, blockSize, new CipherTransformer(cipherSpecs, masterKey)), data);
+			assertArrayEquals("Failed for block size " + blockSize, data, untransform(new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey)), compressedData));
+		}
+	}
+
+	@Test
+	public void testEmptyAndSingleByteInput() throws Exception {
+		byte[] emptyData = new byte[0];
+		assertArrayEquals(emptyData, untransform(new GzipTransformer(), transform(new ParallelGzipTransformer(), emptyData)));
+
+		byte[] singleByteData = new byte[] { 42 };
+		assertArrayEquals(singleByteData, untransform(new GzipTransformer(), transform(new ParallelGzipTransformer(), singleByteData)));
+	}
+
+	@Test
+	public void testStreamsShareOneThreadPool() throws Exception {
+		Transformer transformer = new ParallelGzipTransformer(1, 2, 1024, null);
+		byte[] data = createCompressibleData(20*1024);
+
+		int threadCountBefore = countCompressionThreads();
+
+		for (int i = 0; i < 20; i++) {
+			assertArrayEquals(data, untransform(new GzipTransformer(), transform(transformer, data)));
+		}
+
+		assertTrue("Streams must not create their own threads.", countCompressionThreads() - threadCountBefore <= 2);
+	}
+
+	private int countCompressionThreads() {
+		int compressionThreads = 0;
+
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(ParallelGzipTransformer.THREAD_NAME_PREFIX)) {
+				compressionThreads++;
+			}
+		}
+
+		return compressionThreads;
+	}
+
+	private byte[] createCompressibleData(int size) {
+		byte[] randomData = TestFileUtil.createRandomArray(1024);
+		byte[] data = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			data[i] = (i % 3 == 0) ? randomData[i % randomData.length] : (byte) (i / 4096);
+		}
+
+		return data;
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream compressedData = new ByteArrayOutputStream();
+
+		OutputStream outputStream = transformer.createOutputStream(compressedData);
+		outputStream.write(data);
+		outputStream.close();
+
+		return compressedData.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] uncompressedData = IOUtils.toByteArray(inputStream);
+		inputStream.close();
+
+		return uncompressedData;
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.IndexedMultiChunker;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.RandomAccessInput;
+import org.syncany.chunk.SegmentedTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+public class SegmentedTransformerTest {
+	private static SaltedSecretKey masterKey = null;
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testGetInstanceAndInit() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(SegmentedTransformer.PROPERTY_SEGMENT_SIZE, "128");
+
+		Transformer transformer = Transformer.getInstance(SegmentedTransformer.TYPE);
+		assertNotNull("Transformer should be found by its type.", transformer);
+
+		transformer.init(settings);
+		assertEquals("Segmented", transformer.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitWithInvalidSegmentSize() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(SegmentedTransformer.PROPERTY_SEGMENT_SIZE, "0");
+
+		new SegmentedTransformer().init(settings);
+	}
+
+	@Test
+	public void testStreamRoundTrip() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		int[] sizes = new int[] { 0, 1, 16*1024 - 1, 16*1024, 16*1024 + 1, 300*1024 };
+
+		for (int size : sizes) {
+			byte[] data = TestFileUtil.createRandomArray(size);
+			assertArrayEquals("Round trip failed for size " + size, data, untransform(transformer, transform(transformer, data)));
+		}
+	}
+
+	@Test
+	public void testRandomAccessReads() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] data = TestFileUtil.createRandomArray(200*1024 + 17);
+
+		File transformedFile = new File(tempDir, "transformed");
+		FileUtils.writeByteArrayToFile(transformedFile, transform(transformer, data));
+
+		RandomAccessInput input = transformer.createRandomAccessInput(transformedFile);
+		assertNotNull("Segmented file should support random access.", input);
+		assertEquals(data.length, input.length());
+
+		Random random = new Random(1);
+
+		for (int i = 0; i < 200; i++) {
+			int position = random.nextInt(data.length);
+			int length = Math.min(data.length - position, random.nextInt(40*1024));
+
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			input.readFully(buffer, position);
+
+			byte[] expected = new byte[length];
+			System.arraycopy(data, position, expected, 0, length);
+
+			assertArrayEquals("Read failed at position " + position + ", length " + length, expected, buffer.array());
+		}
+
+		input.close();
+	}
+
+	@Test
+	public void testReadIndexedMultiChunkWithoutDecryptingFile() throws Exception {
+		Transformer transformer = createTransformerChain(SegmentedTransformer.DEFAULT_SEGMENT_SIZE);
+		MultiChunker multiChunker = new IndexedMultiChunker(512);
+
+		// Write transformed multichunk
+		File multiChunkFile = new File(tempDir, "multichunk");
+		Map<String, byte[]> chunks = new LinkedHashMap<String, byte[]>();
+
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(),
+				transformer.createOutputStream(new FileOutputStream(multiChunkFile)));
+
+		for (int i = 0; i < 50; i++) {
+			byte[] chunkContents = TestFileUtil.createRandomArray(1 + i*1234);
+			Chunk chunk = createChunk(chunkContents);
+
+			multiChunk.write(chunk);
+			chunks.put(StringUtil.toHex(chunk.getChecksum()), chunkContents);
+		}
+
+		multiChunk.close();
+
+		// Read chunks in random order, directly from the transformed file
+		RandomAccessInput input = transformer.createRandomAccessInput(multiChunkFile);
+		MultiChunk readMultiChunk = multiChunker.createMultiChunk(input);
+		assertNotNull("Indexed multichunk should be readable from random access input.", readMultiChunk);
+
+		List<String> chunkChecksums = new ArrayList<String>(chunks.keySet());
+		Collections.shuffle(chunkChecksums, new Random(1));
+
+		for (String chunkChecksum : chunkChecksums) {
+			InputStream chunkInputStream = readMultiChunk.getChunkInputStream(StringUtil.fromHex(chunkChecksum));
+			assertArrayEquals("Chunk contents differ for chunk " + chunkChecksum, chunks.get(chunkChecksum), IOUtils.toByteArray(chunkInputStream));
+		}
+
+		readMultiChunk.close();
+	}
+
+	@Test
+	public void testZipMultiChunkIsNotRandomAccessible() throws Exception {
+		Transformer transformer = createTransformerChain(SegmentedTransformer.DEFAULT_SEGMENT_SIZE);
+
+		File multiChunkFile = new File(tempDir, "multichunk");
+		MultiChunk multiChunk = new ZipMultiChunker(512).createMultiChunk(MultiChunkId.secureRandomMultiChunkId(),
+				transformer.createOutputStream(new FileOutputStream(multiChunkFile)));
+
+		multiChunk.write(createChunk(TestFileUtil.createRandomArray(1000)));
+		multiChunk.close();
+
+		RandomAccessInput input = transformer.createRandomAccessInput(multiChunkFile);
+		assertNotNull(input);
+		assertNull("Zip multichunks cannot be read randomly.", new IndexedMultiChunker().createMultiChunk(input));
+
+		input.close();
+	}
+
+	@Test
+	public void testNonSegmentedDataFallsBackToNextTransformer() throws Exception {
+		GzipTransformer gzipTransformer = new GzipTransformer();
+		Transformer segmentedTransformer = new SegmentedTransformer(new GzipTransformer());
+
+		byte[] data = TestFileUtil.createRandomArray(50*1024);
+		byte[] gzippedData = transform(gzipTransformer, data);
+
+		assertArrayEquals(data, untransform(segmentedTransformer, gzippedData));
+
+		File gzippedFile = new File(tempDir, "gzipped");
+		FileUtils.writeByteArrayToFile(gzippedFile, gzippedData);
+
+		assertNull("Non-segmented file should not be random accessible.", segmentedTransformer.createRandomAccessInput(gzippedFile));
+		assertNull("Other transformers do not support random access.", gzipTransformer.createRandomAccessInput(gzippedFile));
+	}
+
+	@Test
+	public void testCorruptedSegmentFails() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] data = TestFileUtil.createRandomArray(100*1024);
+		byte[] transformedData = transform(transformer, data);
+
+		transformedData[transformedData.length / 2] ^= 0x55;
+
+		try {
+			untransform(transformer, transformedData);
+			fail("Corrupted segment should not be readable.");
+		}
+		catch (Exception e) {
+			// Expected
+		}
+
+		File transformedFile = new File(tempDir, "transformed");
+		FileUtils.writeByteArrayToFile(transformedFile, transformedData);
+
+		try {
+			RandomAccessInput input = transformer.createRandomAccessInput(transformedFile);
+			input.readFully(ByteBuffer.allocate(data.length), 0);
+
+			fail("Corrupted segment should not be readable.");
+		}
+		catch (Exception e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testSwappedSegmentsFail() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] data = TestFileUtil.createRandomArray(16*1024 * 2);
+		byte[] transformedData = transform(transformer, data);
+
+		// Both segments are incompressible and therefore have the same length
+		int headerSize = SegmentedTransformer.MAGIC.length + 1 + 4;
+		int segmentLength = ByteBuffer.wrap(transformedData, headerSize, 4).getInt();
+
+		byte[] swappedData = transformedData.clone();
+		System.arraycopy(transformedData, headerSize, swappedData, headerSize + 4 + segmentLength, 4 + segmentLength);
+		System.arraycopy(transformedData, headerSize + 4 + segmentLength, swappedData, headerSize, 4 + segmentLength);
+
+		try {
+			untransform(transformer, swappedData);
+			fail("Swapped segments should not be readable.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testTruncatedStreamWithEndMarkerFails() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] data = TestFileUtil.createRandomArray(16*1024 * 3);
+		byte[] transformedData = transform(transformer, data);
+
+		// Cut off after the first segment and re-terminate the segments
+		int headerSize = SegmentedTransformer.MAGIC.length + 1 + 4;
+		int segmentLength = ByteBuffer.wrap(transformedData, headerSize, 4).getInt();
+
+		ByteBuffer truncatedData = ByteBuffer.allocate(headerSize + 4 + segmentLength + 4);
+		truncatedData.put(transformedData, 0, headerSize + 4 + segmentLength);
+		truncatedData.putInt(0);
+
+		try {
+			untransform(transformer, truncatedData.array());
+			fail("Truncated stream should not be readable.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testTruncatedFileWithForgedIndexFails() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] data = TestFileUtil.createRandomArray(16*1024 * 3);
+		byte[] transformedData = transform(transformer, data);
+
+		// Cut off after the first segment and append a matching index for one segment
+		int headerSize = SegmentedTransformer.MAGIC.length + 1 + 4;
+		int segmentLength = ByteBuffer.wrap(transformedData, headerSize, 4).getInt();
+		long indexOffset = headerSize + 4 + segmentLength + 4;
+
+		ByteBuffer truncatedData = ByteBuffer.allocate((int) indexOffset + 8 + 4 + 8 + 8 + SegmentedTransformer.INDEX_MAGIC.length);
+		truncatedData.put(transformedData, 0, headerSize + 4 + segmentLength);
+		truncatedData.putInt(0);
+		truncatedData.putLong(16*1024);
+		truncatedData.putInt(1);
+		truncatedData.putLong(headerSize);
+		truncatedData.putLong(indexOffset);
+		truncatedData.put(SegmentedTransformer.INDEX_MAGIC);
+
+		File truncatedFile = new File(tempDir, "truncated");
+		FileUtils.writeByteArrayToFile(truncatedFile, truncatedData.array());
+
+		RandomAccessInput input = transformer.createRandomAccessInput(truncatedFile);
+		assertNotNull(input);
+		assertEquals(16*1024, input.length());
+
+		try {
+			input.readFully(ByteBuffer.allocate(16*1024), 0);
+			fail("Truncated file should not be readable.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	@Test
+	public void testOversizedSegmentLengthFails() throws Exception {
+		Transformer transformer = createTransformerChain(16*1024);
+		byte[] transformedData = transform(transformer, TestFileUtil.createRandomArray(100*1024));
+
+		int headerSize = SegmentedTransformer.MAGIC.length + 1 + 4;
+		ByteBuffer.wrap(transformedData, headerSize, 4).putInt(Integer.MAX_VALUE - 8);
+
+		try {
+			untransform(transformer, transformedData);
+			fail("Oversized segment length should be rejected.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private Transformer createTransformerChain(int segmentSize) throws Exception {
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+		cipherSpecs.add(CipherSpecs.getCipherSpec(1));
+
+		return new SegmentedTransformer(segmentSize, new GzipTransformer(new CipherTransformer(cipherSpecs, getMasterKey())));
+	}
+
+	private static SaltedSecretKey getMasterKey() throws Exception {
+		if (masterKey == null) {
+			masterKey = CipherUtil.createMasterKey("some password");
+		}
+
+		return masterKey;
+	}
+
+	private Chunk createChunk(byte[] chunkContents) throws Exception {
+		File tempFile = File.createTempFile("chunk", null);
+		FileUtils.writeByteArrayToFile(tempFile, chunkContents);
+
+		Enumeration<Chunk> chunkEnumeration = new FixedChunker(Math.max(1, chunkContents.length)).createChunks(tempFile);
+		Chunk chunk = chunkEnumeration.hasMoreElements() ? chunkEnumeration.nextElement() : null;
+
+		tempFile.delete();
+		return chunk;
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream transformedData = new ByteArrayOutputStream();
+
+		OutputStream outputStream = transformer.createOutputStream(transformedData);
+		outputStream.write(data);
+		outputStream.close();
+
+		return transformedData.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] untransformedData = IOUtils.toByteArray(inputStream);
+		inputStream.close();
+
+		return untransformedData;
+	}
+}
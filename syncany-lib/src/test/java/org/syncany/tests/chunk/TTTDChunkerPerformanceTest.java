@@ -0,0 +1,99 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.chunk.LegacyTttdChunker.chunkWithLegacyImplementation;
+import static org.syncany.tests.chunk.LegacyTttdChunker.chunkWithTttdChunker;
+import static org.syncany.tests.chunk.LegacyTttdChunker.createTttdChunker;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.util.TestFileUtil;
+
+/**
+ * Compares the {@link TttdChunker} with the original byte-by-byte implementation
+ * of the TTTD enumeration (see {@link LegacyTttdChunker}) for larger files: Chunk boundaries 
+ * must be identical, and the throughput of both implementations is logged. Boundaries of 
+ * small files are checked in {@link TTTDChunkerTest}.
+ */
+public class TTTDChunkerPerformanceTest {
+	private static final Logger logger = Logger.getLogger(TTTDChunkerPerformanceTest.class.getSimpleName());
+	
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testChunkBoundariesOfLargeFileEqualToLegacyImplementation() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 2*1024*1024);
+		
+		List<String> expectedChunks = chunkWithLegacyImplementation(inputFile);
+		List<String> actualChunks = chunkWithTttdChunker(createTttdChunker(), inputFile);
+		
+		assertEquals("Chunks differ from legacy implementation.", expectedChunks, actualChunks);
+	}
+	
+	@Test
+	public void testThroughputComparedToLegacyImplementation() throws Exception {
+		final int FILE_SIZE = 4*1024*1024;
+		final int RUNS = 3;
+		
+		TttdChunker chunker = createTttdChunker();
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, FILE_SIZE);
+		
+		// Warm up
+		chunkWithLegacyImplementation(inputFile);
+		chunkWithTttdChunker(chunker, inputFile);
+		
+		long legacyDuration = 0;
+		long newDuration = 0;
+		
+		for (int i=0; i<RUNS; i++) {
+			long legacyStart = System.nanoTime();
+			List<String> expectedChunks = chunkWithLegacyImplementation(inputFile);
+			legacyDuration += System.nanoTime() - legacyStart;
+			
+			long newStart = System.nanoTime();
+			List<String> actualChunks = chunkWithTttdChunker(chunker, inputFile);
+			newDuration += System.nanoTime() - newStart;
+			
+			assertEquals("Chunks differ from legacy implementation.", expectedChunks, actualChunks);
+		}
+		
+		double legacyThroughput = (double) RUNS*FILE_SIZE / 1024 / 1024 / (legacyDuration / 1000000000.0);
+		double newThroughput = (double) RUNS*FILE_SIZE / 1024 / 1024 / (newDuration / 1000000000.0);
+		
+		logger.log(Level.INFO, String.format("TTTD throughput: legacy %.1f MB/s, new %.1f MB/s", legacyThroughput, newThroughput));
+	}
+}
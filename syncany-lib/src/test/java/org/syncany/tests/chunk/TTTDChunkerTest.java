@@ -25,9 +25,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -52,6 +55,33 @@ public class TTTDChunkerTest {
 		TestFileUtil.deleteDirectory(tempDir);
 	}
 
+	@Test
+	public void testChunkBoundariesEqualToLegacyImplementation() throws Exception {
+		final int TMIN = LegacyTttdChunker.TMIN;
+		final int TMAX = LegacyTttdChunker.TMAX;
+		
+		TttdChunker chunker = LegacyTttdChunker.createTttdChunker();
+		
+		List<File> inputFiles = new ArrayList<File>();
+		int[] randomFileSizes = new int[] { 0, 1, TMIN-1, TMIN, TMIN+1, TMAX, 3*TMAX, TttdChunker.READ_BUFFER_SIZE+17 };
+		
+		for (int randomFileSize : randomFileSizes) {
+			inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, randomFileSize));
+		}
+		
+		// Low entropy file, forces breakpoints at Tmax
+		File zeroFile = new File(tempDir, "zeros");
+		TestFileUtil.writeByteArrayToFile(new byte[5*TMAX+123], zeroFile);
+		inputFiles.add(zeroFile);
+		
+		for (File inputFile : inputFiles) {
+			List<String> expectedChunks = LegacyTttdChunker.chunkWithLegacyImplementation(inputFile);
+			List<String> actualChunks = LegacyTttdChunker.chunkWithTttdChunker(chunker, inputFile);
+			
+			assertEquals("Chunks differ from legacy implementation for file of size "+inputFile.length(), expectedChunks, actualChunks);
+		}
+	}
+
 	@Test
 	public void testStringSerialization() {
 		final int CHUNK_SIZE = 512*1024;
@@ -127,4 +157,31 @@ public class TTTDChunkerTest {
 		assertNull("No chunk expected, but data received.", chunkEnumeration.nextElement());
 		assertFalse("hasElements() should return 'false' if no chunk available.", chunkEnumeration.hasMoreElements());
 	}
+	
+	@Test
+	public void testSmallFileChunkEqualsStreamChunk() throws IOException {
+		TttdChunker chunker = new TttdChunker(16*1024);
+		int[] fileSizes = new int[] { 1, 100, (int) chunker.getSmallFileThreshold()-1 };
+		
+		for (int fileSize : fileSizes) {
+			File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, fileSize);
+			
+			// Small file fast path
+			Enumeration<Chunk> smallFileChunkEnumeration = chunker.createChunks(inputFile);
+			Chunk smallFileChunk = smallFileChunkEnumeration.nextElement();
+			
+			assertFalse("Small file should consist of exactly one chunk.", smallFileChunkEnumeration.hasMoreElements());
+			
+			// Regular stream enumeration
+			Enumeration<Chunk> streamChunkEnumeration = chunker.new TTTDEnumeration(new FileInputStream(inputFile));
+			Chunk streamChunk = streamChunkEnumeration.nextElement();
+			
+			assertFalse("Small file should consist of exactly one chunk.", streamChunkEnumeration.hasMoreElements());
+			
+			assertEquals("Chunk size differs.", streamChunk.getSize(), smallFileChunk.getSize());
+			assertArrayEquals("Chunk checksum differs.", streamChunk.getChecksum(), smallFileChunk.getChecksum());
+			assertArrayEquals("File checksum differs.", streamChunk.getFileChecksum(), smallFileChunk.getFileChecksum());
+			assertArrayEquals("File checksum should equal chunk checksum.", smallFileChunk.getChecksum(), smallFileChunk.getFileChecksum());
+		}
+	}
 }
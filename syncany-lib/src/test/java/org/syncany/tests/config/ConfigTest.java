@@ -23,16 +23,21 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 
 import javax.crypto.spec.SecretKeySpec;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FastCdcChunker;
 import org.syncany.config.Config;
 import org.syncany.config.Config.ConfigException;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.RepoTO;
+import org.syncany.config.to.RepoTO.ChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.tests.util.TestAssertUtil;
@@ -191,6 +196,66 @@ public class ConfigTest {
 		}		
 	}
 	
+	@Test
+	@SuppressWarnings("serial")
+	public void testConfigChunkerFastCdc() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder"); 
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+		
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+		
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+		
+		ChunkerTO fastCdcChunkerTO = new ChunkerTO();
+		fastCdcChunkerTO.setType(FastCdcChunker.TYPE);
+		fastCdcChunkerTO.setSettings(new HashMap<String, String>() {{
+			put(Chunker.PROPERTY_SIZE, "65536");
+		}});
+		
+		repoTO.setChunkerTO(fastCdcChunkerTO); // <<< valid
+		
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+		
+		// Test
+		assertNotNull(config.getChunker());
+		assertEquals("FastCdcChunker", config.getChunker().getClass().getSimpleName());
+		assertEquals("FastCDC-65536-SHA1", config.getChunker().toString());
+	}
+	
+	@Test
+	public void testConfigChunkerInvalidType() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder"); 
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+		
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+		
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+		
+		ChunkerTO invalidChunkerTO = new ChunkerTO();
+		invalidChunkerTO.setType("invalid-typeXXX");
+		invalidChunkerTO.setSettings(new HashMap<String, String>());
+		
+		repoTO.setChunkerTO(invalidChunkerTO); // <<< INVALID !
+		
+		// Run!
+		try {
+			new Config(localDir, configTO, repoTO);
+			fail("Chunker should NOT have been found.");
+		}
+		catch (ConfigException e) {	
+			TestAssertUtil.assertErrorStackTraceContains("invalid-typeXXX", e);			
+		}		
+	}
+	
 	@Test
 	public void testConfigCipherTransformersInvalidType() throws Exception {
 		// Setup
@@ -310,5 +375,43 @@ public class ConfigTest {
 			),
 			StringUtil.fromHex("157599349e0f1bc713afff442db9d4c3201324073d51cb33407600f305500aa3fdb31136cb1f37bd51a48f183844257d42010a36133b32b424dd02bc63b349bc")			
 		);
-	}	
+	}
+	
+	@Test
+	public void testConfigRateLimit() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		File configFile = File.createTempFile("config", ".xml");
+		
+		FileUtils.writeStringToFile(configFile, 
+			  "<config xmlns=\"http://syncany.org/config/1\">\n"
+			+ "  <machinename>somevalidmachinename</machinename>\n"
+			+ "  <connection type=\"local\">\n"
+			+ "    <property name=\"path\">/tmp/somerepo</property>\n"
+			+ "  </connection>\n"
+			+ "  <ratelimit upload=\"100\" download=\"500\">\n"
+			+ "    <window from=\"22:00\" to=\"06:00\" upload=\"0\" download=\"0\"/>\n"
+			+ "  </ratelimit>\n"
+			+ "</config>");
+
+		ConfigTO configTO = ConfigTO.load(configFile);
+		configFile.delete();
+		
+		RepoTO repoTO = new RepoTO();
+
+		repoTO.setChunkerTO(TestConfigUtil.createFixedChunkerTO()); // <<< valid
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid		
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+		
+		// Test
+		assertNotNull(config.getRateLimiter());
+		assertEquals(100*1024, config.getRateLimiter().getSchedule().getUploadRate(new GregorianCalendar(2014, 0, 1, 12, 0)));
+		assertEquals(500*1024, config.getRateLimiter().getSchedule().getDownloadRate(new GregorianCalendar(2014, 0, 1, 12, 0)));
+		assertEquals(0, config.getRateLimiter().getSchedule().getUploadRate(new GregorianCalendar(2014, 0, 1, 23, 0)));
+		assertEquals("RateLimitedTransferManager", config.createTransferManager().getClass().getSimpleName());
+	}
 }
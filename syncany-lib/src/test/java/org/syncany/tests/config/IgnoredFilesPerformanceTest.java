@@ -0,0 +1,150 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.config.IgnoredFiles;
+import org.syncany.tests.util.TestFileUtil;
+
+/**
+ * Compares the compiled ignore rule matcher of {@link IgnoredFiles} against the former
+ * implementation, which compared every exact path and called {@link String#matches(String)} 
+ * (i.e. compiled every regular expression) for every file.
+ * 
+ * <p>The former implementation is only measured for a sample of paths and extrapolated
+ * to the full number of paths.
+ */
+public class IgnoredFilesPerformanceTest {
+	private static final Logger logger = Logger.getLogger(IgnoredFilesPerformanceTest.class.getSimpleName());
+	
+	private static final int EXACT_PATH_RULE_COUNT = 250;
+	private static final int ANCHORED_REGEX_RULE_COUNT = 200;
+	private static final int UNANCHORED_REGEX_RULE_COUNT = 50;
+	private static final int PATH_COUNT = 1000000;
+	private static final int FORMER_MATCHER_SAMPLE_SIZE = 1000;
+	
+	@Test
+	public void testMatch1MPathsAgainst500Rules() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+		
+		Set<String> exactPaths = new HashSet<String>();
+		List<String> regexes = new ArrayList<String>();
+		StringBuilder ignoreFileContent = new StringBuilder();
+		
+		for (int i = 0; i < EXACT_PATH_RULE_COUNT; i++) {
+			String exactPath = getPath(i * 997);
+			
+			exactPaths.add(exactPath);
+			ignoreFileContent.append(exactPath).append("\n");
+		}
+		
+		for (int i = 0; i < ANCHORED_REGEX_RULE_COUNT; i++) {
+			regexes.add("folder" + (i * 5) + "/sub[0-9]+/file[0-9]*7\\.tmp");
+		}
+		
+		for (int i = 0; i < UNANCHORED_REGEX_RULE_COUNT; i++) {
+			regexes.add(".*\\.ext" + i);
+		}
+		
+		for (String regex : regexes) {
+			ignoreFileContent.append("regex:").append(regex).append("\n");
+		}
+		
+		FileUtils.writeStringToFile(ignoreFile, ignoreFileContent.toString());
+		
+		// Compiled matcher
+		long loadStartTime = System.nanoTime();		
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);		
+		long loadDuration = System.nanoTime() - loadStartTime;
+		
+		long compiledStartTime = System.nanoTime();
+		int compiledIgnoredCount = 0;
+		
+		for (int i = 0; i < PATH_COUNT; i++) {
+			if (ignoredFiles.isFileIgnored(getPath(i))) {
+				compiledIgnoredCount++;
+			}
+		}
+		
+		long compiledDuration = System.nanoTime() - compiledStartTime;
+		
+		// Folder pruning
+		int prunableFolderCount = 0;
+		
+		for (int i = 0; i < 1000; i++) {
+			if (!ignoredFiles.mayMatchBelow("folder" + i)) {
+				prunableFolderCount++;
+			}
+		}
+		
+		// Former matcher for a sample of paths
+		long formerStartTime = System.nanoTime();
+		
+		for (int i = 0; i < FORMER_MATCHER_SAMPLE_SIZE; i++) {
+			String path = getPath(i * (PATH_COUNT / FORMER_MATCHER_SAMPLE_SIZE));
+			assertEquals(ignoredFiles.isFileIgnored(path), isFileIgnoredWithFormerMatcher(path, exactPaths, regexes));
+		}
+		
+		long formerDuration = System.nanoTime() - formerStartTime;
+		double formerDurationExtrapolated = (double) formerDuration / FORMER_MATCHER_SAMPLE_SIZE * PATH_COUNT;
+
+		logger.log(Level.INFO, String.format("%d paths, %d rules: load %.0f ms, compiled matcher %.0f ms (%d ignored), former matcher %.0f ms (extrapolated from %d paths); %d of 1000 folders prunable",
+				PATH_COUNT, exactPaths.size() + regexes.size(), loadDuration / 1000000.0, compiledDuration / 1000000.0, compiledIgnoredCount, 
+				formerDurationExtrapolated / 1000000.0, FORMER_MATCHER_SAMPLE_SIZE, prunableFolderCount));
+		
+		assertTrue(compiledIgnoredCount > EXACT_PATH_RULE_COUNT);
+		assertTrue("Compiled matcher should be faster than the former matcher.", compiledDuration < formerDurationExtrapolated);
+		
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	private boolean isFileIgnoredWithFormerMatcher(String filePath, Set<String> exactPaths, List<String> regexes) {
+		for (String path : exactPaths) {
+			if (path.equals(filePath)) {
+				return true;
+			}
+		}
+		
+		for (String regex : regexes) {
+			if (filePath.matches(regex)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private String getPath(int fileIndex) {
+		return "folder" + (fileIndex % 1000) + "/sub" + (fileIndex % 37) + "/file" + fileIndex + ((fileIndex % 100 == 0) ? ".ext" + (fileIndex % 70) : ".tmp");
+	}
+}
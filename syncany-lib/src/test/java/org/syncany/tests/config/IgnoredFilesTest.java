@@ -0,0 +1,167 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.IgnoredFiles;
+import org.syncany.tests.util.TestFileUtil;
+
+public class IgnoredFilesTest {
+	private File tempDir;
+	private File ignoreFile;
+	
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		ignoreFile = new File(tempDir, ".syignore");
+	}
+	
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testExactPathsAndRegex() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("builds\nfolder/file.txt\nregex:.*\\.bak\nregex:logs/[0-9]+\\.log");
+		
+		assertTrue(ignoredFiles.isFileIgnored("builds"));
+		assertTrue(ignoredFiles.isFileIgnored("folder/file.txt"));
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+		assertTrue(ignoredFiles.isFileIgnored("some/folder/file.bak"));
+		assertTrue(ignoredFiles.isFileIgnored("logs/123.log"));
+		
+		assertFalse(ignoredFiles.isFileIgnored("builds2"));
+		assertFalse(ignoredFiles.isFileIgnored("folder/file.txt2"));
+		assertFalse(ignoredFiles.isFileIgnored("file.bak2"));
+		assertFalse(ignoredFiles.isFileIgnored("logs/abc.log"));
+		assertFalse(ignoredFiles.isFileIgnored("other/logs/123.log"));
+	}
+	
+	@Test
+	public void testRegexFlagsAnchorsAndQuantifiers() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("regex:(?i).*\\.JPG\nregex:^cache/.*\\.dat$\nregex:notes\\.txt?\nregex:back\\\\");
+		
+		assertTrue(ignoredFiles.isFileIgnored("image.jpg"));
+		assertTrue(ignoredFiles.isFileIgnored("image.JPG"));
+		assertTrue(ignoredFiles.isFileIgnored("cache/file.dat"));
+		assertTrue(ignoredFiles.isFileIgnored("notes.tx"));
+		assertTrue(ignoredFiles.isFileIgnored("notes.txt"));
+		assertTrue(ignoredFiles.isFileIgnored("back\\"));
+		
+		assertFalse(ignoredFiles.isFileIgnored("cache/file.dat2"));
+		assertFalse(ignoredFiles.isFileIgnored("notes.txtt"));
+		assertFalse(ignoredFiles.isFileIgnored("back"));
+	}
+	
+	@Test
+	public void testGlobPatterns() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("glob:*.tmp\nglob:**/*.o\nglob:build/**\nglob:file?.{jpg,png}\nglob:data[!0-9].txt\nglob:dot.ted");
+		
+		assertTrue(ignoredFiles.isFileIgnored("file.tmp"));
+		assertFalse(ignoredFiles.isFileIgnored("folder/file.tmp")); // * does not cross folders
+		
+		assertTrue(ignoredFiles.isFileIgnored("main.o"));
+		assertTrue(ignoredFiles.isFileIgnored("src/sub/main.o"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("build/classes/Main.class"));
+		assertFalse(ignoredFiles.isFileIgnored("builds/Main.class"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("file1.jpg"));
+		assertTrue(ignoredFiles.isFileIgnored("file2.png"));
+		assertFalse(ignoredFiles.isFileIgnored("file12.png"));
+		assertFalse(ignoredFiles.isFileIgnored("file1.gif"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("dataX.txt"));
+		assertFalse(ignoredFiles.isFileIgnored("data1.txt"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("dot.ted"));
+		assertFalse(ignoredFiles.isFileIgnored("dotXted")); // . is literal
+	}
+	
+	@Test
+	public void testMayMatchBelow() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("a/b/c.txt\nregex:logs/.*\\.log\nglob:build/**/*.class");
+		
+		assertTrue(ignoredFiles.mayMatchBelow(""));
+		assertTrue(ignoredFiles.mayMatchBelow("a"));
+		assertTrue(ignoredFiles.mayMatchBelow("a/b"));
+		assertTrue(ignoredFiles.mayMatchBelow("logs"));
+		assertTrue(ignoredFiles.mayMatchBelow("logs/2014"));
+		assertTrue(ignoredFiles.mayMatchBelow("build/classes"));
+		
+		assertFalse(ignoredFiles.mayMatchBelow("a/b/c.txt"));
+		assertFalse(ignoredFiles.mayMatchBelow("a/x"));
+		assertFalse(ignoredFiles.mayMatchBelow("logs2"));
+		assertFalse(ignoredFiles.mayMatchBelow("src"));
+		
+		// Rules without a literal prefix may match anywhere
+		IgnoredFiles unanchoredIgnoredFiles = createIgnoredFiles("regex:.*\\.bak");
+		
+		assertTrue(unanchoredIgnoredFiles.mayMatchBelow("src"));
+		assertTrue(unanchoredIgnoredFiles.mayMatchBelow("src/main"));
+	}
+	
+	@Test
+	public void testNoRules() throws Exception {
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		
+		assertFalse(ignoredFiles.isFileIgnored("file.txt"));
+		assertFalse(ignoredFiles.mayMatchBelow(""));
+		assertFalse(ignoredFiles.mayMatchBelow("folder"));
+	}
+	
+	@Test
+	public void testReloadReplacesRules() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("file1.txt\nregex:.*\\.bak");		
+		assertTrue(ignoredFiles.isFileIgnored("file1.txt"));
+		
+		FileUtils.writeStringToFile(ignoreFile, "file2.txt");
+		ignoredFiles.loadPatterns();
+		
+		assertFalse(ignoredFiles.isFileIgnored("file1.txt"));
+		assertFalse(ignoredFiles.isFileIgnored("file.bak"));
+		assertTrue(ignoredFiles.isFileIgnored("file2.txt"));
+		
+		ignoreFile.delete();
+		ignoredFiles.loadPatterns();
+		
+		assertFalse(ignoredFiles.isFileIgnored("file2.txt"));
+	}
+	
+	@Test
+	public void testInvalidRegexIsSkipped() throws Exception {
+		IgnoredFiles ignoredFiles = createIgnoredFiles("regex:[unclosed\nregex:.*\\.bak");
+		
+		assertFalse(ignoredFiles.isFileIgnored("[unclosed"));
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+	}
+	
+	private IgnoredFiles createIgnoredFiles(String ignoreFileContent) throws Exception {
+		FileUtils.writeStringToFile(ignoreFile, ignoreFileContent);
+		return new IgnoredFiles(ignoreFile);
+	}
+}
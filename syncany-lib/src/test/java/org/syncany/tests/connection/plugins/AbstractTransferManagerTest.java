@@ -20,9 +20,12 @@ package org.syncany.tests.connection.plugins;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -146,6 +149,12 @@ public abstract class AbstractTransferManagerTest {
 			String checksumDownloadedFile = StringUtil.toHex(TestFileUtil.createChecksum(downloadedLocalFile));
 
 			assertEquals("Uploaded file differs from original file, for file " + originalLocalFile, checksumOriginalFile, checksumDownloadedFile);
+			
+			InputStream downloadedInputStream = transferManager.downloadStream(remoteFile);
+			byte[] downloadedStreamContents = IOUtils.toByteArray(downloadedInputStream);
+			downloadedInputStream.close();
+			
+			assertArrayEquals("Streamed file differs from original file, for file " + originalLocalFile, FileUtils.readFileToByteArray(originalLocalFile), downloadedStreamContents);
 		}
 
 		Map<String, T> listLocalFilesAfterUpload = transferManager.list(remoteFileClass);
@@ -186,6 +195,14 @@ public abstract class AbstractTransferManagerTest {
 		assertTrue(deleteSuccess);
 	}	
 
+	@Test(expected = StorageException.class)
+	public void testDownloadStreamNonExistentFile() throws StorageException {
+		TransferManager transferManager = loadPluginAndCreateTransferManager();
+		transferManager.connect();	
+		
+		transferManager.downloadStream(new MultiChunkRemoteFile("multichunk-dddddddddddddddddddddddddddddddddddddddd")); // does not exist
+	}	
+
 	private TransferManager loadPluginAndCreateTransferManager() throws StorageException {
 		Plugin pluginInfo = Plugins.get(getPluginId());
 
@@ -0,0 +1,257 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.connection.plugins.Connection;
+import org.syncany.connection.plugins.MultiChunkRemoteFile;
+import org.syncany.connection.plugins.RateLimitedTransferManager;
+import org.syncany.connection.plugins.TokenBucket;
+import org.syncany.connection.plugins.TransferManager;
+import org.syncany.connection.plugins.TransferRateLimiter;
+import org.syncany.connection.plugins.TransferRateSchedule;
+import org.syncany.connection.plugins.local.LocalConnection;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class RateLimitedTransferManagerTest {
+	private static final long RATE = 100*1024;
+	
+	private Connection connection;
+	private File repoDir;
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = TestConfigUtil.createTestLocalConnection();
+		repoDir = ((LocalConnection) connection).getRepositoryPath();
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(repoDir);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testUploadIsLimited() throws Exception {
+		TransferManager transferManager = createTransferManager(RATE, 0);
+		byte[] data = TestFileUtil.createRandomArray(200*1024);
+
+		File localFile = new File(tempDir, "upload");
+		FileUtils.writeByteArrayToFile(localFile, data);
+
+		MultiChunkRemoteFile remoteFile = new MultiChunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		long startTime = System.currentTimeMillis();
+		transferManager.upload(localFile, remoteFile);
+		long duration = System.currentTimeMillis() - startTime;
+
+		assertDuration(2000, duration);
+
+		// Download should not be limited
+		File downloadedFile = new File(tempDir, "download");
+		
+		startTime = System.currentTimeMillis();
+		transferManager.download(remoteFile, downloadedFile);
+		duration = System.currentTimeMillis() - startTime;
+
+		assertTrue("Download should not be limited, but took " + duration + " ms.", duration < 1000);
+		assertArrayEquals(data, FileUtils.readFileToByteArray(downloadedFile));
+	}
+
+	@Test
+	public void testDownloadIsLimited() throws Exception {
+		TransferManager transferManager = createTransferManager(0, RATE);
+		byte[] data = TestFileUtil.createRandomArray(200*1024);
+		
+		MultiChunkRemoteFile remoteFile = uploadUnlimited(data);
+		File downloadedFile = new File(tempDir, "download");
+
+		long startTime = System.currentTimeMillis();
+		transferManager.download(remoteFile, downloadedFile);
+		long duration = System.currentTimeMillis() - startTime;
+
+		assertDuration(2000, duration);
+		assertArrayEquals(data, FileUtils.readFileToByteArray(downloadedFile));
+	}
+
+	@Test
+	public void testDownloadStreamIsLimited() throws Exception {
+		TransferManager transferManager = createTransferManager(0, RATE);
+		byte[] data = TestFileUtil.createRandomArray(200*1024);
+		
+		MultiChunkRemoteFile remoteFile = uploadUnlimited(data);
+
+		long startTime = System.currentTimeMillis();
+		
+		InputStream downloadedInputStream = transferManager.downloadStream(remoteFile);
+		byte[] downloadedData = IOUtils.toByteArray(downloadedInputStream);
+		downloadedInputStream.close();
+		
+		long duration = System.currentTimeMillis() - startTime;
+
+		assertDuration(2000, duration);
+		assertArrayEquals(data, downloadedData);
+	}
+
+	@Test
+	public void testConcurrentDownloadsShareRate() throws Exception {
+		// Two transfer managers, sharing the same limiter
+		TransferRateLimiter rateLimiter = new TransferRateLimiter(new TransferRateSchedule(0, RATE));
+
+		final TransferManager transferManager1 = new RateLimitedTransferManager(connection.createTransferManager(), rateLimiter);
+		final TransferManager transferManager2 = new RateLimitedTransferManager(connection.createTransferManager(), rateLimiter);
+
+		final MultiChunkRemoteFile remoteFile1 = uploadUnlimited(TestFileUtil.createRandomArray(100*1024));
+		final MultiChunkRemoteFile remoteFile2 = uploadUnlimited(TestFileUtil.createRandomArray(100*1024));
+
+		final AtomicLong endTime1 = new AtomicLong();
+		final AtomicLong endTime2 = new AtomicLong();
+		
+		long startTime = System.currentTimeMillis();
+		
+		Thread downloadThread1 = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					transferManager1.download(remoteFile1, new File(tempDir, "download1"));
+					endTime1.set(System.currentTimeMillis());
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+
+		Thread downloadThread2 = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					transferManager2.download(remoteFile2, new File(tempDir, "download2"));
+					endTime2.set(System.currentTimeMillis());
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		
+		downloadThread1.start();
+		downloadThread2.start();
+		
+		downloadThread1.join();
+		downloadThread2.join();
+		
+		assertTrue("Both downloads must succeed.", endTime1.get() > 0 && endTime2.get() > 0);
+
+		// Together 200 KB at 100 KB/s, both should finish at roughly the same time
+		assertDuration(2000, Math.max(endTime1.get(), endTime2.get()) - startTime);
+		assertTrue("Downloads should share the rate fairly, but finished " + Math.abs(endTime1.get() - endTime2.get()) + " ms apart.",
+				Math.abs(endTime1.get() - endTime2.get()) < 500);
+	}
+
+	@Test
+	public void testUnlimitedTokenBucket() throws Exception {
+		TokenBucket tokenBucket = new TokenBucket(0);
+
+		long startTime = System.currentTimeMillis();
+		tokenBucket.acquire(1024*1024*1024);
+
+		assertTrue(System.currentTimeMillis() - startTime < 100);
+	}
+
+	@Test
+	public void testTokenBucketRateChange() throws Exception {
+		TokenBucket tokenBucket = new TokenBucket(RATE);
+
+		long startTime = System.currentTimeMillis();		
+		tokenBucket.acquire(RATE / 2); // 0.5 sec
+		tokenBucket.acquire(RATE / 2, RATE / 2); // 1 sec, at half the rate
+		tokenBucket.acquire(RATE, 0); // unlimited
+		
+		assertDuration(1500, System.currentTimeMillis() - startTime);
+	}
+
+	@Test
+	public void testSchedule() throws Exception {
+		TransferRateSchedule schedule = new TransferRateSchedule(100, 200);
+
+		schedule.addWindow("08:00", "18:00", 10, 20);
+		schedule.addWindow("22:00", "06:00", 0, 0); // wraps around midnight
+
+		assertEquals(100, schedule.getUploadRate(createTime(7, 59)));
+		assertEquals(200, schedule.getDownloadRate(createTime(7, 59)));
+		assertEquals(10, schedule.getUploadRate(createTime(8, 0)));
+		assertEquals(20, schedule.getDownloadRate(createTime(17, 59)));
+		assertEquals(100, schedule.getUploadRate(createTime(18, 0)));
+		assertEquals(0, schedule.getUploadRate(createTime(23, 30)));
+		assertEquals(0, schedule.getDownloadRate(createTime(0, 0)));
+		assertEquals(0, schedule.getUploadRate(createTime(5, 59)));
+		assertEquals(100, schedule.getUploadRate(createTime(6, 0)));
+
+		assertTrue(schedule.isLimited());
+		assertFalse(new TransferRateSchedule(0, 0).isLimited());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testScheduleInvalidTime() throws Exception {
+		new TransferRateSchedule(0, 0).addWindow("8am", "18:00", 0, 0);
+	}
+
+	private TransferManager createTransferManager(long uploadRate, long downloadRate) {
+		TransferRateLimiter rateLimiter = new TransferRateLimiter(new TransferRateSchedule(uploadRate, downloadRate));
+		return new RateLimitedTransferManager(connection.createTransferManager(), rateLimiter);
+	}
+
+	private MultiChunkRemoteFile uploadUnlimited(byte[] data) throws Exception {
+		File localFile = File.createTempFile("upload", null, tempDir);
+		FileUtils.writeByteArrayToFile(localFile, data);
+
+		MultiChunkRemoteFile remoteFile = new MultiChunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		connection.createTransferManager().upload(localFile, remoteFile);
+
+		return remoteFile;
+	}
+
+	private Calendar createTime(int hours, int minutes) {
+		return new GregorianCalendar(2014, 0, 1, hours, minutes);
+	}
+
+	private void assertDuration(long expectedDuration, long actualDuration) {
+		assertTrue("Transfer took " + actualDuration + " ms, expected about " + expectedDuration + " ms.",
+				actualDuration >= expectedDuration * 0.85 && actualDuration <= expectedDuration * 1.5);
+	}
+}
@@ -17,17 +17,30 @@
  */
 package org.syncany.tests.connection.plugins.unreliable_local;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.junit.Test;
 import org.syncany.connection.plugins.StorageException;
 import org.syncany.connection.plugins.unreliable_local.UnreliableLocalConnection;
+import org.syncany.operations.up.UpOperationListener;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult.UpResultCode;
+import org.syncany.operations.up.UpTransactionJournal;
 import org.syncany.tests.util.TestClient;
 import org.syncany.tests.util.TestConfigUtil;
 
@@ -73,5 +86,155 @@ public class UploadInterruptedTest {
 		
 		// Tear down
 		clientA.deleteTestData();
-	}				
+	}
+	
+	@Test
+	public void testUnreliablePipelinedUpload() throws Exception {
+		// Setup 
+		final List<String> failingOperationPatterns = new CopyOnWriteArrayList<String>();
+		UnreliableLocalConnection testConnection = TestConfigUtil.createTestUnreliableLocalConnection(failingOperationPatterns);
+		
+		final TestClient clientA = new TestClient("A", testConnection);
+		final AtomicReference<String> failingMultiChunkName = new AtomicReference<String>();
+		
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setPipelinedUploadEnabled(true);
+		
+		for (int i = 0; i < 30; i++) {
+			clientA.createNewFile("A-original-"+i, 500*1024);
+		}
+		
+		// First run fails, no database must be uploaded or committed locally
+		try {
+			clientA.up(upOptions, new UpOperationListener() {
+				@Override
+				public void onIndexStart(int fileCount) {
+					// Nothing.
+				}
+
+				@Override
+				public void onIndexFile(String fileName, int fileNumber) {
+					// When the 2nd file is indexed, the 1st multichunk is still being written,
+					// so it cannot have been uploaded yet: make all uploads of this multichunk fail
+					if (fileNumber == 1) {
+						File[] multiChunkFiles = clientA.getConfig().getCacheDir().listFiles(new FilenameFilter() {
+							@Override
+							public boolean accept(File dir, String name) {
+								return name.matches("multichunk-[0-9a-f]+");
+							}
+						});
+						
+						assertEquals(1, multiChunkFiles.length);
+						
+						failingMultiChunkName.set(multiChunkFiles[0].getName());
+						failingOperationPatterns.add("op=upload .+, " + failingMultiChunkName.get() + "\\)");
+					}
+				}
+
+				@Override
+				public void onUploadStart(int fileCount) {
+					// Nothing.
+				}
+
+				@Override
+				public void onUploadFile(String fileName, int fileNumber) {
+					// Nothing.
+				}			
+			});
+			
+			fail("Up should have failed.");
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, e.getMessage());
+		}
+		
+		assertNotNull(failingMultiChunkName.get());
+		assertFalse(new File(testConnection.getRepositoryPath()+"/multichunks/"+failingMultiChunkName.get()).exists());
+		assertFalse(new File(testConnection.getRepositoryPath()+"/databases/db-A-0000000001").exists());
+		assertNull(clientA.loadLocalDatabase().getLastDatabaseVersionHeader());
+		
+		// Second run succeeds
+		failingOperationPatterns.clear();
+		clientA.up(upOptions);
+		
+		assertTrue(new File(testConnection.getRepositoryPath()+"/multichunks/"+failingMultiChunkName.get()).exists());
+		assertTrue(new File(testConnection.getRepositoryPath()+"/databases/db-A-0000000001").exists());
+		assertEquals(30, clientA.loadLocalDatabase().getFileHistoriesWithFileVersions().size());
+		
+		// Tear down
+		clientA.deleteTestData();
+	}
+	
+	@Test
+	public void testResumeInterruptedUpload() throws Exception {
+		// Setup 
+		UnreliableLocalConnection testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+			Arrays.asList(new String[] { 
+				// 3rd multichunk upload fails
+				"rel=3 .+upload.+multichunk"
+			}
+		));
+		
+		TestClient clientA = new TestClient("A", testConnection);
+		File journalFile = new File(clientA.getConfig().getAppDir(), UpTransactionJournal.FILE_PENDING_DATABASE);
+		
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setUploadRetryCount(0);
+		
+		for (int i = 0; i < 30; i++) {
+			clientA.createNewFile("A-original-"+i, 500*1024);
+		}
+		
+		// First run fails after indexing, journal must be kept
+		try {
+			clientA.up(upOptions);
+			fail("Up should have failed.");
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, e.getMessage());
+		}
+		
+		assertTrue(journalFile.exists());
+		assertFalse(new File(testConnection.getRepositoryPath()+"/databases/db-A-0000000001").exists());
+		
+		// Second run resumes: no indexing, only the missing multichunks are uploaded
+		final AtomicInteger indexStartCount = new AtomicInteger(0);
+		final AtomicInteger uploadedFileCount = new AtomicInteger(0);
+		
+		clientA.up(upOptions, new UpOperationListener() {
+			@Override
+			public void onIndexStart(int fileCount) {
+				indexStartCount.incrementAndGet();
+			}
+
+			@Override
+			public void onIndexFile(String fileName, int fileNumber) {
+				// Nothing.
+			}
+
+			@Override
+			public void onUploadStart(int fileCount) {
+				// Nothing.
+			}
+
+			@Override
+			public void onUploadFile(String fileName, int fileNumber) {
+				uploadedFileCount.incrementAndGet();
+			}			
+		});
+		
+		int remoteMultiChunkCount = new File(testConnection.getRepositoryPath()+"/multichunks").listFiles().length;
+		
+		assertEquals(0, indexStartCount.get());
+		assertEquals(remoteMultiChunkCount - 2, uploadedFileCount.get());
+		assertFalse(journalFile.exists());
+		assertTrue(new File(testConnection.getRepositoryPath()+"/databases/db-A-0000000001").exists());
+		assertEquals(30, clientA.loadLocalDatabase().getFileHistoriesWithFileVersions().size());
+		
+		// Third run finds nothing to do
+		assertEquals(UpResultCode.OK_NO_CHANGES, clientA.up(upOptions).getResultCode());
+		
+		// Tear down
+		clientA.deleteTestData();
+	}
 }
@@ -0,0 +1,132 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+
+/**
+ * Compares the path lookups used for deleted-file and type-change detection in the
+ * indexer: the former linear scan over all file histories of a {@link DatabaseVersion}
+ * against the path cache maintained by the database version.
+ *
+ * <p>The linear scan is quadratic when called for every file history, so it is only
+ * measured for a sample of lookups and extrapolated to the full number of histories.
+ */
+public class DatabaseVersionPerformanceTest {
+	private static final Logger logger = Logger.getLogger(DatabaseVersionPerformanceTest.class.getSimpleName());
+	private static final int LINEAR_SCAN_SAMPLE_SIZE = 100;
+
+	@Test
+	public void testPathLookupWith100kFileHistories() {
+		testPathLookup(100000);
+	}
+
+	@Test
+	public void testPathLookupWith1MFileHistories() {
+		testPathLookup(1000000);
+	}
+
+	private void testPathLookup(int fileHistoryCount) {
+		// Build database version
+		long buildStartTime = System.nanoTime();
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		for (int i = 0; i < fileHistoryCount; i++) {
+			databaseVersion.addFileHistory(createFileHistory(i));
+		}
+
+		long buildDuration = System.nanoTime() - buildStartTime;
+
+		// Indexed lookups for all histories (every 10th path does not exist)
+		long indexedStartTime = System.nanoTime();
+		int indexedFound = 0;
+
+		for (int i = 0; i < fileHistoryCount; i++) {
+			if (databaseVersion.getFileHistory(getPath(i, i % 10 == 0)) != null) {
+				indexedFound++;
+			}
+		}
+
+		long indexedDuration = System.nanoTime() - indexedStartTime;
+
+		// Linear scan for a sample of histories
+		long linearStartTime = System.nanoTime();
+
+		for (int i = 0; i < LINEAR_SCAN_SAMPLE_SIZE; i++) {
+			int fileIndex = i * (fileHistoryCount / LINEAR_SCAN_SAMPLE_SIZE);
+			PartialFileHistory fileHistoryByScan = getFileHistoryByPathWithLinearScan(databaseVersion, getPath(fileIndex, false));
+
+			assertEquals(databaseVersion.getFileHistory(getPath(fileIndex, false)), fileHistoryByScan);
+		}
+
+		long linearDuration = System.nanoTime() - linearStartTime;
+		double linearDurationExtrapolated = (double) linearDuration / LINEAR_SCAN_SAMPLE_SIZE * fileHistoryCount;
+
+		logger.log(Level.INFO, String.format("%d file histories: build %.0f ms, indexed lookups %.0f ms, linear scan %.0f ms (extrapolated from %d lookups)",
+				fileHistoryCount, buildDuration / 1000000.0, indexedDuration / 1000000.0, linearDurationExtrapolated / 1000000.0, LINEAR_SCAN_SAMPLE_SIZE));
+
+		assertEquals(fileHistoryCount - fileHistoryCount / 10, indexedFound);
+		assertTrue("Indexed lookups should be faster than the linear scan.", indexedDuration < linearDurationExtrapolated);
+	}
+
+	private PartialFileHistory getFileHistoryByPathWithLinearScan(DatabaseVersion databaseVersion, String path) {
+		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
+			FileVersion lastVersion = fileHistory.getLastVersion();
+
+			if (lastVersion.getStatus() != FileStatus.DELETED && lastVersion.getPath().equals(path)) {
+				return fileHistory;
+			}
+		}
+
+		return null;
+	}
+
+	private PartialFileHistory createFileHistory(int fileIndex) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setVersion(1L);
+		fileVersion.setPath(getPath(fileIndex, false));
+		fileVersion.setType(FileType.FILE);
+		fileVersion.setStatus(FileStatus.NEW);
+		fileVersion.setSize(1L);
+		fileVersion.setLastModified(new Date(fileIndex));
+		fileVersion.setUpdated(new Date(fileIndex));
+
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.parseFileId(String.format("%040x", fileIndex)));
+		fileHistory.addFileVersion(fileVersion);
+
+		return fileHistory;
+	}
+
+	private String getPath(int fileIndex, boolean otherFolder) {
+		return (otherFolder ? "other/" : "") + "folder" + (fileIndex % 1000) + "/file" + fileIndex;
+	}
+}
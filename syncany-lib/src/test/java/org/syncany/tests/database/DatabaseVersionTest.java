@@ -0,0 +1,114 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.syncany.config.Logging;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class DatabaseVersionTest {
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testFilePathCache() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		// Add file1.jpg
+		FileVersion fileVersion1 = TestDatabaseUtil.createFileVersion("file1.jpg");
+		PartialFileHistory fileHistory1 = new PartialFileHistory(FileHistoryId.parseFileId("1111111111111111"));
+
+		fileHistory1.addFileVersion(fileVersion1);
+		databaseVersion.addFileHistory(fileHistory1);
+
+		assertEquals(fileHistory1, databaseVersion.getFileHistory("file1.jpg"));
+
+		// Rename to file2.jpg (same history, re-added)
+		fileHistory1.addFileVersion(TestDatabaseUtil.createFileVersion("file2.jpg", fileVersion1));
+		databaseVersion.addFileHistory(fileHistory1);
+
+		assertNull(databaseVersion.getFileHistory("file1.jpg"));
+		assertEquals(fileHistory1, databaseVersion.getFileHistory("file2.jpg"));
+
+		// Add file2.jpg as folder (new history), then delete the old history
+		FileVersion folderVersion = TestDatabaseUtil.createFileVersion("file2.jpg");
+		folderVersion.setType(FileType.FOLDER);
+
+		PartialFileHistory folderHistory = new PartialFileHistory(FileHistoryId.parseFileId("2222222222222222"));
+		folderHistory.addFileVersion(folderVersion);
+		databaseVersion.addFileHistory(folderHistory);
+
+		FileVersion deletedVersion = TestDatabaseUtil.createFileVersion("file2.jpg", fileHistory1.getLastVersion());
+		deletedVersion.setStatus(FileStatus.DELETED);
+
+		PartialFileHistory deletedFileHistory1 = new PartialFileHistory(fileHistory1.getFileHistoryId());
+		deletedFileHistory1.addFileVersion(deletedVersion);
+		databaseVersion.addFileHistory(deletedFileHistory1);
+
+		assertEquals(folderHistory, databaseVersion.getFileHistory("file2.jpg"));
+		assertEquals(2, databaseVersion.getFileHistories().size());
+	}
+
+	@Test
+	public void testFileChecksumCache() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+		FileChecksum checksum1 = new FileChecksum(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 0 });
+		FileChecksum checksum2 = new FileChecksum(new byte[] { 9, 9, 9, 9, 9, 9, 9, 9, 9, 9 });
+
+		// Two histories with the same checksum
+		FileVersion fileVersion1 = TestDatabaseUtil.createFileVersion("file1.jpg");
+		fileVersion1.setChecksum(checksum1);
+
+		PartialFileHistory fileHistory1 = new PartialFileHistory(FileHistoryId.parseFileId("1111111111111111"));
+		fileHistory1.addFileVersion(fileVersion1);
+		databaseVersion.addFileHistory(fileHistory1);
+
+		FileVersion fileVersion2 = TestDatabaseUtil.createFileVersion("file2.jpg");
+		fileVersion2.setChecksum(checksum1);
+
+		PartialFileHistory fileHistory2 = new PartialFileHistory(FileHistoryId.parseFileId("2222222222222222"));
+		fileHistory2.addFileVersion(fileVersion2);
+		databaseVersion.addFileHistory(fileHistory2);
+
+		assertEquals(2, databaseVersion.getFileHistories(checksum1).size());
+		assertNull(databaseVersion.getFileHistories(checksum2));
+
+		// Change content of first history
+		FileVersion fileVersion11 = TestDatabaseUtil.createFileVersion("file1.jpg", fileVersion1);
+		fileVersion11.setChecksum(checksum2);
+
+		fileHistory1.addFileVersion(fileVersion11);
+		databaseVersion.addFileHistory(fileHistory1);
+
+		assertEquals(1, databaseVersion.getFileHistories(checksum1).size());
+		assertEquals(fileHistory2, databaseVersion.getFileHistories(checksum1).get(0));
+		assertEquals(1, databaseVersion.getFileHistories(checksum2).size());
+		assertEquals(fileHistory1, databaseVersion.getFileHistories(checksum2).get(0));
+	}
+}
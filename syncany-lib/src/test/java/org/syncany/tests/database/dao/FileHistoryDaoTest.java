@@ -21,12 +21,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
 import org.syncany.config.Config;
+import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.dao.FileHistorySqlDao;
@@ -155,6 +158,62 @@ public class FileHistoryDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
 	
+	@Test
+	public void testGetFileHistoryWithLastVersionByPathAndChecksum() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+				
+		// Run
+		TestSqlDatabaseUtil.runSqlFromResource(databaseConnection, "/sql/test.insert.set1.sql"); 
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+		
+		List<PartialFileHistory> fileHistoriesWithLastVersion = fileHistoryDao.getFileHistoriesWithLastVersion();
+		Iterator<PartialFileHistory> fileHistoriesWithLastVersionIterator = fileHistoryDao.getFileHistoriesWithLastVersionIterator();
+		
+		// Test
+		assertTrue(fileHistoriesWithLastVersion.size() > 0);
+		
+		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
+			FileVersion lastVersion = fileHistory.getLastVersion();
+			
+			// - Iterator returns the same histories in the same order
+			assertTrue(fileHistoriesWithLastVersionIterator.hasNext());
+			PartialFileHistory iteratedFileHistory = fileHistoriesWithLastVersionIterator.next();
+			
+			assertEquals(fileHistory.getFileHistoryId(), iteratedFileHistory.getFileHistoryId());
+			assertEquals(lastVersion, iteratedFileHistory.getLastVersion());
+
+			// - Lookup by path
+			PartialFileHistory fileHistoryByPath = fileHistoryDao.getFileHistoryWithLastVersionByPath(lastVersion.getPath());
+			
+			assertNotNull(fileHistoryByPath);
+			assertEquals(fileHistory.getFileHistoryId(), fileHistoryByPath.getFileHistoryId());
+			assertEquals(lastVersion, fileHistoryByPath.getLastVersion());
+			
+			// - Lookup by checksum
+			if (lastVersion.getChecksum() != null) {
+				boolean foundByChecksum = false;
+				
+				for (PartialFileHistory fileHistoryByChecksum : fileHistoryDao.getFileHistoriesWithLastVersionByChecksum(lastVersion.getChecksum())) {
+					assertEquals(lastVersion.getChecksum(), fileHistoryByChecksum.getLastVersion().getChecksum());
+					foundByChecksum = foundByChecksum || fileHistory.getFileHistoryId().equals(fileHistoryByChecksum.getFileHistoryId());
+				}
+				
+				assertTrue(foundByChecksum);
+			}
+		}
+		
+		assertFalse(fileHistoriesWithLastVersionIterator.hasNext());
+		assertNull(fileHistoryDao.getFileHistoryWithLastVersionByPath("this/path/does/not/exist"));
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	/*
 	    // TODO [medium] Implement tests for other PartialFileHistory methods
 	 
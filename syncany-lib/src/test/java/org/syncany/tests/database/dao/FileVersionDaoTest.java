@@ -21,19 +21,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.sql.Connection;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Map;
+import java.util.TreeSet;
 
 import org.junit.Test;
 import org.syncany.config.Config;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.dao.FileVersionSqlDao;
+import org.syncany.operations.up.UpOperation;
 import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
 import org.syncany.tests.util.TestSqlDatabaseUtil;
 
 /**
@@ -67,6 +73,47 @@ public class FileVersionDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testFileVersionGetCurrentFileTreeInFolder() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		File localDir = testConfig.getLocalDir();
+		
+		new File(localDir, "folder/subfolder").mkdirs();
+		new File(localDir, "folder-sibling").mkdirs();
+		new File(localDir, "folder2").mkdirs();
+		
+		TestFileUtil.createRandomFile(new File(localDir, "folder/file1"), 100);
+		TestFileUtil.createRandomFile(new File(localDir, "folder/file2"), 100);
+		TestFileUtil.createRandomFile(new File(localDir, "folder/subfolder/file3"), 100);
+		TestFileUtil.createRandomFile(new File(localDir, "folder-sibling/file4"), 100);
+		TestFileUtil.createRandomFile(new File(localDir, "folder2/file5"), 100);		
+		
+		new UpOperation(testConfig).execute();
+		
+		TestFileUtil.deleteFile(new File(localDir, "folder/file2"));
+		new UpOperation(testConfig).execute();
+		
+		// Run
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);				
+		
+		Map<String, FileVersion> folderFileTree = fileVersionDao.getCurrentFileTreeInFolder("folder");
+		Map<String, FileVersion> subfolderFileTree = fileVersionDao.getCurrentFileTreeInFolder("folder/subfolder");
+		
+		// Test
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder/file1", "folder/subfolder", "folder/subfolder/file3" })), 
+				new TreeSet<String>(folderFileTree.keySet()));
+		assertEquals(fileVersionDao.getCurrentFileTree().get("folder/file1"), folderFileTree.get("folder/file1"));		
+		
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder/subfolder/file3" })), new TreeSet<String>(subfolderFileTree.keySet()));
+		assertTrue(fileVersionDao.getCurrentFileTreeInFolder("fold").isEmpty());
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	@Test
 	public void testFileVersionGetFileTreeAtDate() throws Exception {
 		// Setup
@@ -0,0 +1,194 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.operations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.connection.plugins.Connection;
+import org.syncany.connection.plugins.MultiChunkRemoteFile;
+import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.local.LocalConnection;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.down.DownOperationListener;
+import org.syncany.operations.down.MultiChunkDownloader;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class MultiChunkDownloaderTest {
+	private static final Logger logger = Logger.getLogger(MultiChunkDownloaderTest.class.getSimpleName());
+
+	@Test
+	public void testConcurrentDownloadWithOrderedProgress() throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig("A", TestConfigUtil.createTestLatencyLocalConnection(10));
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+		List<byte[]> multiChunkContents = createRemoteMultiChunkFiles(config, 20, multiChunkIds);
+
+		// Run
+		final List<Integer> reportedStartCounts = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<String> reportedFiles = Collections.synchronizedList(new ArrayList<String>());
+		final List<Integer> reportedIndexes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		MultiChunkDownloader downloader = new MultiChunkDownloader(config, config.getConnection().createTransferManager(), new DownOperationListener() {
+			@Override
+			public void onDownloadStart(int fileCount) {
+				reportedStartCounts.add(fileCount);
+			}
+
+			@Override
+			public void onDownloadFile(String fileName, int fileNumber) {
+				reportedFiles.add(fileName);
+				reportedIndexes.add(fileNumber);
+			}
+		}, 4);
+
+		downloader.downloadAndDecrypt(multiChunkIds);
+
+		// Check
+		assertEquals(Arrays.asList(new Integer[] { multiChunkIds.size() }), reportedStartCounts);
+		assertEquals(multiChunkIds.size(), reportedFiles.size());
+
+		for (int i = 0; i < multiChunkIds.size(); i++) {
+			MultiChunkId multiChunkId = multiChunkIds.get(i);
+
+			assertEquals(new MultiChunkRemoteFile(multiChunkId).getName(), reportedFiles.get(i));
+			assertEquals(i + 1, (int) reportedIndexes.get(i));
+
+			assertArrayEquals(multiChunkContents.get(i), FileUtils.readFileToByteArray(config.getCache().getDecryptedMultiChunkFile(multiChunkId)));
+			assertFalse(config.getCache().getEncryptedMultiChunkFile(multiChunkId).exists());
+		}
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testConcurrentDownloadIsFasterWithLatency() throws Exception {
+		int multiChunkCount = 16;
+
+		long sequentialDuration = downloadWithLatency(multiChunkCount, 1);
+		long concurrentDuration = downloadWithLatency(multiChunkCount, 4);
+
+		logger.log(Level.INFO, "Downloading " + multiChunkCount + " multichunks with 50ms latency: 1 thread = " + sequentialDuration + " ms, 4 threads = "
+				+ concurrentDuration + " ms");
+
+		assertTrue("Concurrent download should be faster than sequential download.", concurrentDuration < sequentialDuration * 0.6);
+	}
+
+	@Test
+	public void testDownloadFailFast() throws Exception {
+		Connection connection = TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(new String[] {
+			// 3rd download fails
+			"rel=3 .+download.+multichunk"
+		}));
+
+		Config config = TestConfigUtil.createTestLocalConfig("A", connection);
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+		createRemoteMultiChunkFiles(config, 30, multiChunkIds);
+
+		MultiChunkDownloader downloader = new MultiChunkDownloader(config, connection.createTransferManager(), null, 2);
+
+		try {
+			downloader.downloadAndDecrypt(multiChunkIds);
+			fail("Download should have failed.");
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, "Download failed as expected: " + e.getMessage());
+		}
+
+		int downloadedMultiChunkCount = 0;
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			if (config.getCache().getDecryptedMultiChunkFile(multiChunkId).exists()) {
+				downloadedMultiChunkCount++;
+			}
+		}
+
+		assertTrue("Remaining downloads should have been skipped.", downloadedMultiChunkCount < multiChunkIds.size() - 1);
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDownloadThreadCount() throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig("A");
+
+		try {
+			new MultiChunkDownloader(config, config.getConnection().createTransferManager(), null, 0);
+		}
+		finally {
+			TestConfigUtil.deleteTestLocalConfigAndData(config);
+		}
+	}
+
+	private long downloadWithLatency(int multiChunkCount, int downloadThreadCount) throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig("A", TestConfigUtil.createTestLatencyLocalConnection(50));
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+		createRemoteMultiChunkFiles(config, multiChunkCount, multiChunkIds);
+
+		long startTime = System.currentTimeMillis();
+
+		MultiChunkDownloader downloader = new MultiChunkDownloader(config, config.getConnection().createTransferManager(), null, downloadThreadCount);
+		downloader.downloadAndDecrypt(multiChunkIds);
+
+		long duration = System.currentTimeMillis() - startTime;
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+		return duration;
+	}
+
+	private List<byte[]> createRemoteMultiChunkFiles(Config config, int multiChunkCount, List<MultiChunkId> multiChunkIds) throws Exception {
+		List<byte[]> multiChunkContents = new ArrayList<byte[]>();
+
+		for (int i = 0; i < multiChunkCount; i++) {
+			MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+			byte[] multiChunkContent = TestFileUtil.createRandomArray(10 * 1024);
+
+			File repoMultiChunkFile = getRepoMultiChunkFile(config, multiChunkId);
+			OutputStream repoMultiChunkOutputStream = config.getTransformer().createOutputStream(new FileOutputStream(repoMultiChunkFile));
+
+			repoMultiChunkOutputStream.write(multiChunkContent);
+			repoMultiChunkOutputStream.close();
+
+			multiChunkIds.add(multiChunkId);
+			multiChunkContents.add(multiChunkContent);
+		}
+
+		return multiChunkContents;
+	}
+
+	private File getRepoMultiChunkFile(Config config, MultiChunkId multiChunkId) throws StorageException {
+		LocalConnection connection = (LocalConnection) config.getConnection();
+		return new File(connection.getRepositoryPath() + "/multichunks/" + new MultiChunkRemoteFile(multiChunkId).getName());
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.connection.plugins.Connection;
+import org.syncany.connection.plugins.MultiChunkRemoteFile;
+import org.syncany.connection.plugins.StorageException;
+import org.syncany.connection.plugins.local.LocalConnection;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.up.MultiChunkUploader;
+import org.syncany.operations.up.UpOperationListener;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class MultiChunkUploaderTest {
+	private static final Logger logger = Logger.getLogger(MultiChunkUploaderTest.class.getSimpleName());
+
+	@Test
+	public void testConcurrentUploadWithOrderedProgress() throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig("A", TestConfigUtil.createTestLatencyLocalConnection(10));
+		List<MultiChunkId> multiChunkIds = createMultiChunkFiles(config, 20);
+
+		// Run
+		final List<String> reportedFiles = Collections.synchronizedList(new ArrayList<String>());
+		final List<Integer> reportedIndexes = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> reportedFileCountsAtStart = Collections.synchronizedList(new ArrayList<Integer>());
+
+		MultiChunkUploader uploader = new MultiChunkUploader(config, config.getConnection().createTransferManager(), new UpOperationListener() {
+			@Override
+			public void onIndexStart(int fileCount) {
+				// Nothing.
+			}
+
+			@Override
+			public void onIndexFile(String fileName, int fileNumber) {
+				// Nothing.
+			}
+
+			@Override
+			public void onUploadStart(int fileCount) {
+				reportedFileCountsAtStart.add(reportedFiles.size());
+			}
+
+			@Override
+			public void onUploadFile(String fileName, int fileNumber) {
+				reportedFiles.add(fileName);
+				reportedIndexes.add(fileNumber);
+			}
+		}, 4, 0);
+
+		// Like in the pipelined mode, the first uploads finish before the start is reported
+		for (MultiChunkId multiChunkId : multiChunkIds.subList(0, 10)) {
+			uploader.queue(multiChunkId);
+		}
+
+		Thread.sleep(300);
+		uploader.reportUploadStart(multiChunkIds.size());
+
+		for (MultiChunkId multiChunkId : multiChunkIds.subList(10, multiChunkIds.size())) {
+			uploader.queue(multiChunkId);
+		}
+
+		assertEquals(multiChunkIds.size(), uploader.awaitCompletion());
+
+		// Check
+		assertEquals(Arrays.asList(0), reportedFileCountsAtStart);
+
+		for (int i = 0; i < multiChunkIds.size(); i++) {
+			MultiChunkId multiChunkId = multiChunkIds.get(i);
+
+			assertEquals(new MultiChunkRemoteFile(multiChunkId).getName(), reportedFiles.get(i));
+			assertEquals(i + 1, (int) reportedIndexes.get(i));
+
+			assertTrue(getRepoMultiChunkFile(config, multiChunkId).exists());
+			assertFalse(config.getCache().getEncryptedMultiChunkFile(multiChunkId).exists());
+		}
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testConcurrentUploadIsFasterWithLatency() throws Exception {
+		int multiChunkCount = 16;
+
+		long sequentialDuration = uploadWithLatency(multiChunkCount, 1);
+		long concurrentDuration = uploadWithLatency(multiChunkCount, 4);
+
+		logger.log(Level.INFO, "Uploading " + multiChunkCount + " multichunks with 50ms latency: 1 thread = " + sequentialDuration + " ms, 4 threads = "
+				+ concurrentDuration + " ms");
+
+		assertTrue("Concurrent upload should be faster than sequential upload.", concurrentDuration < sequentialDuration * 0.6);
+	}
+
+	@Test
+	public void testUploadRetry() throws Exception {
+		Connection connection = TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(new String[] {
+			// 2nd upload fails once, the retry (3rd upload) succeeds
+			"rel=2 .+upload.+multichunk"
+		}));
+
+		Config config = TestConfigUtil.createTestLocalConfig("A", connection);
+		List<MultiChunkId> multiChunkIds = createMultiChunkFiles(config, 5);
+
+		MultiChunkUploader uploader = new MultiChunkUploader(config, connection.createTransferManager(), null, 1, 1);
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			uploader.queue(multiChunkId);
+		}
+
+		uploader.awaitCompletion();
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			assertTrue(getRepoMultiChunkFile(config, multiChunkId).exists());
+		}
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testUploadFailFast() throws Exception {
+		Connection connection = TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(new String[] {
+			// 3rd upload fails, and is not retried
+			"rel=3 .+upload.+multichunk"
+		}));
+
+		Config config = TestConfigUtil.createTestLocalConfig("A", connection);
+		List<MultiChunkId> multiChunkIds = createMultiChunkFiles(config, 30);
+
+		MultiChunkUploader uploader = new MultiChunkUploader(config, connection.createTransferManager(), null, 2, 0);
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			uploader.queue(multiChunkId);
+		}
+
+		try {
+			uploader.awaitCompletion();
+			fail("Upload should have failed.");
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, "Upload failed as expected: " + e.getMessage());
+		}
+
+		int uploadedMultiChunkCount = 0;
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			if (getRepoMultiChunkFile(config, multiChunkId).exists()) {
+				uploadedMultiChunkCount++;
+			}
+		}
+
+		assertTrue("Remaining uploads should have been skipped.", uploadedMultiChunkCount < multiChunkIds.size() - 1);
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	private long uploadWithLatency(int multiChunkCount, int uploadThreadCount) throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig("A", TestConfigUtil.createTestLatencyLocalConnection(50));
+		List<MultiChunkId> multiChunkIds = createMultiChunkFiles(config, multiChunkCount);
+
+		long startTime = System.currentTimeMillis();
+		MultiChunkUploader uploader = new MultiChunkUploader(config, config.getConnection().createTransferManager(), null, uploadThreadCount, 0);
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			uploader.queue(multiChunkId);
+		}
+
+		uploader.awaitCompletion();
+		long duration = System.currentTimeMillis() - startTime;
+
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+		return duration;
+	}
+
+	private List<MultiChunkId> createMultiChunkFiles(Config config, int multiChunkCount) throws Exception {
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+
+		for (int i = 0; i < multiChunkCount; i++) {
+			MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+
+			FileUtils.writeByteArrayToFile(config.getCache().getEncryptedMultiChunkFile(multiChunkId), TestFileUtil.createRandomArray(10 * 1024));
+			multiChunkIds.add(multiChunkId);
+		}
+
+		return multiChunkIds;
+	}
+
+	private File getRepoMultiChunkFile(Config config, MultiChunkId multiChunkId) throws StorageException {
+		LocalConnection connection = (LocalConnection) config.getConnection();
+		return new File(connection.getRepositoryPath() + "/multichunks/" + new MultiChunkRemoteFile(multiChunkId).getName());
+	}
+}
@@ -26,6 +26,8 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -52,7 +54,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(Set<Path> dirtyPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -86,7 +88,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(Set<Path> dirtyPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -123,7 +125,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(Set<Path> dirtyPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -163,7 +165,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() {
+			public void watchEventsOccurred(Set<Path> dirtyPaths) {
 				eventOccurred.set(true);
 			}			
 		});
@@ -212,7 +214,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() { 
+			public void watchEventsOccurred(Set<Path> dirtyPaths) { 
 				watcherEventOccurredCount.addAndGet(1);
 				watcherEventOccurredTime.set(System.currentTimeMillis());
 			}			
@@ -251,7 +253,7 @@ public class RecursiveWatcherTest {
 		
 		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
 			@Override
-			public void watchEventsOccurred() { 
+			public void watchEventsOccurred(Set<Path> dirtyPaths) { 
 				watcherEventOccurredCount.addAndGet(1);
 			}			
 		});
@@ -274,4 +276,146 @@ public class RecursiveWatcherTest {
 		// Tear down	
 		TestFileUtil.deleteDirectory(tempDir);
 	}	
+	
+	@Test
+	public void testWatchDirtyPaths() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File existingFile = TestFileUtil.createRandomFileInDirectory(tempDir, 10*1024);
+		File subDir = new File(tempDir, "folder");
+		subDir.mkdir();
+		
+		// Test
+		final Set<Path> firedDirtyPaths = new HashSet<Path>();
+		final AtomicInteger watcherEventOccurredCount = new AtomicInteger(0);
+		
+		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(Set<Path> dirtyPaths) { 
+				synchronized (firedDirtyPaths) {
+					firedDirtyPaths.addAll(dirtyPaths);
+				}
+				
+				watcherEventOccurredCount.addAndGet(1);
+			}			
+		});
+		
+		// Start watcher 
+		watcher.start();		
+		Thread.sleep(200); // Wait for watch service to set watch on all folders
+		
+		File newFile = new File(subDir, "new-file");
+		TestFileUtil.createRandomFile(newFile, 10*1024);
+		existingFile.delete();
+
+		// Stop watcher (close watches)
+		Thread.sleep(600); // Wait for the watcher to fire an event
+		watcher.stop();
+		
+		// Test
+		assertEquals(1, watcherEventOccurredCount.get());
+		
+		synchronized (firedDirtyPaths) {
+			assertTrue(firedDirtyPaths.contains(newFile.toPath().toAbsolutePath()));
+			assertTrue(firedDirtyPaths.contains(existingFile.toPath().toAbsolutePath()));
+			assertFalse(firedDirtyPaths.contains(tempDir.toPath().toAbsolutePath()));
+		}
+		
+		// Tear down	
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testWatchFolderMovedAwayIsUnregistered() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File otherTempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File subDir = new File(tempDir, "subdir");
+		File movedSubDir = new File(otherTempDir, "subdir");
+		
+		subDir.mkdir();
+		
+		// Test
+		final AtomicInteger watcherEventOccurredCount = new AtomicInteger(0);
+		
+		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(Set<Path> dirtyPaths) { 
+				watcherEventOccurredCount.addAndGet(1);
+			}			
+		});
+		
+		watcher.start();		
+		Thread.sleep(200); // Wait for watch service to set watch on all folders
+		
+		// Move sub folder out of the watched folder
+		assertTrue(subDir.renameTo(movedSubDir));		
+		Thread.sleep(400);
+		
+		assertEquals(1, watcherEventOccurredCount.get());
+
+		// Changes in the moved folder must not fire events
+		TestFileUtil.createRandomFileInDirectory(movedSubDir, 10);
+		Thread.sleep(400);
+		
+		watcher.stop();
+		
+		assertEquals(1, watcherEventOccurredCount.get());
+		
+		// Tear down	
+		TestFileUtil.deleteDirectory(tempDir);
+		TestFileUtil.deleteDirectory(otherTempDir);
+	}
+	
+	@Test
+	public void testWatchAdaptiveSettleDelay() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();		
+		
+		// Test
+		final AtomicLong watcherEventOccurredTime = new AtomicLong(0L);
+		
+		RecursiveWatcher watcher = new RecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 200, 2000, new WatchListener() {
+			@Override
+			public void watchEventsOccurred(Set<Path> dirtyPaths) { 
+				watcherEventOccurredTime.set(System.currentTimeMillis());
+			}			
+		});
+		
+		watcher.start();		
+		Thread.sleep(200); // Wait for watch service to set watch on all folders
+		
+		// Single event: minimum delay
+		TestFileUtil.createRandomFile(new File(tempDir, "single-file"), 10);
+		long singleFileWrittenTime = System.currentTimeMillis();		
+		Thread.sleep(1000);
+		
+		assertTrue(watcherEventOccurredTime.get() > 0);
+		assertTrue(watcherEventOccurredTime.get() - singleFileWrittenTime < 1000);
+		
+		// Burst of events: longer delay
+		watcherEventOccurredTime.set(0L);
+		
+		for (int i=0; i<500; i++) {
+			TestFileUtil.createRandomFile(new File(tempDir, "burst-file-"+i), 10);
+		}
+		
+		long burstWrittenTime = System.currentTimeMillis();		
+		Thread.sleep(500);
+		
+		assertEquals(0L, watcherEventOccurredTime.get()); // not yet!
+		
+		Thread.sleep(2500);		
+		watcher.stop();
+		
+		assertTrue(watcherEventOccurredTime.get() - burstWrittenTime >= 500);
+		
+		// Tear down	
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxSettleDelay() throws Exception {
+		new RecursiveWatcher(Paths.get("/"), new ArrayList<Path>(), 1000, 500, null);
+	}
 }
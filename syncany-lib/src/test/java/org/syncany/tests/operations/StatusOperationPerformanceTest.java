@@ -0,0 +1,112 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.operations;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.operations.ChangeSet;
+import org.syncany.operations.StatusOperation;
+import org.syncany.operations.StatusOperation.StatusOperationOptions;
+import org.syncany.tests.util.TestConfigUtil;
+
+/**
+ * Compares the sequential and the parallel file tree walk of the {@link StatusOperation}
+ * on a generated tree of empty files (100 folders with 10 subfolders each). 
+ * 
+ * <p>The tree is walked once before measuring, so that both walks run with a warm 
+ * file system cache. On local disks, the parallel walk mainly saves the per-file 
+ * overhead; on network file systems, the listing latency is hidden as well.
+ */
+public class StatusOperationPerformanceTest {
+	private static final Logger logger = Logger.getLogger(StatusOperationPerformanceTest.class.getSimpleName());
+	private static final int TOP_LEVEL_FOLDER_COUNT = 100;
+	private static final int SUBFOLDER_COUNT = 10;
+
+	@Test
+	public void testWalkWith100kFiles() throws Exception {
+		testWalk(100000);
+	}
+
+	@Test
+	public void testWalkWith1MFiles() throws Exception {
+		testWalk(1000000);
+	}
+
+	private void testWalk(int fileCount) throws Exception {
+		Config config = TestConfigUtil.createTestLocalConfig();
+		int walkThreadCount = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+		try {
+			// Generate tree
+			long createStartTime = System.currentTimeMillis();
+			int folderCount = createTree(config.getLocalDir(), fileCount);
+			long createDuration = System.currentTimeMillis() - createStartTime;
+	
+			// Warm up, then walk sequentially and in parallel
+			runStatus(config, 1);
+	
+			long sequentialStartTime = System.currentTimeMillis();
+			ChangeSet sequentialChangeSet = runStatus(config, 1);
+			long sequentialDuration = System.currentTimeMillis() - sequentialStartTime;
+	
+			long parallelStartTime = System.currentTimeMillis();
+			ChangeSet parallelChangeSet = runStatus(config, walkThreadCount);
+			long parallelDuration = System.currentTimeMillis() - parallelStartTime;
+	
+			logger.log(Level.INFO, String.format("%d files in %d folders (created in %d ms): sequential walk %d ms, parallel walk (%d threads) %d ms",
+					fileCount, folderCount, createDuration, sequentialDuration, walkThreadCount, parallelDuration));
+	
+			assertEquals(fileCount + folderCount, sequentialChangeSet.getNewFiles().size());
+			assertEquals(sequentialChangeSet.getNewFiles(), parallelChangeSet.getNewFiles());
+		}
+		finally {
+			TestConfigUtil.deleteTestLocalConfigAndData(config);
+		}
+	}
+
+	private ChangeSet runStatus(Config config, int walkThreadCount) throws Exception {
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setWalkThreadCount(walkThreadCount);
+
+		return new StatusOperation(config, statusOptions).execute().getChangeSet();
+	}
+
+	private int createTree(File localDir, int fileCount) throws Exception {
+		int leafFolderCount = TOP_LEVEL_FOLDER_COUNT * SUBFOLDER_COUNT;
+		int filesPerFolder = fileCount / leafFolderCount;
+
+		for (int i = 0; i < TOP_LEVEL_FOLDER_COUNT; i++) {
+			for (int j = 0; j < SUBFOLDER_COUNT; j++) {
+				File folder = new File(localDir, "folder" + i + "/subfolder" + j);
+				folder.mkdirs();
+
+				for (int k = 0; k < filesPerFolder; k++) {
+					new File(folder, "file" + k).createNewFile();
+				}
+			}
+		}
+
+		return TOP_LEVEL_FOLDER_COUNT + leafFolderCount;
+	}
+}
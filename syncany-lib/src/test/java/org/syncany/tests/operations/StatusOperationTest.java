@@ -18,19 +18,30 @@
 package org.syncany.tests.operations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.syncany.config.Config;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.StatCache;
 import org.syncany.operations.StatusOperation;
 import org.syncany.operations.StatusOperation.StatusOperationOptions;
 import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.EnvironmentUtil;
 
 public class StatusOperationTest {
 
@@ -161,4 +172,241 @@ public class StatusOperationTest {
 		// Cleanup 
 		TestConfigUtil.deleteTestLocalConfigAndData(config);
 	}
+	
+	@Test
+	public void testStatCacheWrittenAndInvalidatedOnChange() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		List<File> originalFiles = TestFileUtil.createRandomFilesInDirectory(config.getLocalDir(), 50*1024, 3);
+		File statCacheFile = new File(config.getAppDir(), StatCache.FILE_STAT_CACHE);
+		
+		new UpOperation(config).execute();
+		
+		// Run 'status' twice, the first run writes the cache, the second uses it
+		ChangeSet changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(originalFiles.size(), changeSet.getUnchangedFiles().size());
+		assertTrue(statCacheFile.exists());
+		
+		long statCacheLastModified = statCacheFile.lastModified();
+		Thread.sleep(1500);
+		
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(originalFiles.size(), changeSet.getUnchangedFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+		assertEquals("Unchanged stat cache should not be rewritten.", statCacheLastModified, statCacheFile.lastModified());
+		
+		// Change a file, cache must not hide the change
+		TestFileUtil.changeRandomPartOfBinaryFile(originalFiles.get(0));
+		
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(originalFiles.size() - 1, changeSet.getUnchangedFiles().size());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testStatCacheDetectsPermissionChange() throws Exception {
+		if (!EnvironmentUtil.isUnixLikeOperatingSystem()) {
+			return;
+		}
+		
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		File testFile = TestFileUtil.createRandomFileInDirectory(config.getLocalDir(), 40*1024);
+		
+		new UpOperation(config).execute();
+		
+		ChangeSet changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(1, changeSet.getUnchangedFiles().size());
+		
+		// Change permissions only (modified date stays the same)
+		long lastModified = testFile.lastModified();
+		Files.setPosixFilePermissions(testFile.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+		assertEquals(lastModified, testFile.lastModified());
+
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(1, changeSet.getChangedFiles().size());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testStatCacheCorruptFileIgnored() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		TestFileUtil.createRandomFilesInDirectory(config.getLocalDir(), 10*1024, 2);
+		
+		new UpOperation(config).execute();
+		FileUtils.writeStringToFile(new File(config.getAppDir(), StatCache.FILE_STAT_CACHE), "this is not a stat cache");
+		
+		ChangeSet changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(2, changeSet.getUnchangedFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testParallelWalkEqualsSequentialWalk() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		File localDir = config.getLocalDir();
+		
+		for (int i = 0; i < 5; i++) {
+			File folder = new File(localDir, "folder" + i + "/subfolder" + i);
+			folder.mkdirs();
+			
+			TestFileUtil.createRandomFilesInDirectory(folder, 1024, 10);
+			TestFileUtil.createRandomFilesInDirectory(folder.getParentFile(), 1024, 5);
+		}
+		
+		new File(localDir, "ignoredfolder/subfolder").mkdirs();
+		TestFileUtil.createRandomFilesInDirectory(new File(localDir, "ignoredfolder/subfolder"), 1024, 5);
+		FileUtils.writeStringToFile(new File(localDir, Config.FILE_IGNORE), "ignoredfolder");
+		config.getIgnoredFiles().loadPatterns();
+		
+		new UpOperation(config).execute();
+		
+		// Change, add and delete some files
+		Thread.sleep(1500);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(getFirstFile(new File(localDir, "folder1/subfolder1")));
+		TestFileUtil.deleteFile(getFirstFile(new File(localDir, "folder2")));
+		TestFileUtil.createRandomFilesInDirectory(new File(localDir, "folder3/subfolder3"), 1024, 3);
+		
+		// Run 'status' sequentially and in parallel
+		StatusOperationOptions parallelStatusOptions = new StatusOperationOptions();
+		parallelStatusOptions.setWalkThreadCount(4);
+
+		ChangeSet sequentialChangeSet = (new StatusOperation(config).execute()).getChangeSet();
+		ChangeSet parallelChangeSet = (new StatusOperation(config, parallelStatusOptions).execute()).getChangeSet();
+		
+		// Test
+		assertEquals(1, sequentialChangeSet.getChangedFiles().size());
+		assertEquals(1, sequentialChangeSet.getDeletedFiles().size());
+		assertEquals(3, sequentialChangeSet.getNewFiles().size());
+		
+		assertEquals(sequentialChangeSet.getNewFiles(), parallelChangeSet.getNewFiles());
+		assertEquals(sequentialChangeSet.getChangedFiles(), parallelChangeSet.getChangedFiles());
+		assertEquals(sequentialChangeSet.getDeletedFiles(), parallelChangeSet.getDeletedFiles());
+		assertEquals(sequentialChangeSet.getUnchangedFiles(), parallelChangeSet.getUnchangedFiles());
+		
+		for (String unchangedFile : parallelChangeSet.getUnchangedFiles()) {
+			assertFalse("App dir or ignored files must not be listed.", unchangedFile.startsWith(".syncany") || unchangedFile.startsWith("ignoredfolder"));
+		}
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWalkThreadCount() throws Exception {
+		new StatusOperationOptions().setWalkThreadCount(0);
+	}
+	
+	@Test
+	public void testScopedStatusOnlyExaminesDirtyPaths() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		File localDir = config.getLocalDir();
+		
+		for (int i = 0; i < 3; i++) {
+			new File(localDir, "folder" + i).mkdirs();
+			
+			for (int j = 0; j < 3; j++) {
+				TestFileUtil.createRandomFile(new File(localDir, "folder" + i + "/file" + j), 1024);
+			}
+		}
+		
+		new File(localDir, "ignoredfolder").mkdirs();
+		FileUtils.writeStringToFile(new File(localDir, Config.FILE_IGNORE), "ignoredfolder");
+		config.getIgnoredFiles().loadPatterns();
+		
+		new UpOperation(config).execute();
+		
+		// Change, add and delete files; only some of them are reported as dirty
+		Thread.sleep(1500);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(new File(localDir, "folder0/file0")); // dirty
+		TestFileUtil.changeRandomPartOfBinaryFile(new File(localDir, "folder0/file1")); // not dirty
+		TestFileUtil.deleteFile(new File(localDir, "folder1/file0")); // dirty
+		TestFileUtil.deleteDirectory(new File(localDir, "folder2")); // dirty
+		
+		new File(localDir, "newfolder/subfolder").mkdirs();
+		TestFileUtil.createRandomFile(new File(localDir, "newfolder/subfolder/file0"), 1024); // dirty
+		TestFileUtil.createRandomFile(new File(localDir, "newfolder/file1"), 1024); // not dirty, but in new folder
+		TestFileUtil.createRandomFile(new File(localDir, "ignoredfolder/file0"), 1024); // dirty, but ignored
+		
+		Set<String> dirtyPaths = new HashSet<String>(Arrays.asList(new String[] { 
+			"folder0/file0", "folder1/file0", "folder2", "newfolder/subfolder/file0", "ignoredfolder/file0", ".syncany/db"  
+		}));
+		
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setDirtyPaths(dirtyPaths);
+		
+		ChangeSet scopedChangeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		
+		// Test
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder0/file0" })), scopedChangeSet.getChangedFiles());
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder1/file0", "folder2", "folder2/file0", "folder2/file1", "folder2/file2" })), 
+				scopedChangeSet.getDeletedFiles());
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "newfolder", "newfolder/file1", "newfolder/subfolder", "newfolder/subfolder/file0" })), 
+				scopedChangeSet.getNewFiles());		
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder0", "folder1" })), scopedChangeSet.getUnchangedFiles());
+		
+		// A full run still finds the unreported change
+		ChangeSet fullChangeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "folder0/file0", "folder0/file1" })), fullChangeSet.getChangedFiles());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testScopedUpOperation() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		File localDir = config.getLocalDir();
+		
+		TestFileUtil.createRandomFile(new File(localDir, "file0"), 1024);
+		TestFileUtil.createRandomFile(new File(localDir, "file1"), 1024);
+		TestFileUtil.createRandomFile(new File(localDir, "file2"), 1024);
+		
+		new UpOperation(config).execute();
+		
+		// Rename and delete files, but only report some of them as dirty
+		TestFileUtil.deleteFile(new File(localDir, "file0")); // dirty
+		TestFileUtil.deleteFile(new File(localDir, "file1")); // not dirty
+		FileUtils.moveFile(new File(localDir, "file2"), new File(localDir, "file2-renamed")); // dirty
+		
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.getStatusOptions().setDirtyPaths(new HashSet<String>(Arrays.asList(new String[] { "file0", "file2", "file2-renamed" })));
+		
+		new UpOperation(config, upOptions, null).execute();
+		
+		// Test: Only the unreported deletion is left
+		ChangeSet fullChangeSet = (new StatusOperation(config).execute()).getChangeSet();
+		
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "file1" })), fullChangeSet.getDeletedFiles());
+		assertEquals(new TreeSet<String>(Arrays.asList(new String[] { "file2-renamed" })), fullChangeSet.getUnchangedFiles());
+		assertEquals(0, fullChangeSet.getNewFiles().size());
+		assertEquals(0, fullChangeSet.getChangedFiles().size());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	private File getFirstFile(File folder) {
+		for (File file : folder.listFiles()) {
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		
+		return null;
+	}
 }
@@ -39,6 +39,7 @@ import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.operations.up.UpOperation;
+import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestFileUtil;
 import org.syncany.util.CollectionUtil;
@@ -116,6 +117,36 @@ public class SyncUpOperationTest {
 		compareFileVersionsAgainstOriginalFiles(originalFiles, remoteFileVersions);
 	}
 
+	@Test
+	public void testUploadPipelined() throws Exception {
+		List<File> originalFiles = TestFileUtil.createRandomFilesInDirectory(testConfig.getLocalDir(), 500 * 1024, 20);
+		
+		UpOperationOptions options = new UpOperationOptions();
+		options.setPipelinedUploadEnabled(true);
+		
+		// Run!
+		new UpOperation(testConfig, options, null).execute();
+		
+		// Check multichunks and database in repo
+		LocalConnection localConnection = (LocalConnection) testConfig.getConnection();
+		File remoteDatabaseFile = new File(localConnection.getRepositoryPath() + "/databases/db-" + testConfig.getMachineName()+"-0000000001");
+		File[] remoteMultiChunkFiles = new File(localConnection.getRepositoryPath() + "/multichunks").listFiles();
+
+		assertTrue(remoteDatabaseFile.exists());
+		assertNotNull(remoteMultiChunkFiles);
+		
+		MemoryDatabase remoteDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer(testConfig.getTransformer()).load(remoteDatabase, remoteDatabaseFile, DatabaseVersionType.DEFAULT);
+		
+		DatabaseVersion remoteDatabaseVersion = remoteDatabase.getLastDatabaseVersion();
+		SqlDatabase localDatabase = new SqlDatabase(testConfig);
+		
+		assertEquals(localDatabase.getLastDatabaseVersionHeader(), remoteDatabaseVersion.getHeader());
+		assertEquals(originalFiles.size(), localDatabase.getFileHistoriesWithFileVersions().size());
+		assertEquals(remoteDatabaseVersion.getMultiChunks().size(), remoteMultiChunkFiles.length);
+		assertTrue(remoteMultiChunkFiles.length > 1);
+	}
+
 	private void compareFileVersionsAgainstOriginalFiles(List<File> originalFiles, List<FileVersion> localFileVersions) throws Exception {
 		int toFind = originalFiles.size();
 		for (File originalFile : originalFiles) { 
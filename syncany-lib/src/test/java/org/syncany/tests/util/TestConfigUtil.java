@@ -41,6 +41,7 @@ import org.syncany.connection.plugins.Connection;
 import org.syncany.connection.plugins.Plugin;
 import org.syncany.connection.plugins.Plugins;
 import org.syncany.connection.plugins.local.LocalConnection;
+import org.syncany.connection.plugins.latency_local.LatencyLocalConnection;
 import org.syncany.connection.plugins.unreliable_local.UnreliableLocalConnection;
 import org.syncany.connection.plugins.unreliable_local.UnreliableLocalPlugin;
 import org.syncany.crypto.CipherSpecs;
@@ -284,6 +285,17 @@ public class TestConfigUtil {
 		return unreliableLocalConnection;
 	}
 
+	public static LatencyLocalConnection createTestLatencyLocalConnection(int latencyMillis) throws Exception {
+		LatencyLocalConnection latencyLocalConnection = new LatencyLocalConnection(latencyMillis);
+
+		File tempRepoDir = TestFileUtil.createTempDirectoryInSystemTemp(createUniqueName("repo", new Random().nextFloat()));
+
+		latencyLocalConnection.setRepositoryPath(tempRepoDir);
+		latencyLocalConnection.createTransferManager().init(true);
+
+		return latencyLocalConnection;
+	}
+
 	public static void deleteTestLocalConfigAndData(Config config) {
 		TestFileUtil.deleteDirectory(config.getLocalDir());
 		TestFileUtil.deleteDirectory(config.getCacheDir());